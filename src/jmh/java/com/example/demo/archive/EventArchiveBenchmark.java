@@ -0,0 +1,99 @@
+package com.example.demo.archive;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.demo.dto.ArchivedEventDTO;
+import com.example.demo.model.ActionType;
+
+/**
+ * Cost of scanning the archive, a week of one million events in segments of 50,000, for the whole week and
+ * for a single day. Users and songs repeat the way they do in the table, a few thousand of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventArchiveBenchmark {
+
+    private static final int EVENTS = 1_000_000;
+    private static final int CHUNK = 50_000;
+    private static final Instant START = Instant.parse("2025-01-06T00:00:00Z");
+    private static final Duration WEEK = Duration.ofDays(7);
+
+    private Path directory;
+    private EventArchive archive;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("archive-benchmark");
+        archive = new EventArchive(directory);
+        ActionType[] actions = ActionType.values();
+        long step = WEEK.toMillis() / EVENTS;
+        List<ArchivedEventDTO> chunk = new ArrayList<>(CHUNK);
+        for (int i = 0; i < EVENTS; i++) {
+            chunk.add(ArchivedEventDTO.builder()
+                    .id(i + 1L)
+                    .userId("user" + (i * 7919 % 5000))
+                    .action(actions[i % actions.length])
+                    .songId("song" + (i * 104729 % 20000))
+                    .timestamp(START.plusMillis(i * step))
+                    .source(i % 3 == 0 ? "web" : "mobile")
+                    .processedAt(START.plusMillis(i * step + 20))
+                    .category(i % 4 == 0 ? "ENGAGEMENT" : "PLAYBACK")
+                    .count(0)
+                    .deviceType(i % 3 == 0 ? "DESKTOP" : "MOBILE")
+                    .osVersion(i % 3 == 0 ? "Windows 10" : "Android 14")
+                    .appVersion(i % 3 == 0 ? null : "3.2." + (i % 4))
+                    .ipAddress("81.2." + (i * 31 % 256) + "." + (i * 7919 % 5000 % 256))
+                    .location("GB/London")
+                    .build());
+            if (chunk.size() == CHUNK) {
+                archive.append(chunk);
+                chunk.clear();
+            }
+        }
+    }
+
+    @TearDown
+    public void teardown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public long scanWeek(Blackhole blackhole) {
+        return archive.scan(START, START.plus(WEEK), blackhole::consume);
+    }
+
+    @Benchmark
+    public long scanDay(Blackhole blackhole) {
+        return archive.scan(START.plus(Duration.ofDays(3)), START.plus(Duration.ofDays(4)), blackhole::consume);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.demo.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.demo.dto.RawEventDTO;
+import com.example.demo.model.ActionType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Per-event cost of reading a request body into {@link RawEventDTO}, with the generic Jackson binding it
+ * replaced and with the {@link RawEventDecoder}. Bodies cycle through all actions in mixed case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RawEventDecoderBenchmark {
+
+    private static final int EVENTS = 1024;
+
+    private byte[][] bodies;
+    private ObjectReader reader;
+    private RawEventDecoder decoder;
+    private int next;
+
+    @Setup
+    public void setup() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        reader = objectMapper.readerFor(RawEventDTO.class);
+        decoder = new RawEventDecoder(objectMapper);
+        ActionType[] actions = ActionType.values();
+        bodies = new byte[EVENTS][];
+        for (int i = 0; i < EVENTS; i++) {
+            String action = actions[i % actions.length].name();
+            bodies[i] = String.format("{\"userId\":\"user%d\",\"action\":\"%s\",\"songId\":\"song%d\",\"timestamp\":\"%s\"}",
+                    i, i % 2 == 0 ? action : action.toLowerCase(), i, Instant.now())
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public RawEventDTO jacksonBinding() throws IOException {
+        return reader.readValue(new ByteArrayInputStream(bodies[index()]));
+    }
+
+    @Benchmark
+    public RawEventDTO decoder() throws IOException {
+        return decoder.read(new ByteArrayInputStream(bodies[index()]));
+    }
+
+    private int index() {
+        return next++ & (EVENTS - 1);
+    }
+}
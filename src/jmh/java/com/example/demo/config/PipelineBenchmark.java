@@ -0,0 +1,146 @@
+package com.example.demo.config;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.config.EnableIntegration;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessageChannel;
+
+import com.example.demo.dto.RawEventDTO;
+import com.example.demo.enrichment.EventEnricher;
+import com.example.demo.metrics.PipelineMetrics;
+import com.example.demo.model.ActionType;
+import com.example.demo.pipeline.BotDetector;
+import com.example.demo.pipeline.DownstreamGuards;
+import com.example.demo.pipeline.DuplicateEventFilter;
+import com.example.demo.pipeline.ListeningSessionTracker;
+import com.example.demo.retry.DeadLetterStore;
+import com.example.demo.retry.DeliveryRetryScheduler;
+import com.example.demo.service.AiEngineService;
+import com.example.demo.service.AnalyticsService;
+import com.example.demo.service.SocialService;
+import com.example.demo.service.StorageService;
+import com.example.demo.service.impl.SocialDispatchCoalescer;
+import com.example.demo.wal.EventWriteAheadLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * End-to-end cost of {@code eventInputChannel.send} through the real flow of {@link IntegrationConfig}:
+ * transformation, enrichment, filters, duplicate check, bot check, routing and the session tracker, with
+ * stubs for the analytics, AI engine, social and storage services. The flow runs synchronously on the
+ * benchmark thread, so the numbers are the CPU cost of the pipeline itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private static final int USERS = 100_000;
+    private static final ActionType[] ACTIONS = ActionType.values();
+    private static final String[] USER_AGENTS = {
+            "MusicApp/3.2.1 (iOS 17.4; iPhone15,2)",
+            "MusicApp/3.2.0 (Android 14; Pixel 8)",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36",
+    };
+
+    private AnnotationConfigApplicationContext context;
+    private MessageChannel eventInputChannel;
+    private long sequence;
+    private long timestamp;
+
+    @Setup
+    public void setup() {
+        // without Spring Boot logback starts at DEBUG, the log output would dominate the measurement
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        EventPipelineProperties properties = new EventPipelineProperties();
+        properties.getIngestion().setAsync(false);
+        properties.getFanout().setEnabled(false);
+
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(EventPipelineProperties.class, () -> properties);
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.registerBean(ObjectMapper.class);
+        context.registerBean(PipelineMetrics.class);
+        context.registerBean(AnalyticsService.class, () -> stub(AnalyticsService.class));
+        context.registerBean(AiEngineService.class, () -> stub(AiEngineService.class));
+        context.registerBean(SocialService.class, () -> stub(SocialService.class));
+        context.registerBean(StorageService.class, () -> stub(StorageService.class));
+        context.registerBean(DuplicateEventFilter.class);
+        context.registerBean(BotDetector.class);
+        context.registerBean(ListeningSessionTracker.class);
+        context.registerBean(DownstreamGuards.class);
+        context.registerBean(DeliveryRetryScheduler.class);
+        context.registerBean(DeadLetterStore.class);
+        context.registerBean(SocialDispatchCoalescer.class);
+        context.registerBean(EventWriteAheadLog.class);
+        context.registerBean(EventEnricher.class);
+        context.register(IntegrationSetup.class, IntegrationConfig.class);
+        context.refresh();
+        eventInputChannel = context.getBean("eventInputChannel", MessageChannel.class);
+        timestamp = Instant.now().toEpochMilli();
+    }
+
+    @TearDown
+    public void teardown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean send() {
+        long n = sequence++;
+        RawEventDTO rawEvent = RawEventDTO.builder()
+                .userId("user" + (n % USERS))
+                .action(ACTIONS[(int) (n % ACTIONS.length)].name())
+                .songId("song" + (n % 1000))
+                // distinct timestamps, the duplicate filter would drop repeated events
+                .timestamp(Instant.ofEpochMilli(timestamp + n))
+                .userAgent(USER_AGENTS[(int) (n % USER_AGENTS.length)])
+                .clientIp("10.0." + (n % 256) + "." + (n % 200))
+                .build();
+        return eventInputChannel.send(MessageBuilder.withPayload(rawEvent).build());
+    }
+
+    /**
+     * A service doing nothing. Not a Mockito mock, those capture a stack trace on every call and would
+     * dominate the measurement.
+     */
+    private static <T> T stub(Class<T> type) {
+        Object stub = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> type.getSimpleName() + " stub";
+                    default -> null;
+                });
+        return type.cast(stub);
+    }
+
+    @Configuration
+    @EnableIntegration
+    static class IntegrationSetup {
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demo.pipeline;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.demo.dto.RawEventDTO;
+import com.example.demo.entity.EventEntity;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+import com.example.demo.service.impl.StorageServiceImpl;
+
+/**
+ * Per-event cost of the stateless steps of the flow: the transformation of the raw event, the filter
+ * predicate and the mapping to the database row. Events cycle through all actions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventStagesBenchmark {
+
+    private static final int EVENTS = 1024;
+
+    private RawEventDTO[] rawEvents;
+    private Event[] events;
+    private int next;
+
+    @Setup
+    public void setup() {
+        ActionType[] actions = ActionType.values();
+        rawEvents = new RawEventDTO[EVENTS];
+        events = new Event[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            rawEvents[i] = RawEventDTO.builder()
+                    .userId("user" + i)
+                    .action(actions[i % actions.length].name().toLowerCase())
+                    .songId("song" + i)
+                    .timestamp(Instant.now())
+                    .build();
+            events[i] = EventTransformer.transform(rawEvents[i]);
+        }
+    }
+
+    @Benchmark
+    public Event transform() {
+        return EventTransformer.transform(rawEvents[index()]);
+    }
+
+    @Benchmark
+    public EventValidator.Violation filter() {
+        Event event = events[index()];
+        return EventValidator.validate(event.getUserId(), event.getAction(), event.getSongId());
+    }
+
+    @Benchmark
+    public EventEntity toEntity() {
+        return StorageServiceImpl.toEntity(events[index()]);
+    }
+
+    private int index() {
+        return next++ & (EVENTS - 1);
+    }
+}
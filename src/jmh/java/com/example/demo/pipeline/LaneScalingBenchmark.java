@@ -0,0 +1,93 @@
+package com.example.demo.pipeline;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import com.example.demo.analytics.StreamingAggregator;
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+
+/**
+ * Batches of events sent through a {@link LaneChannel} whose lanes count them in one
+ * {@link StreamingAggregator} behind one {@link DownstreamGuard}, the state all lanes share. The time per event
+ * should fall with the number of lanes as long as that state takes no lock the lanes wait for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LaneScalingBenchmark {
+
+    private static final int EVENTS = 4096;
+    private static final int USERS = 1024;
+
+    @Param({ "1", "2", "4", "8" })
+    private int lanes;
+
+    private Message<?>[] messages;
+    private LaneExecutor executor;
+    private LaneChannel channel;
+    private volatile CountDownLatch batch;
+
+    @Setup
+    public void setup() {
+        ActionType[] actions = ActionType.values();
+        messages = new Message<?>[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            Event event = Event.builder()
+                    .userId("user" + (i % USERS))
+                    .action(actions[i % actions.length])
+                    .songId("song" + (i % 200))
+                    .timestamp(Instant.now())
+                    .source("WEB")
+                    .build();
+            messages[i] = MessageBuilder.withPayload(event).build();
+        }
+        EventPipelineProperties properties = new EventPipelineProperties();
+        StreamingAggregator aggregator = new StreamingAggregator(properties);
+        DownstreamGuard guard = new DownstreamGuard(DownstreamGuards.ANALYTICS, true,
+                new EventPipelineProperties.DownstreamLimits(), System::nanoTime);
+        executor = new LaneExecutor("bench", lanes, EVENTS, Duration.ofSeconds(5), 0);
+        channel = new LaneChannel(executor, message -> ((Event) message.getPayload()).getUserId());
+        channel.subscribe(message -> {
+            guard.run(() -> aggregator.record((Event) message.getPayload()));
+            batch.countDown();
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void lanes() throws InterruptedException {
+        batch = new CountDownLatch(EVENTS);
+        for (Message<?> message : messages) {
+            channel.send(message);
+        }
+        batch.await();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.demo.pipeline;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.metrics.PipelineMetrics;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Per-event cost of the switch based routing it replaced against the compiled {@link RoutingTable}, and
+ * of the whole {@link EventRouter} including the bot check and the routing meters
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+    private static final int EVENTS = 1024;
+
+    private static final MessageChannel ANALYTICS = new DirectChannel();
+    private static final MessageChannel AI_ENGINE = new DirectChannel();
+    private static final MessageChannel SOCIAL = new DirectChannel();
+    private static final MessageChannel STORAGE = new DirectChannel();
+    private static final MessageChannel SESSIONS = new DirectChannel();
+
+    private Event[] events;
+    private Message<?>[] messages;
+    private RoutingTable table;
+    private EventRouter router;
+    private int next;
+
+    @Setup
+    public void setup() {
+        ActionType[] actions = ActionType.values();
+        events = new Event[EVENTS];
+        messages = new Message<?>[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            events[i] = Event.builder()
+                    .userId((i % 50 == 0 ? "bot_" : "user") + i)
+                    .action(actions[i % actions.length])
+                    .songId("song" + i)
+                    .timestamp(Instant.now())
+                    .source("WEB")
+                    .build();
+            messages[i] = MessageBuilder.withPayload(events[i]).build();
+        }
+        Map<String, MessageChannel> channels = Map.of("analytics", ANALYTICS, "aiEngine", AI_ENGINE,
+                "social", SOCIAL, "storage", STORAGE, "sessions", SESSIONS);
+        table = RoutingTable.compile(RoutingRule.defaults(), channels);
+        EventPipelineProperties properties = new EventPipelineProperties();
+        router = new EventRouter(channels, RoutingRule.defaults(), new BotDetector(properties),
+                new PipelineMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Benchmark
+    public Collection<MessageChannel> switchRouting() {
+        return legacyTargetChannels(events[index()]);
+    }
+
+    @Benchmark
+    public List<MessageChannel> tableRouting() {
+        return table.route(events[index()], false).getChannels();
+    }
+
+    @Benchmark
+    public Collection<MessageChannel> router() {
+        return router.determineTargetChannels(messages[index()]);
+    }
+
+    private int index() {
+        return next++ & (EVENTS - 1);
+    }
+
+    /**
+     * The routing of the anonymous router before the routing table
+     */
+    private static Collection<MessageChannel> legacyTargetChannels(Event event) {
+        ActionType action = event.getAction();
+        if (event.getUserId() != null && event.getUserId().startsWith("bot_")) {
+            return List.of(STORAGE);
+        }
+        if (null == action) {
+            return List.of(STORAGE);
+        } else return switch (action) {
+            case PLAY -> List.of(ANALYTICS, AI_ENGINE, STORAGE);
+            case PAUSE, SKIP -> List.of(ANALYTICS, STORAGE);
+            case LIKE, DISLIKE -> List.of(ANALYTICS, AI_ENGINE, SOCIAL, STORAGE);
+            case SHARE -> List.of(ANALYTICS, AI_ENGINE, SOCIAL, STORAGE);
+            case LOGIN, LOGOUT -> List.of(ANALYTICS, STORAGE);
+        };
+    }
+}
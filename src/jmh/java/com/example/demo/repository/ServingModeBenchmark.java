@@ -0,0 +1,123 @@
+package com.example.demo.repository;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A burst of concurrent requests served on platform threads, Tomcat's 200 workers and accept queue of
+ * 100, against the same burst served on a virtual thread each. Every other request inserts an event
+ * through the limiter sized as in production, the 20 connections of the pool less the 3 reserved for
+ * background work, with 2 ms per insert; the others are answered from memory. The summary printed after
+ * the trial gives the requests served rather than rejected per burst, which over the time per burst is the
+ * throughput, and the latency of both kinds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServingModeBenchmark {
+
+    private static final int POOL_SIZE = 20;
+    private static final int RESERVED_CONNECTIONS = 3;
+    private static final long INSERT_NANOS = Duration.ofMillis(2).toNanos();
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public String mode;
+
+    @Param({"1000", "10000"})
+    public int requests;
+
+    private ExecutorService server;
+    private DatabaseConcurrencyLimiter limiter;
+    private long[] memoryLatencies;
+    private long[] databaseLatencies;
+    private final AtomicInteger rejected = new AtomicInteger();
+    private long bursts;
+
+    @Setup
+    public void setup() {
+        server = mode.equals("VIRTUAL")
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : new ThreadPoolExecutor(200, 200, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(100));
+        limiter = new DatabaseConcurrencyLimiter(POOL_SIZE - RESERVED_CONNECTIONS, Duration.ofSeconds(10));
+        memoryLatencies = new long[requests / 2];
+        databaseLatencies = new long[requests / 2];
+    }
+
+    /**
+     * Prints the latencies of the last burst, leaving out the rejected requests
+     */
+    @TearDown
+    public void teardown() {
+        server.shutdownNow();
+        Arrays.sort(memoryLatencies);
+        Arrays.sort(databaseLatencies);
+        System.out.printf("%n%s %d: served %d per burst, from memory p50 %.1f ms p99 %.1f ms, "
+                + "inserts p50 %.1f ms p99 %.1f ms%n", mode, requests, requests - rejected.get() / bursts,
+                percentile(memoryLatencies, 0.5), percentile(memoryLatencies, 0.99),
+                percentile(databaseLatencies, 0.5), percentile(databaseLatencies, 0.99));
+    }
+
+    @Benchmark
+    public int burst() throws InterruptedException {
+        bursts++;
+        CountDownLatch done = new CountDownLatch(requests);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            boolean insert = (i & 1) == 0;
+            long[] latencies = insert ? databaseLatencies : memoryLatencies;
+            int slot = i >> 1;
+            latencies[slot] = -1;
+            try {
+                server.execute(() -> {
+                    if (insert) {
+                        limiter.run(() -> LockSupport.parkNanos(INSERT_NANOS));
+                    }
+                    latencies[slot] = System.nanoTime() - start;
+                    done.countDown();
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                done.countDown();
+            }
+        }
+        done.await();
+        return rejected.get();
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int first = 0;
+        while (first < sorted.length && sorted[first] < 0) {
+            first++;
+        }
+        if (first == sorted.length) {
+            return Double.NaN;
+        }
+        int count = sorted.length - first;
+        return sorted[first + (int) Math.min(count - 1, Math.round(quantile * count))] / 1e6;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.demo.retry;
+
+import java.time.Duration;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parking retries and firing them once due, with the timing wheel of {@link DeliveryRetryScheduler} and with a
+ * binary heap ordered by deadline, the structure behind {@code ScheduledThreadPoolExecutor}. The delays are
+ * spread over five minutes like backoffs of several attempts; the clock is simulated, firing a tick at a time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RetryWheelBenchmark {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_DELAY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    @Param({"10000", "1000000"})
+    public int retries;
+
+    private long[] delays;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        delays = new long[retries];
+        for (int i = 0; i < retries; i++) {
+            delays[i] = random.nextLong(MAX_DELAY_NANOS);
+        }
+    }
+
+    @Benchmark
+    public int timingWheel() {
+        int[] fired = new int[1];
+        HashedTimingWheel wheel = new HashedTimingWheel("benchmark", Duration.ofNanos(TICK_NANOS), 512, () -> 0L);
+        for (long delay : delays) {
+            wheel.schedule(new HashedTimingWheel.Timeout() {
+                @Override
+                protected void expire() {
+                    fired[0]++;
+                }
+            }, delay);
+        }
+        while (wheel.getPendingCount() > 0) {
+            wheel.advance();
+        }
+        return fired[0];
+    }
+
+    @Benchmark
+    public int heap() {
+        int fired = 0;
+        PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        for (long delay : delays) {
+            queue.add(new long[] {delay});
+        }
+        for (long now = 0; !queue.isEmpty(); now += TICK_NANOS) {
+            while (!queue.isEmpty() && queue.peek()[0] < now + TICK_NANOS) {
+                queue.poll();
+                fired++;
+            }
+        }
+        return fired;
+    }
+}
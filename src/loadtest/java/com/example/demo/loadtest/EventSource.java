@@ -0,0 +1,12 @@
+package com.example.demo.loadtest;
+
+/**
+ * Supplies the JSON bodies of the events sent by the {@link LoadGenerator}, may be called concurrently
+ */
+interface EventSource {
+
+    /**
+     * @return the body of the next event
+     */
+    String next();
+}
@@ -0,0 +1,262 @@
+package com.example.demo.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Sends events to a running instance and reports the achieved throughput and the latency distribution.
+ * <p>
+ * In {@code rate} mode every request has an intended send time on a fixed schedule, and its latency is
+ * measured from that time, not from when it was actually sent. A stalled server therefore shows up with
+ * the full delay of every request queued behind the stall instead of a single slow sample, the error known
+ * as coordinated omission. The number of requests in flight is bounded, a request over the bound waits
+ * and its wait counts as latency. In {@code concurrency} mode a fixed number of workers send one request
+ * after another; with a {@code --rate} they are paced and corrected the same way, without it the
+ * latencies are plain service times.
+ * <p>
+ * Run it with the {@code loadtest} Maven profile, against an instance started with the {@code loadtest}
+ * Spring profile to take the database out of the measurement. See {@link LoadOptions#USAGE}.
+ */
+public final class LoadGenerator {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+    private final LoadOptions options;
+    private final EventSource source;
+    private final URI url;
+    private final HttpClient client;
+    private final Recorder recorder = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final Histogram total = new Histogram(MAX_LATENCY_NANOS, 3);
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private volatile long measuringSince;
+
+    private LoadGenerator(LoadOptions options, EventSource source) {
+        this.options = options;
+        this.source = source;
+        this.url = options.url();
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && ("--help".equals(args[0]) || "-h".equals(args[0]))) {
+            System.out.println(LoadOptions.USAGE);
+            return;
+        }
+        LoadOptions options = LoadOptions.parse(args);
+        EventSource source;
+        if (options.file() != null) {
+            NdjsonEventSource replay = new NdjsonEventSource(options.file(), options.retime());
+            System.out.printf("Replaying %d recorded events from %s%n", replay.size(), options.file());
+            source = replay;
+        } else {
+            source = new SyntheticEventSource(options.mix(), options.users(), options.songs(), options.seed());
+            System.out.printf("Sending synthetic events, mix %s%n", options.mix());
+        }
+        new LoadGenerator(options, source).run();
+    }
+
+    private void run() throws InterruptedException, IOException {
+        Duration warmup = options.warmup();
+        Duration duration = options.duration();
+        System.out.printf("%s mode against %s, %s warmup, %s measured%n", options.mode(), url, warmup, duration);
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        measuringSince = measureFrom;
+
+        Thread reporter = Thread.ofPlatform().daemon(true).name("load-report").start(() -> report(measureFrom));
+        if (LoadOptions.MODE_RATE.equals(options.mode())) {
+            runAtRate(start, end);
+        } else {
+            runWithWorkers(start, end);
+        }
+        reporter.interrupt();
+        reporter.join();
+
+        // everything recorded since the last report, responses arriving after the end included
+        total.add(recorder.getIntervalHistogram());
+        summarize(Math.min(System.nanoTime(), end) - measuringSince);
+    }
+
+    /**
+     * Open loop: requests go out on a fixed schedule whatever the responses do
+     */
+    private void runAtRate(long start, long end) throws InterruptedException {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / options.rate());
+        int concurrency = options.concurrency();
+        Semaphore inFlight = new Semaphore(concurrency);
+        for (long i = 0; ; i++) {
+            long intended = start + i * interval;
+            if (intended - end >= 0) {
+                break;
+            }
+            parkUntil(intended);
+            inFlight.acquire();
+            client.sendAsync(request(source.next()), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        record(intended, response, error);
+                        inFlight.release();
+                    });
+        }
+        if (!inFlight.tryAcquire(concurrency, REQUEST_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+            System.out.println("Requests still in flight after the timeout, they are not counted");
+        }
+    }
+
+    /**
+     * Closed loop: every worker waits for its response before the next request
+     */
+    private void runWithWorkers(long start, long end) throws InterruptedException {
+        int workers = options.concurrency();
+        double rate = options.rate();
+        long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * workers / rate) : 0;
+        List<Thread> threads = new ArrayList<>(workers);
+        for (int worker = 0; worker < workers; worker++) {
+            // spread the paced workers over the interval, they would send in lockstep otherwise
+            long first = start + (interval * worker) / workers;
+            threads.add(Thread.ofVirtual().start(() -> {
+                for (long i = 0; ; i++) {
+                    long intended = interval > 0 ? first + i * interval : System.nanoTime();
+                    if (intended - end >= 0) {
+                        return;
+                    }
+                    parkUntil(intended);
+                    try {
+                        HttpResponse<Void> response = client.send(request(source.next()),
+                                HttpResponse.BodyHandlers.discarding());
+                        record(intended, response, null);
+                    } catch (IOException e) {
+                        record(intended, null, e);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private HttpRequest request(String body) {
+        return HttpRequest.newBuilder(url)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private void record(long intended, HttpResponse<?> response, Throwable error) {
+        recorder.recordValue(Math.min(MAX_LATENCY_NANOS, System.nanoTime() - intended));
+        if (error != null) {
+            errors.increment();
+        } else if (response.statusCode() / 100 == 2) {
+            accepted.increment();
+        } else if (response.statusCode() == 503) {
+            rejected.increment();
+        } else {
+            failed.increment();
+        }
+    }
+
+    /**
+     * Print a line per second, and drop what was recorded during the warmup
+     */
+    private void report(long measureFrom) {
+        Histogram interval = null;
+        boolean measuring = System.nanoTime() - measureFrom >= 0;
+        try {
+            while (true) {
+                Thread.sleep(1000);
+                interval = recorder.getIntervalHistogram(interval);
+                long now = System.nanoTime();
+                if (!measuring && now - measureFrom >= 0) {
+                    measuring = true;
+                    measuringSince = now;
+                    accepted.reset();
+                    rejected.reset();
+                    failed.reset();
+                    errors.reset();
+                    System.out.println("Warmup finished, measuring");
+                    continue;
+                }
+                if (measuring) {
+                    total.add(interval);
+                }
+                System.out.printf("%s %7d req/s  p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms%n",
+                        measuring ? "measure" : "warmup ", interval.getTotalCount(),
+                        millis(interval.getValueAtPercentile(50)), millis(interval.getValueAtPercentile(99)),
+                        millis(interval.getMaxValue()));
+            }
+        } catch (InterruptedException e) {
+            // the run is over
+        }
+    }
+
+    private void summarize(long measuredNanos) throws IOException {
+        double seconds = measuredNanos / 1e9;
+        long responses = accepted.sum() + rejected.sum() + failed.sum() + errors.sum();
+        PrintStream out = System.out;
+        out.println();
+        out.printf("Measured %d requests in %.1f s: %.1f req/s achieved", responses, seconds, responses / seconds);
+        out.println(options.rate() > 0 ? String.format(" (target %.1f req/s)", options.rate()) : "");
+        out.printf("Responses: %d accepted, %d rejected with 503, %d other statuses, %d errors%n",
+                accepted.sum(), rejected.sum(), failed.sum(), errors.sum());
+        boolean corrected = LoadOptions.MODE_RATE.equals(options.mode()) || options.rate() > 0;
+        out.println(corrected
+                ? "Latency from the intended send time, corrected for coordinated omission:"
+                : "Latency from the actual send time, not corrected for coordinated omission:");
+        for (double percentile : PERCENTILES) {
+            out.printf("  p%-6s %10.2f ms%n", format(percentile), millis(total.getValueAtPercentile(percentile)));
+        }
+        out.printf("  max     %10.2f ms%n", millis(total.getMaxValue()));
+
+        if (options.histogramOut() != null) {
+            try (PrintStream file = new PrintStream(Files.newOutputStream(options.histogramOut()))) {
+                // in milliseconds, the format plotted by the HdrHistogram plotter
+                total.outputPercentileDistribution(file, 1e6);
+            }
+            out.printf("Latency distribution written to %s%n", options.histogramOut());
+        }
+    }
+
+    private static void parkUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static String format(double percentile) {
+        return percentile == (long) percentile ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.demo.loadtest;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line options of the {@link LoadGenerator}, given as {@code --name=value}
+ */
+final class LoadOptions {
+
+    /**
+     * Requests are sent at fixed intended times, independent of the responses
+     */
+    static final String MODE_RATE = "rate";
+
+    /**
+     * A fixed number of workers send back to back, each waiting for its response
+     */
+    static final String MODE_CONCURRENCY = "concurrency";
+
+    static final String USAGE = """
+            Options:
+              --url=http://localhost:8080/events   endpoint receiving the events
+              --file=events.ndjson                 replay a recorded NDJSON file instead of synthetic events
+              --retime=true                        stamp replayed events with the send time
+              --mode=rate|concurrency              open loop at --rate, or --concurrency closed loop workers
+              --rate=1000                          events per second, in concurrency mode the pace of all workers
+              --concurrency=256                    in-flight limit in rate mode, workers in concurrency mode
+              --duration=60s                       measured run time
+              --warmup=10s                         run time before measuring
+              --users=10000                        distinct users of the synthetic events
+              --songs=5000                         distinct songs of the synthetic events
+              --mix=PLAY=60,SKIP=20,PAUSE=6,LIKE=6,SHARE=2,LOGIN=1,LOGOUT=1,BOT=4
+                                                   weights of the synthetic actions, BOT are skip bursts of bot users
+              --seed=42                            seed of the synthetic events
+              --histogram-out=latency.hgrm         write the full latency distribution
+            """;
+
+    private final Map<String, String> values;
+
+    private LoadOptions(Map<String, String> values) {
+        this.values = values;
+    }
+
+    /**
+     * @param args the command line
+     * @return the options
+     * @throws IllegalArgumentException if an argument is not of the form {@code --name=value}
+     */
+    static LoadOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Unexpected argument '" + arg + "'");
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return new LoadOptions(values);
+    }
+
+    URI url() {
+        return URI.create(values.getOrDefault("url", "http://localhost:8080/events"));
+    }
+
+    Path file() {
+        String file = values.get("file");
+        return file == null ? null : Path.of(file);
+    }
+
+    boolean retime() {
+        return Boolean.parseBoolean(values.getOrDefault("retime", "true"));
+    }
+
+    String mode() {
+        String mode = values.getOrDefault("mode", MODE_RATE);
+        if (!mode.equals(MODE_RATE) && !mode.equals(MODE_CONCURRENCY)) {
+            throw new IllegalArgumentException("Unknown mode '" + mode + "'");
+        }
+        return mode;
+    }
+
+    /**
+     * @return the target rate in events per second, 0 if a concurrency run is not paced
+     */
+    double rate() {
+        return Double.parseDouble(values.getOrDefault("rate", MODE_RATE.equals(mode()) ? "1000" : "0"));
+    }
+
+    int concurrency() {
+        return Integer.parseInt(values.getOrDefault("concurrency", "256"));
+    }
+
+    Duration duration() {
+        return duration(values.getOrDefault("duration", "60s"));
+    }
+
+    Duration warmup() {
+        return duration(values.getOrDefault("warmup", "10s"));
+    }
+
+    int users() {
+        return Integer.parseInt(values.getOrDefault("users", "10000"));
+    }
+
+    int songs() {
+        return Integer.parseInt(values.getOrDefault("songs", "5000"));
+    }
+
+    String mix() {
+        return values.getOrDefault("mix", "PLAY=60,SKIP=20,PAUSE=6,LIKE=6,SHARE=2,LOGIN=1,LOGOUT=1,BOT=4");
+    }
+
+    long seed() {
+        return Long.parseLong(values.getOrDefault("seed", "42"));
+    }
+
+    Path histogramOut() {
+        String file = values.get("histogram-out");
+        return file == null ? null : Path.of(file);
+    }
+
+    /**
+     * @param value a duration like {@code 500ms}, {@code 30s} or {@code 5m}
+     */
+    private static Duration duration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        return switch (value.charAt(value.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            case 'h' -> Duration.ofHours(amount);
+            default -> throw new IllegalArgumentException("Unknown duration '" + value + "'");
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.demo.loadtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Replays a recorded NDJSON file of raw events, starting over at its end. Replayed events get the send
+ * time as their timestamp unless disabled, otherwise the second pass would be dropped as duplicates.
+ */
+final class NdjsonEventSource implements EventSource {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<ObjectNode> events = new ArrayList<>();
+    private final List<String> bodies = new ArrayList<>();
+    private final boolean retime;
+    private int next;
+
+    NdjsonEventSource(Path file, boolean retime) throws IOException {
+        this.retime = retime;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            ObjectNode event = (ObjectNode) objectMapper.readTree(line);
+            events.add(event);
+            bodies.add(objectMapper.writeValueAsString(event));
+        }
+        if (events.isEmpty()) {
+            throw new IllegalArgumentException("No events in " + file);
+        }
+    }
+
+    int size() {
+        return events.size();
+    }
+
+    @Override
+    public synchronized String next() {
+        int index = next;
+        next = (next + 1) % events.size();
+        if (!retime) {
+            return bodies.get(index);
+        }
+        ObjectNode event = events.get(index);
+        event.put("timestamp", Instant.now().toString());
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.demo.loadtest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates raw events following a weighted mix of actions. Regular users and songs are drawn uniformly,
+ * the {@code BOT} share is sent by a few bot users skipping in bursts, like the traffic the bot detection
+ * is meant to catch.
+ */
+final class SyntheticEventSource implements EventSource {
+
+    static final String BOT = "BOT";
+
+    private static final int BOT_USERS = 20;
+    private static final int BOT_BURST = 50;
+
+    private final String[] kinds;
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+    private final int users;
+    private final int songs;
+    private final SplittableRandom random;
+    private int botUser;
+    private int botBurstLeft;
+
+    /**
+     * @param mix weights per action, e.g. {@code PLAY=60,SKIP=30,BOT=10}
+     * @param users the number of distinct regular users
+     * @param songs the number of distinct songs
+     * @param seed the seed, equal seeds give equal event sequences
+     */
+    SyntheticEventSource(String mix, int users, int songs, long seed) {
+        List<String> parsedKinds = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int total = 0;
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Mix entry '" + entry + "' is not of the form ACTION=weight");
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight <= 0) {
+                continue;
+            }
+            String kind = parts[0].trim().toUpperCase();
+            // a bot draw starts a whole burst, the other weights are scaled so the weights are shares of events
+            total += BOT.equals(kind) ? weight : weight * BOT_BURST;
+            parsedKinds.add(kind);
+            weights.add(total);
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Mix '" + mix + "' has no positive weight");
+        }
+        this.kinds = parsedKinds.toArray(String[]::new);
+        this.cumulativeWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+        this.totalWeight = total;
+        this.users = users;
+        this.songs = songs;
+        this.random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public synchronized String next() {
+        String song = "song" + random.nextInt(songs);
+        if (botBurstLeft > 0) {
+            botBurstLeft--;
+            return body("bot_" + botUser, "SKIP", song);
+        }
+        String kind = kinds[kindIndex(random.nextInt(totalWeight))];
+        if (BOT.equals(kind)) {
+            botUser = random.nextInt(BOT_USERS);
+            botBurstLeft = BOT_BURST - 1;
+            return body("bot_" + botUser, "SKIP", song);
+        }
+        String user = "user" + random.nextInt(users);
+        boolean session = "LOGIN".equals(kind) || "LOGOUT".equals(kind);
+        return body(user, kind, session ? null : song);
+    }
+
+    private int kindIndex(int draw) {
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (draw < cumulativeWeights[i]) {
+                return i;
+            }
+        }
+        return cumulativeWeights.length - 1;
+    }
+
+    private static String body(String userId, String action, String songId) {
+        StringBuilder body = new StringBuilder(128)
+                .append("{\"userId\":\"").append(userId)
+                .append("\",\"action\":\"").append(action).append('"');
+        if (songId != null) {
+            body.append(",\"songId\":\"").append(songId).append('"');
+        }
+        return body.append(",\"timestamp\":\"").append(Instant.now()).append("\"}").toString();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demo.analytics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch: approximate counts of arbitrary many keys in fixed memory.
+ * <p>
+ * Every key increments one counter in each of {@code depth} rows, its estimate is the smallest of these
+ * counters. Estimates never undercount; with width {@code w} they overcount by at most {@code e / w} of all
+ * counted events, with a probability of {@code 1 - e^-depth}. Counters are atomic, so concurrent updates
+ * need no lock.
+ */
+public final class CountMinSketch {
+
+    private final int depth;
+    private final int widthMask;
+    private final AtomicLongArray counters;
+
+    /**
+     * @param depth the number of rows
+     * @param width the counters per row, rounded up to a power of two
+     */
+    public CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        int roundedWidth = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+        this.widthMask = roundedWidth - 1;
+        this.counters = new AtomicLongArray(depth * roundedWidth);
+    }
+
+    /**
+     * Count one occurrence of a key
+     *
+     * @param hash the 64-bit hash of the key, see {@link #hash(String, int)}
+     */
+    public void add(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            // double hashing, the rows get independent enough positions from one 64-bit hash
+            int column = (h1 + row * h2) & widthMask;
+            counters.incrementAndGet(row * (widthMask + 1) + column);
+        }
+    }
+
+    /**
+     * @param hash the 64-bit hash of the key, see {@link #hash(String, int)}
+     * @return the estimated count of the key, never less than the true count
+     */
+    public long estimate(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int column = (h1 + row * h2) & widthMask;
+            min = Math.min(min, counters.get(row * (widthMask + 1) + column));
+        }
+        return min;
+    }
+
+    /**
+     * @return the bytes held by the counters
+     */
+    public long memoryBytes() {
+        return (long) counters.length() * Long.BYTES;
+    }
+
+    /**
+     * Hash a key and a discriminator, such as a song and an action, into the 64-bit hash the sketch takes
+     *
+     * @param key the key
+     * @param discriminator a value distinguishing keys that are counted separately
+     * @return the hash
+     */
+    public static long hash(String key, int discriminator) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        h = (h ^ discriminator) * 0x100000001b3L;
+        // murmur3 finalizer, both halves of the hash are used as independent hashes
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        // an odd step visits every column of a power of two width
+        return h | (1L << 32);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.demo.analytics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link SpaceSaving} summaries sharded by the counting thread, merged when read.
+ * <p>
+ * Each thread counts into the shard of its id, so threads that count at the same time, such as the ingestion
+ * lanes, do not wait for each other. Shards are created on first use. Reading sums the entries of the
+ * shards: an item occurring more often than {@code total / capacity} occurs more often than
+ * {@code shardTotal / capacity} in at least one shard, so it is still guaranteed to be monitored.
+ */
+public final class ShardedSpaceSaving {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<SpaceSaving> shards;
+
+    /**
+     * @param capacity the number of monitored items of each shard
+     * @param shards the number of shards, rounded up to a power of two
+     */
+    public ShardedSpaceSaving(int capacity, int shards) {
+        this.capacity = capacity;
+        int rounded = shards <= 1 ? 1 : Integer.highestOneBit(shards - 1) << 1;
+        this.mask = rounded - 1;
+        this.shards = new AtomicReferenceArray<>(rounded);
+    }
+
+    /**
+     * Count one occurrence of an item in the shard of the current thread
+     *
+     * @param item the item
+     */
+    public void offer(String item) {
+        int index = (int) Thread.currentThread().threadId() & mask;
+        SpaceSaving shard = shards.get(index);
+        if (shard == null) {
+            SpaceSaving fresh = new SpaceSaving(capacity);
+            shard = shards.compareAndSet(index, null, fresh) ? fresh : shards.get(index);
+        }
+        shard.offer(item);
+    }
+
+    /**
+     * @return the items monitored by any shard, with the counts and errors of the shards monitoring them summed,
+     *         in no particular order
+     */
+    public List<SpaceSaving.Entry> entries() {
+        Map<String, long[]> merged = new HashMap<>();
+        for (int i = 0; i < shards.length(); i++) {
+            SpaceSaving shard = shards.get(i);
+            if (shard == null) {
+                continue;
+            }
+            for (SpaceSaving.Entry entry : shard.entries()) {
+                long[] sums = merged.computeIfAbsent(entry.getItem(), item -> new long[2]);
+                sums[0] += entry.getCount();
+                sums[1] += entry.getError();
+            }
+        }
+        List<SpaceSaving.Entry> entries = new ArrayList<>(merged.size());
+        merged.forEach((item, sums) -> entries.add(new SpaceSaving.Entry(item, sums[0], sums[1])));
+        return entries;
+    }
+
+    /**
+     * @return the number of shards created so far
+     */
+    public int getShardCount() {
+        int count = 0;
+        for (int i = 0; i < shards.length(); i++) {
+            if (shards.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
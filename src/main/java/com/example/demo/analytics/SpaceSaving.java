@@ -0,0 +1,129 @@
+package com.example.demo.analytics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Value;
+
+/**
+ * Space-Saving summary of the most frequent items of a stream, with a fixed number of counters.
+ * <p>
+ * An item that is not monitored takes over the counter with the smallest count, inheriting that count as
+ * its possible error. Any item occurring more often than {@code total / capacity} is guaranteed to be
+ * monitored. The counters form an indexed min-heap, so an update is O(log capacity) and allocation free
+ * once all counters are taken.
+ * <p>
+ * Updates are serialized, threads counting at the same time use a {@link ShardedSpaceSaving}.
+ */
+public final class SpaceSaving {
+
+    private final Counter[] heap;
+    private final Map<String, Counter> counters;
+    private int size;
+
+    /**
+     * @param capacity the number of monitored items
+     */
+    public SpaceSaving(int capacity) {
+        this.heap = new Counter[capacity];
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Count one occurrence of an item
+     *
+     * @param item the item
+     */
+    public synchronized void offer(String item) {
+        Counter counter = counters.get(item);
+        if (counter == null) {
+            if (size < heap.length) {
+                counter = new Counter(item, 0, 0, size);
+                heap[size++] = counter;
+                siftUp(counter.index);
+                counters.put(item, counter);
+            } else {
+                // replace the least frequent item, its count becomes the possible overestimation
+                counter = heap[0];
+                counters.remove(counter.item);
+                counter.item = item;
+                counter.error = counter.count;
+                counters.put(item, counter);
+            }
+        }
+        counter.count++;
+        siftDown(counter.index);
+    }
+
+    /**
+     * @return the monitored items with their counts, in no particular order
+     */
+    public synchronized List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Entry(heap[i].item, heap[i].count, heap[i].error));
+        }
+        return entries;
+    }
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter counter, int index) {
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    /**
+     * A monitored item, the true count is between {@code count - error} and {@code count}
+     */
+    @Value
+    public static class Entry {
+        String item;
+        long count;
+        long error;
+    }
+
+    private static final class Counter {
+        private String item;
+        private long count;
+        private long error;
+        private int index;
+
+        private Counter(String item, long count, long error, int index) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.example.demo.analytics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.TrendingSongsDTO;
+import com.example.demo.dto.WindowCountsDTO;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Event time aggregations of the event stream, kept in memory for the retention period.
+ * <p>
+ * Events are counted into fixed buckets of event time, every window is read as the sum of its buckets.
+ * A bucket holds exact counts per action and source, a Count-Min Sketch of the counts per song and action,
+ * and a Space-Saving summary of the most played songs. The buckets form a ring that is reused as time
+ * moves on, so memory stays fixed no matter how many songs or events are seen.
+ * <p>
+ * Out of order events are counted into the bucket of their timestamp as long as they lag the latest event
+ * time seen by no more than the allowed lateness, later ones are dropped and counted. Events stamped
+ * further than the allowed lateness in the future are dropped as well, they would close buckets early.
+ * <p>
+ * A sliding window ends with the bucket in progress. A tumbling window is the last one that closed, its
+ * counts no longer change once the allowed lateness after its end passed.
+ */
+@Component
+public class StreamingAggregator implements MeterBinder {
+
+    private static final ActionType[] ACTIONS = ActionType.values();
+    private static final int MAX_SOURCES = 64;
+    private static final String OTHER_SOURCE = "OTHER";
+
+    private final boolean enabled;
+    private final long bucketMillis;
+    private final long retentionMillis;
+    private final long latenessMillis;
+    private final int sketchDepth;
+    private final int sketchWidth;
+    private final int topKCapacity;
+    private final int topKShards;
+    private final LongSupplier clock;
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final AtomicLong maxEventTime = new AtomicLong(Long.MIN_VALUE);
+    private final LongAdder counted = new LongAdder();
+    private final LongAdder late = new LongAdder();
+    private final LongAdder future = new LongAdder();
+
+    @Autowired
+    public StreamingAggregator(EventPipelineProperties properties) {
+        this(properties.getAnalytics(), System::currentTimeMillis);
+    }
+
+    StreamingAggregator(EventPipelineProperties.Analytics settings, LongSupplier clock) {
+        this.enabled = settings.isEnabled();
+        this.bucketMillis = Math.max(1, settings.getBucket().toMillis());
+        this.retentionMillis = Math.max(bucketMillis, settings.getRetention().toMillis());
+        this.latenessMillis = settings.getAllowedLateness().toMillis();
+        this.sketchDepth = settings.getSketchDepth();
+        this.sketchWidth = settings.getSketchWidth();
+        this.topKCapacity = settings.getTopKCapacity();
+        this.topKShards = settings.getTopKShards() > 0 ? settings.getTopKShards()
+                : Runtime.getRuntime().availableProcessors();
+        this.clock = clock;
+        // the last closed tumbling window of the retention reaches back twice the retention plus the lateness,
+        // plus the bucket in progress, rounded up
+        long retentionBuckets = (retentionMillis + bucketMillis - 1) / bucketMillis;
+        long latenessBuckets = (latenessMillis + bucketMillis - 1) / bucketMillis;
+        long slots = enabled ? 2 * retentionBuckets + latenessBuckets + 2 : 0;
+        this.buckets = new AtomicReferenceArray<>((int) slots);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("events.analytics.dropped", this, StreamingAggregator::getLateCount)
+                .description("Events not aggregated because of their timestamp")
+                .tag("reason", "LATE")
+                .register(registry);
+        FunctionCounter.builder("events.analytics.dropped", this, StreamingAggregator::getFutureCount)
+                .description("Events not aggregated because of their timestamp")
+                .tag("reason", "FUTURE")
+                .register(registry);
+        Gauge.builder("events.analytics.memory", this, StreamingAggregator::getMemoryBytes)
+                .description("Memory held by the song sketches of the aggregation buckets")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Count an event into the bucket of its timestamp
+     *
+     * @param event the event
+     */
+    public void record(Event event) {
+        if (!enabled || event.getTimestamp() == null || event.getAction() == null) {
+            return;
+        }
+        long time = event.getTimestamp().toEpochMilli();
+        if (time > clock.getAsLong() + latenessMillis) {
+            future.increment();
+            return;
+        }
+        long max = maxEventTime.get();
+        while (time > max && !maxEventTime.compareAndSet(max, time)) {
+            max = maxEventTime.get();
+        }
+        boolean tooLate = time < max && max - time > latenessMillis;
+        Bucket bucket = tooLate ? null : bucket(Math.floorDiv(time, bucketMillis));
+        if (bucket == null) {
+            late.increment();
+            return;
+        }
+        bucket.record(event);
+        counted.increment();
+    }
+
+    /**
+     * @param window the window length, rounded up to whole buckets
+     * @param type the kind of window
+     * @return the event counts per action
+     */
+    public WindowCountsDTO getActionCounts(Duration window, WindowType type) {
+        Range range = range(window, type);
+        long[] totals = new long[ACTIONS.length];
+        for (Bucket bucket : buckets(range)) {
+            for (int i = 0; i < ACTIONS.length; i++) {
+                totals[i] += bucket.actions.get(i);
+            }
+        }
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (ActionType action : ACTIONS) {
+            counts.put(action.name(), totals[action.ordinal()]);
+        }
+        return counts(range, counts);
+    }
+
+    /**
+     * @param window the window length, rounded up to whole buckets
+     * @param type the kind of window
+     * @return the event counts per source
+     */
+    public WindowCountsDTO getSourceCounts(Duration window, WindowType type) {
+        Range range = range(window, type);
+        Map<String, Long> counts = new HashMap<>();
+        for (Bucket bucket : buckets(range)) {
+            bucket.sources.forEach((source, count) -> counts.merge(source, count.sum(), Long::sum));
+        }
+        return counts(range, counts);
+    }
+
+    /**
+     * @param songId the song
+     * @param window the window length, rounded up to whole buckets
+     * @param type the kind of window
+     * @return the estimated event counts of the song per action, never less than the true counts
+     */
+    public WindowCountsDTO getSongCounts(String songId, Duration window, WindowType type) {
+        Range range = range(window, type);
+        long[] hashes = new long[ACTIONS.length];
+        for (ActionType action : ACTIONS) {
+            hashes[action.ordinal()] = CountMinSketch.hash(songId, action.ordinal());
+        }
+        long[] totals = new long[ACTIONS.length];
+        for (Bucket bucket : buckets(range)) {
+            for (int i = 0; i < ACTIONS.length; i++) {
+                totals[i] += bucket.songs.estimate(hashes[i]);
+            }
+        }
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (ActionType action : ACTIONS) {
+            if (totals[action.ordinal()] > 0) {
+                counts.put(action.name(), totals[action.ordinal()]);
+            }
+        }
+        return counts(range, counts);
+    }
+
+    /**
+     * @param window the window length, rounded up to whole buckets
+     * @param type the kind of window
+     * @param limit the number of songs
+     * @return the most played songs, most played first
+     */
+    public TrendingSongsDTO getTrendingSongs(Duration window, WindowType type, int limit) {
+        Range range = range(window, type);
+        List<Bucket> inRange = buckets(range);
+        // candidates are the songs monitored in any bucket, their plays are summed from the sketches
+        Set<String> candidates = new HashSet<>();
+        for (Bucket bucket : inRange) {
+            for (SpaceSaving.Entry entry : bucket.plays.entries()) {
+                candidates.add(entry.getItem());
+            }
+        }
+        List<TrendingSongsDTO.SongPlays> songs = new ArrayList<>(candidates.size());
+        for (String songId : candidates) {
+            long hash = CountMinSketch.hash(songId, ActionType.PLAY.ordinal());
+            long total = 0;
+            for (Bucket bucket : inRange) {
+                total += bucket.songs.estimate(hash);
+            }
+            songs.add(new TrendingSongsDTO.SongPlays(songId, total));
+        }
+        songs.sort(Comparator.comparingLong(TrendingSongsDTO.SongPlays::getPlays).reversed()
+                .thenComparing(TrendingSongsDTO.SongPlays::getSongId));
+        return TrendingSongsDTO.builder()
+                .from(Instant.ofEpochMilli(range.fromId * bucketMillis))
+                .to(Instant.ofEpochMilli((range.toId + 1) * bucketMillis))
+                .songs(List.copyOf(songs.subList(0, Math.min(limit, songs.size()))))
+                .build();
+    }
+
+    public long getCountedCount() {
+        return counted.sum();
+    }
+
+    public long getLateCount() {
+        return late.sum();
+    }
+
+    public long getFutureCount() {
+        return future.sum();
+    }
+
+    /**
+     * @return the bytes held by the sketches of the buckets
+     */
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null) {
+                bytes += bucket.songs.memoryBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private Bucket bucket(long id) {
+        int slot = (int) Math.floorMod(id, (long) buckets.length());
+        while (true) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket != null && bucket.id == id) {
+                return bucket;
+            }
+            if (bucket != null && bucket.id > id) {
+                // the slot already moved on to a newer bucket
+                return null;
+            }
+            Bucket fresh = new Bucket(id);
+            if (buckets.compareAndSet(slot, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private Range range(Duration window, WindowType type) {
+        long windowMillis = window.toMillis();
+        if (windowMillis <= 0 || windowMillis > retentionMillis) {
+            throw new IllegalArgumentException("Window must be positive and at most " + Duration.ofMillis(retentionMillis));
+        }
+        long length = (windowMillis + bucketMillis - 1) / bucketMillis;
+        long now = clock.getAsLong();
+        if (type == WindowType.TUMBLING) {
+            // a window closes once late events can no longer be counted into it
+            long openId = Math.floorDiv(now - latenessMillis, bucketMillis);
+            long toId = Math.floorDiv(openId, length) * length;
+            return new Range(toId - length, toId - 1);
+        }
+        long currentId = Math.floorDiv(now, bucketMillis);
+        return new Range(currentId - length + 1, currentId);
+    }
+
+    private List<Bucket> buckets(Range range) {
+        List<Bucket> inRange = new ArrayList<>();
+        for (long id = range.fromId; id <= range.toId; id++) {
+            Bucket bucket = buckets.get((int) Math.floorMod(id, (long) buckets.length()));
+            if (bucket != null && bucket.id == id) {
+                inRange.add(bucket);
+            }
+        }
+        return inRange;
+    }
+
+    private WindowCountsDTO counts(Range range, Map<String, Long> counts) {
+        long total = 0;
+        for (long count : counts.values()) {
+            total += count;
+        }
+        return WindowCountsDTO.builder()
+                .from(Instant.ofEpochMilli(range.fromId * bucketMillis))
+                .to(Instant.ofEpochMilli((range.toId + 1) * bucketMillis))
+                .total(total)
+                .counts(counts)
+                .build();
+    }
+
+    /**
+     * Inclusive range of bucket ids
+     */
+    private static final class Range {
+        private final long fromId;
+        private final long toId;
+
+        private Range(long fromId, long toId) {
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+    }
+
+    /**
+     * Aggregations of one bucket of event time
+     */
+    private final class Bucket {
+        private final long id;
+        private final AtomicLongArray actions = new AtomicLongArray(ACTIONS.length);
+        private final Map<String, LongAdder> sources = new ConcurrentHashMap<>();
+        private final CountMinSketch songs = new CountMinSketch(sketchDepth, sketchWidth);
+        private final ShardedSpaceSaving plays = new ShardedSpaceSaving(topKCapacity, topKShards);
+
+        private Bucket(long id) {
+            this.id = id;
+        }
+
+        private void record(Event event) {
+            actions.incrementAndGet(event.getAction().ordinal());
+            if (event.getSource() != null) {
+                source(event.getSource()).increment();
+            }
+            if (event.getSongId() != null) {
+                songs.add(CountMinSketch.hash(event.getSongId(), event.getAction().ordinal()));
+                if (event.getAction() == ActionType.PLAY) {
+                    plays.offer(event.getSongId());
+                }
+            }
+        }
+
+        private LongAdder source(String source) {
+            LongAdder count = sources.get(source);
+            if (count != null) {
+                return count;
+            }
+            // sources come from clients, keep a flood of distinct values from growing the bucket
+            return sources.computeIfAbsent(sources.size() < MAX_SOURCES ? source : OTHER_SOURCE, key -> new LongAdder());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.demo.analytics;
+
+/**
+ * Kind of time window an aggregation is read over
+ */
+public enum WindowType {
+    /**
+     * The given length up to now, moving with every bucket
+     */
+    SLIDING,
+    /**
+     * The last window of the given length, aligned to the epoch, that closed: it ended at least the allowed
+     * lateness ago
+     */
+    TUMBLING
+}
@@ -0,0 +1,488 @@
+package com.example.demo.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.example.demo.dto.ArchivedEventDTO;
+import com.example.demo.model.ActionType;
+
+/**
+ * One file of the event archive, holding a chunk of events column by column in timestamp order.
+ * <p>
+ * The file is a header {@code [int magic][int version][int rows][long minTicks][long maxTicks]} followed by
+ * one block per column, each {@code [int compressed length][int raw length][deflated bytes]}, for every
+ * column of the events table. Timestamps are varint deltas of 100 ns ticks, ids zigzag varint deltas and
+ * actions one byte per row. The processing time is a zigzag varint of its ticks after the timestamp and the
+ * count a zigzag varint, both plus one so that 0 stands for null. The text columns are dictionary encoded,
+ * a varint count and the distinct strings followed by a varint code per row, 0 for null. A repeated song id
+ * costs a byte or two before compression and the timestamps little more, so a segment is a fraction of the
+ * rows in the table and is read back with a few inflates and array walks.
+ * <p>
+ * Version 1 segments hold only id, timestamp, action, user, song and source, their other columns read as
+ * null.
+ */
+final class ArchiveSegment {
+
+    static final int HEADER_BYTES = 28;
+
+    private static final int MAGIC = 0x45564152;
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_METADATA = 1;
+    private static final ActionType[] ACTIONS = ActionType.values();
+    /**
+     * The dictionary encoded columns in file order, version 1 segments hold the first three
+     */
+    private static final List<Function<ArchivedEventDTO, String>> TEXT_COLUMNS = List.of(
+            ArchivedEventDTO::getUserId, ArchivedEventDTO::getSongId, ArchivedEventDTO::getSource,
+            ArchivedEventDTO::getCategory, ArchivedEventDTO::getDeviceType, ArchivedEventDTO::getOsVersion,
+            ArchivedEventDTO::getAppVersion, ArchivedEventDTO::getIpAddress, ArchivedEventDTO::getLocation);
+    private static final int USER = 0;
+    private static final int SONG = 1;
+    private static final int SOURCE = 2;
+    private static final int CATEGORY = 3;
+    private static final int DEVICE_TYPE = 4;
+    private static final int OS_VERSION = 5;
+    private static final int APP_VERSION = 6;
+    private static final int IP_ADDRESS = 7;
+    private static final int LOCATION = 8;
+    private static final int VERSION_1_TEXT_COLUMNS = 3;
+    private static final Comparator<ArchivedEventDTO> ORDER = Comparator.comparing(ArchivedEventDTO::getTimestamp)
+            .thenComparing(ArchivedEventDTO::getId);
+
+    private final long[] ticks;
+    private final long[] ids;
+    private final byte[] actions;
+    private final long[] processedTicks;
+    private final long[] counts;
+    private final int[][] codes;
+    private final String[][] dictionaries;
+
+    private ArchiveSegment(long[] ticks, long[] ids, byte[] actions, long[] processedTicks, long[] counts,
+            int[][] codes, String[][] dictionaries) {
+        this.ticks = ticks;
+        this.ids = ids;
+        this.actions = actions;
+        this.processedTicks = processedTicks;
+        this.counts = counts;
+        this.codes = codes;
+        this.dictionaries = dictionaries;
+    }
+
+    /**
+     * Write events to a new segment file and force it to disk
+     *
+     * @param path the file, must not exist
+     * @param events the events, all with an id and a timestamp, in any order
+     * @return the time range and size of the segment
+     * @throws IOException if the file cannot be written
+     */
+    static Header write(Path path, List<ArchivedEventDTO> events) throws IOException {
+        List<ArchivedEventDTO> rows = new ArrayList<>(events);
+        rows.sort(ORDER);
+        int count = rows.size();
+        Writer timestampColumn = new Writer();
+        Writer idColumn = new Writer();
+        Writer actionColumn = new Writer();
+        Writer processedColumn = new Writer();
+        Writer countColumn = new Writer();
+        long previousTicks = count == 0 ? 0 : ticks(rows.get(0).getTimestamp());
+        long minTicks = previousTicks;
+        long previousId = 0;
+        for (ArchivedEventDTO row : rows) {
+            long rowTicks = ticks(row.getTimestamp());
+            timestampColumn.varint(rowTicks - previousTicks);
+            previousTicks = rowTicks;
+            idColumn.varint(zigzag(row.getId() - previousId));
+            previousId = row.getId();
+            actionColumn.write(row.getAction() == null ? 0 : row.getAction().ordinal() + 1);
+            processedColumn.varint(row.getProcessedAt() == null ? 0
+                    : zigzag(ticks(row.getProcessedAt()) - rowTicks) + 1);
+            countColumn.varint(row.getCount() == null ? 0 : zigzag(row.getCount()) + 1);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(count)
+                .putLong(minTicks)
+                .putLong(previousTicks)
+                .flip();
+        List<ByteBuffer> buffers = new ArrayList<>();
+        buffers.add(header);
+        buffers.add(deflate(timestampColumn));
+        buffers.add(deflate(idColumn));
+        buffers.add(deflate(actionColumn));
+        buffers.add(deflate(processedColumn));
+        buffers.add(deflate(countColumn));
+        for (Function<ArchivedEventDTO, String> column : TEXT_COLUMNS) {
+            buffers.add(deflate(dictionary(rows, column)));
+        }
+
+        long bytes = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    bytes += channel.write(buffer);
+                }
+            }
+            channel.force(true);
+        }
+        return new Header(count, minTicks, previousTicks, bytes);
+    }
+
+    /**
+     * Read the header of a segment file without its columns
+     *
+     * @param path the file
+     * @return the time range and size of the segment
+     * @throws IOException if the file cannot be read or is not a segment
+     */
+    static Header readHeader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read until the header is complete or the file ends
+            }
+            return header(path, header.flip(), channel.size());
+        }
+    }
+
+    /**
+     * Read and decode a whole segment file
+     *
+     * @param path the file
+     * @return the segment
+     * @throws IOException if the file cannot be read or is not a valid segment
+     */
+    static ArchiveSegment read(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until the buffer is full or the file ends
+            }
+            buffer.flip();
+        }
+        Header header = header(path, buffer, buffer.limit());
+        boolean withMetadata = buffer.getInt(4) != VERSION_WITHOUT_METADATA;
+        int count = header.getRows();
+        try {
+            Reader timestampColumn = inflate(buffer);
+            long[] ticks = new long[count];
+            long previousTicks = header.getMinTicks();
+            for (int i = 0; i < count; i++) {
+                previousTicks += timestampColumn.varint();
+                ticks[i] = previousTicks;
+            }
+            Reader idColumn = inflate(buffer);
+            long[] ids = new long[count];
+            long previousId = 0;
+            for (int i = 0; i < count; i++) {
+                previousId += unzigzag(idColumn.varint());
+                ids[i] = previousId;
+            }
+            byte[] actions = inflate(buffer).bytes;
+            long[] processedTicks = new long[count];
+            long[] counts = new long[count];
+            if (withMetadata) {
+                Reader processedColumn = inflate(buffer);
+                for (int i = 0; i < count; i++) {
+                    processedTicks[i] = processedColumn.varint();
+                }
+                Reader countColumn = inflate(buffer);
+                for (int i = 0; i < count; i++) {
+                    counts[i] = countColumn.varint();
+                }
+            }
+            int textColumns = withMetadata ? TEXT_COLUMNS.size() : VERSION_1_TEXT_COLUMNS;
+            int[][] codes = new int[TEXT_COLUMNS.size()][];
+            String[][] dictionaries = new String[TEXT_COLUMNS.size()][];
+            for (int column = 0; column < TEXT_COLUMNS.size(); column++) {
+                if (column < textColumns) {
+                    Reader textColumn = inflate(buffer);
+                    dictionaries[column] = textColumn.dictionary();
+                    codes[column] = textColumn.codes(count);
+                } else {
+                    // not in the segment, every row is null
+                    dictionaries[column] = new String[1];
+                    codes[column] = new int[count];
+                }
+            }
+            if (actions.length != count) {
+                throw new IOException("Corrupt archive segment " + path);
+            }
+            return new ArchiveSegment(ticks, ids, actions, processedTicks, counts, codes, dictionaries);
+        } catch (DataFormatException | RuntimeException e) {
+            throw new IOException("Corrupt archive segment " + path, e);
+        }
+    }
+
+    /**
+     * Hand the events of a time range to the consumer, in timestamp order
+     *
+     * @param fromTicks the earliest time in ticks, inclusive
+     * @param toTicks the latest time in ticks, exclusive
+     * @param consumer receives the events
+     * @return the number of events handed over
+     */
+    int scan(long fromTicks, long toTicks, Consumer<ArchivedEventDTO> consumer) {
+        int row = firstRow(fromTicks);
+        int start = row;
+        for (; row < ticks.length && ticks[row] < toTicks; row++) {
+            consumer.accept(ArchivedEventDTO.builder()
+                    .id(ids[row])
+                    .userId(text(USER, row))
+                    .action(actions[row] == 0 ? null : ACTIONS[actions[row] - 1])
+                    .songId(text(SONG, row))
+                    .timestamp(instant(ticks[row]))
+                    .source(text(SOURCE, row))
+                    .processedAt(processedTicks[row] == 0 ? null
+                            : instant(ticks[row] + unzigzag(processedTicks[row] - 1)))
+                    .category(text(CATEGORY, row))
+                    .count(counts[row] == 0 ? null : (int) unzigzag(counts[row] - 1))
+                    .deviceType(text(DEVICE_TYPE, row))
+                    .osVersion(text(OS_VERSION, row))
+                    .appVersion(text(APP_VERSION, row))
+                    .ipAddress(text(IP_ADDRESS, row))
+                    .location(text(LOCATION, row))
+                    .build());
+        }
+        return row - start;
+    }
+
+    private String text(int column, int row) {
+        return dictionaries[column][codes[column][row]];
+    }
+
+    long[] getIds() {
+        return ids;
+    }
+
+    int size() {
+        return ticks.length;
+    }
+
+    /**
+     * @return the first row at or after the time, by binary search over the sorted timestamps
+     */
+    private int firstRow(long fromTicks) {
+        int low = 0;
+        int high = ticks.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ticks[middle] < fromTicks) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the time in ticks of 100 ns since the epoch, the precision of a {@code DATETIMEOFFSET}
+     */
+    static long ticks(Instant instant) {
+        return instant.getEpochSecond() * 10_000_000L + instant.getNano() / 100;
+    }
+
+    static Instant instant(long ticks) {
+        return Instant.ofEpochSecond(Math.floorDiv(ticks, 10_000_000L), Math.floorMod(ticks, 10_000_000L) * 100L);
+    }
+
+    private static Header header(Path path, ByteBuffer buffer, long bytes) throws IOException {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Not an archive segment: " + path);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION && version != VERSION_WITHOUT_METADATA) {
+            throw new IOException("Unknown archive segment version " + version + ": " + path);
+        }
+        return new Header(buffer.getInt(), buffer.getLong(), buffer.getLong(), bytes);
+    }
+
+    private static Writer dictionary(List<ArchivedEventDTO> rows, Function<ArchivedEventDTO, String> column) {
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> values = new ArrayList<>();
+        int[] rowCodes = new int[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            String value = column.apply(rows.get(i));
+            if (value != null) {
+                Integer code = codes.get(value);
+                if (code == null) {
+                    values.add(value);
+                    code = values.size();
+                    codes.put(value, code);
+                }
+                rowCodes[i] = code;
+            }
+        }
+        Writer writer = new Writer();
+        writer.varint(values.size());
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writer.varint(bytes.length);
+            writer.writeBytes(bytes);
+        }
+        for (int code : rowCodes) {
+            writer.varint(code);
+        }
+        return writer;
+    }
+
+    private static ByteBuffer deflate(Writer column) {
+        byte[] raw = column.toByteArray();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return ByteBuffer.allocate(8 + compressed.size())
+                    .putInt(compressed.size())
+                    .putInt(raw.length)
+                    .put(compressed.toByteArray())
+                    .flip();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static Reader inflate(ByteBuffer buffer) throws DataFormatException {
+        int compressedLength = buffer.getInt();
+        byte[] raw = new byte[buffer.getInt()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buffer.slice(buffer.position(), compressedLength));
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, raw.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != raw.length) {
+                throw new DataFormatException("Column ends after " + length + " of " + raw.length + " bytes");
+            }
+        } finally {
+            inflater.end();
+        }
+        buffer.position(buffer.position() + compressedLength);
+        return new Reader(raw);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Time range and size of a segment, as kept in the archive index
+     */
+    static final class Header {
+        private final int rows;
+        private final long minTicks;
+        private final long maxTicks;
+        private final long bytes;
+
+        Header(int rows, long minTicks, long maxTicks, long bytes) {
+            this.rows = rows;
+            this.minTicks = minTicks;
+            this.maxTicks = maxTicks;
+            this.bytes = bytes;
+        }
+
+        int getRows() {
+            return rows;
+        }
+
+        long getMinTicks() {
+            return minTicks;
+        }
+
+        long getMaxTicks() {
+            return maxTicks;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+
+        Writer() {
+            super(4096);
+        }
+
+        void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long varint() {
+            long value = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        String[] dictionary() {
+            // code 0 is null
+            String[] values = new String[(int) varint() + 1];
+            for (int i = 1; i < values.length; i++) {
+                int length = (int) varint();
+                values[i] = new String(bytes, position, length, StandardCharsets.UTF_8);
+                position += length;
+            }
+            return values;
+        }
+
+        int[] codes(int count) {
+            int[] codes = new int[count];
+            for (int i = 0; i < count; i++) {
+                codes[i] = (int) varint();
+            }
+            return codes;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.demo.archive;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.ArchivedEventDTO;
+import com.example.demo.util.DurableFiles;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local archive of aged events, a directory of {@link ArchiveSegment} files and an index of their time
+ * ranges.
+ * <p>
+ * Every appended chunk becomes a new segment, written under a temporary name, forced to disk and renamed,
+ * so a segment is either complete or absent. The rename is forced to disk with the directory before
+ * {@link #append} returns, the caller may delete the archived rows from the table right after. The index lists the segments with their row count and
+ * earliest and latest timestamp, a scan reads only the segments overlapping its range. The index is
+ * rewritten after every append, segments a crash left out of it are added back from their headers.
+ */
+@Slf4j
+@Component
+public class EventArchive implements MeterBinder {
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String INDEX_FILE = "index";
+
+    private final Path directory;
+    private final LongAdder scannedSegments = new LongAdder();
+    private final LongAdder scannedEvents = new LongAdder();
+    private volatile List<Entry> entries;
+    private long nextSequence = 1;
+
+    @Autowired
+    public EventArchive(EventPipelineProperties properties) {
+        this(Path.of(properties.getArchive().getDirectory()));
+    }
+
+    EventArchive(Path directory) {
+        this.directory = directory;
+        try {
+            this.entries = Files.isDirectory(directory) ? load() : List.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the event archive in " + directory, e);
+        }
+        if (!entries.isEmpty()) {
+            nextSequence = entries.get(entries.size() - 1).sequence + 1;
+            log.info("Event archive in {} holds {} events in {} segments", directory, getEventCount(),
+                    entries.size());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.archive.segments", this, EventArchive::getSegmentCount)
+                .description("Segment files of the event archive")
+                .register(registry);
+        Gauge.builder("events.archive.size", this, EventArchive::getBytes)
+                .description("Size of the archive segments on disk")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("events.archive.scanned", this, EventArchive::getScannedEventCount)
+                .description("Archived events read by scans")
+                .register(registry);
+    }
+
+    /**
+     * Write events to a new segment, they are on disk when this returns
+     *
+     * @param events the events, all with an id and a timestamp
+     * @throws IOException if the segment or the index cannot be written
+     */
+    public synchronized void append(List<ArchivedEventDTO> events) throws IOException {
+        if (events.isEmpty()) {
+            return;
+        }
+        if (Files.notExists(directory)) {
+            Files.createDirectories(directory);
+            if (directory.toAbsolutePath().getParent() != null) {
+                DurableFiles.forceDirectory(directory.toAbsolutePath().getParent());
+            }
+        }
+        long sequence = nextSequence;
+        Path segment = segmentPath(sequence);
+        Path temporary = directory.resolve(segment.getFileName() + TEMPORARY_SUFFIX);
+        Files.deleteIfExists(temporary);
+        ArchiveSegment.Header header = ArchiveSegment.write(temporary, events);
+        Files.move(temporary, segment, StandardCopyOption.ATOMIC_MOVE);
+        DurableFiles.forceDirectory(directory);
+        nextSequence = sequence + 1;
+
+        List<Entry> appended = new ArrayList<>(entries);
+        appended.add(new Entry(sequence, header));
+        entries = List.copyOf(appended);
+        writeIndex(appended);
+    }
+
+    /**
+     * Hand the archived events of a time range to the consumer. The events of a segment arrive in
+     * timestamp order, segments in the order of their earliest event, so only events archived late,
+     * after a newer segment was written, arrive out of order.
+     *
+     * @param from the earliest timestamp, inclusive
+     * @param to the latest timestamp, exclusive
+     * @param consumer receives every event
+     * @return the number of events handed over
+     * @throws UncheckedIOException if a segment cannot be read
+     */
+    public long scan(Instant from, Instant to, Consumer<ArchivedEventDTO> consumer) {
+        long fromTicks = ArchiveSegment.ticks(from);
+        long toTicks = ArchiveSegment.ticks(to);
+        List<Entry> overlapping = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.header.getMaxTicks() >= fromTicks && entry.header.getMinTicks() < toTicks) {
+                overlapping.add(entry);
+            }
+        }
+        overlapping.sort(Comparator.comparingLong(entry -> entry.header.getMinTicks()));
+        long count = 0;
+        for (Entry entry : overlapping) {
+            ArchiveSegment segment;
+            try {
+                segment = ArchiveSegment.read(segmentPath(entry.sequence));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int scanned = segment.scan(fromTicks, toTicks, consumer);
+            scannedSegments.increment();
+            scannedEvents.add(scanned);
+            count += scanned;
+        }
+        return count;
+    }
+
+    /**
+     * @return the ids of the events in the newest segment, none if the archive is empty
+     * @throws IOException if the segment cannot be read
+     */
+    public long[] getLastSegmentIds() throws IOException {
+        List<Entry> current = entries;
+        if (current.isEmpty()) {
+            return new long[0];
+        }
+        return ArchiveSegment.read(segmentPath(current.get(current.size() - 1).sequence)).getIds();
+    }
+
+    public int getSegmentCount() {
+        return entries.size();
+    }
+
+    public long getEventCount() {
+        long count = 0;
+        for (Entry entry : entries) {
+            count += entry.header.getRows();
+        }
+        return count;
+    }
+
+    public long getBytes() {
+        long bytes = 0;
+        for (Entry entry : entries) {
+            bytes += entry.header.getBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the timestamp of the earliest archived event, null if the archive is empty
+     */
+    public Instant getOldest() {
+        List<Entry> current = entries;
+        if (current.isEmpty()) {
+            return null;
+        }
+        long oldest = Long.MAX_VALUE;
+        for (Entry entry : current) {
+            oldest = Math.min(oldest, entry.header.getMinTicks());
+        }
+        return ArchiveSegment.instant(oldest);
+    }
+
+    /**
+     * @return the timestamp of the latest archived event, null if the archive is empty
+     */
+    public Instant getNewest() {
+        List<Entry> current = entries;
+        if (current.isEmpty()) {
+            return null;
+        }
+        long newest = Long.MIN_VALUE;
+        for (Entry entry : current) {
+            newest = Math.max(newest, entry.header.getMaxTicks());
+        }
+        return ArchiveSegment.instant(newest);
+    }
+
+    public long getScannedSegmentCount() {
+        return scannedSegments.sum();
+    }
+
+    public long getScannedEventCount() {
+        return scannedEvents.sum();
+    }
+
+    private List<Entry> load() throws IOException {
+        Map<Long, Entry> loaded = new HashMap<>();
+        Path index = directory.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            for (String line : Files.readAllLines(index, StandardCharsets.US_ASCII)) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length == 5) {
+                    long sequence = Long.parseLong(fields[0]);
+                    loaded.put(sequence, new Entry(sequence, new ArchiveSegment.Header(Integer.parseInt(fields[1]),
+                            Long.parseLong(fields[2]), Long.parseLong(fields[3]), Long.parseLong(fields[4]))));
+                }
+            }
+        }
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.toList();
+        }
+        List<Entry> result = new ArrayList<>();
+        boolean missing = false;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(TEMPORARY_SUFFIX)) {
+                // a segment whose write did not finish, its events are still in the table
+                Files.delete(file);
+            } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length()));
+                Entry entry = loaded.get(sequence);
+                if (entry == null) {
+                    entry = new Entry(sequence, ArchiveSegment.readHeader(file));
+                    missing = true;
+                }
+                result.add(entry);
+            }
+        }
+        result.sort(Comparator.comparingLong(entry -> entry.sequence));
+        if (missing || result.size() != loaded.size()) {
+            writeIndex(result);
+        }
+        return List.copyOf(result);
+    }
+
+    private void writeIndex(List<Entry> index) throws IOException {
+        StringBuilder lines = new StringBuilder(index.size() * 64);
+        for (Entry entry : index) {
+            lines.append(entry.sequence).append(' ')
+                    .append(entry.header.getRows()).append(' ')
+                    .append(entry.header.getMinTicks()).append(' ')
+                    .append(entry.header.getMaxTicks()).append(' ')
+                    .append(entry.header.getBytes()).append('\n');
+        }
+        Path temporary = directory.resolve(INDEX_FILE + TEMPORARY_SUFFIX);
+        Files.writeString(temporary, lines, StandardCharsets.US_ASCII);
+        Files.move(temporary, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * A segment of the index
+     */
+    private static final class Entry {
+        private final long sequence;
+        private final ArchiveSegment.Header header;
+
+        private Entry(long sequence, ArchiveSegment.Header header) {
+            this.sequence = sequence;
+            this.header = header;
+        }
+    }
+}
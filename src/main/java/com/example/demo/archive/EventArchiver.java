@@ -0,0 +1,185 @@
+package com.example.demo.archive;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.ArchiveStatusDTO;
+import com.example.demo.dto.ArchivedEventDTO;
+import com.example.demo.repository.EventArchiveRepository;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves events older than the retention from the table to the {@link EventArchive}.
+ * <p>
+ * A run walks the aged events in timestamp order one chunk at a time: the chunk is written to a segment
+ * with every column, the segment and its directory entry are forced to disk, and only then are its events
+ * deleted from the table in small batches. A run stopped between
+ * the two leaves the events of the newest segment in the table, so every run first deletes those again.
+ * Events arriving late with an old timestamp are archived by a later run into a newer segment.
+ */
+@Slf4j
+@Component
+public class EventArchiver implements MeterBinder {
+
+    private final EventPipelineProperties.Archive settings;
+    private final EventArchive eventArchive;
+    private final EventArchiveRepository eventArchiveRepository;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final LongAdder archivedEvents = new LongAdder();
+    private final LongAdder deletedEvents = new LongAdder();
+
+    private volatile Instant lastRunStartedAt;
+    private volatile Instant lastRunFinishedAt;
+    private volatile long lastRunEvents;
+    private volatile boolean lastRunFailed;
+
+    public EventArchiver(EventPipelineProperties properties, EventArchive eventArchive,
+            EventArchiveRepository eventArchiveRepository) {
+        this.settings = properties.getArchive();
+        this.eventArchive = eventArchive;
+        this.eventArchiveRepository = eventArchiveRepository;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("events.archive.archived", this, EventArchiver::getArchivedCount)
+                .description("Events written to the archive")
+                .register(registry);
+        FunctionCounter.builder("events.archive.deleted", this, EventArchiver::getDeletedCount)
+                .description("Archived events deleted from the table")
+                .register(registry);
+    }
+
+    /**
+     * Archive the aged events periodically, when enabled
+     */
+    @Scheduled(fixedDelayString = "${events.archive.interval:1h}", initialDelayString = "${events.archive.interval:1h}")
+    public void scheduledRun() {
+        if (!settings.isEnabled() || running.get()) {
+            return;
+        }
+        try {
+            run();
+        } catch (IllegalStateException e) {
+            // started by hand in the meantime
+        } catch (RuntimeException e) {
+            log.error("Event archival failed, it is retried with the next run", e);
+        }
+    }
+
+    /**
+     * Start an archival run in the background
+     *
+     * @return the status of the started run
+     * @throws IllegalStateException if a run is already running
+     */
+    public ArchiveStatusDTO start() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("An archival run is already running");
+        }
+        lastRunStartedAt = Instant.now();
+        lastRunFinishedAt = null;
+        Thread.ofPlatform().name("event-archiver").daemon(true).start(() -> {
+            try {
+                archive();
+            } catch (RuntimeException e) {
+                log.error("Event archival failed", e);
+            }
+        });
+        return getStatus();
+    }
+
+    /**
+     * Archive the events older than the retention, at most the configured chunks
+     *
+     * @return the number of events archived
+     * @throws IllegalStateException if a run is already running
+     * @throws UncheckedIOException if the archive cannot be written
+     */
+    public long run() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("An archival run is already running");
+        }
+        lastRunStartedAt = Instant.now();
+        lastRunFinishedAt = null;
+        return archive();
+    }
+
+    public ArchiveStatusDTO getStatus() {
+        String state = running.get() ? "RUNNING"
+                : lastRunFinishedAt == null ? "IDLE" : lastRunFailed ? "FAILED" : "COMPLETED";
+        return ArchiveStatusDTO.builder()
+                .state(state)
+                .segments(eventArchive.getSegmentCount())
+                .events(eventArchive.getEventCount())
+                .bytes(eventArchive.getBytes())
+                .oldest(eventArchive.getOldest())
+                .newest(eventArchive.getNewest())
+                .lastRunStartedAt(lastRunStartedAt)
+                .lastRunFinishedAt(lastRunFinishedAt)
+                .lastRunEvents(lastRunEvents)
+                .build();
+    }
+
+    public long getArchivedCount() {
+        return archivedEvents.sum();
+    }
+
+    public long getDeletedCount() {
+        return deletedEvents.sum();
+    }
+
+    private long archive() {
+        Instant cutoff = lastRunStartedAt.minus(settings.getRetention());
+        long archived = 0;
+        boolean failed = true;
+        try {
+            delete(eventArchive.getLastSegmentIds());
+            int chunkSize = Math.max(1, settings.getChunkSize());
+            ArchivedEventDTO last = null;
+            for (int chunk = 0; chunk < settings.getMaxChunksPerRun(); chunk++) {
+                List<ArchivedEventDTO> events = eventArchiveRepository.findAged(cutoff, last, chunkSize);
+                if (events.isEmpty()) {
+                    break;
+                }
+                eventArchive.append(events);
+                archivedEvents.add(events.size());
+                archived += events.size();
+                delete(events.stream().mapToLong(ArchivedEventDTO::getId).toArray());
+                last = events.get(events.size() - 1);
+                if (events.size() < chunkSize) {
+                    break;
+                }
+            }
+            failed = false;
+            log.info("Archived {} events older than {}", archived, cutoff);
+            return archived;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the event archive", e);
+        } finally {
+            lastRunEvents = archived;
+            lastRunFailed = failed;
+            lastRunFinishedAt = Instant.now();
+            running.set(false);
+        }
+    }
+
+    private void delete(long[] ids) {
+        if (ids.length > 0) {
+            deletedEvents.add(eventArchiveRepository.delete(ids, settings.getDeleteBatchSize()));
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.demo.codec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.time.Instant;
+import java.util.NoSuchElementException;
+
+import org.springframework.stereotype.Component;
+
+import com.example.demo.dto.RawEventDTO;
+import com.example.demo.model.ActionType;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.exc.InputCoercionException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+
+/**
+ * Reads {@link RawEventDTO} straight from the JSON token stream instead of through the generic bean
+ * binding. Field names are matched against the parser's interned names, actions are resolved from the
+ * parser's character buffer, and ISO-8601 UTC timestamps and integer timestamps are converted without
+ * intermediate strings.
+ * <p>
+ * The result is the same as binding with the application {@link ObjectMapper}: unknown fields are
+ * ignored, scalars are accepted for the string fields, integer timestamps are epoch seconds unless
+ * {@link DeserializationFeature#READ_DATE_TIMESTAMPS_AS_NANOSECONDS} is disabled, in which case they are
+ * epoch milliseconds. Timestamps off the fast path, with an offset, a fraction of a second as a number,
+ * or malformed, are handed to the mapper's own {@link Instant} deserializer, so they are accepted or
+ * rejected exactly as before. The User-Agent and client IP are only ever taken from the request, never
+ * from the body.
+ */
+@Component
+public class RawEventDecoder {
+
+    private static final String USER_ID = "userId";
+    private static final String ACTION = "action";
+    private static final String SONG_ID = "songId";
+    private static final String TIMESTAMP = "timestamp";
+
+    private static final int[] DAYS_IN_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+    private static final int[] NANOS_SCALE = { 0, 100_000_000, 10_000_000, 1_000_000, 100_000, 10_000, 1_000,
+            100, 10, 1 };
+
+    private final JsonFactory jsonFactory;
+    private final ObjectReader timestampReader;
+    private final boolean timestampsInSeconds;
+
+    public RawEventDecoder(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.timestampReader = objectMapper.readerFor(Instant.class)
+                .without(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+        this.timestampsInSeconds = objectMapper.isEnabled(DeserializationFeature.READ_DATE_TIMESTAMPS_AS_NANOSECONDS);
+    }
+
+    /**
+     * Read a single event, content after it is ignored
+     *
+     * @param body the JSON document
+     * @return the event, or null if the document is empty or the JSON {@code null}
+     * @throws IOException if the body is not JSON or not an event
+     */
+    public RawEventDTO read(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return read(parser);
+        }
+    }
+
+    /**
+     * @see #read(InputStream)
+     */
+    public RawEventDTO read(Reader body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return read(parser);
+        }
+    }
+
+    private RawEventDTO read(JsonParser parser) throws IOException {
+        return parser.nextToken() == null ? null : readValue(parser);
+    }
+
+    /**
+     * Read a JSON array of events, or root-level events in sequence such as NDJSON, one at a time
+     *
+     * @param body the JSON document
+     * @return the events, to be closed after use
+     * @throws IOException if the body cannot be read
+     */
+    public Items readValues(InputStream body) throws IOException {
+        return new Items(jsonFactory.createParser(body));
+    }
+
+    /**
+     * Events of a batch body, read on demand. After an item that is JSON but not an event, the parser
+     * is already past it and reading continues with the next item, like Jackson's {@code MappingIterator}.
+     */
+    public final class Items implements Closeable {
+
+        private final JsonParser parser;
+        private final boolean array;
+        private boolean done;
+
+        private Items(JsonParser parser) throws IOException {
+            this.parser = parser;
+            // the first token is kept as the start of the first item, unless it opens the root array
+            this.array = parser.nextToken() == JsonToken.START_ARRAY;
+            if (array) {
+                parser.clearCurrentToken();
+            }
+        }
+
+        /**
+         * @return whether another item follows
+         * @throws IOException if the body is malformed before the next item
+         */
+        public boolean hasNextValue() throws IOException {
+            if (done) {
+                return false;
+            }
+            JsonToken token = parser.currentToken();
+            if (token == null) {
+                token = parser.nextToken();
+            }
+            if (token == null || (array && token == JsonToken.END_ARRAY)) {
+                done = true;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return the next event, null for a JSON {@code null} item
+         * @throws JsonMappingException if the item is JSON but not an event
+         * @throws IOException if the body is malformed within the item
+         */
+        public RawEventDTO nextValue() throws IOException {
+            if (!hasNextValue()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return readValue(parser);
+            } finally {
+                parser.clearCurrentToken();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    /**
+     * Read the value at the current token, leaving the parser on its last token
+     */
+    private RawEventDTO readValue(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            throw MismatchedInputException.from(parser, RawEventDTO.class,
+                    "Cannot deserialize value of type `RawEventDTO` from " + describe(token));
+        }
+
+        JsonStreamContext object = parser.getParsingContext();
+        RawEventDTO event = new RawEventDTO();
+        // a field of the wrong type does not stop reading, so the parser ends up behind the object either way
+        JsonMappingException failure = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            token = parser.nextToken();
+            try {
+                // the parser interns field names, equals returns on the identity check for the known ones
+                if (USER_ID.equals(name)) {
+                    event.setUserId(readString(parser, token));
+                } else if (ACTION.equals(name)) {
+                    event.setAction(readAction(parser, token));
+                } else if (SONG_ID.equals(name)) {
+                    event.setSongId(readString(parser, token));
+                } else if (TIMESTAMP.equals(name)) {
+                    event.setTimestamp(readTimestamp(parser, token));
+                } else {
+                    parser.skipChildren();
+                }
+            } catch (JsonMappingException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                while (parser.getParsingContext() != object) {
+                    parser.nextToken();
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return event;
+    }
+
+    private static String readString(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw MismatchedInputException.from(parser, String.class,
+                    "Cannot deserialize value of type `java.lang.String` from " + describe(token));
+        }
+        return parser.getText();
+    }
+
+    /**
+     * The action text, shared with the enum constant when it is spelled exactly like it
+     */
+    private static String readAction(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            ActionType type = ActionType.fromChars(parser.getTextCharacters(), parser.getTextOffset(),
+                    parser.getTextLength());
+            if (type != null && equals(parser, type.name())) {
+                return type.name();
+            }
+        }
+        return readString(parser, token);
+    }
+
+    private Instant readTimestamp(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+            long value = parser.getLongValue();
+            return timestampsInSeconds ? Instant.ofEpochSecond(value) : Instant.ofEpochMilli(value);
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            Instant instant = parseIsoInstant(parser.getTextCharacters(), parser.getTextOffset(),
+                    parser.getTextLength());
+            if (instant != null) {
+                return instant;
+            }
+        }
+        try {
+            return timestampReader.readValue(parser);
+        } catch (InputCoercionException e) {
+            // a number out of range of long, the mapper reports it as a mapping failure too
+            throw JsonMappingException.from(parser, e.getOriginalMessage(), e);
+        }
+    }
+
+    /**
+     * Parse the common {@code yyyy-MM-ddTHH:mm:ss[.fraction]Z} form
+     *
+     * @return the instant, or null if the text is in any other form or not a valid date
+     */
+    static Instant parseIsoInstant(char[] chars, int offset, int length) {
+        if (length < 20 || length > 30 || length == 21
+                || chars[offset + 4] != '-' || chars[offset + 7] != '-' || chars[offset + 10] != 'T'
+                || chars[offset + 13] != ':' || chars[offset + 16] != ':' || chars[offset + length - 1] != 'Z') {
+            return null;
+        }
+        int year = digits(chars, offset, 4);
+        int month = digits(chars, offset + 5, 2);
+        int day = digits(chars, offset + 8, 2);
+        int hour = digits(chars, offset + 11, 2);
+        int minute = digits(chars, offset + 14, 2);
+        // a leap second is left to the formatter, which smooths it into the previous second
+        int second = digits(chars, offset + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+        int nanos = 0;
+        if (length > 20) {
+            int fraction = length - 21;
+            if (chars[offset + 19] != '.' || (nanos = digits(chars, offset + 20, fraction)) < 0) {
+                return null;
+            }
+            nanos *= NANOS_SCALE[fraction];
+        }
+        long epochSecond = epochDay(year, month, day) * 86_400L + hour * 3_600 + minute * 60 + second;
+        return Instant.ofEpochSecond(epochSecond, nanos);
+    }
+
+    /**
+     * @return the value of the decimal digits, or -1 if any character is not one
+     */
+    private static int digits(char[] chars, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        return month == 2 && leap ? 29 : DAYS_IN_MONTH[month - 1];
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date, counted in 400 year eras starting in March
+     */
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468;
+    }
+
+    private static boolean equals(JsonParser parser, String text) throws IOException {
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        for (int i = 0; i < text.length(); i++) {
+            if (chars[offset + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String describe(JsonToken token) {
+        return switch (token) {
+            case START_OBJECT -> "Object value";
+            case START_ARRAY -> "Array value";
+            case VALUE_STRING -> "String value";
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> "Number value";
+            case VALUE_TRUE, VALUE_FALSE -> "Boolean value";
+            default -> "token " + token;
+        };
+    }
+}
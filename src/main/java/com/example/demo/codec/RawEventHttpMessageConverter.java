@@ -0,0 +1,84 @@
+package com.example.demo.codec;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.dto.RawEventDTO;
+import com.fasterxml.jackson.core.JacksonException;
+
+/**
+ * Reads {@code @RequestBody RawEventDTO} with the {@link RawEventDecoder}. Spring Boot puts converter beans
+ * ahead of its defaults, so event bodies no longer go through the generic Jackson converter, every other
+ * type still does. It only reads: {@link #canWrite} is false for every type, so event bodies are written by
+ * the Jackson converter.
+ */
+@Component
+public class RawEventHttpMessageConverter implements HttpMessageConverter<RawEventDTO> {
+
+    private static final List<MediaType> MEDIA_TYPES =
+            List.of(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+
+    private final RawEventDecoder decoder;
+
+    public RawEventHttpMessageConverter(RawEventDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        if (RawEventDTO.class != clazz) {
+            return false;
+        }
+        if (mediaType == null) {
+            return true;
+        }
+        for (MediaType supported : MEDIA_TYPES) {
+            if (supported.includes(mediaType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return MEDIA_TYPES;
+    }
+
+    @Override
+    public RawEventDTO read(Class<? extends RawEventDTO> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        MediaType contentType = inputMessage.getHeaders().getContentType();
+        Charset charset = contentType != null ? contentType.getCharset() : null;
+        try {
+            // the parser detects the Unicode encodings itself, only other charsets need decoding first
+            return charset == null || charset.name().startsWith("UTF-")
+                    ? decoder.read(inputMessage.getBody())
+                    : decoder.read(new InputStreamReader(inputMessage.getBody(), charset));
+        } catch (JacksonException e) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + e.getOriginalMessage(), e,
+                    inputMessage);
+        }
+    }
+
+    @Override
+    public void write(RawEventDTO rawEvent, MediaType contentType, HttpOutputMessage outputMessage) {
+        // never called, canWrite turns every type down
+        throw new HttpMessageNotWritableException("Event bodies are written by the Jackson converter");
+    }
+}
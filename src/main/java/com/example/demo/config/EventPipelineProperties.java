@@ -0,0 +1,877 @@
+package com.example.demo.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.pipeline.RoutingRule;
+
+import lombok.Data;
+
+/**
+ * Tunable settings of the event processing pipeline, bound from the "events.*" properties
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "events")
+public class EventPipelineProperties {
+
+    private Batch batch = new Batch();
+    private Ingestion ingestion = new Ingestion();
+    private Storage storage = new Storage();
+    private Fanout fanout = new Fanout();
+    private Dedup dedup = new Dedup();
+    private BotDetection botDetection = new BotDetection();
+    private Routing routing = new Routing();
+    private Analytics analytics = new Analytics();
+    private Sessions sessions = new Sessions();
+    private Social social = new Social();
+    private Query query = new Query();
+    private Rollups rollups = new Rollups();
+    private Recent recent = new Recent();
+    private Wal wal = new Wal();
+    private Enrichment enrichment = new Enrichment();
+    private Archive archive = new Archive();
+    private Export export = new Export();
+    private Database database = new Database();
+    private Downstream downstream = new Downstream();
+    private Retry retry = new Retry();
+
+    /**
+     * Settings of the bulk ingestion endpoint
+     */
+    @Data
+    public static class Batch {
+        /**
+         * Maximum number of events accepted in a single batch request, further items are rejected
+         */
+        private int maxItems = 10_000;
+
+        /**
+         * Maximum number of rejected items reported back in detail
+         */
+        private int maxReportedErrors = 100;
+    }
+
+    /**
+     * Settings of the hand-off between the HTTP threads and the integration flow
+     */
+    @Data
+    public static class Ingestion {
+        /**
+         * Enqueue events and answer 202 instead of running the whole flow on the request thread
+         */
+        private boolean async = false;
+
+        /**
+         * Number of events that can wait for a worker before requests are rejected
+         */
+        private int queueCapacity = 10_000;
+
+        /**
+         * Number of worker threads draining the queue
+         */
+        private int workers = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Hash events by user to single-threaded lanes instead of the shared queue, so the events of a user
+         * are processed in the order they arrived. Implies the queued ingestion mode.
+         */
+        private boolean partitioned = false;
+
+        /**
+         * Number of lanes in the partitioned mode, the queue capacity is split evenly among them
+         */
+        private int lanes = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Delay suggested to clients in the Retry-After header when the queue is full
+         */
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+        /**
+         * Maximum time to wait for queued events on shutdown
+         */
+        private Duration drainTimeout = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Settings of the storage service
+     */
+    @Data
+    public static class Storage {
+        private WriteBehind writeBehind = new WriteBehind();
+
+        /**
+         * Time the storage service of the {@code loadtest} profile holds a database permit per event, standing
+         * in for the insert it skips, 0 to count events only
+         */
+        private Duration discardLatency = Duration.ZERO;
+    }
+
+    /**
+     * Settings of the buffered, batched persistence of events
+     */
+    @Data
+    public static class WriteBehind {
+        /**
+         * Buffer events and insert them in batches instead of one transaction per event
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of events buffered before producers are blocked
+         */
+        private int bufferCapacity = 50_000;
+
+        /**
+         * Number of events inserted in one transaction
+         */
+        private int batchSize = 500;
+
+        /**
+         * Maximum time an event waits in the buffer for its batch to fill up
+         */
+        private Duration maxDelay = Duration.ofMillis(200);
+
+        /**
+         * Number of retries of a failed batch before it is spilled to disk
+         */
+        private int maxRetries = 3;
+
+        /**
+         * Delay before the first retry, doubled for every further retry
+         */
+        private Duration retryBackoff = Duration.ofMillis(500);
+
+        /**
+         * Directory of the files holding batches that could not be inserted
+         */
+        private String spillDirectory = "data/spill";
+
+        /**
+         * Interval of the attempts to insert spilled batches again
+         */
+        private Duration spillReplayInterval = Duration.ofSeconds(60);
+    }
+
+    /**
+     * Settings of the delivery from the router to the downstream services
+     */
+    @Data
+    public static class Fanout {
+        /**
+         * Deliver to every downstream channel on its own executor instead of the routing thread
+         */
+        private boolean enabled = false;
+
+        /**
+         * Run the downstream handlers on virtual threads
+         */
+        private boolean virtualThreads = true;
+
+        /**
+         * Limits of channels without an entry in channels
+         */
+        private ChannelLimits defaults = new ChannelLimits();
+
+        /**
+         * Limits per downstream channel, keyed by analytics, aiEngine, social or storage. Properties an
+         * entry does not set are taken from the defaults.
+         */
+        private Map<String, ChannelLimits> channels = new HashMap<>();
+    }
+
+    /**
+     * Concurrency and queue limits of one downstream channel
+     */
+    @Data
+    public static class ChannelLimits {
+        /**
+         * Maximum number of events handled at the same time
+         */
+        private int concurrency = 16;
+
+        /**
+         * Number of events waiting for a handler before further events are dropped for this channel
+         */
+        private int queueCapacity = 10_000;
+    }
+
+    /**
+     * Settings of the duplicate event suppression
+     */
+    @Data
+    public static class Dedup {
+        /**
+         * Drop events already seen with the same user, action, song and timestamp
+         */
+        private boolean enabled = true;
+
+        /**
+         * Time a key is remembered
+         */
+        private Duration window = Duration.ofMinutes(10);
+
+        /**
+         * Number of generations the window is split into, keys expire one generation at a time
+         */
+        private int generations = 4;
+
+        /**
+         * Number of keys remembered within the window, the tables take about 16 to 32 bytes per key
+         */
+        private long maxKeys = 2_000_000;
+
+        /**
+         * Number of independently locked shards, rounded down to a power of two
+         */
+        private int shards = 64;
+    }
+
+    /**
+     * Settings of the rate based bot detection, flagged users are routed to storage only
+     */
+    @Data
+    public static class BotDetection {
+        /**
+         * Flag users by their event rate and skip ratio, in addition to the "bot_" user id prefix
+         */
+        private boolean enabled = true;
+
+        /**
+         * Length of the sliding window the rates are measured over
+         */
+        private Duration window = Duration.ofSeconds(10);
+
+        /**
+         * Average events per second within the window above which a user is flagged
+         */
+        private double maxEventsPerSecond = 20;
+
+        /**
+         * Share of skips within the window above which a user is flagged
+         */
+        private double maxSkipRatio = 0.95;
+
+        /**
+         * Events needed within the window before the skip ratio is checked
+         */
+        private int minEventsForSkipRatio = 50;
+
+        /**
+         * Time a flagged user stays flagged after the last threshold violation
+         */
+        private Duration flagDuration = Duration.ofMinutes(15);
+
+        /**
+         * Time without events after which a user that is not flagged is forgotten
+         */
+        private Duration idleTimeout = Duration.ofMinutes(5);
+
+        /**
+         * Interval of the sweep evicting idle users
+         */
+        private Duration sweepInterval = Duration.ofSeconds(30);
+
+        /**
+         * Users tracked at most, events of further users are not checked until others were evicted
+         */
+        private int maxTrackedUsers = 1_000_000;
+    }
+
+    /**
+     * Settings of the event router
+     */
+    @Data
+    public static class Routing {
+        /**
+         * Routing rules in match order, the first matching rule decides the channels of an event
+         */
+        private List<RoutingRule> rules = RoutingRule.defaults();
+    }
+
+    /**
+     * Settings of the in-memory streaming aggregations of the analytics service
+     */
+    @Data
+    public static class Analytics {
+        /**
+         * Aggregate events in memory for the analytics endpoints
+         */
+        private boolean enabled = true;
+
+        /**
+         * Event time span of one bucket, the granularity of all windows
+         */
+        private Duration bucket = Duration.ofMinutes(1);
+
+        /**
+         * Event time kept, the longest window that can be queried
+         */
+        private Duration retention = Duration.ofHours(1);
+
+        /**
+         * How far an event may lag behind the latest event time seen and still be counted
+         */
+        private Duration allowedLateness = Duration.ofMinutes(2);
+
+        /**
+         * Rows of the per-song count-min sketch of every bucket, more rows make overestimates less likely
+         */
+        private int sketchDepth = 4;
+
+        /**
+         * Counters per row of the count-min sketch, more counters make overestimates smaller
+         */
+        private int sketchWidth = 2048;
+
+        /**
+         * Songs monitored per bucket for the trending view
+         */
+        private int topKCapacity = 200;
+
+        /**
+         * Shards of the trending songs summary of every bucket, each counting thread uses its own shard.
+         * 0 uses the number of processors.
+         */
+        private int topKShards = 0;
+    }
+
+    /**
+     * Settings of the listening session builder feeding the AI engine
+     */
+    @Data
+    public static class Sessions {
+        /**
+         * Group the events of every user into listening sessions
+         */
+        private boolean enabled = true;
+
+        /**
+         * Pause in event time that ends a session
+         */
+        private Duration inactivityGap = Duration.ofMinutes(30);
+
+        /**
+         * Longest time counted for one song, when the event ending it was lost
+         */
+        private Duration maxTrackDuration = Duration.ofMinutes(15);
+
+        /**
+         * Open sessions at most, the least recently active session is completed early when exceeded
+         */
+        private int maxSessions = 1_000_000;
+
+        /**
+         * Songs recorded per session at most, further songs are only counted
+         */
+        private int maxSongsPerSession = 500;
+
+        /**
+         * Number of independently locked partitions, rounded down to a power of two
+         */
+        private int partitions = 64;
+
+        /**
+         * Interval of the sweep completing sessions without events for the inactivity gap
+         */
+        private Duration sweepInterval = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Settings of the coalescing and rate limited dispatch to the social service
+     */
+    @Data
+    public static class Social {
+        /**
+         * Coalesce and rate limit social posts, otherwise every event is shared right away
+         */
+        private boolean coalescing = false;
+
+        /**
+         * Time actions on the same song by the same user are collected before the surviving ones are posted
+         */
+        private Duration window = Duration.ofSeconds(5);
+
+        /**
+         * Interval the dispatcher checks for posts that are due
+         */
+        private Duration tick = Duration.ofMillis(100);
+
+        /**
+         * Posts handed to the social service in one call at most
+         */
+        private int batchSize = 100;
+
+        /**
+         * User and song pairs collected at most, actions beyond are dropped
+         */
+        private int maxPending = 1_000_000;
+
+        /**
+         * Posts per second a single user may sustain, posts beyond are dropped
+         */
+        private double userRate = 1.0;
+
+        /**
+         * Posts a single user may burst above the sustained rate
+         */
+        private int userBurst = 10;
+
+        /**
+         * Posts per second sent in total, due posts beyond wait for the next tick
+         */
+        private double globalRate = 500.0;
+
+        /**
+         * Posts sent in a burst above the global rate
+         */
+        private int globalBurst = 1000;
+    }
+
+    /**
+     * Settings of the stored event query endpoints
+     */
+    @Data
+    public static class Query {
+        /**
+         * Events per page when the request does not ask for a size
+         */
+        private int defaultPageSize = 100;
+
+        /**
+         * Events per page at most
+         */
+        private int maxPageSize = 1000;
+
+        /**
+         * Rows per round trip when streaming: the page size of the event streams and the JDBC fetch size of
+         * exports
+         */
+        private int streamFetchSize = 1000;
+    }
+
+    /**
+     * Settings of the minute, hour and day rollup tables
+     */
+    @Data
+    public static class Rollups {
+        /**
+         * Count stored events into the rollup tables
+         */
+        private boolean enabled = true;
+
+        /**
+         * Time between two upserts of the collected counts
+         */
+        private Duration flushInterval = Duration.ofSeconds(10);
+
+        /**
+         * Number of independently locked partitions of the collected counts
+         */
+        private int partitions = 16;
+
+        /**
+         * Collected counts kept between flushes at most, per minute, song, action and category
+         */
+        private int maxPendingKeys = 1_000_000;
+
+        /**
+         * Buckets a query may span at most
+         */
+        private int maxBuckets = 10_080;
+
+        /**
+         * Days rebuilt at the same time by a backfill
+         */
+        private int backfillParallelism = 4;
+    }
+
+    /**
+     * Settings of the in-memory cache of the latest events per user
+     */
+    @Data
+    public static class Recent {
+        /**
+         * Serve recent activity from memory, reading the database only on a miss
+         */
+        private boolean enabled = true;
+
+        /**
+         * Latest events kept per user
+         */
+        private int eventsPerUser = 50;
+
+        /**
+         * Users kept at most, the least recently used ones are evicted
+         */
+        private int maxUsers = 100_000;
+
+        /**
+         * Number of independently locked segments of the users
+         */
+        private int segments = 16;
+
+        /**
+         * Distinct song and source strings kept as ids at most
+         */
+        private int maxInternedStrings = 1_000_000;
+    }
+
+    /**
+     * Settings of the local write-ahead log of accepted events
+     */
+    @Data
+    public static class Wal {
+        /**
+         * Acknowledge events once they are on local disk, and replay them until they are stored
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory of the log segments and the checkpoint
+         */
+        private String directory = "./wal";
+
+        /**
+         * Size of a segment file in bytes
+         */
+        private int segmentSize = 64 * 1024 * 1024;
+
+        /**
+         * Maximum time a request waits for its event to be forced to disk
+         */
+        private Duration syncTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Time between two checkpoints, segments before the oldest pending event are deleted then
+         */
+        private Duration checkpointInterval = Duration.ofSeconds(5);
+
+        /**
+         * Time after which an event not confirmed by the storage flow is handed over again, events are
+         * redelivered until stored
+         */
+        private Duration redeliverAfter = Duration.ofMinutes(5);
+
+        /**
+         * Disk space of the segments in bytes. When full, new events are rejected until stored events free
+         * the oldest segment
+         */
+        private long maxSize = 1024L * 1024 * 1024;
+    }
+
+    /**
+     * Settings of the enrichment of events with device and location metadata
+     */
+    @Data
+    public static class Enrichment {
+        /**
+         * Derive device type, OS and app version from the User-Agent and the location from the client IP
+         */
+        private boolean enabled = true;
+
+        /**
+         * Parsed User-Agent strings kept at most, the least recently used ones are evicted
+         */
+        private int userAgentCacheSize = 10_000;
+
+        /**
+         * Number of independently locked segments of the User-Agent cache
+         */
+        private int userAgentCacheSegments = 16;
+
+        /**
+         * Product token of the own apps in the User-Agent, its version becomes the app version
+         */
+        private String appProduct = "MusicApp";
+
+        /**
+         * CSV of IPv4 ranges and their locations ({@code start,end,location}), empty for no locations
+         */
+        private String geoRanges = "";
+
+        /**
+         * CSV of the proxy addresses and CIDR networks allowed to name the client in {@code X-Forwarded-For},
+         * empty to always take the remote address
+         */
+        private String trustedProxies = "";
+    }
+
+    /**
+     * Settings of the archival of aged events to local columnar segment files
+     */
+    @Data
+    public static class Archive {
+        /**
+         * Move events older than the retention from the table to the archive periodically
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory of the archive segments and their index
+         */
+        private String directory = "./archive";
+
+        /**
+         * Age after which events are archived
+         */
+        private Duration retention = Duration.ofDays(90);
+
+        /**
+         * Time between two archival runs
+         */
+        private Duration interval = Duration.ofHours(1);
+
+        /**
+         * Events read from the table and written to one segment at a time
+         */
+        private int chunkSize = 50_000;
+
+        /**
+         * Events deleted per statement and transaction, kept below the lock escalation threshold
+         */
+        private int deleteBatchSize = 1_000;
+
+        /**
+         * Chunks archived at most per run, the rest follows with the next run
+         */
+        private int maxChunksPerRun = 100;
+    }
+
+    /**
+     * Settings of the gzip compressed bulk export of events
+     */
+    @Data
+    public static class Export {
+        /**
+         * Time ranges of one export read and compressed in parallel at most, each uses a connection
+         */
+        private int parallelism = 4;
+
+        /**
+         * Exports running at once at most, further requests are answered with 503
+         */
+        private int maxConcurrent = 2;
+
+        /**
+         * Windows are split into ranges of at least this length, up to the parallelism
+         */
+        private Duration splitRange = Duration.ofHours(6);
+
+        /**
+         * Directory of the compressed ranges waiting for their turn, empty for the system temp directory
+         */
+        private String spillDirectory = "";
+    }
+
+    /**
+     * Settings of the limiter in front of the request-driven database work
+     */
+    @Data
+    public static class Database {
+        /**
+         * Maximum number of repository operations running at once, 0 for the size of the connection pool
+         */
+        private int maxConcurrency = 0;
+
+        /**
+         * Connections of the pool kept free of the limiter for the background work taking connections without
+         * a permit, the write-behind flusher, rollup flushes and archival. Only applies when the limit is
+         * derived from the pool size.
+         */
+        private int reservedConnections = 3;
+
+        /**
+         * Maximum time an operation waits for its turn before the request is answered with 503
+         */
+        private Duration acquireTimeout = Duration.ofSeconds(10);
+    }
+
+    /**
+     * Settings of the adaptive limits and circuit breakers in front of the downstream services
+     */
+    @Data
+    public static class Downstream {
+        /**
+         * Guard the downstream services, without it every event is handed to them whatever their state
+         */
+        private boolean enabled = true;
+
+        /**
+         * Limits of services without an entry in services
+         */
+        private DownstreamLimits defaults = new DownstreamLimits();
+
+        /**
+         * Limits per downstream service, keyed by analytics, aiEngine, social or storage. Properties an entry
+         * does not set are taken from the defaults.
+         */
+        private Map<String, DownstreamLimits> services = new HashMap<>();
+    }
+
+    /**
+     * Adaptive concurrency limit and circuit breaker of one downstream service
+     */
+    @Data
+    public static class DownstreamLimits {
+        /**
+         * Calls in flight allowed before the latency of the service was observed
+         */
+        private int initialLimit = 20;
+
+        /**
+         * Lowest limit, reached when the service stays slow or keeps failing
+         */
+        private int minLimit = 1;
+
+        /**
+         * Highest limit, reached when the service keeps up with every caller
+         */
+        private int maxLimit = 200;
+
+        /**
+         * Factor applied to the limit after a window that was slow or had a failed call
+         */
+        private double backoffRatio = 0.9;
+
+        /**
+         * Average latency of a window relative to the baseline above which the service counts as queueing
+         */
+        private double latencyTolerance = 2.0;
+
+        /**
+         * Duration of a sampling window, the limit changes at most once per window
+         */
+        private Duration window = Duration.ofSeconds(1);
+
+        /**
+         * Calls a window needs before it is judged, a quiet window is extended
+         */
+        private int minWindowSamples = 10;
+
+        /**
+         * Number of recent windows whose lowest average latency is the baseline
+         */
+        private int baselineWindows = 60;
+
+        /**
+         * Maximum time a call waits for a permit when the limit is reached, 0 to turn it away at once
+         */
+        private Duration maxWait = Duration.ZERO;
+
+        /**
+         * Share of failed calls in the sliding window that opens the breaker
+         */
+        private double failureRateThreshold = 0.5;
+
+        /**
+         * Calls recorded before the failure rate can open the breaker
+         */
+        private int minimumCalls = 20;
+
+        /**
+         * Number of latest calls the failure rate is taken over
+         */
+        private int slidingWindowSize = 100;
+
+        /**
+         * Time the open breaker turns calls away before it lets probe calls through
+         */
+        private Duration openDuration = Duration.ofSeconds(10);
+
+        /**
+         * Probe calls that must all succeed to close the breaker again
+         */
+        private int halfOpenCalls = 5;
+    }
+
+    /**
+     * Settings of the retries of failed downstream deliveries and of the dead letters
+     */
+    @Data
+    public static class Retry {
+        /**
+         * Retry failed deliveries, without it the failure propagates to the sender and the event is lost
+         * for the channel
+         */
+        private boolean enabled = true;
+
+        /**
+         * Duration of a tick of the timing wheel, the precision of the backoff
+         */
+        private Duration tick = Duration.ofMillis(100);
+
+        /**
+         * Number of buckets of the timing wheel, longer backoffs take several turns
+         */
+        private int wheelSize = 512;
+
+        /**
+         * Maximum number of retries waiting, further failed deliveries become dead letters right away
+         */
+        private int maxPending = 1_000_000;
+
+        /**
+         * Number of retries run at the same time
+         */
+        private int concurrency = 16;
+
+        /**
+         * Number of due retries waiting for a worker, further due retries wait for another tick
+         */
+        private int queueCapacity = 10_000;
+
+        /**
+         * Maximum number of dead letters kept, the oldest are dropped beyond it
+         */
+        private int deadLetterCapacity = 100_000;
+
+        /**
+         * Backoff of channels without an entry in channels
+         */
+        private RetryBackoff defaults = new RetryBackoff();
+
+        /**
+         * Backoff per retry channel, keyed by analytics, aiEngine, social, storage, sessions, aiSessions or
+         * socialBatches. Properties an entry does not set are taken from the defaults.
+         */
+        private Map<String, RetryBackoff> channels = new HashMap<>();
+    }
+
+    /**
+     * Exponential backoff with jitter of the retries of one downstream channel
+     */
+    @Data
+    public static class RetryBackoff {
+        /**
+         * Deliveries of an event including the first one before it becomes a dead letter
+         */
+        private int maxAttempts = 5;
+
+        /**
+         * Delay before the first retry
+         */
+        private Duration initialBackoff = Duration.ofSeconds(1);
+
+        /**
+         * Factor applied to the delay after every retry
+         */
+        private double multiplier = 2.0;
+
+        /**
+         * Longest delay between two attempts
+         */
+        private Duration maxBackoff = Duration.ofMinutes(5);
+
+        /**
+         * Share of the delay randomly added or taken away, so retries of a failure burst spread out
+         */
+        private double jitter = 0.2;
+    }
+}
@@ -1,24 +1,46 @@
 package com.example.demo.config;
 
-import java.time.Instant;
-import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
 import org.springframework.integration.dsl.IntegrationFlow;
-import org.springframework.integration.router.AbstractMessageRouter;
+import org.springframework.integration.support.MessageBuilder;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 
 import com.example.demo.dto.RawEventDTO;
-import com.example.demo.model.ActionType;
+import com.example.demo.enrichment.EventEnricher;
+import com.example.demo.metrics.PipelineMetrics;
 import com.example.demo.model.Event;
+import com.example.demo.model.ListeningSession;
+import com.example.demo.pipeline.BotDetector;
+import com.example.demo.pipeline.BoundedExecutor;
+import com.example.demo.pipeline.DownstreamGuard;
+import com.example.demo.pipeline.DownstreamGuards;
+import com.example.demo.pipeline.DownstreamRejectedException;
+import com.example.demo.pipeline.DuplicateEventFilter;
+import com.example.demo.pipeline.EventRouter;
+import com.example.demo.pipeline.EventTransformer;
+import com.example.demo.pipeline.EventValidator;
+import com.example.demo.pipeline.LaneChannel;
+import com.example.demo.pipeline.LaneExecutor;
+import com.example.demo.pipeline.ListeningSessionTracker;
+import com.example.demo.retry.DeadLetterStore;
+import com.example.demo.retry.DeliveryRetryScheduler;
 import com.example.demo.service.AiEngineService;
 import com.example.demo.service.AnalyticsService;
-import com.example.demo.service.SocialService;
 import com.example.demo.service.StorageService;
+import com.example.demo.service.impl.SocialDispatchCoalescer;
+import com.example.demo.wal.EventWriteAheadLog;
 
 import lombok.RequiredArgsConstructor;
 
@@ -29,10 +51,90 @@ public class IntegrationConfig {
     private final AnalyticsService analyticsService;
     private final AiEngineService aiEngineService;
     private final StorageService storageService;
-    private final SocialService socialService;
+    private final EventPipelineProperties properties;
+    private final PipelineMetrics pipelineMetrics;
+    private final DuplicateEventFilter duplicateEventFilter;
+    private final BotDetector botDetector;
+    private final ListeningSessionTracker listeningSessionTracker;
+    private final SocialDispatchCoalescer socialDispatchCoalescer;
+    private final EventWriteAheadLog eventWriteAheadLog;
+    private final EventEnricher eventEnricher;
+    private final DownstreamGuards downstreamGuards;
+    private final DeliveryRetryScheduler deliveryRetryScheduler;
+    private final DeadLetterStore deadLetterStore;
+    private final Environment environment;
+
+    @Bean
+    public BoundedExecutor eventIngestionExecutor() {
+        EventPipelineProperties.Ingestion ingestion = properties.getIngestion();
+        return new BoundedExecutor("ingestion", ingestion.getWorkers(), ingestion.getQueueCapacity(),
+                ingestion.getDrainTimeout(), threadFactory("event-ingest-", isVirtualThreads()),
+                BoundedExecutor.INGRESS_PHASE);
+    }
+
+    @Bean
+    public LaneExecutor eventLaneExecutor() {
+        EventPipelineProperties.Ingestion ingestion = properties.getIngestion();
+        int lanes = Math.max(1, ingestion.getLanes());
+        return new LaneExecutor("ingestion", lanes, ingestion.getQueueCapacity() / lanes,
+                ingestion.getDrainTimeout(), BoundedExecutor.INGRESS_PHASE);
+    }
+
+    @Bean
+    public BoundedExecutor analyticsExecutor() {
+        return downstreamExecutor("analytics");
+    }
+
+    @Bean
+    public BoundedExecutor aiEngineExecutor() {
+        return downstreamExecutor("aiEngine");
+    }
+
+    @Bean
+    public BoundedExecutor storageExecutor() {
+        return downstreamExecutor("storage");
+    }
+
+    @Bean
+    public BoundedExecutor socialExecutor() {
+        return downstreamExecutor("social");
+    }
+
+    @Bean
+    public BoundedExecutor sessionsExecutor() {
+        return downstreamExecutor("sessions");
+    }
 
     @Bean
     public MessageChannel eventInputChannel() {
+        // with the write-ahead log the request thread appends the event and waits for the sync
+        if (properties.getWal().isEnabled()) {
+            return new DirectChannel();
+        }
+        return ingestionChannel(properties.getIngestion().isAsync());
+    }
+
+    @Bean
+    public MessageChannel walEventChannel() {
+        // logged events are processed by the ingestion workers, replayed ones as well
+        MessageChannel channel = ingestionChannel(true);
+        eventWriteAheadLog.setReplayChannel(channel);
+        return channel;
+    }
+
+    @Bean
+    public MessageChannel walRedeliveryChannel() {
+        // an overdue event the pipeline took before only has to be stored, the other services had it.
+        // With lanes it is stored on the lane of its user, like the user's other events
+        MessageChannel channel = properties.getIngestion().isPartitioned()
+                ? new LaneChannel(eventLaneExecutor(), IntegrationConfig::userIdOf)
+                : new DirectChannel();
+        eventWriteAheadLog.setRedeliveryChannel(channel);
+        return channel;
+    }
+
+    @Bean
+    public MessageChannel discardedEventChannel() {
         return new DirectChannel();
     }
 
@@ -48,108 +150,315 @@ public class IntegrationConfig {
 
     @Bean
     public MessageChannel analyticsChannel() {
-        return new DirectChannel();
+        return downstreamChannel(analyticsExecutor());
     }
 
     @Bean
     public MessageChannel aiEngineChannel() {
-        return new DirectChannel();
+        return downstreamChannel(aiEngineExecutor());
     }
 
     @Bean
     public MessageChannel storageChannel() {
-        return new DirectChannel();
+        return downstreamChannel(storageExecutor());
     }
 
     @Bean
     public MessageChannel socialChannel() {
-        return new DirectChannel();
+        return downstreamChannel(socialExecutor());
     }
 
     @Bean
-    public IntegrationFlow eventProcessingFlow() {
+    public MessageChannel sessionsChannel() {
+        return downstreamChannel(sessionsExecutor());
+    }
+
+    @Bean
+    public EventRouter eventRouter() {
+        Map<String, MessageChannel> channels = Map.of(
+                "analytics", analyticsChannel(),
+                "aiEngine", aiEngineChannel(),
+                "social", socialChannel(),
+                "storage", storageChannel(),
+                "sessions", sessionsChannel());
+        EventRouter router = new EventRouter(channels, properties.getRouting().getRules(), botDetector, pipelineMetrics);
+        // with parallel fan-out a full downstream queue must not keep the event from the other channels,
+        // but a full storage queue must not lose it: a request waiting for the flow is answered with 503,
+        // otherwise the event is parked for a retry
+        if (properties.getFanout().isEnabled()) {
+            router.setBestEffortChannels(List.of(analyticsChannel(), aiEngineChannel(), socialChannel(),
+                    sessionsChannel()));
+            if (!isAnsweredByRequest()) {
+                router.setSendFailureHandler((channel, message, failure) ->
+                        deliveryRetryScheduler.defer("storage", message, failure));
+            }
+        }
+        router.setNotStoredHandler(storageChannel(), eventWriteAheadLog::confirm);
+        return router;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "events.wal", name = "enabled", havingValue = "true")
+    public IntegrationFlow walFlow() {
         return IntegrationFlow.from(eventInputChannel())
-                .<RawEventDTO, Event>transform(rawEvent -> 
-                    Event.builder()
-                        .userId(rawEvent.getUserId())
-                        .action(rawEvent.getActionType())
-                        .songId(rawEvent.getSongId())
-                        .timestamp(rawEvent.getTimestamp() != null ? rawEvent.getTimestamp() : Instant.now())
-                        .source("WEB")
-                        .processedAt(Instant.now())
-                        .build())
+                .handle(message -> eventWriteAheadLog.write(message))
+                .get();
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "events.wal", name = "enabled", havingValue = "true")
+    public IntegrationFlow walRedeliveryFlow() {
+        return IntegrationFlow.from(walRedeliveryChannel())
+                .<RawEventDTO, Event>transform(rawEvent -> {
+                    Event event = EventTransformer.transform(rawEvent);
+                    eventEnricher.enrich(event);
+                    return event;
+                })
+                .channel(storageChannel())
+                .get();
+    }
+
+    @Bean
+    public IntegrationFlow discardedEventFlow() {
+        // a dropped event is never stored, the write-ahead log need not keep it
+        return IntegrationFlow.from(discardedEventChannel())
+                .handle(message -> eventWriteAheadLog.confirm(message))
+                .get();
+    }
+
+    @Bean
+    public IntegrationFlow eventProcessingFlow() {
+        MessageChannel input = properties.getWal().isEnabled() ? walEventChannel() : eventInputChannel();
+        return IntegrationFlow.from(input)
+                .<RawEventDTO, Event>transform(rawEvent -> {
+                    long start = System.nanoTime();
+                    Event event = EventTransformer.transform(rawEvent);
+                    pipelineMetrics.recordStage(PipelineMetrics.STAGE_TRANSFORM, start);
+                    return event;
+                })
+                .<Event, Event>transform(event -> {
+                    long start = System.nanoTime();
+                    eventEnricher.enrich(event);
+                    pipelineMetrics.recordStage(PipelineMetrics.STAGE_ENRICH, start);
+                    return event;
+                })
                 .channel(transformedEventChannel())
-                .<Event>filter(event -> 
-                    event.getUserId() != null && !event.getUserId().isEmpty() &&
-                    event.getAction() != null &&
-                    (event.getSongId() != null || event.getAction() == ActionType.LOGIN || event.getAction() == ActionType.LOGOUT))
+                .<Event>filter(event -> {
+                    EventValidator.Violation violation = 
+                        EventValidator.validate(event.getUserId(), event.getAction(), event.getSongId());
+                    if (violation != null) {
+                        pipelineMetrics.recordFiltered(violation);
+                        return false;
+                    }
+                    return true;
+                }, filter -> filter.discardChannel(discardedEventChannel()))
                 .channel(filteredEventChannel())
-                .route(new AbstractMessageRouter() {
-                    @Override
-                    protected Collection<MessageChannel> determineTargetChannels(Message<?> message) {
-                        Event event = (Event) message.getPayload();
-                        ActionType action = event.getAction();
-                        
-                        if (event.getUserId() != null && event.getUserId().startsWith("bot_")) {
-                            return List.of(storageChannel());
-                        }
-                        
-                        if (null == action) {
-                            return List.of(storageChannel());
-                        } else return switch (action) {
-                            case PLAY -> List.of(analyticsChannel(), aiEngineChannel(), storageChannel());
-                            case PAUSE, SKIP -> List.of(analyticsChannel(), storageChannel());
-                            case LIKE, DISLIKE -> List.of(analyticsChannel(), aiEngineChannel(), socialChannel(), storageChannel());
-                            case SHARE -> List.of(analyticsChannel(), aiEngineChannel(), socialChannel(), storageChannel());
-                            case LOGIN, LOGOUT -> List.of(analyticsChannel(), storageChannel());
-                            default -> List.of(storageChannel());
-                        };
+                .filter(Message.class, message -> {
+                    boolean first = duplicateEventFilter.isFirstOccurrence((Event) message.getPayload());
+                    // a redelivered event was seen before, but maybe never stored
+                    if (first || message.getHeaders().containsKey(EventWriteAheadLog.REPLAY_HEADER)) {
+                        return true;
                     }
-                })
+                    pipelineMetrics.recordDuplicate();
+                    return false;
+                }, filter -> filter.discardChannel(discardedEventChannel()))
+                .route(eventRouter())
                 .get();
     }
 
     @Bean
     public IntegrationFlow analyticsFlow() {
+        DownstreamGuard guard = downstreamGuards.get(DownstreamGuards.ANALYTICS);
         return IntegrationFlow.from(analyticsChannel())
-                .<Event>handle((payload, headers) -> {
-                    System.out.println("Sending event to analytics service: " + payload.getAction() + " - " + payload.getUserId());
-                    analyticsService.processEvent(payload);
-                    return null;
-                })
+                .handle(deliveryRetryScheduler.retrying("analytics", message -> {
+                    long start = System.nanoTime();
+                    // analytics is best effort, the event is dropped while the service is saturated or failing
+                    if (guard.run(() -> analyticsService.processEvent((Event) message.getPayload()))) {
+                        pipelineMetrics.recordStage("analytics", start);
+                    } else if (DeliveryRetryScheduler.isRetry(message)) {
+                        // a failed event turned away waits for its next attempt rather than counting as recovered
+                        throw new DownstreamRejectedException(DownstreamGuards.ANALYTICS);
+                    }
+                }))
                 .get();
     }
 
     @Bean
     public IntegrationFlow aiEngineFlow() {
+        DownstreamGuard guard = downstreamGuards.get(DownstreamGuards.AI_ENGINE);
         return IntegrationFlow.from(aiEngineChannel())
-                .<Event>handle((payload, headers) -> {
-                    System.out.println("Sending event to AI engine: " + payload.getAction() + " - " + payload.getUserId());
-                    aiEngineService.processEvent(payload);
-                    return null;
-                })
+                .handle(deliveryRetryScheduler.retrying("aiEngine", message -> {
+                    long start = System.nanoTime();
+                    // turned away, the event is deferred to a retry rather than dropped
+                    guard.runOrThrow(() -> aiEngineService.processEvent((Event) message.getPayload()));
+                    pipelineMetrics.recordStage("aiEngine", start);
+                }))
                 .get();
     }
 
     @Bean
     public IntegrationFlow storageFlow() {
+        DownstreamGuard guard = downstreamGuards.get(DownstreamGuards.STORAGE);
+        // a rejection only becomes a 503 if the request thread runs the handler, otherwise it is retried
+        boolean retryRejections = properties.getFanout().isEnabled() || !isAnsweredByRequest();
         return IntegrationFlow.from(storageChannel())
-                .<Event>handle((payload, headers) -> {
-                    System.out.println("Sending event to storage service: " + payload.getAction() + " - " + payload.getUserId());
-                    storageService.storeEvent(payload);
-                    return null;
-                })
+                .handle(deliveryRetryScheduler.retrying("storage", message -> {
+                    long start = System.nanoTime();
+                    Event event = (Event) message.getPayload();
+                    Object sequence = message.getHeaders().get(EventWriteAheadLog.SEQUENCE_HEADER);
+                    if (sequence instanceof Long value && !DeliveryRetryScheduler.isRetry(message)
+                            && !eventWriteAheadLog.storing(value)) {
+                        // a redelivered copy of an event the storage holds or stored already
+                        return;
+                    }
+                    try {
+                        boolean stored = guard.run(() -> {
+                            if (sequence instanceof Long value) {
+                                storageService.storeEvent(event, () -> eventWriteAheadLog.confirm(value));
+                            } else {
+                                storageService.storeEvent(event);
+                            }
+                        });
+                        if (!stored) {
+                            // never dropped: a waiting request is answered with 503, otherwise the event
+                            // is retried
+                            throw new RejectedExecutionException(
+                                    "Storage is saturated or failing, event not stored");
+                        }
+                    } catch (RuntimeException e) {
+                        // without retries the failure goes back to the sender, the log redelivers the event
+                        if (!properties.getRetry().isEnabled() && sequence instanceof Long value) {
+                            eventWriteAheadLog.release(value);
+                        }
+                        throw e;
+                    }
+                    pipelineMetrics.recordStage("storage", start);
+                }, retryRejections))
                 .get();
     }
 
     @Bean
     public IntegrationFlow socialFlow() {
         return IntegrationFlow.from(socialChannel())
-                .<Event>handle((payload, headers) -> {
-                    System.out.println("Sending event to social service: " + payload.getAction() + " - " + payload.getUserId());
-                    socialService.shareEvent(payload);
-                    return null;
-                })
+                .handle(deliveryRetryScheduler.retrying("social", message -> {
+                    long start = System.nanoTime();
+                    socialDispatchCoalescer.submit((Event) message.getPayload());
+                    pipelineMetrics.recordStage("social", start);
+                }))
                 .get();
     }
-}
\ No newline at end of file
+
+    @Bean
+    public IntegrationFlow sessionsFlow() {
+        return IntegrationFlow.from(sessionsChannel())
+                .handle(deliveryRetryScheduler.retrying("sessions", message -> {
+                    long start = System.nanoTime();
+                    listeningSessionTracker.record((Event) message.getPayload());
+                    pipelineMetrics.recordStage("sessions", start);
+                }))
+                .get();
+    }
+
+    @Bean
+    public MessageChannel completedSessionsChannel() {
+        MessageChannel channel = new DirectChannel();
+        listeningSessionTracker.setSink(session -> channel.send(MessageBuilder.withPayload(session).build()));
+        return channel;
+    }
+
+    @Bean
+    public IntegrationFlow completedSessionsFlow() {
+        // completed sessions go to the AI engine behind its guard, deferred and retried like its events
+        DownstreamGuard guard = downstreamGuards.get(DownstreamGuards.AI_ENGINE);
+        return IntegrationFlow.from(completedSessionsChannel())
+                .handle(deliveryRetryScheduler.retrying("aiSessions", message -> {
+                    ListeningSession session = (ListeningSession) message.getPayload();
+                    guard.runOrThrow(() -> aiEngineService.processSession(session));
+                }))
+                .get();
+    }
+
+    @Bean
+    public MessageChannel deadLetterChannel() {
+        // deliveries whose retries are exhausted, kept for inspection and replay
+        MessageChannel channel = new DirectChannel();
+        deliveryRetryScheduler.setDeadLetterChannel(channel);
+        return channel;
+    }
+
+    @Bean
+    public IntegrationFlow deadLetterFlow() {
+        return IntegrationFlow.from(deadLetterChannel())
+                .handle(message -> deadLetterStore.add(message))
+                .get();
+    }
+
+    private BoundedExecutor downstreamExecutor(String channel) {
+        EventPipelineProperties.Fanout fanout = properties.getFanout();
+        // entries of the map are merged over the defaults when the properties are bound
+        EventPipelineProperties.ChannelLimits limits = fanout.getChannels()
+                .getOrDefault(channel, fanout.getDefaults());
+        return new BoundedExecutor(channel, limits.getConcurrency(), limits.getQueueCapacity(),
+                properties.getIngestion().getDrainTimeout(),
+                threadFactory(channel + "-", fanout.isVirtualThreads() || isVirtualThreads()),
+                BoundedExecutor.DOWNSTREAM_PHASE);
+    }
+
+    /**
+     * With spring.threads.virtual.enabled requests are served on virtual threads, the ingestion workers
+     * and the downstream handlers follow, so a handler waiting for the database parks instead of
+     * holding a platform thread
+     */
+    private boolean isVirtualThreads() {
+        return Threading.VIRTUAL.isActive(environment);
+    }
+
+    /**
+     * @return true if the request thread runs the flow down to the router, so it can answer a rejection
+     *         with 503; false if it only hands the event to the write-ahead log or an ingestion queue
+     */
+    private boolean isAnsweredByRequest() {
+        EventPipelineProperties.Ingestion ingestion = properties.getIngestion();
+        return !properties.getWal().isEnabled() && !ingestion.isAsync() && !ingestion.isPartitioned();
+    }
+
+    private static ThreadFactory threadFactory(String prefix, boolean virtual) {
+        return virtual
+                ? Thread.ofVirtual().name(prefix, 0).factory()
+                : Thread.ofPlatform().name(prefix, 0).factory();
+    }
+
+    private MessageChannel ingestionChannel(boolean async) {
+        // each lane runs the whole flow for its users, down to the downstream handlers
+        if (properties.getIngestion().isPartitioned()) {
+            // retries run on the lane of the user too, holding back the user's later events
+            deliveryRetryScheduler.setLanes(eventLaneExecutor(), IntegrationConfig::userIdOf);
+            return new LaneChannel(eventLaneExecutor(), IntegrationConfig::userIdOf);
+        }
+        // in async mode the request thread only enqueues, the ingestion workers run the flow
+        if (async) {
+            return new ExecutorChannel(eventIngestionExecutor().asExecutor());
+        }
+        return new DirectChannel();
+    }
+
+    private static Object userIdOf(Message<?> message) {
+        Object payload = message.getPayload();
+        if (payload instanceof RawEventDTO rawEvent) {
+            return rawEvent.getUserId();
+        }
+        return payload instanceof Event event ? event.getUserId() : null;
+    }
+
+    private MessageChannel downstreamChannel(BoundedExecutor executor) {
+        // a lane calls the handlers itself, a shared downstream queue would mix up the order of a user
+        if (properties.getIngestion().isPartitioned()) {
+            return new DirectChannel();
+        }
+        // each downstream service gets its own queue and workers, a slow consumer only backs up its own queue
+        if (properties.getFanout().isEnabled()) {
+            return new ExecutorChannel(executor.asExecutor());
+        }
+        return new DirectChannel();
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.demo.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables the periodic housekeeping tasks of the pipeline, run on the auto-configured task scheduler
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,69 @@
+package com.example.demo.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Merges the per-name overrides of the pipeline settings over their defaults, field by field.
+ * <p>
+ * Spring binds an entry of a map such as {@code events.fanout.channels}, {@code events.downstream.services}
+ * or {@code events.retry.channels} to a new object, so every field the entry does not set keeps the class
+ * default, not the configured {@code defaults.*} value. Once the properties are bound, each entry is replaced
+ * by a copy of the defaults with only the properties of the entry bound over it.
+ */
+@Component
+public class SettingsOverridesPostProcessor implements BeanPostProcessor, EnvironmentAware {
+
+    private Environment environment;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof EventPipelineProperties properties) {
+            merge(Binder.get(environment), properties);
+        }
+        return bean;
+    }
+
+    static void merge(Binder binder, EventPipelineProperties properties) {
+        EventPipelineProperties.Fanout fanout = properties.getFanout();
+        fanout.setChannels(merge(binder, "events.fanout.channels", fanout.getDefaults(), fanout.getChannels()));
+        EventPipelineProperties.Downstream downstream = properties.getDownstream();
+        downstream.setServices(merge(binder, "events.downstream.services", downstream.getDefaults(),
+                downstream.getServices()));
+        EventPipelineProperties.Retry retry = properties.getRetry();
+        retry.setChannels(merge(binder, "events.retry.channels", retry.getDefaults(), retry.getChannels()));
+    }
+
+    /**
+     * @param binder the binder of the environment
+     * @param prefix the property name of the map
+     * @param defaults the configured defaults
+     * @param overrides the entries as bound by Spring
+     * @return the entries merged over the defaults
+     */
+    static <T> Map<String, T> merge(Binder binder, String prefix, T defaults, Map<String, T> overrides) {
+        Map<String, T> merged = new LinkedHashMap<>();
+        for (String name : overrides.keySet()) {
+            @SuppressWarnings("unchecked")
+            T entry = (T) BeanUtils.instantiateClass(defaults.getClass());
+            BeanUtils.copyProperties(defaults, entry);
+            binder.bind(ConfigurationPropertyName.adapt(prefix + "." + name, '.'), Bindable.ofInstance(entry));
+            merged.put(name, entry);
+        }
+        return merged;
+    }
+}
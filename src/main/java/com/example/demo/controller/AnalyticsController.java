@@ -0,0 +1,70 @@
+package com.example.demo.controller;
+
+import java.time.Duration;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.analytics.WindowType;
+import com.example.demo.dto.TrendingSongsDTO;
+import com.example.demo.dto.WindowCountsDTO;
+import com.example.demo.service.AnalyticsService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reads the in-memory aggregations of the analytics service, without touching the database.
+ * Windows are given like "5m" or "1h" and default to a sliding window.
+ */
+@RestController
+@RequestMapping("/analytics")
+@RequiredArgsConstructor
+public class AnalyticsController {
+
+    private final AnalyticsService analyticsService;
+
+    @GetMapping("/actions")
+    public ResponseEntity<WindowCountsDTO> getActionCounts(
+            @RequestParam(defaultValue = "1h") String window,
+            @RequestParam(defaultValue = "SLIDING") WindowType type) {
+        return ResponseEntity.ok(analyticsService.getActionCounts(parse(window), type));
+    }
+
+    @GetMapping("/sources")
+    public ResponseEntity<WindowCountsDTO> getSourceCounts(
+            @RequestParam(defaultValue = "1h") String window,
+            @RequestParam(defaultValue = "SLIDING") WindowType type) {
+        return ResponseEntity.ok(analyticsService.getSourceCounts(parse(window), type));
+    }
+
+    @GetMapping("/songs/{songId}")
+    public ResponseEntity<WindowCountsDTO> getSongCounts(
+            @PathVariable String songId,
+            @RequestParam(defaultValue = "1h") String window,
+            @RequestParam(defaultValue = "SLIDING") WindowType type) {
+        return ResponseEntity.ok(analyticsService.getSongCounts(songId, parse(window), type));
+    }
+
+    @GetMapping("/trending")
+    public ResponseEntity<TrendingSongsDTO> getTrendingSongs(
+            @RequestParam(defaultValue = "1h") String window,
+            @RequestParam(defaultValue = "SLIDING") WindowType type,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(analyticsService.getTrendingSongs(parse(window), type, Math.max(1, limit)));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidWindow(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    private static Duration parse(String window) {
+        return DurationStyle.detectAndParse(window);
+    }
+}
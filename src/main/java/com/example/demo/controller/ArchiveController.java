@@ -0,0 +1,41 @@
+package com.example.demo.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.archive.EventArchiver;
+import com.example.demo.dto.ArchiveStatusDTO;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Shows the contents of the event archive and starts archival runs outside the schedule. Archived
+ * events are read through {@code /events/archive/stream}.
+ */
+@RestController
+@RequestMapping("/archive")
+@RequiredArgsConstructor
+public class ArchiveController {
+
+    private final EventArchiver eventArchiver;
+
+    @GetMapping
+    public ResponseEntity<ArchiveStatusDTO> getStatus() {
+        return ResponseEntity.ok(eventArchiver.getStatus());
+    }
+
+    @PostMapping("/runs")
+    public ResponseEntity<ArchiveStatusDTO> startRun() {
+        return ResponseEntity.accepted().body(eventArchiver.start());
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> handleRunning(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.demo.controller;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.dto.DeadLetterDTO;
+import com.example.demo.dto.RetryStatusDTO;
+import com.example.demo.model.Event;
+import com.example.demo.model.ListeningSession;
+import com.example.demo.retry.DeadLetter;
+import com.example.demo.retry.DeadLetterStore;
+import com.example.demo.retry.DeliveryRetryScheduler;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Shows the pending retries of the downstream deliveries and the dead letters whose retries are exhausted.
+ * Dead letters are listed oldest first with an id cursor, and replayed in bulk or one by one: a replayed
+ * dead letter leaves the store and is delivered again with the full number of attempts.
+ */
+@RestController
+@RequiredArgsConstructor
+public class DeadLetterController {
+
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+    private static final int MAX_REPLAY = 10_000;
+
+    private final DeliveryRetryScheduler deliveryRetryScheduler;
+    private final DeadLetterStore deadLetterStore;
+
+    @GetMapping("/retries")
+    public ResponseEntity<RetryStatusDTO> getStatus() {
+        Map<String, RetryStatusDTO.ChannelStatus> channels = new LinkedHashMap<>();
+        for (String channel : DeliveryRetryScheduler.CHANNELS) {
+            channels.put(channel, RetryStatusDTO.ChannelStatus.builder()
+                    .pending(deliveryRetryScheduler.getPendingCount(channel))
+                    .retried(deliveryRetryScheduler.getRetriedCount(channel))
+                    .recovered(deliveryRetryScheduler.getRecoveredCount(channel))
+                    .exhausted(deliveryRetryScheduler.getExhaustedCount(channel))
+                    .deadLetters(deadLetterStore.getCount(channel))
+                    .build());
+        }
+        return ResponseEntity.ok(RetryStatusDTO.builder()
+                .pending(deliveryRetryScheduler.getPendingCount())
+                .deadLetters(deadLetterStore.getCount())
+                .oldestDeadLetterAgeSeconds(deadLetterStore.getOldestAgeSeconds())
+                .evictedDeadLetters(deadLetterStore.getEvictedCount())
+                .channels(channels)
+                .build());
+    }
+
+    @GetMapping("/dead-letters")
+    public ResponseEntity<List<DeadLetterDTO>> getDeadLetters(
+            @RequestParam(required = false) String channel,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(deadLetterStore.list(channel(channel), after, limit(limit, DEFAULT_LIMIT, MAX_LIMIT))
+                .stream()
+                .map(DeadLetterController::toDTO)
+                .toList());
+    }
+
+    @GetMapping("/dead-letters/{id}")
+    public ResponseEntity<DeadLetterDTO> getDeadLetter(@PathVariable long id) {
+        DeadLetter letter = deadLetterStore.get(id);
+        return letter != null ? ResponseEntity.ok(toDTO(letter)) : ResponseEntity.notFound().build();
+    }
+
+    @PostMapping("/dead-letters/replay")
+    public ResponseEntity<Map<String, Integer>> replay(
+            @RequestParam(required = false) String channel,
+            @RequestParam(required = false) Integer limit) {
+        List<DeadLetter> letters = deadLetterStore.take(channel(channel), limit(limit, MAX_REPLAY, MAX_REPLAY));
+        return ResponseEntity.accepted().body(Map.of("replayed", deliveryRetryScheduler.replay(letters)));
+    }
+
+    @PostMapping("/dead-letters/{id}/replay")
+    public ResponseEntity<Map<String, Integer>> replayOne(@PathVariable long id) {
+        DeadLetter letter = deadLetterStore.take(id);
+        if (letter == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.accepted().body(Map.of("replayed", deliveryRetryScheduler.replay(List.of(letter))));
+    }
+
+    @DeleteMapping("/dead-letters")
+    public ResponseEntity<Map<String, Integer>> delete(@RequestParam(required = false) String channel) {
+        return ResponseEntity.ok(Map.of("deleted", deadLetterStore.delete(channel(channel))));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    private static String channel(String channel) {
+        if (channel != null && !DeliveryRetryScheduler.CHANNELS.contains(channel)) {
+            throw new IllegalArgumentException("Unknown channel " + channel
+                    + ", expected one of " + DeliveryRetryScheduler.CHANNELS);
+        }
+        return channel;
+    }
+
+    private static int limit(Integer limit, int defaultLimit, int maxLimit) {
+        if (limit == null) {
+            return defaultLimit;
+        }
+        if (limit < 1 || limit > maxLimit) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + maxLimit);
+        }
+        return limit;
+    }
+
+    private static DeadLetterDTO toDTO(DeadLetter letter) {
+        Object payload = letter.getMessage().getPayload();
+        return DeadLetterDTO.builder()
+                .id(letter.getId())
+                .channel(letter.getChannel())
+                .attempts(letter.getAttempts())
+                .error(letter.getError())
+                .firstFailedAt(letter.getFirstFailedAt())
+                .deadAt(letter.getDeadAt())
+                .event(payload instanceof Event event ? event : null)
+                .session(payload instanceof ListeningSession session ? session : null)
+                .build();
+    }
+}
@@ -1,15 +1,33 @@
 package com.example.demo.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.BatchResultDTO;
+import com.example.demo.dto.IngestionStatusDTO;
 import com.example.demo.dto.RawEventDTO;
+import com.example.demo.enrichment.EventEnricher;
+import com.example.demo.pipeline.BoundedExecutor;
+import com.example.demo.pipeline.LaneExecutor;
+import com.example.demo.repository.DatabaseConcurrencyLimiter;
+import com.example.demo.service.EventBatchService;
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 
 @RestController
@@ -18,16 +36,94 @@ import lombok.RequiredArgsConstructor;
 public class EventController {
     
     private final MessageChannel eventInputChannel;
+    private final EventBatchService eventBatchService;
+    private final BoundedExecutor eventIngestionExecutor;
+    private final LaneExecutor eventLaneExecutor;
+    private final EventPipelineProperties properties;
+    private final EventEnricher eventEnricher;
     
     @PostMapping
-    public ResponseEntity<?> processEvent(@RequestBody RawEventDTO rawEvent) {
+    public ResponseEntity<?> processEvent(@RequestBody RawEventDTO rawEvent, HttpServletRequest request) {
+        rawEvent.setUserAgent(request.getHeader(HttpHeaders.USER_AGENT));
+        rawEvent.setClientIp(clientIp(request));
         // send the raw event to the integration flow
-        boolean sent = eventInputChannel.send(MessageBuilder.withPayload(rawEvent).build());
+        boolean sent;
+        try {
+            sent = eventInputChannel.send(MessageBuilder.withPayload(rawEvent).build());
+        } catch (MessagingException e) {
+            if (BoundedExecutor.isRejection(e)) {
+                // fail fast instead of parking the request thread until the queue drains
+                return serviceUnavailable("Event queue is full, retry later");
+            }
+            if (DatabaseConcurrencyLimiter.isBusy(e)) {
+                return serviceUnavailable("Database busy, retry later");
+            }
+            throw e;
+        }
         
-        if (sent) {
-            return ResponseEntity.ok().body("Event processed successfully");
-        } else {
+        if (!sent) {
             return ResponseEntity.internalServerError().body("Failed to process event");
+        } else if (properties.getIngestion().isAsync() || properties.getIngestion().isPartitioned()
+                || properties.getWal().isEnabled()) {
+            // with the write-ahead log the event is on disk but not processed yet
+            return ResponseEntity.accepted().body("Event accepted for processing");
+        } else {
+            return ResponseEntity.ok().body("Event processed successfully");
         }
     }
+
+    @PostMapping(value = "/batch", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+    public ResponseEntity<BatchResultDTO> processBatch(InputStream body, HttpServletRequest request)
+            throws IOException {
+        // the body is streamed item by item, never bound as a whole
+        return ResponseEntity.ok(eventBatchService.ingest(body, request.getHeader(HttpHeaders.USER_AGENT),
+                clientIp(request)));
+    }
+
+    @GetMapping("/ingestion")
+    public ResponseEntity<IngestionStatusDTO> getIngestionStatus() {
+        if (properties.getIngestion().isPartitioned()) {
+            List<Integer> laneDepths = eventLaneExecutor.getLanes().stream()
+                    .map(BoundedExecutor::getQueueDepth)
+                    .toList();
+            return ResponseEntity.ok(IngestionStatusDTO.builder()
+                    .async(true)
+                    .partitioned(true)
+                    .queueDepth(eventLaneExecutor.getQueueDepth())
+                    .queueCapacity(eventLaneExecutor.getQueueCapacity())
+                    .workers(eventLaneExecutor.getLanes().size())
+                    .activeWorkers(eventLaneExecutor.getActiveThreads())
+                    .completed(eventLaneExecutor.getCompletedCount())
+                    .rejected(eventLaneExecutor.getRejectedCount())
+                    .laneDepths(laneDepths)
+                    .laneSkew(eventLaneExecutor.getSkew())
+                    .build());
+        }
+        return ResponseEntity.ok(IngestionStatusDTO.builder()
+                .async(properties.getIngestion().isAsync())
+                .queueDepth(eventIngestionExecutor.getQueueDepth())
+                .queueCapacity(eventIngestionExecutor.getQueueCapacity())
+                .workers(eventIngestionExecutor.getThreads())
+                .activeWorkers(eventIngestionExecutor.getActiveThreads())
+                .completed(eventIngestionExecutor.getCompletedCount())
+                .rejected(eventIngestionExecutor.getRejectedCount())
+                .build());
+    }
+
+    /**
+     * The address of the client, or of the proxy in front of it unless the proxy is trusted
+     */
+    private String clientIp(HttpServletRequest request) {
+        return eventEnricher.clientIp(request.getRemoteAddr(), request.getHeader("X-Forwarded-For"));
+    }
+
+    private ResponseEntity<String> serviceUnavailable(String message) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds()))
+                .body(message);
+    }
+
+    private long retryAfterSeconds() {
+        return Math.max(1, properties.getIngestion().getRetryAfter().toSeconds());
+    }
 } 
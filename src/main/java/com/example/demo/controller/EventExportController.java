@@ -0,0 +1,78 @@
+package com.example.demo.controller;
+
+import java.time.Instant;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.export.EventExporter;
+import com.example.demo.export.ExportFormat;
+import com.example.demo.model.ActionType;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Exports all columns of the events of a time range as a gzip compressed NDJSON or CSV file, written
+ * while the rows are read. A request beyond the running exports allowed is answered with 503.
+ */
+@RestController
+@RequestMapping("/events/export")
+@RequiredArgsConstructor
+public class EventExportController {
+
+    private static final MediaType GZIP = MediaType.parseMediaType("application/gzip");
+
+    private final EventExporter eventExporter;
+    private final EventPipelineProperties properties;
+
+    @GetMapping
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) ActionType action,
+            @RequestParam(required = false) String category,
+            @RequestParam(defaultValue = "NDJSON") ExportFormat format,
+            @RequestParam(required = false) Integer parallelism) {
+        // checked up front, the status is sent before the stream starts
+        int ranges = eventExporter.ranges(from, to, parallelism);
+        eventExporter.reserve();
+        ContentDisposition disposition = ContentDisposition.attachment()
+                .filename("events." + format.getExtension() + ".gz")
+                .build();
+        return ResponseEntity.ok()
+                .contentType(GZIP)
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString())
+                .body(out -> {
+                    try {
+                        eventExporter.export(format, from, to, action, category, ranges, out);
+                    } finally {
+                        eventExporter.release();
+                    }
+                });
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidExport(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> handleTooManyExports(RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER,
+                        String.valueOf(Math.max(1, properties.getIngestion().getRetryAfter().toSeconds())))
+                .body(e.getMessage());
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.demo.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.ArchivedEventDTO;
+import com.example.demo.dto.EventPageDTO;
+import com.example.demo.dto.EventRecordDTO;
+import com.example.demo.model.ActionType;
+import com.example.demo.service.EventQueryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reads stored events newest first, either page by page with a cursor or as one NDJSON stream.
+ * The stream is written while the rows are read, so it holds no more than one fetch of rows.
+ * Archived events are streamed oldest first with every column, holding one archive segment at a time.
+ */
+@RestController
+@RequestMapping("/events")
+@RequiredArgsConstructor
+public class EventQueryController {
+
+    private final EventQueryService eventQueryService;
+    private final ObjectMapper objectMapper;
+    private final EventPipelineProperties properties;
+
+    @GetMapping("/users/{userId}")
+    public ResponseEntity<EventPageDTO> getUserEvents(
+            @PathVariable String userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(eventQueryService.getUserEvents(userId, cursor, limit));
+    }
+
+    @GetMapping("/users/{userId}/recent")
+    public ResponseEntity<List<EventRecordDTO>> getRecentEvents(
+            @PathVariable String userId,
+            @RequestParam(required = false) ActionType action,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(eventQueryService.getRecentEvents(userId, action, limit));
+    }
+
+    @GetMapping("/actions/{action}")
+    public ResponseEntity<EventPageDTO> getActionEvents(
+            @PathVariable ActionType action,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(eventQueryService.getActionEvents(action, from, to, cursor, limit));
+    }
+
+    @GetMapping(value = "/users/{userId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamUserEvents(@PathVariable String userId) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> this.<EventRecordDTO>write(out,
+                        consumer -> eventQueryService.streamUserEvents(userId, consumer)));
+    }
+
+    @GetMapping(value = "/actions/{action}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamActionEvents(
+            @PathVariable ActionType action,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        if (!from.isBefore(to)) {
+            // checked up front, the status is sent before the stream starts
+            throw new IllegalArgumentException("From must be before to");
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> this.<EventRecordDTO>write(out,
+                        consumer -> eventQueryService.streamActionEvents(action, from, to, consumer)));
+    }
+
+    @GetMapping(value = "/archive/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamArchivedEvents(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("From must be before to");
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> this.<ArchivedEventDTO>write(out,
+                        consumer -> eventQueryService.streamArchivedEvents(from, to, consumer)));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidQuery(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(TransientDataAccessResourceException.class)
+    public ResponseEntity<String> handleDatabaseBusy(TransientDataAccessResourceException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER,
+                        String.valueOf(Math.max(1, properties.getIngestion().getRetryAfter().toSeconds())))
+                .body(e.getMessage());
+    }
+
+    private <T> void write(OutputStream out, Consumer<Consumer<T>> query) throws IOException {
+        try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(out)) {
+            try {
+                query.accept(event -> {
+                    try {
+                        writer.write(event);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                // the client went away, stop reading rows
+                throw e.getCause();
+            }
+            writer.flush();
+            out.write('\n');
+        }
+    }
+}
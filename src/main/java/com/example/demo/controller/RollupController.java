@@ -0,0 +1,66 @@
+package com.example.demo.controller;
+
+import java.time.Instant;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.dto.RollupBackfillStatusDTO;
+import com.example.demo.dto.RollupSeriesDTO;
+import com.example.demo.rollup.RollupDimension;
+import com.example.demo.rollup.RollupGranularity;
+import com.example.demo.service.RollupService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reads event counts from the rollup tables instead of grouping the raw events, and starts backfills
+ * of the rollups from the stored history
+ */
+@RestController
+@RequestMapping("/rollups")
+@RequiredArgsConstructor
+public class RollupController {
+
+    private final RollupService rollupService;
+
+    @GetMapping("/{dimension}")
+    public ResponseEntity<RollupSeriesDTO> getSeries(
+            @PathVariable RollupDimension dimension,
+            @RequestParam(defaultValue = "HOUR") RollupGranularity granularity,
+            @RequestParam(required = false) String key,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        return ResponseEntity.ok(rollupService.getSeries(granularity, dimension, key, from, to));
+    }
+
+    @PostMapping("/backfill")
+    public ResponseEntity<RollupBackfillStatusDTO> startBackfill(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        return ResponseEntity.accepted().body(rollupService.startBackfill(from, to));
+    }
+
+    @GetMapping("/backfill")
+    public ResponseEntity<RollupBackfillStatusDTO> getBackfillStatus() {
+        return ResponseEntity.ok(rollupService.getBackfillStatus());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidQuery(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> handleBackfillRunning(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+}
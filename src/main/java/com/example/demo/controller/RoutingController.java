@@ -0,0 +1,39 @@
+package com.example.demo.controller;
+
+import java.util.List;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.pipeline.EventRouter;
+import com.example.demo.pipeline.RoutingRule;
+
+import lombok.RequiredArgsConstructor;
+
+@RestController
+@RequestMapping("/routing")
+@RequiredArgsConstructor
+public class RoutingController {
+
+    private final EventRouter eventRouter;
+
+    @GetMapping("/rules")
+    public ResponseEntity<List<RoutingRule>> getRules() {
+        return ResponseEntity.ok(eventRouter.getRules());
+    }
+
+    @PutMapping("/rules")
+    public ResponseEntity<?> updateRules(@RequestBody List<RoutingRule> rules) {
+        // the new table is compiled and validated before it replaces the current one
+        try {
+            eventRouter.updateRules(rules);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        return ResponseEntity.ok(eventRouter.getRules());
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.demo.dto;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Contents of the event archive and the outcome of the latest archival run
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchiveStatusDTO {
+    /**
+     * IDLE, RUNNING, COMPLETED or FAILED
+     */
+    private String state;
+    private int segments;
+    private long events;
+    private long bytes;
+    private Instant oldest;
+    private Instant newest;
+    private Instant lastRunStartedAt;
+    private Instant lastRunFinishedAt;
+    private long lastRunEvents;
+}
@@ -0,0 +1,34 @@
+package com.example.demo.dto;
+
+import java.time.Instant;
+
+import com.example.demo.model.ActionType;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A stored event with every column of the events table, as moved to the archive and streamed back from it
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedEventDTO {
+    private Long id;
+    private String userId;
+    private ActionType action;
+    private String songId;
+    private Instant timestamp;
+    private String source;
+    private Instant processedAt;
+    private String category;
+    private Integer count;
+    private String deviceType;
+    private String osVersion;
+    private String appVersion;
+    private String ipAddress;
+    private String location;
+}
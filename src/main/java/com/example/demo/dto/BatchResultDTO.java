@@ -0,0 +1,37 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Summary of a bulk ingestion request
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchResultDTO {
+    private int received;
+    private int accepted;
+    private int rejected;
+    /**
+     * True if the body was not read to the end, because it was malformed or exceeded the item limit
+     */
+    private boolean truncated;
+    /**
+     * Rejected items, capped at the configured number of reported errors
+     */
+    private List<ItemError> errors;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemError {
+        private int index;
+        private String reason;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.demo.dto;
+
+import java.time.Instant;
+
+import com.example.demo.model.Event;
+import com.example.demo.model.ListeningSession;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A delivery whose retries are exhausted, with the event or session it failed to deliver
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeadLetterDTO {
+    private long id;
+    private String channel;
+    private int attempts;
+    /**
+     * The exception of the last attempt
+     */
+    private String error;
+    private Instant firstFailedAt;
+    private Instant deadAt;
+    private Event event;
+    /**
+     * The completed listening session of an aiSessions dead letter
+     */
+    private ListeningSession session;
+}
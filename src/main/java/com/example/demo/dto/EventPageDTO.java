@@ -0,0 +1,23 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One page of stored events, newest first
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventPageDTO {
+    private List<EventRecordDTO> events;
+    /**
+     * Cursor of the next page, null on the last page
+     */
+    private String nextCursor;
+}
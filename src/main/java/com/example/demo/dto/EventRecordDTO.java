@@ -0,0 +1,26 @@
+package com.example.demo.dto;
+
+import java.time.Instant;
+
+import com.example.demo.model.ActionType;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A stored event as returned by the query endpoints, limited to the columns the query indexes cover
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventRecordDTO {
+    private Long id;
+    private String userId;
+    private ActionType action;
+    private String songId;
+    private Instant timestamp;
+    private String source;
+}
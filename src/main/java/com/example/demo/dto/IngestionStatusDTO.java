@@ -0,0 +1,34 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Current state of the ingestion queue
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionStatusDTO {
+    private boolean async;
+    private int queueDepth;
+    private int queueCapacity;
+    private int workers;
+    private int activeWorkers;
+    private long completed;
+    private long rejected;
+    private boolean partitioned;
+    /**
+     * Queue depth of every lane in the partitioned mode
+     */
+    private List<Integer> laneDepths;
+    /**
+     * Work of the busiest lane relative to the mean, 1.0 when balanced
+     */
+    private double laneSkew;
+}
@@ -18,6 +18,9 @@ public class RawEventDTO {
     private String action;
     private String songId;
     private Instant timestamp;
+    // taken from the request by the ingestion endpoints, never from the body
+    private String userAgent;
+    private String clientIp;
     
     /**
      * Get the converted ActionType enum value
@@ -0,0 +1,35 @@
+package com.example.demo.dto;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Pending retries and dead letters, overall and per downstream channel
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RetryStatusDTO {
+    private int pending;
+    private int deadLetters;
+    private double oldestDeadLetterAgeSeconds;
+    private long evictedDeadLetters;
+    private Map<String, ChannelStatus> channels;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ChannelStatus {
+        private int pending;
+        private long retried;
+        private long recovered;
+        private long exhausted;
+        private int deadLetters;
+    }
+}
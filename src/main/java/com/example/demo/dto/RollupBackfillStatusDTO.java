@@ -0,0 +1,29 @@
+package com.example.demo.dto;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of the latest rollup backfill
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RollupBackfillStatusDTO {
+    /**
+     * IDLE, RUNNING, COMPLETED or FAILED
+     */
+    private String state;
+    private Instant from;
+    private Instant to;
+    private int chunks;
+    private int completedChunks;
+    private int failedChunks;
+    private Instant startedAt;
+    private Instant finishedAt;
+}
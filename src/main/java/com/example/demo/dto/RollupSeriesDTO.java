@@ -0,0 +1,41 @@
+package com.example.demo.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.example.demo.rollup.RollupDimension;
+import com.example.demo.rollup.RollupGranularity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Event counts read from a rollup table, one point per bucket, key and action
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RollupSeriesDTO {
+    private RollupGranularity granularity;
+    private RollupDimension dimension;
+    /**
+     * The requested key, null when all keys are returned
+     */
+    private String key;
+    private Instant from;
+    private Instant to;
+    private List<Point> points;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Point {
+        private Instant bucketStart;
+        private String key;
+        private String action;
+        private long count;
+    }
+}
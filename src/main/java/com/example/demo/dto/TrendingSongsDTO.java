@@ -0,0 +1,30 @@
+package com.example.demo.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Most played songs within a time window, the play counts are estimates that never undercount
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrendingSongsDTO {
+    private Instant from;
+    private Instant to;
+    private List<SongPlays> songs;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SongPlays {
+        private String songId;
+        private long plays;
+    }
+}
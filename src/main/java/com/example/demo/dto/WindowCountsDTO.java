@@ -0,0 +1,23 @@
+package com.example.demo.dto;
+
+import java.time.Instant;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Event counts within a time window, by action, source or other key
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WindowCountsDTO {
+    private Instant from;
+    private Instant to;
+    private long total;
+    private Map<String, Long> counts;
+}
@@ -0,0 +1,26 @@
+package com.example.demo.enrichment;
+
+import lombok.Value;
+
+/**
+ * What a User-Agent tells about the client, each field null if it does not say
+ */
+@Value
+public class DeviceInfo {
+
+    public static final String MOBILE = "MOBILE";
+    public static final String TABLET = "TABLET";
+    public static final String DESKTOP = "DESKTOP";
+    public static final String TV = "TV";
+    public static final String BOT = "BOT";
+    public static final String UNKNOWN = "UNKNOWN";
+
+    /**
+     * Device info of requests without a User-Agent
+     */
+    public static final DeviceInfo NONE = new DeviceInfo(null, null, null);
+
+    String deviceType;
+    String osVersion;
+    String appVersion;
+}
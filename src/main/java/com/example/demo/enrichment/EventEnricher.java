@@ -0,0 +1,189 @@
+package com.example.demo.enrichment;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.Event;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fills the device and location metadata of an event from the User-Agent and client IP of its request.
+ * <p>
+ * Parsed User-Agents are kept in a bounded LRU cache split into independently locked segments, most
+ * traffic comes from a few hundred distinct User-Agents, so a parse is rare and a hit costs a hash lookup
+ * under an uncontended lock. Locations come from an {@link IpRangeTable} loaded at startup.
+ */
+@Slf4j
+@Component
+public class EventEnricher implements MeterBinder {
+
+    private final EventPipelineProperties.Enrichment settings;
+    private final UserAgentParser parser;
+    private final IpRangeTable ipRanges;
+    private final TrustedProxies trustedProxies;
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public EventEnricher(EventPipelineProperties properties, ResourceLoader resourceLoader) {
+        this(properties.getEnrichment(), loadIpRanges(properties.getEnrichment(), resourceLoader));
+    }
+
+    EventEnricher(EventPipelineProperties.Enrichment settings, IpRangeTable ipRanges) {
+        this.settings = settings;
+        this.parser = new UserAgentParser(settings.getAppProduct());
+        this.ipRanges = ipRanges;
+        this.trustedProxies = TrustedProxies.parse(settings.getTrustedProxies());
+        int segmentCount = Integer.highestOneBit(Math.max(1, settings.getUserAgentCacheSegments()));
+        int maxPerSegment = Math.max(1, settings.getUserAgentCacheSize() / segmentCount);
+        this.segmentMask = segmentCount - 1;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxPerSegment);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.enrichment.ua.hit.rate", this, EventEnricher::getCacheHitRate)
+                .description("Share of User-Agent lookups answered from the parse cache")
+                .register(registry);
+        Gauge.builder("events.enrichment.ua.cached", this, EventEnricher::getCachedUserAgentCount)
+                .description("Parsed User-Agents in the cache")
+                .register(registry);
+        Gauge.builder("events.enrichment.ip.ranges", this, EventEnricher::getIpRangeCount)
+                .description("IP ranges of the location table")
+                .register(registry);
+    }
+
+    /**
+     * Set the device type, OS version, app version and location of the event
+     *
+     * @param event the event, carrying the User-Agent and client IP of its request
+     * @return the same event
+     */
+    public Event enrich(Event event) {
+        if (!settings.isEnabled()) {
+            return event;
+        }
+        DeviceInfo device = deviceInfo(event.getUserAgent());
+        event.setDeviceType(device.getDeviceType());
+        event.setOsVersion(device.getOsVersion());
+        event.setAppVersion(device.getAppVersion());
+        event.setLocation(ipRanges.lookup(event.getIpAddress()));
+        return event;
+    }
+
+    /**
+     * @param remoteAddr the address the request came from
+     * @param forwardedFor the {@code X-Forwarded-For} header of the request, may be null
+     * @return the client address, taken from the header only as far as trusted proxies wrote it
+     * @see TrustedProxies#clientIp
+     */
+    public String clientIp(String remoteAddr, String forwardedFor) {
+        return trustedProxies.clientIp(remoteAddr, forwardedFor);
+    }
+
+    /**
+     * @param userAgent a User-Agent, may be null
+     * @return the parsed User-Agent, from the cache if it was seen recently
+     */
+    DeviceInfo deviceInfo(String userAgent) {
+        if (userAgent == null) {
+            return DeviceInfo.NONE;
+        }
+        int hash = userAgent.hashCode();
+        Segment segment = segments[(hash ^ (hash >>> 16)) & segmentMask];
+        DeviceInfo device;
+        synchronized (segment) {
+            device = segment.get(userAgent);
+        }
+        if (device != null) {
+            hits.increment();
+            return device;
+        }
+        // parsed outside the lock, two threads missing on the same User-Agent both parse it
+        misses.increment();
+        device = parser.parse(userAgent);
+        synchronized (segment) {
+            segment.put(userAgent, device);
+        }
+        return device;
+    }
+
+    /**
+     * @return share of User-Agent lookups served from the cache
+     */
+    public double getCacheHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    public int getCachedUserAgentCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                count += segment.size();
+            }
+        }
+        return count;
+    }
+
+    public int getIpRangeCount() {
+        return ipRanges.size();
+    }
+
+    private static IpRangeTable loadIpRanges(EventPipelineProperties.Enrichment settings, ResourceLoader resourceLoader) {
+        String location = settings.getGeoRanges();
+        if (location == null || location.isBlank()) {
+            return IpRangeTable.EMPTY;
+        }
+        Resource resource = resourceLoader.getResource(location);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            IpRangeTable table = IpRangeTable.read(reader);
+            log.info("Loaded {} IP ranges from {}, {} bytes", table.size(), location, table.memoryBytes());
+            return table;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the IP ranges from " + location, e);
+        }
+    }
+
+    /**
+     * User-Agents in access order, the least recently used one is evicted when the segment is full
+     */
+    private static final class Segment extends LinkedHashMap<String, DeviceInfo> {
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DeviceInfo> eldest) {
+            return size() > capacity;
+        }
+    }
+}
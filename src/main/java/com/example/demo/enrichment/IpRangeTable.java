@@ -0,0 +1,146 @@
+package com.example.demo.enrichment;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps IPv4 addresses to locations with a table of address ranges. The ranges are held in three parallel
+ * int arrays sorted by start address, twelve bytes per range, and each location string is kept once. A
+ * lookup parses the address without allocating and binary searches the starts.
+ * <p>
+ * Addresses are unsigned, they are stored with the sign bit flipped so that signed int order is address
+ * order. Ranges must not overlap, where they do an address is only looked up in the range starting last
+ * before it.
+ */
+public final class IpRangeTable {
+
+    public static final IpRangeTable EMPTY = new IpRangeTable(new int[0], new int[0], new int[0], new String[0]);
+
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] locationIds;
+    private final String[] locations;
+
+    private IpRangeTable(int[] starts, int[] ends, int[] locationIds, String[] locations) {
+        this.starts = starts;
+        this.ends = ends;
+        this.locationIds = locationIds;
+        this.locations = locations;
+    }
+
+    /**
+     * Read ranges as CSV lines {@code start,end,location}, with dotted IPv4 addresses and the end
+     * inclusive. The location is the rest of the line, blank lines and lines starting with {@code #} are
+     * skipped.
+     *
+     * @param reader the CSV
+     * @return the table
+     * @throws IOException if the CSV cannot be read
+     * @throws IllegalArgumentException if a line is not a valid range
+     */
+    public static IpRangeTable read(BufferedReader reader) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        Map<String, Integer> locationIds = new HashMap<>();
+        List<String> locations = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int first = line.indexOf(',');
+            int second = first < 0 ? -1 : line.indexOf(',', first + 1);
+            long start = second < 0 ? -1 : parse(line.substring(0, first).strip());
+            long end = second < 0 ? -1 : parse(line.substring(first + 1, second).strip());
+            if (start < 0 || end < 0 || end < start) {
+                throw new IllegalArgumentException("Invalid IP range on line " + lineNumber + ": " + line);
+            }
+            String location = line.substring(second + 1).strip();
+            Integer id = locationIds.get(location);
+            if (id == null) {
+                id = locations.size();
+                locationIds.put(location, id);
+                locations.add(location);
+            }
+            ranges.add(new long[] { start, end, id });
+        }
+
+        ranges.sort((a, b) -> Long.compare(a[0], b[0]));
+        int[] starts = new int[ranges.size()];
+        int[] ends = new int[ranges.size()];
+        int[] ids = new int[ranges.size()];
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            starts[i] = (int) range[0] ^ Integer.MIN_VALUE;
+            ends[i] = (int) range[1] ^ Integer.MIN_VALUE;
+            ids[i] = (int) range[2];
+        }
+        return new IpRangeTable(starts, ends, ids, locations.toArray(String[]::new));
+    }
+
+    /**
+     * @param ip an IPv4 address, also accepted as IPv4-mapped IPv6 {@code ::ffff:a.b.c.d}, may be null
+     * @return the location of the range holding the address, null if there is none or it is not IPv4
+     */
+    public String lookup(String ip) {
+        if (ip == null || starts.length == 0) {
+            return null;
+        }
+        long address = parse(ip);
+        if (address < 0) {
+            return null;
+        }
+        int key = (int) address ^ Integer.MIN_VALUE;
+        int index = Arrays.binarySearch(starts, key);
+        if (index < 0) {
+            // the last range starting before the address
+            index = -index - 2;
+        }
+        return index >= 0 && key <= ends[index] ? locations[locationIds[index]] : null;
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * @return the bytes held by the range arrays, without the location strings
+     */
+    public long memoryBytes() {
+        return starts.length * 12L;
+    }
+
+    /**
+     * @return the address as an unsigned value, -1 if the characters are not a dotted IPv4 address
+     */
+    static long parse(String text) {
+        long address = 0;
+        int octet = -1;
+        int dots = 0;
+        for (int i = text.startsWith("::ffff:") ? 7 : 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                if (octet < 0 || ++dots > 3) {
+                    return -1;
+                }
+                address = (address << 8) | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        return octet < 0 || dots != 3 ? -1 : (address << 8) | octet;
+    }
+}
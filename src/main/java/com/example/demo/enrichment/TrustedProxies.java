@@ -0,0 +1,167 @@
+package com.example.demo.enrichment;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The proxies allowed to name the client of a request in {@code X-Forwarded-For}, as single addresses or
+ * CIDR networks of IPv4 or IPv6.
+ * <p>
+ * Every proxy appends the address it received the request from, so only the right end of the header can be
+ * believed: the client is the rightmost hop that is not a trusted proxy. Anything left of it was written by
+ * the client or by an untrusted hop and may be made up. A request not coming from a trusted proxy keeps its
+ * remote address, whatever it claims in the header.
+ */
+public final class TrustedProxies {
+
+    public static final TrustedProxies NONE = new TrustedProxies(List.of(), new int[0]);
+
+    private final List<byte[]> networks;
+    private final int[] prefixLengths;
+
+    private TrustedProxies(List<byte[]> networks, int[] prefixLengths) {
+        this.networks = networks;
+        this.prefixLengths = prefixLengths;
+    }
+
+    /**
+     * @param csv comma separated addresses and CIDR networks, e.g. {@code 10.0.0.0/8,::1}, blank for none
+     * @return the trusted proxies
+     * @throws IllegalArgumentException if an entry is not an IP address or network
+     */
+    public static TrustedProxies parse(String csv) {
+        if (csv == null || csv.isBlank()) {
+            return NONE;
+        }
+        List<byte[]> networks = new ArrayList<>();
+        List<Integer> prefixLengths = new ArrayList<>();
+        for (String entry : csv.split(",")) {
+            entry = entry.strip();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int slash = entry.indexOf('/');
+            byte[] address = address(slash < 0 ? entry : entry.substring(0, slash));
+            if (address == null) {
+                throw new IllegalArgumentException("Invalid trusted proxy: " + entry);
+            }
+            int prefixLength = address.length * 8;
+            if (slash >= 0) {
+                try {
+                    prefixLength = Integer.parseInt(entry.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    prefixLength = -1;
+                }
+                if (prefixLength < 0 || prefixLength > address.length * 8) {
+                    throw new IllegalArgumentException("Invalid trusted proxy network: " + entry);
+                }
+            }
+            networks.add(address);
+            prefixLengths.add(prefixLength);
+        }
+        return new TrustedProxies(List.copyOf(networks),
+                prefixLengths.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * @param remoteAddr the address the request came from
+     * @param forwardedFor the {@code X-Forwarded-For} header, may be null
+     * @return the rightmost forwarded hop that is not a trusted proxy, the leftmost one if all are trusted,
+     *         or the remote address if the request did not come from a trusted proxy
+     */
+    public String clientIp(String remoteAddr, String forwardedFor) {
+        if (forwardedFor == null || forwardedFor.isBlank() || !contains(remoteAddr)) {
+            return remoteAddr;
+        }
+        String client = remoteAddr;
+        int end = forwardedFor.length();
+        while (end >= 0) {
+            int comma = forwardedFor.lastIndexOf(',', end - 1);
+            String hop = strip(forwardedFor.substring(comma + 1, end));
+            end = comma;
+            if (hop.isEmpty()) {
+                continue;
+            }
+            client = hop;
+            if (!contains(hop)) {
+                break;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * @param ip an IP address, may be null
+     * @return true if it is a trusted proxy, false also if it is not an IP address
+     */
+    public boolean contains(String ip) {
+        if (networks.isEmpty() || ip == null) {
+            return false;
+        }
+        byte[] address = address(strip(ip));
+        if (address == null) {
+            return false;
+        }
+        for (int i = 0; i < networks.size(); i++) {
+            if (matches(networks.get(i), prefixLengths[i], address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return networks.size();
+    }
+
+    private static boolean matches(byte[] network, int prefixLength, byte[] address) {
+        if (network.length != address.length) {
+            return false;
+        }
+        int fullBytes = prefixLength / 8;
+        for (int i = 0; i < fullBytes; i++) {
+            if (network[i] != address[i]) {
+                return false;
+            }
+        }
+        int restBits = prefixLength % 8;
+        if (restBits == 0) {
+            return true;
+        }
+        int mask = 0xff << (8 - restBits);
+        return (network[fullBytes] & mask) == (address[fullBytes] & mask);
+    }
+
+    /**
+     * @return the bytes of an IP literal, null if it is none. Host names are never resolved.
+     */
+    private static byte[] address(String ip) {
+        if (ip.isEmpty() || (ip.indexOf('.') < 0 && ip.indexOf(':') < 0)) {
+            return null;
+        }
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (Character.digit(c, 16) < 0 && c != '.' && c != ':') {
+                return null;
+            }
+        }
+        try {
+            // IPv4-mapped IPv6 addresses come back as IPv4
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the hop without blanks and the brackets around an IPv6 address
+     */
+    private static String strip(String hop) {
+        hop = hop.strip();
+        return hop.length() > 1 && hop.charAt(0) == '[' && hop.charAt(hop.length() - 1) == ']'
+                ? hop.substring(1, hop.length() - 1)
+                : hop;
+    }
+}
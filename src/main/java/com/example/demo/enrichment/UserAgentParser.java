@@ -0,0 +1,148 @@
+package com.example.demo.enrichment;
+
+import java.util.Locale;
+
+/**
+ * Derives the device type, OS version and app version from a User-Agent. It recognizes the own apps,
+ * which send {@code MusicApp/3.2.1 (iOS 17.4; iPhone15,2)}, the common browsers and the usual bots. It is
+ * a few substring searches, callers cache the results since a handful of User-Agents make up most traffic.
+ */
+public final class UserAgentParser {
+
+    private static final int MAX_LENGTH = 50;
+    private static final String[] BOT_MARKERS = { "bot", "crawler", "spider", "curl/", "wget/", "python-requests",
+            "okhttp", "headless" };
+    private static final String[] TV_MARKERS = { "smart-tv", "smarttv", "appletv", "crkey", "tizen", "webos",
+            "android tv", "googletv" };
+
+    private final String appToken;
+
+    /**
+     * @param appProduct the product token of the own apps, such as {@code MusicApp}
+     */
+    public UserAgentParser(String appProduct) {
+        this.appToken = appProduct == null || appProduct.isEmpty() ? null : appProduct + "/";
+    }
+
+    /**
+     * @param userAgent the User-Agent header, may be null
+     * @return what the User-Agent tells, {@link DeviceInfo#NONE} for null
+     */
+    public DeviceInfo parse(String userAgent) {
+        if (userAgent == null || userAgent.isBlank()) {
+            return DeviceInfo.NONE;
+        }
+        String lower = userAgent.toLowerCase(Locale.ROOT);
+        String appVersion = null;
+        if (appToken != null) {
+            int app = userAgent.indexOf(appToken);
+            if (app >= 0) {
+                appVersion = truncate(token(userAgent, app + appToken.length()));
+            }
+        }
+        return new DeviceInfo(deviceType(lower), truncate(osVersion(userAgent)), appVersion);
+    }
+
+    private static String deviceType(String lower) {
+        if (containsAny(lower, BOT_MARKERS)) {
+            return DeviceInfo.BOT;
+        }
+        if (containsAny(lower, TV_MARKERS)) {
+            return DeviceInfo.TV;
+        }
+        if (lower.contains("ipad") || lower.contains("tablet")) {
+            return DeviceInfo.TABLET;
+        }
+        if (lower.contains("android")) {
+            // browsers on Android tablets leave out "Mobile", the own apps never send it
+            return lower.startsWith("mozilla/") && !lower.contains("mobile") ? DeviceInfo.TABLET : DeviceInfo.MOBILE;
+        }
+        if (lower.contains("iphone") || lower.contains("ipod") || lower.contains("ios ") || lower.contains("mobile")) {
+            return DeviceInfo.MOBILE;
+        }
+        if (lower.contains("windows") || lower.contains("macintosh") || lower.contains("mac os")
+                || lower.contains("x11") || lower.contains("cros ") || lower.contains("linux")) {
+            return DeviceInfo.DESKTOP;
+        }
+        return DeviceInfo.UNKNOWN;
+    }
+
+    private static String osVersion(String userAgent) {
+        int index;
+        if ((index = userAgent.indexOf("iPhone OS ")) >= 0) {
+            return os("iOS", userAgent, index + 10);
+        }
+        if ((index = userAgent.indexOf("CPU OS ")) >= 0) {
+            return os("iPadOS", userAgent, index + 7);
+        }
+        if ((index = userAgent.indexOf("iPadOS ")) >= 0) {
+            return os("iPadOS", userAgent, index + 7);
+        }
+        if ((index = userAgent.indexOf("iOS ")) >= 0) {
+            return os("iOS", userAgent, index + 4);
+        }
+        if ((index = userAgent.indexOf("Android ")) >= 0) {
+            return os("Android", userAgent, index + 8);
+        }
+        if ((index = userAgent.indexOf("Windows NT ")) >= 0) {
+            return os("Windows", userAgent, index + 11);
+        }
+        if ((index = userAgent.indexOf("Mac OS X ")) >= 0) {
+            return os("macOS", userAgent, index + 9);
+        }
+        if (userAgent.contains("CrOS")) {
+            return "ChromeOS";
+        }
+        if (userAgent.contains("Android")) {
+            return "Android";
+        }
+        if (userAgent.contains("Linux")) {
+            return "Linux";
+        }
+        return null;
+    }
+
+    /**
+     * @return the OS name followed by the digits, dots and underscores from the index on, underscores as dots
+     */
+    private static String os(String name, String userAgent, int from) {
+        int end = from;
+        while (end < userAgent.length()) {
+            char c = userAgent.charAt(end);
+            if ((c < '0' || c > '9') && c != '.' && c != '_') {
+                break;
+            }
+            end++;
+        }
+        return end > from ? name + " " + userAgent.substring(from, end).replace('_', '.') : name;
+    }
+
+    /**
+     * @return the characters from the index up to the next separator
+     */
+    private static String token(String userAgent, int from) {
+        int end = from;
+        while (end < userAgent.length()) {
+            char c = userAgent.charAt(end);
+            if (c == ' ' || c == ';' || c == '(' || c == ')' || c == ',') {
+                break;
+            }
+            end++;
+        }
+        return end > from ? userAgent.substring(from, end) : null;
+    }
+
+    private static boolean containsAny(String text, String[] markers) {
+        for (String marker : markers) {
+            if (text.contains(marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String truncate(String value) {
+        // the metadata columns hold 50 characters
+        return value != null && value.length() > MAX_LENGTH ? value.substring(0, MAX_LENGTH) : value;
+    }
+}
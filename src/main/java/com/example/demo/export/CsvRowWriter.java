@@ -0,0 +1,83 @@
+package com.example.demo.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+
+import com.example.demo.repository.EventExportReader;
+
+/**
+ * Writes the rows as RFC 4180 CSV with a header line. Values holding a comma, quote or line break are
+ * quoted, null is an empty field, timestamps are ISO-8601 instants.
+ */
+final class CsvRowWriter implements EventRowWriter {
+
+    private final Writer writer;
+
+    CsvRowWriter(OutputStream out) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+    }
+
+    @Override
+    public void header() throws IOException {
+        writer.write(String.join(",", EventExportReader.FIELDS));
+        writer.write("\r\n");
+    }
+
+    @Override
+    public void write(ResultSet rs) throws SQLException, IOException {
+        for (int column = 1; column <= EventExportReader.FIELDS.size(); column++) {
+            if (column > 1) {
+                writer.write(',');
+            }
+            switch (column) {
+                case EventExportReader.ID -> writer.write(Long.toString(rs.getLong(column)));
+                case EventExportReader.COUNT -> writer.write(Integer.toString(rs.getInt(column)));
+                case EventExportReader.TIMESTAMP, EventExportReader.PROCESSED_AT -> {
+                    OffsetDateTime time = rs.getObject(column, OffsetDateTime.class);
+                    if (time != null) {
+                        writer.write(time.toInstant().toString());
+                    }
+                }
+                default -> writeString(rs.getString(column));
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    @Override
+    public void close() throws IOException {
+        // flush only, the stream belongs to the caller
+        writer.flush();
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
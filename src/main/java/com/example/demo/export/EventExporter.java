@@ -0,0 +1,320 @@
+package com.example.demo.export;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.ActionType;
+import com.example.demo.repository.DatabaseConcurrencyLimiter;
+import com.example.demo.repository.EventExportReader;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exports the events of a time range as gzip compressed NDJSON or CSV.
+ * <p>
+ * Rows are written from the result set to the compressor as the cursor returns them, so an export holds
+ * one fetch of rows and the compression buffers however many events it covers. A long window is split
+ * into time ranges exported in parallel, each by its own query and compressor into a gzip member in a
+ * spill file. The members are sent in range order as they complete, and concatenated gzip members read
+ * back as one stream, so the output equals that of a single range export.
+ * <p>
+ * At most {@code max-concurrent} exports run at once, a request beyond that is turned away before its
+ * response starts. Every range query holds a permit of the {@link DatabaseConcurrencyLimiter} while it
+ * reads, so exports share the connections with the other request-driven work instead of draining the pool.
+ */
+@Slf4j
+@Component
+public class EventExporter implements MeterBinder {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final EventPipelineProperties.Export settings;
+    private final EventExportReader eventExportReader;
+    private final DatabaseConcurrencyLimiter databaseConcurrencyLimiter;
+    private final JsonFactory jsonFactory;
+    private final Semaphore slots;
+    private final LongAdder exports = new LongAdder();
+    private final LongAdder exportedEvents = new LongAdder();
+    private final LongAdder exportedBytes = new LongAdder();
+    private volatile double lastEventsPerSecond;
+
+    public EventExporter(EventPipelineProperties properties, EventExportReader eventExportReader,
+            DatabaseConcurrencyLimiter databaseConcurrencyLimiter, ObjectMapper objectMapper) {
+        this.settings = properties.getExport();
+        this.eventExportReader = eventExportReader;
+        this.databaseConcurrencyLimiter = databaseConcurrencyLimiter;
+        this.jsonFactory = objectMapper.getFactory();
+        this.slots = new Semaphore(Math.max(1, settings.getMaxConcurrent()));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("events.export.exports", this, EventExporter::getExportCount)
+                .description("Completed event exports")
+                .register(registry);
+        FunctionCounter.builder("events.export.events", this, EventExporter::getExportedEventCount)
+                .description("Events written by completed exports")
+                .register(registry);
+        FunctionCounter.builder("events.export.size", this, EventExporter::getExportedBytes)
+                .description("Compressed bytes written by completed exports")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("events.export.rate", this, EventExporter::getLastEventsPerSecond)
+                .description("Events per second of the latest export")
+                .register(registry);
+        Gauge.builder("events.export.running", this, EventExporter::getRunningCount)
+                .description("Exports running")
+                .register(registry);
+    }
+
+    /**
+     * Decide how many ranges an export is split into, checked before the response starts
+     *
+     * @param from the earliest timestamp, inclusive
+     * @param to the latest timestamp, exclusive
+     * @param parallelism the requested number of ranges, null to derive it from the window
+     * @return the number of ranges
+     * @throws IllegalArgumentException if the range or the parallelism is invalid
+     */
+    public int ranges(Instant from, Instant to, Integer parallelism) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("From must be before to");
+        }
+        int max = Math.max(1, settings.getParallelism());
+        if (parallelism != null) {
+            if (parallelism < 1 || parallelism > max) {
+                throw new IllegalArgumentException("Parallelism must be between 1 and " + max);
+            }
+            return parallelism;
+        }
+        long window = Duration.between(from, to).toMillis();
+        long splitRange = Math.max(1, settings.getSplitRange().toMillis());
+        return (int) Math.max(1, Math.min(max, window / splitRange));
+    }
+
+    /**
+     * Take one of the export slots before the response starts, the export gives it back with
+     * {@link #release} once done
+     *
+     * @throws RejectedExecutionException if the maximum number of exports is running
+     */
+    public void reserve() {
+        if (!slots.tryAcquire()) {
+            throw new RejectedExecutionException("Too many exports running, at most "
+                    + Math.max(1, settings.getMaxConcurrent()));
+        }
+    }
+
+    /**
+     * Give back the slot taken by {@link #reserve}
+     */
+    public void release() {
+        slots.release();
+    }
+
+    /**
+     * Write the gzip compressed events of a time range
+     *
+     * @param format the format
+     * @param from the earliest timestamp, inclusive
+     * @param to the latest timestamp, exclusive
+     * @param action the action, null for all actions
+     * @param category the category, null for all categories
+     * @param ranges the number of ranges exported in parallel, see {@link #ranges}
+     * @param out the output, left open
+     * @return the summary of the export
+     * @throws IOException if the output or a spill file cannot be written
+     */
+    public ExportSummary export(ExportFormat format, Instant from, Instant to, ActionType action, String category,
+            int ranges, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        CountingOutputStream counting = new CountingOutputStream(out);
+        long events;
+        if (ranges <= 1) {
+            GZIPOutputStream gzip = new GZIPOutputStream(counting, BUFFER_BYTES);
+            events = writeRange(format, from, to, action, category, true, gzip, new AtomicBoolean());
+            gzip.finish();
+        } else {
+            events = exportRanges(format, from, to, action, category, ranges, counting);
+        }
+        counting.flush();
+
+        ExportSummary summary = new ExportSummary(format, from, to, ranges, events, counting.count,
+                System.nanoTime() - start);
+        exports.increment();
+        exportedEvents.add(events);
+        exportedBytes.add(counting.count);
+        lastEventsPerSecond = summary.getEventsPerSecond();
+        log.info("Exported {} events from {} to {} as {} in {} ranges: {} bytes in {} ms, {} events/s, {} KiB/s",
+                events, from, to, format, ranges, summary.getBytes(), summary.getDurationNanos() / 1_000_000,
+                Math.round(summary.getEventsPerSecond()), Math.round(summary.getBytesPerSecond() / 1024));
+        return summary;
+    }
+
+    public int getRunningCount() {
+        return Math.max(1, settings.getMaxConcurrent()) - slots.availablePermits();
+    }
+
+    public long getExportCount() {
+        return exports.sum();
+    }
+
+    public long getExportedEventCount() {
+        return exportedEvents.sum();
+    }
+
+    public long getExportedBytes() {
+        return exportedBytes.sum();
+    }
+
+    /**
+     * @return events per second of the latest export
+     */
+    public double getLastEventsPerSecond() {
+        return lastEventsPerSecond;
+    }
+
+    private long exportRanges(ExportFormat format, Instant from, Instant to, ActionType action, String category,
+            int ranges, OutputStream out) throws IOException {
+        // in millis, nanos overflow for windows of a few centuries
+        long window = Duration.between(from, to).toMillis();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<Path> files = new ArrayList<>(ranges);
+        List<Future<Long>> results = new ArrayList<>(ranges);
+        ExecutorService pool = Executors.newFixedThreadPool(ranges,
+                Thread.ofPlatform().name("event-export-", 0).daemon(true).factory());
+        try {
+            for (int i = 0; i < ranges; i++) {
+                Instant rangeFrom = i == 0 ? from : from.plusMillis(window / ranges * i);
+                Instant rangeTo = i == ranges - 1 ? to : from.plusMillis(window / ranges * (i + 1));
+                boolean header = i == 0;
+                Path file = spillFile();
+                files.add(file);
+                results.add(pool.submit(() -> {
+                    try (OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_BYTES)) {
+                        GZIPOutputStream gzip = new GZIPOutputStream(fileOut, BUFFER_BYTES);
+                        long events = writeRange(format, rangeFrom, rangeTo, action, category, header, gzip, cancelled);
+                        gzip.finish();
+                        return events;
+                    }
+                }));
+            }
+            long events = 0;
+            for (int i = 0; i < ranges; i++) {
+                events += results.get(i).get();
+                Files.copy(files.get(i), out);
+                Files.delete(files.get(i));
+            }
+            return events;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // stops the other ranges when one failed or the client went away
+            cancelled.set(true);
+            pool.shutdownNow();
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private long writeRange(ExportFormat format, Instant from, Instant to, ActionType action, String category,
+            boolean header, OutputStream out, AtomicBoolean cancelled) throws IOException {
+        long[] events = { 0 };
+        try (EventRowWriter writer = format.open(out, jsonFactory)) {
+            if (header) {
+                writer.header();
+            }
+            // the cursor holds its connection until the last row is written
+            databaseConcurrencyLimiter.run(() -> eventExportReader.stream(from, to, action, category, rs -> {
+                if (cancelled.get()) {
+                    throw new IllegalStateException("Export cancelled");
+                }
+                try {
+                    writer.write(rs);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                events[0]++;
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return events[0];
+    }
+
+    private Path spillFile() throws IOException {
+        String directory = settings.getSpillDirectory();
+        if (directory == null || directory.isBlank()) {
+            return Files.createTempFile("event-export-", ".gz");
+        }
+        Path path = Path.of(directory);
+        Files.createDirectories(path);
+        return Files.createTempFile(path, "event-export-", ".gz");
+    }
+
+    /**
+     * Counts the bytes passed to the output, writes arrays through as a whole
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() {
+            // the output belongs to the caller
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.demo.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.example.demo.repository.EventExportReader;
+
+/**
+ * Writes the rows of {@link EventExportReader} in an export format, column by column from the result set
+ */
+interface EventRowWriter extends Closeable {
+
+    /**
+     * Write what precedes the first row, once per export
+     *
+     * @throws IOException if the output cannot be written
+     */
+    void header() throws IOException;
+
+    /**
+     * @param rs the result set positioned on a row
+     * @throws SQLException if a column cannot be read
+     * @throws IOException if the output cannot be written
+     */
+    void write(ResultSet rs) throws SQLException, IOException;
+
+    /**
+     * Write out buffered output and close the writer, the underlying stream stays open
+     *
+     * @throws IOException if the output cannot be written
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,37 @@
+package com.example.demo.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+/**
+ * Formats of an event export, both written gzip compressed
+ */
+public enum ExportFormat {
+    NDJSON("ndjson"),
+    CSV("csv");
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return the file extension of the uncompressed export
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @param out the uncompressed output
+     * @param jsonFactory the factory of the JSON generators
+     * @return a writer of the rows in this format
+     * @throws IOException if the output cannot be opened
+     */
+    EventRowWriter open(OutputStream out, JsonFactory jsonFactory) throws IOException {
+        return this == NDJSON ? new NdjsonRowWriter(out, jsonFactory) : new CsvRowWriter(out);
+    }
+}
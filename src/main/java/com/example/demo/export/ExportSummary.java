@@ -0,0 +1,30 @@
+package com.example.demo.export;
+
+import java.time.Instant;
+
+import lombok.Value;
+
+/**
+ * Outcome of an event export, logged when it ends
+ */
+@Value
+public class ExportSummary {
+    ExportFormat format;
+    Instant from;
+    Instant to;
+    int ranges;
+    long events;
+    /**
+     * Compressed bytes written
+     */
+    long bytes;
+    long durationNanos;
+
+    public double getEventsPerSecond() {
+        return durationNanos == 0 ? 0.0 : events * 1e9 / durationNanos;
+    }
+
+    public double getBytesPerSecond() {
+        return durationNanos == 0 ? 0.0 : bytes * 1e9 / durationNanos;
+    }
+}
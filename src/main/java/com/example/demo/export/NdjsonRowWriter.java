@@ -0,0 +1,59 @@
+package com.example.demo.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+
+import com.example.demo.repository.EventExportReader;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * Writes every row as a JSON object on its own line, timestamps as ISO-8601 instants
+ */
+final class NdjsonRowWriter implements EventRowWriter {
+
+    private static final SerializedString[] FIELDS = EventExportReader.FIELDS.stream()
+            .map(SerializedString::new)
+            .toArray(SerializedString[]::new);
+
+    private final JsonGenerator generator;
+
+    NdjsonRowWriter(OutputStream out, JsonFactory jsonFactory) throws IOException {
+        this.generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public void header() {
+        // NDJSON has no header
+    }
+
+    @Override
+    public void write(ResultSet rs) throws SQLException, IOException {
+        generator.writeStartObject();
+        for (int column = 1; column <= FIELDS.length; column++) {
+            generator.writeFieldName(FIELDS[column - 1]);
+            switch (column) {
+                case EventExportReader.ID -> generator.writeNumber(rs.getLong(column));
+                case EventExportReader.COUNT -> generator.writeNumber(rs.getInt(column));
+                case EventExportReader.TIMESTAMP, EventExportReader.PROCESSED_AT -> {
+                    OffsetDateTime time = rs.getObject(column, OffsetDateTime.class);
+                    generator.writeString(time != null ? time.toInstant().toString() : null);
+                }
+                default -> generator.writeString(rs.getString(column));
+            }
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.demo.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.ActionType;
+import com.example.demo.pipeline.EventValidator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters of the event processing pipeline. All meters used per event are created up front or cached,
+ * so recording only costs a counter increment or a histogram update.
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String STAGE_TRANSFORM = "transform";
+    public static final String STAGE_ENRICH = "enrich";
+    public static final String STAGE_ROUTE = "route";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> retryAgeTimers = new ConcurrentHashMap<>();
+    private final Map<EventValidator.Violation, Counter> filteredCounters = new EnumMap<>(EventValidator.Violation.class);
+    private final Map<ActionType, Map<String, Counter>> routedCounters = new EnumMap<>(ActionType.class);
+    private final Counter duplicateCounter;
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (EventValidator.Violation violation : EventValidator.Violation.values()) {
+            filteredCounters.put(violation, Counter.builder("events.filtered")
+                    .description("Events dropped by the pipeline filter")
+                    .tag("reason", violation.name())
+                    .register(registry));
+        }
+        for (ActionType action : ActionType.values()) {
+            routedCounters.put(action, new ConcurrentHashMap<>());
+        }
+        duplicateCounter = Counter.builder("events.filtered")
+                .description("Events dropped by the pipeline filter")
+                .tag("reason", "DUPLICATE")
+                .register(registry);
+    }
+
+    /**
+     * Record the duration of a pipeline stage, such as the transform, the routing or a downstream handler
+     *
+     * @param stage the stage name
+     * @param startNanos the {@link System#nanoTime()} when the stage started
+     */
+    public void recordStage(String stage, long startNanos) {
+        stageTimers.computeIfAbsent(stage, this::stageTimer).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Count an event dropped by the filter
+     *
+     * @param violation the violated rule
+     */
+    public void recordFiltered(EventValidator.Violation violation) {
+        filteredCounters.get(violation).increment();
+    }
+
+    /**
+     * Count an event dropped as a duplicate
+     */
+    public void recordDuplicate() {
+        duplicateCounter.increment();
+    }
+
+    /**
+     * Count an event routed to a channel
+     *
+     * @param action the action of the event
+     * @param channel the name of the target channel
+     */
+    public void recordRouted(ActionType action, String channel) {
+        routedCounters.get(action).computeIfAbsent(channel, name -> Counter.builder("events.routed")
+                .description("Events routed to a downstream channel")
+                .tag("action", action.name())
+                .tag("channel", name)
+                .register(registry)).increment();
+    }
+
+    /**
+     * Record how long ago the first delivery of a retried event failed, when the retry runs
+     *
+     * @param channel the downstream channel
+     * @param ageNanos the time since the first failure
+     */
+    public void recordRetryAge(String channel, long ageNanos) {
+        retryAgeTimers.computeIfAbsent(channel, name -> Timer.builder("events.retry.age")
+                .description("Time since the first failed delivery of an event when it is retried")
+                .tag("channel", name)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry)).record(ageNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer stageTimer(String stage) {
+        return Timer.builder("events.stage.latency")
+                .description("Time spent in a pipeline stage per event")
+                .tag("stage", stage)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -13,6 +13,8 @@ public enum ActionType {
     LOGIN,
     LOGOUT;
     
+    private static final ActionType[] VALUES = values();
+
     /**
      * Convert string to enum value, case insensitive
      * 
@@ -23,11 +25,57 @@ public enum ActionType {
         if (action == null) {
             return null;
         }
-        
-        try {
-            return ActionType.valueOf(action.toUpperCase());
-        } catch (IllegalArgumentException e) {
-            return null;
+        for (ActionType type : VALUES) {
+            if (type.matches(action)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Convert a character range to enum value, case insensitive, without creating a string
+     *
+     * @param chars buffer holding the action
+     * @param offset start of the action in the buffer
+     * @param length length of the action
+     * @return corresponding enum value, or null if no match
+     */
+    public static ActionType fromChars(char[] chars, int offset, int length) {
+        for (ActionType type : VALUES) {
+            if (type.matches(chars, offset, length)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the characters are the name of this action, compared the way {@code toUpperCase} would
+     */
+    private boolean matches(String action) {
+        String name = name();
+        if (action.length() != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toUpperCase(action.charAt(i)) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(char[] chars, int offset, int length) {
+        String name = name();
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Character.toUpperCase(chars[offset + i]) != name.charAt(i)) {
+                return false;
+            }
         }
+        return true;
     }
-} 
\ No newline at end of file
+}
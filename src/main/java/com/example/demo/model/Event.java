@@ -18,4 +18,10 @@ public class Event {
     private Instant timestamp;
     private String source;
     private Instant processedAt;
+    private String userAgent;
+    private String deviceType;
+    private String osVersion;
+    private String appVersion;
+    private String ipAddress;
+    private String location;
 }
@@ -0,0 +1,40 @@
+package com.example.demo.model;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A completed listening session of a user: consecutive events without a longer pause than the inactivity gap
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ListeningSession {
+    private String userId;
+    private Instant start;
+    private Instant end;
+    private int events;
+    private int plays;
+    private int skips;
+    private int likes;
+    private int dislikes;
+    private int shares;
+    private double skipRatio;
+    private Duration listenDuration;
+    /**
+     * Songs played in order, capped at the configured maximum per session
+     */
+    private List<String> songIds;
+    /**
+     * Time between the play of a song and the next event of the session, in the order of {@link #songIds}
+     */
+    private List<Duration> dwellTimes;
+    private int distinctSongs;
+}
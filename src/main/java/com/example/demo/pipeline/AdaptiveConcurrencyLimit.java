@@ -0,0 +1,206 @@
+package com.example.demo.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import com.example.demo.config.EventPipelineProperties;
+
+/**
+ * Concurrency limit of a downstream service that follows its latency, additive increase and multiplicative
+ * decrease.
+ * <p>
+ * Calls are sampled in windows. The baseline is the lowest average latency of the recent windows, the
+ * latency of the service when it is not queueing. A window whose average exceeds the baseline by the
+ * tolerance, or with a failed call, shrinks the limit by the backoff ratio. A window that used the whole
+ * limit without either grows it by its square root, so the limit probes upwards quickly from a low value.
+ * One decision per window keeps a burst of slow completions from collapsing the limit at once, and the
+ * baseline forgets windows older than the baseline history, so a service that became slower for good is
+ * measured against its new latency.
+ * <p>
+ * Callers take a permit without locking. Only callers waiting for one and the decision at the end of a
+ * window take the lock, which is a {@link ReentrantLock} so a waiting virtual thread does not pin its carrier.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double tolerance;
+    private final long windowNanos;
+    private final int minWindowSamples;
+    private final LongSupplier nanoClock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+    private final LongAdder windowSamples = new LongAdder();
+    private final LongAdder windowLatencyNanos = new LongAdder();
+    private final LongAdder windowFailures = new LongAdder();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final double[] recentAverages;
+
+    private volatile int limit;
+    private volatile long windowStart;
+    private volatile double baselineNanos = Double.NaN;
+    private int recentCount;
+    private int recentNext;
+
+    public AdaptiveConcurrencyLimit(EventPipelineProperties.DownstreamLimits settings, LongSupplier nanoClock) {
+        this.minLimit = Math.max(1, settings.getMinLimit());
+        this.maxLimit = Math.max(minLimit, settings.getMaxLimit());
+        this.backoffRatio = settings.getBackoffRatio();
+        this.tolerance = settings.getLatencyTolerance();
+        this.windowNanos = settings.getWindow().toNanos();
+        this.minWindowSamples = Math.max(1, settings.getMinWindowSamples());
+        this.recentAverages = new double[Math.max(1, settings.getBaselineWindows())];
+        this.nanoClock = nanoClock;
+        this.limit = Math.clamp(settings.getInitialLimit(), minLimit, maxLimit);
+        this.windowStart = nanoClock.getAsLong();
+    }
+
+    /**
+     * Take a permit if fewer calls than the limit are in flight
+     *
+     * @return true if the call may go ahead, it must be followed by {@link #release}
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                windowMaxInFlight.accumulateAndGet(current + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Take a permit, waiting for one as long as the timeout allows
+     *
+     * @param timeoutNanos the maximum time to wait, 0 to give up at once
+     * @return true if the call may go ahead, it must be followed by {@link #release}
+     */
+    public boolean acquire(long timeoutNanos) {
+        if (tryAcquire()) {
+            return true;
+        }
+        if (timeoutNanos <= 0) {
+            return false;
+        }
+        long remaining = timeoutNanos;
+        lock.lock();
+        try {
+            // announced before trying again, a release either lets the attempt succeed or signals
+            waiting.incrementAndGet();
+            try {
+                while (!tryAcquire()) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                return true;
+            } finally {
+                waiting.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return a permit and record the outcome of the call
+     *
+     * @param latencyNanos the duration of the call
+     * @param failed whether the call failed
+     */
+    public void release(long latencyNanos, boolean failed) {
+        inFlight.decrementAndGet();
+        windowSamples.increment();
+        windowLatencyNanos.add(latencyNanos);
+        if (failed) {
+            windowFailures.increment();
+        }
+        long now = nanoClock.getAsLong();
+        if (now - windowStart >= windowNanos && lock.tryLock()) {
+            try {
+                if (now - windowStart >= windowNanos) {
+                    closeWindow(now);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (waiting.get() > 0) {
+            lock.lock();
+            try {
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the latency of the service when it is not queueing, in seconds, NaN before the first window
+     */
+    public double getBaselineSeconds() {
+        return baselineNanos / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Decide on the limit from the samples of the window, called under the lock
+     */
+    private void closeWindow(long now) {
+        long samples = windowSamples.sum();
+        long failures = windowFailures.sum();
+        if (samples < minWindowSamples && failures == 0) {
+            // too few calls to judge, the window goes on
+            return;
+        }
+        double average = (double) windowLatencyNanos.sumThenReset() / Math.max(1, samples);
+        windowSamples.add(-samples);
+        windowFailures.add(-failures);
+        int maxInFlight = windowMaxInFlight.getAndSet(inFlight.get());
+        windowStart = now;
+
+        double baseline = updateBaseline(average);
+        int current = limit;
+        if (failures > 0 || average > baseline * tolerance) {
+            limit = Math.max(minLimit, (int) (current * backoffRatio));
+        } else if (maxInFlight >= current) {
+            limit = Math.min(maxLimit, current + (int) Math.max(1, Math.sqrt(current)));
+            released.signalAll();
+        }
+    }
+
+    private double updateBaseline(double average) {
+        recentAverages[recentNext] = average;
+        recentNext = (recentNext + 1) % recentAverages.length;
+        recentCount = Math.min(recentCount + 1, recentAverages.length);
+        double baseline = average;
+        for (int i = 0; i < recentCount; i++) {
+            baseline = Math.min(baseline, recentAverages[i]);
+        }
+        baselineNanos = baseline;
+        return baseline;
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.demo.pipeline;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Flags users whose behaviour looks automated: too many events per second, or almost nothing but skips.
+ * <p>
+ * Every user has a sliding window counter approximated by two fixed windows, the previous window is
+ * weighted by the share of it still covered by the sliding window. That keeps the state per user at a
+ * few longs and every update O(1). The counters live in a concurrent map whose reads are lock-free, an
+ * update only locks the counters of its own user. Users idle for longer than the idle timeout are
+ * evicted by a periodic sweep, and no new users are tracked while the map is at its maximum size.
+ */
+@Slf4j
+@Component
+public class BotDetector implements MeterBinder {
+
+    private final EventPipelineProperties.BotDetection settings;
+    private final LongSupplier clock;
+    private final long windowMillis;
+    private final Map<String, UserWindow> users = new ConcurrentHashMap<>();
+    private final AtomicInteger trackedUsers = new AtomicInteger();
+    private final LongAdder flaggedEvents = new LongAdder();
+    private final LongAdder untrackedEvents = new LongAdder();
+    private final LongAdder evictedUsers = new LongAdder();
+
+    @Autowired
+    public BotDetector(EventPipelineProperties properties) {
+        this(properties.getBotDetection(), System::currentTimeMillis);
+    }
+
+    BotDetector(EventPipelineProperties.BotDetection settings, LongSupplier clock) {
+        this.settings = settings;
+        this.clock = clock;
+        this.windowMillis = Math.max(1, settings.getWindow().toMillis());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.bots.tracked", this, BotDetector::getTrackedUserCount)
+                .description("Users tracked by the bot detection")
+                .register(registry);
+        FunctionCounter.builder("events.bots.flagged", this, BotDetector::getFlaggedEventCount)
+                .description("Events of users flagged as bots by their behaviour")
+                .register(registry);
+        FunctionCounter.builder("events.bots.untracked", this, BotDetector::getUntrackedEventCount)
+                .description("Events not checked because the bot detection tracked too many users")
+                .register(registry);
+        FunctionCounter.builder("events.bots.evicted", this, BotDetector::getEvictedUserCount)
+                .description("Idle users evicted from the bot detection")
+                .register(registry);
+    }
+
+    /**
+     * Record an event and check whether its user behaves like a bot
+     *
+     * @param event the event
+     * @return true if the user is currently flagged as a bot
+     */
+    public boolean recordAndCheck(Event event) {
+        if (!settings.isEnabled() || event.getUserId() == null) {
+            return false;
+        }
+        UserWindow window = users.get(event.getUserId());
+        if (window == null) {
+            if (trackedUsers.get() >= settings.getMaxTrackedUsers()) {
+                untrackedEvents.increment();
+                return false;
+            }
+            window = users.computeIfAbsent(event.getUserId(), userId -> {
+                trackedUsers.incrementAndGet();
+                return new UserWindow();
+            });
+        }
+        boolean bot = window.record(event.getAction() == ActionType.SKIP, clock.getAsLong());
+        if (bot) {
+            flaggedEvents.increment();
+        }
+        return bot;
+    }
+
+    /**
+     * Drop the counters of users without events for longer than the idle timeout, unless still flagged
+     */
+    @Scheduled(fixedDelayString = "${events.bot-detection.sweep-interval:30s}")
+    public void evictIdleUsers() {
+        long now = clock.getAsLong();
+        long idleBefore = now - settings.getIdleTimeout().toMillis();
+        int evicted = 0;
+        for (Iterator<UserWindow> iterator = users.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().isIdle(idleBefore, now)) {
+                iterator.remove();
+                trackedUsers.decrementAndGet();
+                evicted++;
+            }
+        }
+        evictedUsers.add(evicted);
+        if (evicted > 0) {
+            log.debug("Evicted {} idle users from bot detection, {} tracked", evicted, trackedUsers.get());
+        }
+    }
+
+    public int getTrackedUserCount() {
+        return trackedUsers.get();
+    }
+
+    public long getFlaggedEventCount() {
+        return flaggedEvents.sum();
+    }
+
+    public long getUntrackedEventCount() {
+        return untrackedEvents.sum();
+    }
+
+    public long getEvictedUserCount() {
+        return evictedUsers.sum();
+    }
+
+    /**
+     * Counters of one user
+     */
+    private final class UserWindow {
+        private long windowStart;
+        private int currentEvents;
+        private int currentSkips;
+        private int previousEvents;
+        private int previousSkips;
+        private long flaggedUntil;
+        private volatile long lastSeen;
+
+        synchronized boolean record(boolean skip, long now) {
+            lastSeen = now;
+            long elapsed = now - windowStart;
+            if (elapsed >= windowMillis) {
+                // roll over, the previous window only counts if it directly precedes the current one
+                boolean adjacent = elapsed < 2 * windowMillis;
+                previousEvents = adjacent ? currentEvents : 0;
+                previousSkips = adjacent ? currentSkips : 0;
+                currentEvents = 0;
+                currentSkips = 0;
+                windowStart = now - (elapsed % windowMillis);
+                elapsed = now - windowStart;
+            }
+            currentEvents++;
+            if (skip) {
+                currentSkips++;
+            }
+            if (now < flaggedUntil) {
+                return true;
+            }
+
+            double previousWeight = (double) (windowMillis - elapsed) / windowMillis;
+            double events = currentEvents + previousEvents * previousWeight;
+            double skips = currentSkips + previousSkips * previousWeight;
+            double eventsPerSecond = events * 1000.0 / windowMillis;
+            boolean bot = eventsPerSecond > settings.getMaxEventsPerSecond()
+                    || (events >= settings.getMinEventsForSkipRatio() && skips / events > settings.getMaxSkipRatio());
+            if (bot) {
+                flaggedUntil = now + settings.getFlagDuration().toMillis();
+            }
+            return bot;
+        }
+
+        boolean isIdle(long idleBefore, long now) {
+            if (lastSeen >= idleBefore) {
+                return false;
+            }
+            synchronized (this) {
+                return now >= flaggedUntil;
+            }
+        }
+    }
+}
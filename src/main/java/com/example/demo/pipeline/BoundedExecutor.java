@@ -0,0 +1,172 @@
+package com.example.demo.pipeline;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.context.SmartLifecycle;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fixed size thread pool in front of a bounded queue, rejects work instead of blocking when the queue is full.
+ * It is drained on shutdown after the web server stopped accepting requests but before the integration
+ * endpoints are stopped, so queued events still reach their handlers. Executors fed by other executors
+ * stop in a later phase, so upstream queues are drained first.
+ * <p>
+ * It deliberately does not implement {@link Executor}, an Executor bean would replace the task executor
+ * Spring Boot auto-configures for the application.
+ */
+@Slf4j
+public class BoundedExecutor implements SmartLifecycle, MeterBinder {
+
+    /**
+     * Shutdown phase of executors taking work from the request threads
+     */
+    public static final int INGRESS_PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    /**
+     * Shutdown phase of executors taking work from other executors
+     */
+    public static final int DOWNSTREAM_PHASE = SmartLifecycle.DEFAULT_PHASE - 8192;
+
+    private final String name;
+    private final int phase;
+    private final int queueCapacity;
+    private final Duration drainTimeout;
+    private final ThreadPoolExecutor pool;
+    private final LongAdder rejected = new LongAdder();
+
+    public BoundedExecutor(String name, int threads, int queueCapacity, Duration drainTimeout,
+            ThreadFactory threadFactory, int phase) {
+        this.name = name;
+        this.phase = phase;
+        this.queueCapacity = queueCapacity;
+        this.drainTimeout = drainTimeout;
+        // the linked queue uses separate put and take locks, producers do not contend with the workers
+        this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), threadFactory, (task, executor) -> {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Queue of executor '" + name + "' is full");
+                });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.queue.depth", this, BoundedExecutor::getQueueDepth)
+                .description("Events waiting in the queue")
+                .tag("queue", name)
+                .register(registry);
+        Gauge.builder("events.queue.capacity", this, BoundedExecutor::getQueueCapacity)
+                .description("Capacity of the queue")
+                .tag("queue", name)
+                .register(registry);
+        Gauge.builder("events.queue.active", this, BoundedExecutor::getActiveThreads)
+                .description("Workers currently handling an event")
+                .tag("queue", name)
+                .register(registry);
+        FunctionCounter.builder("events.queue.rejected", this, BoundedExecutor::getRejectedCount)
+                .description("Events rejected because the queue was full")
+                .tag("queue", name)
+                .register(registry);
+    }
+
+    /**
+     * Check whether an exception, or one of its causes, is a rejection because an executor queue is full
+     *
+     * @param throwable the exception to check
+     * @return true if the work was rejected
+     */
+    public static boolean isRejection(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RejectedExecutionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queue a task
+     *
+     * @param task the task to run
+     * @throws RejectedExecutionException if the queue is full or the executor is shut down
+     */
+    public void execute(Runnable task) {
+        pool.execute(task);
+    }
+
+    /**
+     * @return this executor as a plain {@link Executor}, e.g. for an ExecutorChannel
+     */
+    public Executor asExecutor() {
+        return this::execute;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return pool.getMaximumPoolSize();
+    }
+
+    public int getActiveThreads() {
+        return pool.getActiveCount();
+    }
+
+    public int getQueueDepth() {
+        return pool.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getCompletedCount() {
+        return pool.getCompletedTaskCount();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void start() {
+        // threads are started lazily on the first task
+    }
+
+    @Override
+    public void stop() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(drainTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Executor '{}' not drained within {}, {} tasks dropped",
+                        name, drainTimeout, pool.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pool.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return !pool.isShutdown();
+    }
+
+    @Override
+    public int getPhase() {
+        return phase;
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.demo.pipeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import com.example.demo.config.EventPipelineProperties;
+
+/**
+ * Circuit breaker of a downstream service over the outcomes of its latest calls.
+ * <p>
+ * While closed every call goes through. When at least the minimum number of calls were made and the share
+ * of failures among the calls in the sliding window reaches the threshold, the breaker opens and turns calls
+ * away for the open duration. It then lets a few probe calls through half open: if all of them succeed it
+ * closes with an empty window, the first failure opens it again.
+ * <p>
+ * A closed breaker admits calls with a single volatile read and records outcomes without a lock, so the
+ * lanes calling a service do not wait for each other: a call takes the next slot of the ring of latest
+ * outcomes from an {@link AtomicLong}, swaps its outcome in and adjusts the failure count by the outcome it
+ * replaced. The {@link ReentrantLock} is only taken to open the breaker, and while it is not closed.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoClock;
+    private final int windowSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicReference<Window> window;
+    private final LongAdder opened = new LongAdder();
+
+    private volatile State state = State.CLOSED;
+    private volatile long openUntil;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    public CircuitBreaker(EventPipelineProperties.DownstreamLimits settings, LongSupplier nanoClock) {
+        this.failureRateThreshold = settings.getFailureRateThreshold();
+        this.windowSize = Math.max(1, settings.getSlidingWindowSize());
+        this.minimumCalls = Math.clamp(settings.getMinimumCalls(), 1, windowSize);
+        this.openNanos = settings.getOpenDuration().toNanos();
+        this.halfOpenCalls = Math.max(1, settings.getHalfOpenCalls());
+        this.nanoClock = nanoClock;
+        this.window = new AtomicReference<>(new Window(windowSize));
+    }
+
+    /**
+     * Ask whether a call may go ahead
+     *
+     * @return true if the call may go ahead, its outcome must be recorded with {@link #onSuccess},
+     *         {@link #onFailure} or {@link #onIgnored}
+     */
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                if (nanoClock.getAsLong() - openUntil < 0) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probesStarted = 0;
+                probesSucceeded = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesStarted >= halfOpenCalls) {
+                    return false;
+                }
+                probesStarted++;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onSuccess() {
+        record(false);
+    }
+
+    public void onFailure() {
+        record(true);
+    }
+
+    /**
+     * Give back a call that was admitted but never made
+     */
+    public void onIgnored() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN && probesStarted > 0) {
+                probesStarted--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if calls are turned away, false once the open duration is over
+     */
+    public boolean isOpen() {
+        return state == State.OPEN && nanoClock.getAsLong() - openUntil < 0;
+    }
+
+    /**
+     * @return how often the breaker opened
+     */
+    public long getOpenedCount() {
+        return opened.sum();
+    }
+
+    private void record(boolean failed) {
+        if (state == State.CLOSED) {
+            recordClosed(failed);
+            return;
+        }
+        lock.lock();
+        try {
+            switch (state) {
+                case CLOSED -> {
+                    // closed by the probes meanwhile, the call belongs to the new window
+                }
+                case HALF_OPEN -> {
+                    if (failed) {
+                        open();
+                    } else if (++probesSucceeded >= halfOpenCalls) {
+                        window.set(new Window(windowSize));
+                        state = State.CLOSED;
+                    }
+                }
+                case OPEN -> {
+                    // a call admitted before the breaker opened
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordClosed(boolean failed) {
+        Window current = window.get();
+        long call = current.next.getAndIncrement();
+        int outcome = failed ? 1 : 0;
+        int replaced = current.outcomes.getAndSet((int) (call % windowSize), outcome);
+        int failures = current.failures.addAndGet(outcome - replaced);
+        long calls = Math.min(call + 1, windowSize);
+        if (!failed || calls < minimumCalls || failures < failureRateThreshold * calls) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (state == State.CLOSED) {
+                open();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void open() {
+        openUntil = nanoClock.getAsLong() + openNanos;
+        state = State.OPEN;
+        opened.increment();
+    }
+
+    /**
+     * The latest outcomes of a closed breaker, 1 for a failure
+     */
+    private static final class Window {
+
+        private final AtomicLong next = new AtomicLong();
+        private final AtomicIntegerArray outcomes;
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private Window(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.demo.pipeline;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.example.demo.config.EventPipelineProperties;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Adaptive concurrency limit and circuit breaker in front of one downstream service. A call is made only
+ * when the breaker is not open and a permit of the limit becomes free within the maximum wait, otherwise
+ * it is turned away and the caller decides whether to drop, defer or reject the event.
+ */
+public class DownstreamGuard implements MeterBinder {
+
+    private final String name;
+    private final boolean enabled;
+    private final long maxWaitNanos;
+    private final LongSupplier nanoClock;
+    private final AdaptiveConcurrencyLimit limit;
+    private final CircuitBreaker breaker;
+    private final LongAdder limited = new LongAdder();
+    private final LongAdder broken = new LongAdder();
+
+    /**
+     * @param name the name of the downstream service
+     * @param enabled false to make every call without a limit or a breaker
+     * @param settings the limits of the service
+     * @param nanoClock the source of {@link System#nanoTime} compatible timestamps
+     */
+    public DownstreamGuard(String name, boolean enabled, EventPipelineProperties.DownstreamLimits settings,
+            LongSupplier nanoClock) {
+        this.name = name;
+        this.enabled = enabled;
+        this.maxWaitNanos = settings.getMaxWait().toNanos();
+        this.nanoClock = nanoClock;
+        this.limit = new AdaptiveConcurrencyLimit(settings, nanoClock);
+        this.breaker = new CircuitBreaker(settings, nanoClock);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.downstream.limit", this, DownstreamGuard::getLimit)
+                .description("Adaptive concurrency limit of the downstream service")
+                .tag("service", name)
+                .register(registry);
+        Gauge.builder("events.downstream.inflight", this, DownstreamGuard::getInFlight)
+                .description("Calls of the downstream service in flight")
+                .tag("service", name)
+                .register(registry);
+        Gauge.builder("events.downstream.baseline", this, DownstreamGuard::getBaselineSeconds)
+                .description("Latency of the downstream service when it is not queueing")
+                .tag("service", name)
+                .baseUnit("seconds")
+                .register(registry);
+        FunctionCounter.builder("events.downstream.rejected", this, DownstreamGuard::getLimitedCount)
+                .description("Calls turned away by the downstream guard")
+                .tag("service", name)
+                .tag("reason", "limit")
+                .register(registry);
+        FunctionCounter.builder("events.downstream.rejected", this, DownstreamGuard::getBrokenCount)
+                .description("Calls turned away by the downstream guard")
+                .tag("service", name)
+                .tag("reason", "breaker")
+                .register(registry);
+        Gauge.builder("events.downstream.breaker.state", this, g -> g.getBreakerState().ordinal())
+                .description("State of the circuit breaker, 0 closed, 1 half open, 2 open")
+                .tag("service", name)
+                .register(registry);
+        FunctionCounter.builder("events.downstream.breaker.opened", this, DownstreamGuard::getBreakerOpenedCount)
+                .description("Times the circuit breaker opened")
+                .tag("service", name)
+                .register(registry);
+    }
+
+    /**
+     * Make a call if the service takes it
+     *
+     * @param call the call of the service
+     * @return false if the call was turned away and not made
+     * @throws RuntimeException whatever the call threw, counted as a failure
+     */
+    public boolean run(Runnable call) {
+        if (!enabled) {
+            call.run();
+            return true;
+        }
+        if (!breaker.tryAcquire()) {
+            broken.increment();
+            return false;
+        }
+        if (!limit.acquire(maxWaitNanos)) {
+            breaker.onIgnored();
+            limited.increment();
+            return false;
+        }
+        long start = nanoClock.getAsLong();
+        boolean failed = true;
+        try {
+            call.run();
+            failed = false;
+            return true;
+        } finally {
+            limit.release(nanoClock.getAsLong() - start, failed);
+            if (failed) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+        }
+    }
+
+    /**
+     * Make a call, for callers that defer a call turned away rather than drop it
+     *
+     * @param call the call of the service
+     * @throws DownstreamRejectedException if the call was turned away and not made
+     * @throws RuntimeException whatever the call threw, counted as a failure
+     */
+    public void runOrThrow(Runnable call) {
+        if (!run(call)) {
+            throw new DownstreamRejectedException(name);
+        }
+    }
+
+    /**
+     * @return false while the breaker is open and calls would be turned away
+     */
+    public boolean isAvailable() {
+        return !enabled || !breaker.isOpen();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInFlight() {
+        return limit.getInFlight();
+    }
+
+    public double getBaselineSeconds() {
+        return limit.getBaselineSeconds();
+    }
+
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.getState();
+    }
+
+    public long getBreakerOpenedCount() {
+        return breaker.getOpenedCount();
+    }
+
+    /**
+     * @return calls turned away because the limit was reached
+     */
+    public long getLimitedCount() {
+        return limited.sum();
+    }
+
+    /**
+     * @return calls turned away because the breaker was open
+     */
+    public long getBrokenCount() {
+        return broken.sum();
+    }
+}
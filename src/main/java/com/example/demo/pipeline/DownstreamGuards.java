@@ -0,0 +1,60 @@
+package com.example.demo.pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * The guards of the downstream services, one per service, so each one is limited and broken on its own
+ */
+@Component
+public class DownstreamGuards implements MeterBinder {
+
+    public static final String ANALYTICS = "analytics";
+    public static final String AI_ENGINE = "aiEngine";
+    public static final String SOCIAL = "social";
+    public static final String STORAGE = "storage";
+
+    private static final List<String> SERVICES = List.of(ANALYTICS, AI_ENGINE, SOCIAL, STORAGE);
+
+    private final Map<String, DownstreamGuard> guards = new LinkedHashMap<>();
+
+    public DownstreamGuards(EventPipelineProperties properties) {
+        EventPipelineProperties.Downstream downstream = properties.getDownstream();
+        for (String service : SERVICES) {
+            EventPipelineProperties.DownstreamLimits limits = downstream.getServices()
+                    .getOrDefault(service, downstream.getDefaults());
+            guards.put(service, new DownstreamGuard(service, downstream.isEnabled(), limits, System::nanoTime));
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (DownstreamGuard guard : guards.values()) {
+            guard.bindTo(registry);
+        }
+    }
+
+    /**
+     * @param service analytics, aiEngine, social or storage
+     * @return the guard of the service
+     */
+    public DownstreamGuard get(String service) {
+        DownstreamGuard guard = guards.get(service);
+        if (guard == null) {
+            throw new IllegalArgumentException("Unknown downstream service: " + service);
+        }
+        return guard;
+    }
+
+    public List<DownstreamGuard> getAll() {
+        return List.copyOf(guards.values());
+    }
+}
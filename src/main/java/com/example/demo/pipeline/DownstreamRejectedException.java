@@ -0,0 +1,20 @@
+package com.example.demo.pipeline;
+
+/**
+ * A call turned away by the guard of a downstream service, because its breaker is open or its limit is
+ * reached. Not a {@link java.util.concurrent.RejectedExecutionException}, so the retry scheduler defers the
+ * delivery instead of passing it back to the sender as backpressure.
+ */
+public class DownstreamRejectedException extends RuntimeException {
+
+    private final String service;
+
+    public DownstreamRejectedException(String service) {
+        super("Downstream service " + service + " is saturated or failing, call turned away");
+        this.service = service;
+    }
+
+    public String getService() {
+        return service;
+    }
+}
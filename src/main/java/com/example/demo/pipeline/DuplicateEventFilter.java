@@ -0,0 +1,265 @@
+package com.example.demo.pipeline;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.Event;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Suppresses events seen before within a time window, identified by user, action, song and timestamp.
+ * <p>
+ * Only a 64-bit hash of every key is kept, in open addressing tables of primitive longs that are allocated
+ * once and reused, so millions of keys cost no per-event garbage. The window is split into generations:
+ * new keys go into the current generation, and the oldest generation is cleared when a new one starts.
+ * A key is therefore remembered for at least {@code window - window / generations}. The tables are split
+ * into shards by hash, each with its own lock, so concurrent lookups rarely contend. When a generation
+ * of a shard is full, new keys are let through without being remembered and counted as saturated.
+ */
+@Component
+public class DuplicateEventFilter implements MeterBinder {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final boolean enabled;
+    private final long generationMillis;
+    private final Shard[] shards;
+    private final int shardMask;
+    private final LongSupplier clock;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder saturated = new LongAdder();
+
+    @Autowired
+    public DuplicateEventFilter(EventPipelineProperties properties) {
+        this(properties.getDedup(), System::currentTimeMillis);
+    }
+
+    DuplicateEventFilter(EventPipelineProperties.Dedup settings, LongSupplier clock) {
+        this.enabled = settings.isEnabled();
+        this.clock = clock;
+        int generations = settings.getGenerations();
+        this.generationMillis = Math.max(1, settings.getWindow().toMillis() / generations);
+        int shardCount = Integer.highestOneBit(Math.max(1, settings.getShards()));
+        this.shardMask = shardCount - 1;
+        this.shards = new Shard[enabled ? shardCount : 0];
+        long keysPerTable = Math.max(16, settings.getMaxKeys() / generations / shardCount);
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(generations, (int) keysPerTable);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.dedup.hit.rate", this, DuplicateEventFilter::getHitRate)
+                .description("Share of checked events that were duplicates")
+                .register(registry);
+        Gauge.builder("events.dedup.keys", this, DuplicateEventFilter::getKeyCount)
+                .description("Keys remembered by the duplicate filter")
+                .register(registry);
+        Gauge.builder("events.dedup.memory", this, DuplicateEventFilter::getMemoryBytes)
+                .description("Memory held by the duplicate filter tables")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("events.dedup.saturated", this, DuplicateEventFilter::getSaturatedCount)
+                .description("Events not remembered because the filter tables were full")
+                .register(registry);
+    }
+
+    /**
+     * Check an event and remember it
+     *
+     * @param event the event to check
+     * @return true if the event was not seen within the window, false if it is a duplicate
+     */
+    public boolean isFirstOccurrence(Event event) {
+        if (!enabled) {
+            return true;
+        }
+        lookups.increment();
+        long key = hash(event);
+        Shard shard = shards[(int) (key >>> 32) & shardMask];
+        boolean first = shard.addIfAbsent(key, clock.getAsLong() / generationMillis, saturated);
+        if (!first) {
+            duplicates.increment();
+        }
+        return first;
+    }
+
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    public long getSaturatedCount() {
+        return saturated.sum();
+    }
+
+    public double getHitRate() {
+        long total = lookups.sum();
+        return total == 0 ? 0.0 : (double) duplicates.sum() / total;
+    }
+
+    public long getKeyCount() {
+        long keys = 0;
+        for (Shard shard : shards) {
+            keys += shard.size();
+        }
+        return keys;
+    }
+
+    /**
+     * @return the bytes held by the key tables, allocated up front
+     */
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            bytes += shard.memoryBytes();
+        }
+        return bytes;
+    }
+
+    static long hash(Event event) {
+        long h = FNV_OFFSET;
+        h = mix(h, event.getUserId());
+        h = (h ^ (event.getAction() != null ? event.getAction().ordinal() : -1)) * FNV_PRIME;
+        h = mix(h, event.getSongId());
+        Instant timestamp = event.getTimestamp();
+        if (timestamp != null) {
+            h = (h ^ timestamp.getEpochSecond()) * FNV_PRIME;
+            h = (h ^ timestamp.getNano()) * FNV_PRIME;
+        }
+        // murmur3 finalizer, spreads the FNV result over all bits used for shard and slot selection
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        // 0 marks an empty slot
+        return h == 0 ? 1 : h;
+    }
+
+    private static long mix(long h, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                h = (h ^ value.charAt(i)) * FNV_PRIME;
+            }
+        }
+        // separator, so "ab"+"c" and "a"+"bc" differ
+        return (h ^ 0xff) * FNV_PRIME;
+    }
+
+    /**
+     * One shard with a ring of generation tables
+     */
+    private static final class Shard {
+        private final long[][] tables;
+        private final int[] sizes;
+        private final long[] generationIds;
+        private final int capacity;
+        private int current;
+
+        Shard(int generations, int capacity) {
+            // at most half of the slots are used, which keeps linear probe sequences short
+            int length = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+            this.tables = new long[generations][length];
+            this.sizes = new int[generations];
+            this.generationIds = new long[generations];
+            this.capacity = length / 2;
+            Arrays.fill(generationIds, Long.MIN_VALUE);
+        }
+
+        synchronized boolean addIfAbsent(long key, long generationId, LongAdder saturated) {
+            rotate(generationId);
+            int generations = tables.length;
+            for (int g = 0; g < generations; g++) {
+                if (generationIds[g] != Long.MIN_VALUE && contains(tables[g], key)) {
+                    return false;
+                }
+            }
+            if (sizes[current] >= capacity) {
+                saturated.increment();
+                return true;
+            }
+            insert(tables[current], key);
+            sizes[current]++;
+            return true;
+        }
+
+        synchronized long size() {
+            long size = 0;
+            for (int s : sizes) {
+                size += s;
+            }
+            return size;
+        }
+
+        long memoryBytes() {
+            return (long) tables.length * tables[0].length * Long.BYTES;
+        }
+
+        /**
+         * Start a new generation if the clock moved on, clearing the one that fell out of the window
+         */
+        private void rotate(long generationId) {
+            if (generationIds[current] == generationId) {
+                return;
+            }
+            int generations = tables.length;
+            for (int g = 0; g < generations; g++) {
+                if (generationIds[g] != Long.MIN_VALUE && generationIds[g] <= generationId - generations) {
+                    clear(g);
+                }
+            }
+            if (generationIds[current] < generationId) {
+                current = (current + 1) % generations;
+                clear(current);
+                generationIds[current] = generationId;
+            }
+        }
+
+        private void clear(int generation) {
+            if (sizes[generation] > 0) {
+                Arrays.fill(tables[generation], 0L);
+                sizes[generation] = 0;
+            }
+            generationIds[generation] = Long.MIN_VALUE;
+        }
+
+        private static boolean contains(long[] table, long key) {
+            int mask = table.length - 1;
+            for (int slot = (int) key & mask; ; slot = (slot + 1) & mask) {
+                long value = table[slot];
+                if (value == key) {
+                    return true;
+                }
+                if (value == 0) {
+                    return false;
+                }
+            }
+        }
+
+        private static void insert(long[] table, long key) {
+            int mask = table.length - 1;
+            int slot = (int) key & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+        }
+    }
+}
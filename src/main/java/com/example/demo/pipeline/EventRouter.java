@@ -0,0 +1,154 @@
+package com.example.demo.pipeline;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.springframework.integration.router.AbstractMessageRouter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessagingException;
+
+import com.example.demo.metrics.PipelineMetrics;
+import com.example.demo.model.Event;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Routes events to the downstream channels with a compiled {@link RoutingTable}.
+ * <p>
+ * The table is replaced as a whole: a new rule set is compiled and validated first, then published with a
+ * single volatile write. Events in flight finish with the table they started with, and no event ever sees
+ * a partially updated table, so rules can change while ingestion keeps running.
+ * <p>
+ * Events not routed to the storage channel are reported to a handler, so the write-ahead log does not
+ * wait for them to be stored.
+ * <p>
+ * A failed send to a best-effort channel, such as the full fan-out queue of a service the event can do
+ * without, is skipped so it does not keep the event from the other channels. A failed send to any other
+ * channel goes to the send failure handler, which throws it to the sender unless one is set.
+ */
+@Slf4j
+public class EventRouter extends AbstractMessageRouter {
+
+    private final Map<String, MessageChannel> channels;
+    private final BotDetector botDetector;
+    private final PipelineMetrics pipelineMetrics;
+    private volatile RoutingTable table;
+    private MessageChannel storageChannel;
+    private Consumer<Message<?>> notStoredHandler;
+    private Set<MessageChannel> bestEffortChannels = Set.of();
+    private SendFailureHandler sendFailureHandler = (channel, message, failure) -> {
+        throw failure;
+    };
+
+    public EventRouter(Map<String, MessageChannel> channels, List<RoutingRule> rules, BotDetector botDetector,
+            PipelineMetrics pipelineMetrics) {
+        this.channels = Map.copyOf(channels);
+        this.botDetector = botDetector;
+        this.pipelineMetrics = pipelineMetrics;
+        this.table = RoutingTable.compile(rules, this.channels);
+    }
+
+    /**
+     * @param storageChannel the channel storing events
+     * @param notStoredHandler called with every event not routed to the storage channel
+     */
+    public void setNotStoredHandler(MessageChannel storageChannel, Consumer<Message<?>> notStoredHandler) {
+        this.storageChannel = storageChannel;
+        this.notStoredHandler = notStoredHandler;
+    }
+
+    /**
+     * @param bestEffortChannels the channels whose failed sends are skipped
+     */
+    public void setBestEffortChannels(Collection<MessageChannel> bestEffortChannels) {
+        this.bestEffortChannels = Set.copyOf(bestEffortChannels);
+    }
+
+    /**
+     * @param sendFailureHandler called when a send to a channel that is not best-effort fails
+     */
+    public void setSendFailureHandler(SendFailureHandler sendFailureHandler) {
+        this.sendFailureHandler = sendFailureHandler;
+    }
+
+    /**
+     * @return the rules currently routing events
+     */
+    public List<RoutingRule> getRules() {
+        return table.getRules();
+    }
+
+    /**
+     * Replace the routing rules, events already being routed keep using the previous rules
+     *
+     * @param rules the new rules in match order
+     * @throws IllegalArgumentException if the rules are invalid, the current rules are kept then
+     */
+    public void updateRules(List<RoutingRule> rules) {
+        table = RoutingTable.compile(rules, channels);
+        log.info("Routing rules replaced, {} rules active", rules.size());
+    }
+
+    @Override
+    protected Collection<MessageChannel> determineTargetChannels(Message<?> message) {
+        long start = System.nanoTime();
+        Event event = (Event) message.getPayload();
+        RoutingTable.Route route = table.route(event, botDetector.recordAndCheck(event));
+        if (route == null) {
+            notStored(message);
+            pipelineMetrics.recordStage(PipelineMetrics.STAGE_ROUTE, start);
+            return List.of();
+        }
+        List<MessageChannel> targets = route.getChannels();
+        if (storageChannel != null && !targets.contains(storageChannel)) {
+            notStored(message);
+        }
+        if (event.getAction() != null) {
+            for (int i = 0; i < targets.size(); i++) {
+                pipelineMetrics.recordRouted(event.getAction(), route.getChannelName(i));
+            }
+        }
+        pipelineMetrics.recordStage(PipelineMetrics.STAGE_ROUTE, start);
+        return targets;
+    }
+
+    @Override
+    protected void handleMessageInternal(Message<?> message) {
+        Collection<MessageChannel> targets = determineTargetChannels(message);
+        if (targets.isEmpty()) {
+            throw new MessageDeliveryException(message,
+                    "No channel resolved by router '" + getComponentName() + "'");
+        }
+        for (MessageChannel target : targets) {
+            try {
+                getMessagingTemplate().send(target, message);
+            } catch (MessagingException e) {
+                if (bestEffortChannels.contains(target)) {
+                    // the rejection is counted by the queue, the other channels still get the event
+                    log.debug("Send to best-effort channel {} failed, skipped", target, e);
+                } else {
+                    sendFailureHandler.handle(target, message, e);
+                }
+            }
+        }
+    }
+
+    private void notStored(Message<?> message) {
+        if (notStoredHandler != null) {
+            notStoredHandler.accept(message);
+        }
+    }
+
+    /**
+     * Handles a failed send to a channel that is not best-effort, throwing the failure fails the sender
+     */
+    @FunctionalInterface
+    public interface SendFailureHandler {
+        void handle(MessageChannel channel, Message<?> message, MessagingException failure);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.demo.pipeline;
+
+import java.time.Instant;
+
+import com.example.demo.dto.RawEventDTO;
+import com.example.demo.model.Event;
+
+/**
+ * Turns the raw input of the ingestion endpoints into the standardized event of the pipeline
+ */
+public final class EventTransformer {
+
+    private EventTransformer() {
+    }
+
+    /**
+     * @param rawEvent the raw event
+     * @return the standardized event, stamped with the processing time and the time of arrival if it had none
+     */
+    public static Event transform(RawEventDTO rawEvent) {
+        Instant now = Instant.now();
+        return Event.builder()
+                .userId(rawEvent.getUserId())
+                .action(rawEvent.getActionType())
+                .songId(rawEvent.getSongId())
+                .timestamp(rawEvent.getTimestamp() != null ? rawEvent.getTimestamp() : now)
+                .source("WEB")
+                .processedAt(now)
+                .userAgent(rawEvent.getUserAgent())
+                .ipAddress(rawEvent.getClientIp())
+                .build();
+    }
+}
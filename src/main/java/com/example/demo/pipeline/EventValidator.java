@@ -0,0 +1,52 @@
+package com.example.demo.pipeline;
+
+import com.example.demo.model.ActionType;
+
+/**
+ * Validation rules shared by the pipeline filter and the ingestion endpoints
+ */
+public final class EventValidator {
+
+    /**
+     * Reasons an event is rejected by the pipeline filter
+     */
+    public enum Violation {
+        MISSING_USER_ID("userId is required"),
+        UNKNOWN_ACTION("action is missing or unknown"),
+        MISSING_SONG_ID("songId is required for this action");
+
+        private final String message;
+
+        Violation(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private EventValidator() {
+    }
+
+    /**
+     * Validate the fields of an event
+     *
+     * @param userId the user id
+     * @param action the resolved action type, null if unknown
+     * @param songId the song id
+     * @return the first violated rule, or null if the event is valid
+     */
+    public static Violation validate(String userId, ActionType action, String songId) {
+        if (userId == null || userId.isEmpty()) {
+            return Violation.MISSING_USER_ID;
+        }
+        if (action == null) {
+            return Violation.UNKNOWN_ACTION;
+        }
+        if (songId == null && action != ActionType.LOGIN && action != ActionType.LOGOUT) {
+            return Violation.MISSING_SONG_ID;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.demo.pipeline;
+
+import java.util.function.Function;
+
+import org.springframework.integration.channel.AbstractSubscribableChannel;
+import org.springframework.integration.channel.ChannelUtils;
+import org.springframework.integration.dispatcher.MessageDispatcher;
+import org.springframework.integration.dispatcher.UnicastingDispatcher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.ErrorHandler;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Channel handing each message to the lane of its partition key in a {@link LaneExecutor}, so messages
+ * with the same key reach the subscriber one at a time and in the order they were sent. The subscriber
+ * runs on the lane thread, everything it calls synchronously keeps that order.
+ * <p>
+ * A full lane rejects the message, the sender sees the rejection like with a bounded ExecutorChannel.
+ * Like there, a subscriber failing on the lane thread is reported to the error handler, by default the one
+ * publishing to the {@code errorChannel}, and the lane goes on with its next message.
+ */
+@Slf4j
+public class LaneChannel extends AbstractSubscribableChannel {
+
+    private final LaneExecutor lanes;
+    private final Function<Message<?>, Object> partitionKey;
+    private final UnicastingDispatcher dispatcher = new UnicastingDispatcher();
+    private volatile ErrorHandler errorHandler;
+
+    /**
+     * @param lanes the lanes running the subscriber
+     * @param partitionKey extracts the key of a message, messages of one key stay in order
+     */
+    public LaneChannel(LaneExecutor lanes, Function<Message<?>, Object> partitionKey) {
+        this.lanes = lanes;
+        this.partitionKey = partitionKey;
+    }
+
+    /**
+     * @param errorHandler receives the failures of the subscriber
+     */
+    public void setErrorHandler(ErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    @Override
+    protected MessageDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    @Override
+    protected void onInit() {
+        super.onInit();
+        if (errorHandler == null && getBeanFactory() != null) {
+            errorHandler = ChannelUtils.getErrorHandler(getBeanFactory());
+        }
+    }
+
+    @Override
+    protected boolean doSend(Message<?> message, long timeout) {
+        lanes.execute(partitionKey.apply(message), () -> {
+            try {
+                dispatcher.dispatch(message);
+            } catch (RuntimeException e) {
+                // keep the lane thread, the next message of the lane must not wait for a new one
+                ErrorHandler handler = errorHandler;
+                if (handler == null) {
+                    log.error("Failed to handle message on channel '{}'", getComponentName(), e);
+                    return;
+                }
+                handler.handleError(e instanceof MessagingException ? e : new MessagingException(message, e));
+            }
+        });
+        return true;
+    }
+}
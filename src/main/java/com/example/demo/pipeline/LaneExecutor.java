@@ -0,0 +1,167 @@
+package com.example.demo.pipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.context.SmartLifecycle;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * A set of single-threaded lanes, each in front of its own bounded queue. Work is assigned to a lane by
+ * the hash of its key, so work of the same key runs in submission order on one thread while different
+ * keys spread over all lanes. Lanes share nothing, a slow or hot key only backs up its own lane.
+ * <p>
+ * Like {@link BoundedExecutor} it rejects work when a lane queue is full and drains the lanes on shutdown.
+ */
+public class LaneExecutor implements SmartLifecycle, MeterBinder {
+
+    private final String name;
+    private final int phase;
+    private final List<BoundedExecutor> lanes;
+
+    /**
+     * @param name the name of the lanes, lane threads are named after it
+     * @param laneCount the number of lanes
+     * @param laneQueueCapacity the number of tasks that can wait in each lane
+     * @param drainTimeout the maximum time to drain a lane on shutdown
+     * @param phase the lifecycle phase
+     */
+    public LaneExecutor(String name, int laneCount, int laneQueueCapacity, Duration drainTimeout, int phase) {
+        this.name = name;
+        this.phase = phase;
+        int count = Math.max(1, laneCount);
+        List<BoundedExecutor> executors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String laneName = name + "-lane-" + i;
+            executors.add(new BoundedExecutor(laneName, 1, Math.max(1, laneQueueCapacity), drainTimeout,
+                    Thread.ofPlatform().name(laneName).factory(), phase));
+        }
+        this.lanes = List.copyOf(executors);
+    }
+
+    /**
+     * Queue a task on the lane of its key
+     *
+     * @param key the key, null keys share a lane
+     * @param task the task to run
+     * @throws RejectedExecutionException if the lane queue is full or the executor is shut down
+     */
+    public void execute(Object key, Runnable task) {
+        lanes.get(laneOf(key)).execute(task);
+    }
+
+    /**
+     * @param key a key
+     * @return the index of the lane running the work of the key
+     */
+    public int laneOf(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        // spread the high bits, user ids often differ only in their last characters
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.size());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the lanes, in lane index order
+     */
+    public List<BoundedExecutor> getLanes() {
+        return lanes;
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (BoundedExecutor lane : lanes) {
+            depth += lane.getQueueDepth();
+        }
+        return depth;
+    }
+
+    public int getQueueCapacity() {
+        return lanes.get(0).getQueueCapacity() * lanes.size();
+    }
+
+    public int getActiveThreads() {
+        int active = 0;
+        for (BoundedExecutor lane : lanes) {
+            active += lane.getActiveThreads();
+        }
+        return active;
+    }
+
+    public long getCompletedCount() {
+        long completed = 0;
+        for (BoundedExecutor lane : lanes) {
+            completed += lane.getCompletedCount();
+        }
+        return completed;
+    }
+
+    public long getRejectedCount() {
+        long rejected = 0;
+        for (BoundedExecutor lane : lanes) {
+            rejected += lane.getRejectedCount();
+        }
+        return rejected;
+    }
+
+    /**
+     * Imbalance of the lanes: the work of the busiest lane relative to the mean, 1.0 if all lanes got
+     * the same share. Work counts completed and queued tasks.
+     *
+     * @return the skew, 1.0 before any work arrived
+     */
+    public double getSkew() {
+        long total = 0;
+        long max = 0;
+        for (BoundedExecutor lane : lanes) {
+            long work = lane.getCompletedCount() + lane.getQueueDepth();
+            total += work;
+            max = Math.max(max, work);
+        }
+        return total == 0 ? 1.0 : (double) max * lanes.size() / total;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (BoundedExecutor lane : lanes) {
+            lane.bindTo(registry);
+        }
+        Gauge.builder("events.lanes.skew", this, LaneExecutor::getSkew)
+                .description("Events of the busiest ingestion lane relative to the mean, 1.0 when balanced")
+                .register(registry);
+    }
+
+    @Override
+    public void start() {
+        // threads are started lazily on the first task
+    }
+
+    @Override
+    public void stop() {
+        // lanes keep working while earlier lanes are awaited, so they drain concurrently
+        for (BoundedExecutor lane : lanes) {
+            lane.stop();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return lanes.get(0).isRunning();
+    }
+
+    @Override
+    public int getPhase() {
+        return phase;
+    }
+}
@@ -0,0 +1,359 @@
+package com.example.demo.pipeline;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+import com.example.demo.model.ListeningSession;
+import com.example.demo.service.AiEngineService;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Groups the events of every user into listening sessions and hands completed sessions to the AI engine.
+ * <p>
+ * A session ends when the next event of its user is more than the inactivity gap of event time later, or
+ * when no event arrived for the inactivity gap of wall clock time. Its features are updated with every
+ * event, so completing a session does not look at its events again. Open sessions are split into
+ * partitions by user, each with its own lock and kept in order of last activity, so the sweep only visits
+ * the sessions it completes and the least recently active session can be completed early when a partition
+ * is full. Completed sessions are handed over outside the partition lock.
+ * <p>
+ * On shutdown the open sessions are completed once the downstream executors recorded their last events,
+ * while the retry scheduler still parks a hand-over that fails.
+ */
+@Slf4j
+@Component
+public class ListeningSessionTracker implements SmartLifecycle, MeterBinder {
+
+    /**
+     * Stop after the downstream executors and before the retry scheduler, like the social dispatcher
+     */
+    private static final int PHASE = BoundedExecutor.DOWNSTREAM_PHASE - 512;
+
+    private final EventPipelineProperties.Sessions settings;
+    private volatile Consumer<ListeningSession> sink;
+    private final LongSupplier clock;
+    private final long gapMillis;
+    private final long maxTrackMillis;
+    private final Partition[] partitions;
+    private final int partitionMask;
+    private final int maxSessionsPerPartition;
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final LongAdder completedSessions = new LongAdder();
+    private final LongAdder evictedSessions = new LongAdder();
+    private volatile boolean running;
+
+    @Autowired
+    public ListeningSessionTracker(EventPipelineProperties properties, AiEngineService aiEngineService) {
+        this(properties.getSessions(), aiEngineService::processSession, System::currentTimeMillis);
+    }
+
+    ListeningSessionTracker(EventPipelineProperties.Sessions settings, Consumer<ListeningSession> sink,
+            LongSupplier clock) {
+        this.settings = settings;
+        this.sink = sink;
+        this.clock = clock;
+        this.gapMillis = settings.getInactivityGap().toMillis();
+        this.maxTrackMillis = settings.getMaxTrackDuration().toMillis();
+        int partitionCount = Integer.highestOneBit(Math.max(1, settings.getPartitions()));
+        this.partitionMask = partitionCount - 1;
+        this.maxSessionsPerPartition = Math.max(1, settings.getMaxSessions() / partitionCount);
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.sessions.open", this, ListeningSessionTracker::getOpenSessionCount)
+                .description("Listening sessions in progress")
+                .register(registry);
+        FunctionCounter.builder("events.sessions.completed", this,
+                ListeningSessionTracker::getCompletedSessionCount)
+                .description("Listening sessions handed to the AI engine")
+                .register(registry);
+        FunctionCounter.builder("events.sessions.evicted", this,
+                ListeningSessionTracker::getEvictedSessionCount)
+                .description("Listening sessions completed early because the tracker was full")
+                .register(registry);
+    }
+
+    /**
+     * @param sink receives the completed sessions instead of the AI engine
+     */
+    public void setSink(Consumer<ListeningSession> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Add an event to the open session of its user, completing the previous session if the gap was exceeded
+     *
+     * @param event the event
+     */
+    public void record(Event event) {
+        if (!settings.isEnabled() || event.getUserId() == null || event.getAction() == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        long time = event.getTimestamp() != null ? event.getTimestamp().toEpochMilli() : now;
+        Partition partition = partitions[spread(event.getUserId().hashCode()) & partitionMask];
+        List<ListeningSession> completed = null;
+        synchronized (partition) {
+            OpenSession session = partition.sessions.get(event.getUserId());
+            if (session != null && time - session.lastEventTime > gapMillis) {
+                partition.sessions.remove(event.getUserId());
+                openSessions.decrementAndGet();
+                completed = new ArrayList<>(2);
+                completed.add(session.complete());
+                session = null;
+            }
+            if (session == null) {
+                if (partition.sessions.size() >= maxSessionsPerPartition) {
+                    // complete the least recently active session early rather than growing without bound
+                    Iterator<OpenSession> eldest = partition.sessions.values().iterator();
+                    OpenSession evicted = eldest.next();
+                    eldest.remove();
+                    openSessions.decrementAndGet();
+                    evictedSessions.increment();
+                    if (completed == null) {
+                        completed = new ArrayList<>(1);
+                    }
+                    completed.add(evicted.complete());
+                }
+                session = new OpenSession(event.getUserId(), time);
+                partition.sessions.put(event.getUserId(), session);
+                openSessions.incrementAndGet();
+            }
+            session.add(event, time, now);
+        }
+        if (completed != null) {
+            emit(completed);
+        }
+    }
+
+    /**
+     * Complete the sessions without events for the inactivity gap
+     */
+    @Scheduled(fixedDelayString = "${events.sessions.sweep-interval:30s}")
+    public void completeIdleSessions() {
+        long idleBefore = clock.getAsLong() - gapMillis;
+        for (Partition partition : partitions) {
+            List<ListeningSession> completed = new ArrayList<>();
+            synchronized (partition) {
+                // sessions are in order of last activity, the first active one ends the scan
+                for (Iterator<OpenSession> iterator = partition.sessions.values().iterator(); iterator.hasNext(); ) {
+                    OpenSession session = iterator.next();
+                    if (session.lastSeen >= idleBefore) {
+                        break;
+                    }
+                    iterator.remove();
+                    openSessions.decrementAndGet();
+                    completed.add(session.complete());
+                }
+            }
+            emit(completed);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        completeAllSessions();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    /**
+     * Complete all open sessions, called on shutdown
+     */
+    public void completeAllSessions() {
+        for (Partition partition : partitions) {
+            List<ListeningSession> completed = new ArrayList<>();
+            synchronized (partition) {
+                for (OpenSession session : partition.sessions.values()) {
+                    completed.add(session.complete());
+                }
+                openSessions.addAndGet(-partition.sessions.size());
+                partition.sessions.clear();
+            }
+            emit(completed);
+        }
+    }
+
+    public int getOpenSessionCount() {
+        return openSessions.get();
+    }
+
+    public long getCompletedSessionCount() {
+        return completedSessions.sum();
+    }
+
+    public long getEvictedSessionCount() {
+        return evictedSessions.sum();
+    }
+
+    private void emit(List<ListeningSession> completed) {
+        for (ListeningSession session : completed) {
+            completedSessions.increment();
+            try {
+                sink.accept(session);
+            } catch (RuntimeException e) {
+                log.error("Failed to hand over session of user {}", session.getUserId(), e);
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Open sessions of a share of the users, in order of last activity
+     */
+    private static final class Partition {
+        private final LinkedHashMap<String, OpenSession> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Features of a session in progress, updated event by event
+     */
+    private final class OpenSession {
+        private final String userId;
+        private long start;
+        private long lastEventTime;
+        private long lastSeen;
+        private int events;
+        private int plays;
+        private int skips;
+        private int likes;
+        private int dislikes;
+        private int shares;
+        private long listenMillis;
+        private long playStart = -1;
+        private int playIndex = -1;
+        private final List<String> songIds = new ArrayList<>();
+        private long[] dwellMillis = new long[8];
+
+        private OpenSession(String userId, long start) {
+            this.userId = userId;
+            this.start = start;
+            this.lastEventTime = start;
+        }
+
+        private void add(Event event, long time, long now) {
+            if (endsPlay(event.getAction())) {
+                endPlay(time);
+            }
+            events++;
+            start = Math.min(start, time);
+            lastEventTime = Math.max(lastEventTime, time);
+            lastSeen = now;
+            switch (event.getAction()) {
+                case PLAY -> {
+                    plays++;
+                    playStart = time;
+                    if (event.getSongId() != null && songIds.size() < settings.getMaxSongsPerSession()) {
+                        playIndex = songIds.size();
+                        songIds.add(event.getSongId());
+                        if (songIds.size() > dwellMillis.length) {
+                            dwellMillis = Arrays.copyOf(dwellMillis, dwellMillis.length * 2);
+                        }
+                    }
+                }
+                case SKIP -> skips++;
+                case LIKE -> likes++;
+                case DISLIKE -> dislikes++;
+                case SHARE -> shares++;
+                default -> {
+                    // PAUSE and LOGOUT end the current song, LOGIN only counts as activity
+                }
+            }
+        }
+
+        /**
+         * LIKE, SHARE and DISLIKE happen while a song plays, they do not end it
+         */
+        private boolean endsPlay(ActionType action) {
+            return action == ActionType.PLAY || action == ActionType.SKIP || action == ActionType.PAUSE
+                    || action == ActionType.LOGOUT;
+        }
+
+        private void endPlay(long time) {
+            if (playStart < 0) {
+                return;
+            }
+            // the song played since its PLAY event, unless the event ending it was lost
+            long dwell = Math.min(Math.max(0, time - playStart), maxTrackMillis);
+            listenMillis += dwell;
+            if (playIndex >= 0) {
+                dwellMillis[playIndex] = dwell;
+            }
+            playStart = -1;
+            playIndex = -1;
+        }
+
+        /**
+         * @return the features of the session, a song still playing ends with the last event of the session
+         */
+        private ListeningSession complete() {
+            endPlay(lastEventTime);
+            List<Duration> dwellTimes = new ArrayList<>(songIds.size());
+            for (int i = 0; i < songIds.size(); i++) {
+                dwellTimes.add(Duration.ofMillis(dwellMillis[i]));
+            }
+            return ListeningSession.builder()
+                    .userId(userId)
+                    .start(Instant.ofEpochMilli(start))
+                    .end(Instant.ofEpochMilli(lastEventTime))
+                    .events(events)
+                    .plays(plays)
+                    .skips(skips)
+                    .likes(likes)
+                    .dislikes(dislikes)
+                    .shares(shares)
+                    .skipRatio(plays == 0 ? 0.0 : Math.min(1.0, (double) skips / plays))
+                    .listenDuration(Duration.ofMillis(listenMillis))
+                    .songIds(List.copyOf(songIds))
+                    .dwellTimes(dwellTimes)
+                    .distinctSongs(new HashSet<>(songIds).size())
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.example.demo.pipeline;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.EventRecordDTO;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+import com.example.demo.repository.EventRepository;
+import com.example.demo.service.EventCursor;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Keeps the latest events of the recently active users in memory, for feeds like "recently played".
+ * <p>
+ * Every user gets a fixed-size ring of parallel primitive arrays: event ids, timestamps, action ordinals and
+ * ids of the song and source strings from a shared {@link StringDictionary}. Users are split into segments, each
+ * with its own lock and kept in order of last access, and the least recently used user is evicted when a
+ * segment is full.
+ * <p>
+ * A user first seen through the pipeline only has the events since then. On the first read the history
+ * is loaded from the database and merged with them, events already in the history removed by their id, and
+ * later reads are answered from memory. Events buffered by the write-behind writer have no id yet: a read
+ * reaching one of them loads the history again to pick up the ids, and goes to the database while the
+ * event is not inserted. A read needing more events of an action than the ring holds goes to the database
+ * as well.
+ */
+@Component
+public class RecentActivityCache implements MeterBinder {
+
+    private static final ActionType[] ACTIONS = ActionType.values();
+
+    /**
+     * The id of an event not inserted yet, identity columns start at 1
+     */
+    private static final long NO_ID = 0;
+
+    private final EventPipelineProperties.Recent settings;
+    private final Loader loader;
+    private final StringDictionary dictionary;
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final int maxUsersPerSegment;
+    private final int capacity;
+    private final AtomicInteger users = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Autowired
+    public RecentActivityCache(EventPipelineProperties properties, EventRepository eventRepository) {
+        this(properties.getRecent(), (userId, action, limit) -> action == null
+                ? eventRepository.findUserEventsBefore(userId, EventCursor.START.getTimestamp(),
+                        EventCursor.START.getId(), Limit.of(limit))
+                : eventRepository.findRecentUserActionEvents(userId, action, Limit.of(limit)));
+    }
+
+    RecentActivityCache(EventPipelineProperties.Recent settings, Loader loader) {
+        this.settings = settings;
+        this.loader = loader;
+        this.dictionary = new StringDictionary(settings.getMaxInternedStrings());
+        this.capacity = Math.max(1, settings.getEventsPerUser());
+        int segmentCount = Integer.highestOneBit(Math.max(1, settings.getSegments()));
+        this.segmentMask = segmentCount - 1;
+        this.maxUsersPerSegment = Math.max(1, settings.getMaxUsers() / segmentCount);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.recent.users", this, RecentActivityCache::getUserCount)
+                .description("Users with their latest events in the recent activity cache")
+                .register(registry);
+        Gauge.builder("events.recent.hit.rate", this, RecentActivityCache::getHitRate)
+                .description("Share of recent activity reads answered from memory")
+                .register(registry);
+        FunctionCounter.builder("events.recent.reads", this, RecentActivityCache::getHitCount)
+                .description("Recent activity reads")
+                .tag("result", "HIT")
+                .register(registry);
+        FunctionCounter.builder("events.recent.reads", this, RecentActivityCache::getMissCount)
+                .description("Recent activity reads")
+                .tag("result", "MISS")
+                .register(registry);
+        FunctionCounter.builder("events.recent.evicted", this, RecentActivityCache::getEvictionCount)
+                .description("Least recently used users evicted from the recent activity cache")
+                .register(registry);
+        Gauge.builder("events.recent.memory", this, RecentActivityCache::getMemoryBytes)
+                .description("Memory held by the rings and the string dictionary of the recent activity cache")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Add a stored event to the ring of its user
+     *
+     * @param event the event
+     * @param id the id of the event row, null while the event waits in the write-behind buffer
+     */
+    public void record(Event event, Long id) {
+        if (!settings.isEnabled() || event.getUserId() == null || event.getAction() == null
+                || event.getTimestamp() == null) {
+            return;
+        }
+        int songId = dictionary.idOf(event.getSongId());
+        int sourceId = dictionary.idOf(event.getSource());
+        boolean interned = (songId != StringDictionary.NONE || event.getSongId() == null)
+                && (sourceId != StringDictionary.NONE || event.getSource() == null);
+        Segment segment = segment(event.getUserId());
+        synchronized (segment) {
+            Ring ring = segment.rings.get(event.getUserId());
+            if (!interned) {
+                // the dictionary is full, the ring would be missing this event
+                if (ring != null) {
+                    segment.rings.remove(event.getUserId());
+                    users.decrementAndGet();
+                }
+                return;
+            }
+            if (ring == null) {
+                ring = new Ring(capacity);
+                put(segment, event.getUserId(), ring);
+            }
+            ring.add(id != null ? id : NO_ID, event.getTimestamp().toEpochMilli(), event.getAction().ordinal(),
+                    songId, sourceId);
+        }
+    }
+
+    /**
+     * @param userId the user
+     * @param action the action, null for all actions
+     * @param limit the number of events
+     * @return the latest events of the user, newest first
+     */
+    public List<EventRecordDTO> getRecentEvents(String userId, ActionType action, int limit) {
+        if (!settings.isEnabled()) {
+            return loader.load(userId, action, limit);
+        }
+        Segment segment = segment(userId);
+        boolean loaded = false;
+        synchronized (segment) {
+            Ring ring = segment.rings.get(userId);
+            if (ring != null && ring.loaded) {
+                List<EventRecordDTO> events = ring.read(userId, action, limit);
+                if (events != null && (events.size() >= limit || !ring.truncated)) {
+                    hits.increment();
+                    return events;
+                }
+                // without an event missing its id, more events of the action are asked for than the ring holds
+                loaded = events != null;
+            }
+        }
+        misses.increment();
+        if (loaded) {
+            return loader.load(userId, action, limit);
+        }
+        // load outside the lock, the pipeline keeps adding events meanwhile
+        List<EventRecordDTO> history = loader.load(userId, null, capacity);
+        synchronized (segment) {
+            Ring ring = segment.rings.get(userId);
+            if (ring == null) {
+                ring = new Ring(capacity);
+                put(segment, userId, ring);
+            }
+            if (ring.merge(history)) {
+                List<EventRecordDTO> events = ring.read(userId, action, limit);
+                if (events != null && (events.size() >= limit || !ring.truncated)) {
+                    return events;
+                }
+            } else {
+                // the dictionary is full, keep the user out of the cache
+                segment.rings.remove(userId);
+                users.decrementAndGet();
+            }
+        }
+        return loader.load(userId, action, limit);
+    }
+
+    public int getUserCount() {
+        return users.get();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the bytes held by the rings and the dictionary, without the strings themselves
+     */
+    public long getMemoryBytes() {
+        // id, timestamp, action, song and source per slot plus the ring, its arrays and the map entry
+        long perUser = capacity * (8L + 8 + 1 + 4 + 4) + 180;
+        return users.get() * perUser + dictionary.memoryBytes();
+    }
+
+    private Segment segment(String userId) {
+        int hash = userId.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & segmentMask];
+    }
+
+    private void put(Segment segment, String userId, Ring ring) {
+        if (segment.rings.size() >= maxUsersPerSegment) {
+            Iterator<Ring> eldest = segment.rings.values().iterator();
+            eldest.next();
+            eldest.remove();
+            users.decrementAndGet();
+            evictions.increment();
+        }
+        segment.rings.put(userId, ring);
+        users.incrementAndGet();
+    }
+
+    /**
+     * Reads the latest events of a user from the database, newest first
+     */
+    @FunctionalInterface
+    interface Loader {
+        List<EventRecordDTO> load(String userId, ActionType action, int limit);
+    }
+
+    /**
+     * Rings of a share of the users, in order of last access
+     */
+    private static final class Segment {
+        private final LinkedHashMap<String, Ring> rings = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * The latest events of a user in arrival order, overwriting the oldest when full
+     */
+    private final class Ring {
+        private final long[] ids;
+        private final long[] timestamps;
+        private final byte[] actions;
+        private final int[] songIds;
+        private final int[] sourceIds;
+        private int head;
+        private int size;
+        /**
+         * The history from the database was merged in
+         */
+        private boolean loaded;
+        /**
+         * Older events of the user may exist that are not in the ring
+         */
+        private boolean truncated;
+
+        private Ring(int capacity) {
+            this.ids = new long[capacity];
+            this.timestamps = new long[capacity];
+            this.actions = new byte[capacity];
+            this.songIds = new int[capacity];
+            this.sourceIds = new int[capacity];
+        }
+
+        private void add(long id, long timestamp, int action, int songId, int sourceId) {
+            if (size == timestamps.length) {
+                truncated = true;
+            } else {
+                size++;
+            }
+            ids[head] = id;
+            timestamps[head] = timestamp;
+            actions[head] = (byte) action;
+            songIds[head] = songId;
+            sourceIds[head] = sourceId;
+            head = (head + 1) % timestamps.length;
+        }
+
+        /**
+         * Put the history from the database before the events seen since it was loaded. Events of the ring
+         * with an id are dropped when the history has that id. Events still without an id take the id of
+         * an equal history event, each history event given to one of them at most, so distinct events with
+         * equal values are all kept.
+         *
+         * @return false if the dictionary could not take the strings of the history
+         */
+        private boolean merge(List<EventRecordDTO> history) {
+            List<Slot> slots = new ArrayList<>(size + history.size());
+            Set<Long> historyIds = new HashSet<>();
+            Map<Slot, Deque<Long>> unclaimed = new HashMap<>();
+            boolean complete = history.size() < timestamps.length;
+            for (EventRecordDTO event : history) {
+                if (event.getId() == null || event.getTimestamp() == null || event.getAction() == null) {
+                    continue;
+                }
+                int songId = dictionary.idOf(event.getSongId());
+                int sourceId = dictionary.idOf(event.getSource());
+                if ((songId == StringDictionary.NONE && event.getSongId() != null)
+                        || (sourceId == StringDictionary.NONE && event.getSource() != null)) {
+                    return false;
+                }
+                Slot slot = new Slot(event.getId(), event.getTimestamp().toEpochMilli(), event.getAction().ordinal(),
+                        songId, sourceId);
+                slots.add(slot);
+                historyIds.add(slot.id);
+                unclaimed.computeIfAbsent(slot, key -> new ArrayDeque<>()).add(slot.id);
+            }
+            for (int i = 0; i < size; i++) {
+                int index = Math.floorMod(head - size + i, timestamps.length);
+                Slot slot = new Slot(ids[index], timestamps[index], actions[index], songIds[index], sourceIds[index]);
+                if (slot.id == NO_ID) {
+                    // inserted by the write-behind writer since, the history event carries its id
+                    Deque<Long> equal = unclaimed.get(slot);
+                    if (equal == null || equal.poll() == null) {
+                        slots.add(slot);
+                    }
+                } else if (!historyIds.contains(slot.id)) {
+                    slots.add(slot);
+                }
+            }
+            slots.sort(Comparator.comparingLong(Slot::timestamp).thenComparingLong(Slot::order));
+            head = 0;
+            size = 0;
+            truncated = !complete;
+            for (Slot slot : slots) {
+                add(slot.id, slot.timestamp, slot.action, slot.songId, slot.sourceId);
+            }
+            loaded = true;
+            return true;
+        }
+
+        /**
+         * @return the events, or null if one of them has no id yet
+         */
+        private List<EventRecordDTO> read(String userId, ActionType action, int limit) {
+            List<Integer> indexes = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int index = Math.floorMod(head - 1 - i, timestamps.length);
+                if (action == null || actions[index] == action.ordinal()) {
+                    indexes.add(index);
+                }
+            }
+            // arrival order is almost timestamp order, late events are put in place here
+            indexes.sort(Comparator.comparingLong((Integer index) -> timestamps[index])
+                    .thenComparingLong(index -> ids[index] == NO_ID ? Long.MAX_VALUE : ids[index]).reversed());
+            List<EventRecordDTO> events = new ArrayList<>(Math.min(limit, indexes.size()));
+            for (int i = 0; i < indexes.size() && events.size() < limit; i++) {
+                int index = indexes.get(i);
+                if (ids[index] == NO_ID) {
+                    return null;
+                }
+                events.add(EventRecordDTO.builder()
+                        .id(ids[index])
+                        .userId(userId)
+                        .action(ACTIONS[actions[index]])
+                        .songId(dictionary.valueOf(songIds[index]))
+                        .timestamp(Instant.ofEpochMilli(timestamps[index]))
+                        .source(dictionary.valueOf(sourceIds[index]))
+                        .build());
+            }
+            return events;
+        }
+    }
+
+    /**
+     * An event during a merge, equal to another one with the same values whatever their ids
+     */
+    private static final class Slot {
+        private final long id;
+        private final long timestamp;
+        private final int action;
+        private final int songId;
+        private final int sourceId;
+
+        private Slot(long id, long timestamp, int action, int songId, int sourceId) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.action = action;
+            this.songId = songId;
+            this.sourceId = sourceId;
+        }
+
+        private long timestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Events of the same time in insertion order, the ones not inserted yet last
+         */
+        private long order() {
+            return id == NO_ID ? Long.MAX_VALUE : id;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Slot slot && timestamp == slot.timestamp && action == slot.action
+                    && songId == slot.songId && sourceId == slot.sourceId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(timestamp, action, songId, sourceId);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.demo.pipeline;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import com.example.demo.model.ActionType;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One rule of the routing table, rules are matched in order and the first matching rule decides the channels.
+ * Criteria that are not set match every event.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoutingRule {
+
+    /**
+     * Actions the rule applies to, all actions if empty
+     */
+    @Builder.Default
+    private Set<ActionType> actions = EnumSet.noneOf(ActionType.class);
+
+    /**
+     * Prefix the user id must start with
+     */
+    private String userIdPrefix;
+
+    /**
+     * Source the event must come from
+     */
+    private String source;
+
+    /**
+     * Whether the user must (true) or must not (false) be flagged by the bot detection
+     */
+    private Boolean bot;
+
+    /**
+     * Names of the target channels: analytics, aiEngine, social, storage, sessions
+     */
+    @Builder.Default
+    private List<String> channels = new ArrayList<>();
+
+    /**
+     * @return the rules matching the built-in routing: bots to storage, every action to its services
+     */
+    public static List<RoutingRule> defaults() {
+        List<RoutingRule> rules = new ArrayList<>();
+        rules.add(RoutingRule.builder().userIdPrefix("bot_").channels(List.of("storage")).build());
+        rules.add(RoutingRule.builder().bot(true).channels(List.of("storage")).build());
+        rules.add(RoutingRule.builder()
+                .actions(EnumSet.of(ActionType.PLAY))
+                .channels(List.of("analytics", "aiEngine", "sessions", "storage"))
+                .build());
+        rules.add(RoutingRule.builder()
+                .actions(EnumSet.of(ActionType.PAUSE, ActionType.SKIP))
+                .channels(List.of("analytics", "sessions", "storage"))
+                .build());
+        rules.add(RoutingRule.builder()
+                .actions(EnumSet.of(ActionType.LIKE, ActionType.DISLIKE, ActionType.SHARE))
+                .channels(List.of("analytics", "aiEngine", "social", "sessions", "storage"))
+                .build());
+        rules.add(RoutingRule.builder()
+                .actions(EnumSet.of(ActionType.LOGIN, ActionType.LOGOUT))
+                .channels(List.of("analytics", "storage"))
+                .build());
+        rules.add(RoutingRule.builder().channels(List.of("storage")).build());
+        return rules;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.demo.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.messaging.MessageChannel;
+
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+
+/**
+ * Immutable dispatch table compiled from routing rules.
+ * <p>
+ * The rules are indexed by action, every action gets the ordered routes that can match it, ending with the
+ * first route without further criteria. The target channels of every route are resolved and put into an
+ * unmodifiable list once, so routing an event only compares a few strings and allocates nothing.
+ */
+public final class RoutingTable {
+
+    private static final ActionType[] ACTIONS = ActionType.values();
+
+    private final List<RoutingRule> rules;
+    private final Route[][] routesByAction;
+
+    private RoutingTable(List<RoutingRule> rules, Route[][] routesByAction) {
+        this.rules = rules;
+        this.routesByAction = routesByAction;
+    }
+
+    /**
+     * Compile rules into a table
+     *
+     * @param rules the rules in match order
+     * @param channels the channels by name
+     * @return the table
+     * @throws IllegalArgumentException if a rule names an unknown channel or has none, or an action is not
+     *         routed by a rule without further criteria
+     */
+    public static RoutingTable compile(List<RoutingRule> rules, Map<String, MessageChannel> channels) {
+        List<Route> routes = new ArrayList<>(rules.size());
+        for (int i = 0; i < rules.size(); i++) {
+            RoutingRule rule = rules.get(i);
+            if (rule.getChannels() == null || rule.getChannels().isEmpty()) {
+                throw new IllegalArgumentException("Rule " + i + " has no channels");
+            }
+            List<MessageChannel> targets = new ArrayList<>(rule.getChannels().size());
+            for (String name : rule.getChannels()) {
+                MessageChannel channel = channels.get(name);
+                if (channel == null) {
+                    throw new IllegalArgumentException("Rule " + i + " names unknown channel '" + name
+                            + "', known channels are " + channels.keySet());
+                }
+                targets.add(channel);
+            }
+            routes.add(new Route(rule, List.copyOf(targets), rule.getChannels().toArray(String[]::new)));
+        }
+
+        // the last slot holds the routes of events without an action
+        Route[][] routesByAction = new Route[ACTIONS.length + 1][];
+        for (int slot = 0; slot <= ACTIONS.length; slot++) {
+            ActionType action = slot < ACTIONS.length ? ACTIONS[slot] : null;
+            List<Route> candidates = new ArrayList<>();
+            boolean covered = false;
+            for (Route route : routes) {
+                if (route.appliesTo(action)) {
+                    candidates.add(route);
+                    if (route.isUnconditional()) {
+                        covered = true;
+                        break;
+                    }
+                }
+            }
+            if (!covered && action != null) {
+                throw new IllegalArgumentException("No rule routes every " + action
+                        + " event, add a rule for it without user, source or bot criteria");
+            }
+            routesByAction[slot] = candidates.toArray(Route[]::new);
+        }
+        return new RoutingTable(rules.stream().map(RoutingTable::copy).toList(), routesByAction);
+    }
+
+    /**
+     * Find the route of an event
+     *
+     * @param event the event
+     * @param bot whether the user is flagged by the bot detection
+     * @return the route, null if no rule matches an event without action
+     */
+    public Route route(Event event, boolean bot) {
+        ActionType action = event.getAction();
+        Route[] candidates = routesByAction[action != null ? action.ordinal() : ACTIONS.length];
+        for (Route route : candidates) {
+            if (route.matches(event, bot)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a copy of the rules the table was compiled from
+     */
+    public List<RoutingRule> getRules() {
+        return rules.stream().map(RoutingTable::copy).toList();
+    }
+
+    private static RoutingRule copy(RoutingRule rule) {
+        return RoutingRule.builder()
+                .actions(rule.getActions() == null ? null : Set.copyOf(rule.getActions()))
+                .userIdPrefix(rule.getUserIdPrefix())
+                .source(rule.getSource())
+                .bot(rule.getBot())
+                .channels(List.copyOf(rule.getChannels()))
+                .build();
+    }
+
+    /**
+     * A compiled rule with its resolved channels
+     */
+    public static final class Route {
+        private final boolean[] actions;
+        private final String userIdPrefix;
+        private final String source;
+        private final boolean anyBot;
+        private final boolean bot;
+        private final List<MessageChannel> channels;
+        private final String[] channelNames;
+
+        private Route(RoutingRule rule, List<MessageChannel> channels, String[] channelNames) {
+            this.actions = new boolean[ACTIONS.length];
+            boolean anyAction = rule.getActions() == null || rule.getActions().isEmpty();
+            for (ActionType action : ACTIONS) {
+                actions[action.ordinal()] = anyAction || rule.getActions().contains(action);
+            }
+            this.userIdPrefix = rule.getUserIdPrefix();
+            this.source = rule.getSource();
+            this.anyBot = rule.getBot() == null;
+            this.bot = Boolean.TRUE.equals(rule.getBot());
+            this.channels = channels;
+            this.channelNames = channelNames;
+        }
+
+        /**
+         * @return the target channels, an unmodifiable list shared by all events of the route
+         */
+        public List<MessageChannel> getChannels() {
+            return channels;
+        }
+
+        /**
+         * @param index the position of the channel in {@link #getChannels()}
+         * @return the configured name of the channel
+         */
+        public String getChannelName(int index) {
+            return channelNames[index];
+        }
+
+        private boolean appliesTo(ActionType action) {
+            if (action == null) {
+                // events without action only match rules for all actions
+                for (boolean applies : actions) {
+                    if (!applies) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return actions[action.ordinal()];
+        }
+
+        private boolean isUnconditional() {
+            return userIdPrefix == null && source == null && anyBot;
+        }
+
+        private boolean matches(Event event, boolean flaggedBot) {
+            // cheapest criteria first
+            if (!anyBot && bot != flaggedBot) {
+                return false;
+            }
+            if (source != null && !source.equals(event.getSource())) {
+                return false;
+            }
+            return userIdPrefix == null || (event.getUserId() != null && event.getUserId().startsWith(userIdPrefix));
+        }
+    }
+}
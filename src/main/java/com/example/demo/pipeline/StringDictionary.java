@@ -0,0 +1,81 @@
+package com.example.demo.pipeline;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps strings to dense int ids and back, so structures holding many references to the same few
+ * thousand strings can store four byte ids instead. Ids are never reused, the dictionary stops taking
+ * new strings once it holds its capacity.
+ */
+public final class StringDictionary {
+
+    /**
+     * Id of null and of strings the full dictionary did not take
+     */
+    public static final int NONE = -1;
+
+    private final int capacity;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[1024];
+    private int size;
+
+    /**
+     * @param capacity the number of strings at most
+     */
+    public StringDictionary(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param value a string, may be null
+     * @return the id of the string, {@link #NONE} for null or if the dictionary is full
+     */
+    public int idOf(String value) {
+        if (value == null) {
+            return NONE;
+        }
+        Integer id = ids.get(value);
+        return id != null ? id : add(value);
+    }
+
+    /**
+     * @param id an id handed out by {@link #idOf(String)}
+     * @return the string, null for {@link #NONE}
+     */
+    public String valueOf(int id) {
+        return id == NONE ? null : values[id];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * @return the bytes held by the id table, without the strings themselves
+     */
+    public long memoryBytes() {
+        // the reverse array plus a map node with a boxed id per entry
+        return values.length * 4L + ids.size() * 64L;
+    }
+
+    private synchronized int add(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (size >= capacity) {
+            return NONE;
+        }
+        String[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, Math.min(capacity, current.length * 2));
+        }
+        current[size] = value;
+        // publish the array before the id, readers look the id up first
+        values = current;
+        ids.put(value, size);
+        return size++;
+    }
+}
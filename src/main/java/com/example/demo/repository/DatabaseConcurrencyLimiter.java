@@ -0,0 +1,203 @@
+package com.example.demo.repository;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounds the request-driven database work running at once to the size of the connection pool.
+ * <p>
+ * Callers beyond the limit wait in arrival order on a fair semaphore instead of in the pool. A waiting
+ * virtual thread is parked and holds no carrier, so tens of thousands of requests can queue here
+ * cheaply, while the pool only ever sees as many borrowers as it has connections and never times out
+ * a borrower. A caller not getting a permit within the acquire timeout fails with a
+ * {@link TransientDataAccessResourceException}, answered with 503 and Retry-After.
+ * <p>
+ * Exports take a permit per range query for as long as its cursor reads. Background work, the
+ * write-behind flusher, rollup flushes and archival, takes connections without a permit. A limit derived
+ * from the pool size leaves the reserved connections to it, so a burst of requests holding every permit
+ * never starves a flush of its connection.
+ */
+@Slf4j
+@Component
+public class DatabaseConcurrencyLimiter implements MeterBinder {
+
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    private final int maxConcurrency;
+    private final long acquireTimeoutNanos;
+    private final Semaphore permits;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    @Autowired
+    public DatabaseConcurrencyLimiter(EventPipelineProperties properties, DataSource dataSource) {
+        this(limit(properties.getDatabase(), dataSource), properties.getDatabase().getAcquireTimeout());
+    }
+
+    public DatabaseConcurrencyLimiter(int maxConcurrency, Duration acquireTimeout) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.permits = new Semaphore(this.maxConcurrency, true);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.database.active", this, DatabaseConcurrencyLimiter::getActiveCount)
+                .description("Repository operations holding a permit of the database limiter")
+                .register(registry);
+        Gauge.builder("events.database.waiting", this,
+                DatabaseConcurrencyLimiter::getWaitingCount)
+                .description("Repository operations waiting for a permit of the database limiter")
+                .register(registry);
+        FunctionCounter.builder("events.database.rejected", this,
+                DatabaseConcurrencyLimiter::getRejectedCount)
+                .description("Repository operations turned away after the acquire timeout")
+                .register(registry);
+        FunctionCounter.builder("events.database.wait", this,
+                DatabaseConcurrencyLimiter::getWaitSeconds)
+                .description("Time spent waiting for permits of the database limiter")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    /**
+     * Run database work once a permit is free
+     *
+     * @param work the work, using at most one connection
+     * @return the result of the work
+     * @throws TransientDataAccessResourceException if no permit became free within the acquire timeout
+     */
+    public <T> T call(Supplier<T> work) {
+        acquire();
+        try {
+            return work.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Run database work once a permit is free
+     *
+     * @param work the work, using at most one connection
+     * @throws TransientDataAccessResourceException if no permit became free within the acquire timeout
+     */
+    public void run(Runnable work) {
+        acquire();
+        try {
+            work.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Check whether an exception, or one of its causes, means the database is busy and the work can be retried
+     *
+     * @param throwable the exception to check
+     * @return true if the work was turned away by the limiter or the database
+     */
+    public static boolean isBusy(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessResourceException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return the time spent waiting for permits, in seconds
+     */
+    public double getWaitSeconds() {
+        return waitNanos.sum() / 1e9;
+    }
+
+    private void acquire() {
+        if (permits.tryAcquire()) {
+            acquired.increment();
+            return;
+        }
+        long start = System.nanoTime();
+        boolean granted;
+        try {
+            granted = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransientDataAccessResourceException("Interrupted while waiting for the database", e);
+        } finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+        if (!granted) {
+            rejected.increment();
+            throw new TransientDataAccessResourceException("Database busy, " + maxConcurrency
+                    + " operations are running and " + permits.getQueueLength() + " waiting");
+        }
+        acquired.increment();
+    }
+
+    private static int limit(EventPipelineProperties.Database settings, DataSource dataSource) {
+        if (settings.getMaxConcurrency() > 0) {
+            return settings.getMaxConcurrency();
+        }
+        int poolSize = DEFAULT_POOL_SIZE;
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                poolSize = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+            }
+        } catch (SQLException e) {
+            log.warn("Cannot read the connection pool size, assuming {}", DEFAULT_POOL_SIZE, e);
+        }
+        int limit = limit(poolSize, settings.getReservedConnections());
+        log.info("Limiting concurrent database work to {} of the {} pooled connections", limit, poolSize);
+        return limit;
+    }
+
+    /**
+     * @return the pool size less the reserved connections, at least half the pool and at least one
+     */
+    static int limit(int poolSize, int reservedConnections) {
+        return Math.max(Math.max(1, poolSize / 2), poolSize - Math.max(0, reservedConnections));
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.demo.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.dto.ArchivedEventDTO;
+import com.example.demo.model.ActionType;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reads aged events for the archive and deletes them once archived.
+ * <p>
+ * Events are read with every column in (timestamp, id) order, so every chunk seeks into
+ * {@code idx_events_timestamp} past the last event of the previous one and looks up the rest of each row
+ * by its key. Deletes name the ids
+ * of archived events and run as separate statements in auto-commit, each its own short transaction
+ * holding row locks on a batch well below the 5000 locks at which SQL Server escalates to a table lock.
+ */
+@Repository
+@RequiredArgsConstructor
+public class EventArchiveRepository {
+
+    /**
+     * SQL Server accepts at most 2100 parameters per statement
+     */
+    private static final int MAX_DELETE_BATCH = 2000;
+
+    private static final String AGED_EVENTS = "SELECT TOP (?) id, user_id, action, song_id, timestamp, source, "
+            + "processed_at, category, count, device_type, os_version, app_version, ip_address, location "
+            + "FROM events WHERE timestamp < ? ";
+    private static final String FIRST_AGED_EVENTS = AGED_EVENTS + "ORDER BY timestamp, id";
+    private static final String NEXT_AGED_EVENTS = AGED_EVENTS
+            + "AND (timestamp > ? OR (timestamp = ? AND id > ?)) ORDER BY timestamp, id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Read the next chunk of events older than the cutoff, in timestamp order
+     *
+     * @param cutoff the timestamp the events are older than
+     * @param after the last event of the previous chunk, null for the first chunk
+     * @param limit the maximum number of events
+     * @return the events
+     */
+    public List<ArchivedEventDTO> findAged(Instant cutoff, ArchivedEventDTO after, int limit) {
+        if (after == null) {
+            return jdbcTemplate.query(FIRST_AGED_EVENTS, (rs, row) -> toArchived(rs),
+                    limit, cutoff.atOffset(ZoneOffset.UTC));
+        }
+        return jdbcTemplate.query(NEXT_AGED_EVENTS, (rs, row) -> toArchived(rs),
+                limit, cutoff.atOffset(ZoneOffset.UTC), after.getTimestamp().atOffset(ZoneOffset.UTC),
+                after.getTimestamp().atOffset(ZoneOffset.UTC), after.getId());
+    }
+
+    /**
+     * Delete events by id in batches, every batch in its own transaction
+     *
+     * @param ids the ids, deleting an id that is gone already does nothing
+     * @param batchSize the number of events per statement
+     * @return the number of events deleted
+     */
+    public long delete(long[] ids, int batchSize) {
+        int size = Math.max(1, Math.min(batchSize, MAX_DELETE_BATCH));
+        String fullBatch = deleteStatement(size);
+        long deleted = 0;
+        for (int from = 0; from < ids.length; from += size) {
+            int to = Math.min(ids.length, from + size);
+            String sql = to - from == size ? fullBatch : deleteStatement(to - from);
+            Object[] args = Arrays.stream(ids, from, to).boxed().toArray();
+            deleted += jdbcTemplate.update(sql, args);
+        }
+        return deleted;
+    }
+
+    /**
+     * @return the event of the current row, selected with the columns of {@link #AGED_EVENTS}
+     */
+    static ArchivedEventDTO toArchived(ResultSet rs) throws SQLException {
+        OffsetDateTime timestamp = rs.getObject("timestamp", OffsetDateTime.class);
+        OffsetDateTime processedAt = rs.getObject("processed_at", OffsetDateTime.class);
+        return ArchivedEventDTO.builder()
+                .id(rs.getLong("id"))
+                .userId(rs.getString("user_id"))
+                .action(ActionType.fromString(rs.getString("action")))
+                .songId(rs.getString("song_id"))
+                .timestamp(timestamp != null ? timestamp.toInstant() : null)
+                .source(rs.getString("source"))
+                .processedAt(processedAt != null ? processedAt.toInstant() : null)
+                .category(rs.getString("category"))
+                .count(rs.getInt("count"))
+                .deviceType(rs.getString("device_type"))
+                .osVersion(rs.getString("os_version"))
+                .appVersion(rs.getString("app_version"))
+                .ipAddress(rs.getString("ip_address"))
+                .location(rs.getString("location"))
+                .build();
+    }
+
+    private static String deleteStatement(int count) {
+        StringBuilder sql = new StringBuilder("DELETE FROM events WHERE id IN (");
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        return sql.append(')').toString();
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.demo.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.entity.EventEntity;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Inserts events with plain JDBC, bypassing Hibernate which cannot batch inserts of IDENTITY entities.
+ * Rows are written as multi-row INSERT statements, and the statements of one call are sent as a single
+ * JDBC batch within one transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class EventBatchWriter {
+
+    private static final String INSERT_PREFIX = "INSERT INTO events (user_id, action, song_id, timestamp, source, "
+            + "processed_at, category, count, device_type, os_version, app_version, ip_address, location) VALUES ";
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int COLUMNS = 13;
+
+    /**
+     * Rows per statement, SQL Server accepts at most 2100 parameters per statement
+     */
+    static final int ROWS_PER_STATEMENT = 150;
+
+    private static final String FULL_INSERT = insertSql(ROWS_PER_STATEMENT);
+
+    private static final String MARK_REPLAYED = "INSERT INTO event_spill_replays (spill_file, replayed_at) "
+            + "SELECT ?, SYSDATETIMEOFFSET() WHERE NOT EXISTS "
+            + "(SELECT 1 FROM event_spill_replays WITH (UPDLOCK, HOLDLOCK) WHERE spill_file = ?)";
+    private static final String FORGET_REPLAYED = "DELETE FROM event_spill_replays WHERE spill_file = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Insert all events in one transaction
+     *
+     * @param events the events to insert, their ids are not populated
+     */
+    public void insert(List<EventEntity> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> insertRows(events));
+    }
+
+    /**
+     * Insert the events of a spill file unless they were inserted before. The file is recorded in the
+     * same transaction as its events, so a crash between the insert and the deletion of the file does
+     * not insert them twice. {@link #forgetSpill} drops the record once the file is deleted.
+     *
+     * @param spillFile the name of the spill file, unique across restarts
+     * @param events the events of the file
+     * @return false if the file was inserted before and nothing was inserted now
+     */
+    public boolean insertSpill(String spillFile, List<EventEntity> events) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (jdbcTemplate.update(MARK_REPLAYED, spillFile, spillFile) == 0) {
+                return false;
+            }
+            insertRows(events);
+            return true;
+        }));
+    }
+
+    /**
+     * Drop the record of an inserted spill file after the file was deleted
+     *
+     * @param spillFile the name of the spill file
+     */
+    public void forgetSpill(String spillFile) {
+        jdbcTemplate.update(FORGET_REPLAYED, spillFile);
+    }
+
+    private void insertRows(List<EventEntity> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        int fullStatements = events.size() / ROWS_PER_STATEMENT;
+        int remainder = events.size() % ROWS_PER_STATEMENT;
+        if (fullStatements > 0) {
+            jdbcTemplate.batchUpdate(FULL_INSERT, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    bindRows(ps, events, i * ROWS_PER_STATEMENT, ROWS_PER_STATEMENT);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return fullStatements;
+                }
+            });
+        }
+        if (remainder > 0) {
+            jdbcTemplate.update(insertSql(remainder),
+                    ps -> bindRows(ps, events, fullStatements * ROWS_PER_STATEMENT, remainder));
+        }
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows * (ROW_PLACEHOLDERS.length() + 2));
+        sql.append(INSERT_PREFIX);
+        for (int row = 0; row < rows; row++) {
+            if (row > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW_PLACEHOLDERS);
+        }
+        return sql.toString();
+    }
+
+    private static void bindRows(PreparedStatement ps, List<EventEntity> events, int from, int rows) throws SQLException {
+        for (int row = 0; row < rows; row++) {
+            EventEntity event = events.get(from + row);
+            int index = row * COLUMNS;
+            ps.setString(++index, event.getUserId());
+            ps.setString(++index, event.getAction().name());
+            ps.setString(++index, event.getSongId());
+            setInstant(ps, ++index, event.getTimestamp());
+            ps.setString(++index, event.getSource());
+            setInstant(ps, ++index, event.getProcessedAt());
+            ps.setString(++index, event.getCategory());
+            ps.setInt(++index, event.getCount() != null ? event.getCount() : 0);
+            ps.setString(++index, event.getDeviceType());
+            ps.setString(++index, event.getOsVersion());
+            ps.setString(++index, event.getAppVersion());
+            ps.setString(++index, event.getIpAddress());
+            ps.setString(++index, event.getLocation());
+        }
+    }
+
+    private static void setInstant(PreparedStatement ps, int index, Instant instant) throws SQLException {
+        if (instant == null) {
+            ps.setNull(index, Types.TIMESTAMP_WITH_TIMEZONE);
+        } else {
+            ps.setObject(index, OffsetDateTime.ofInstant(instant, ZoneOffset.UTC));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demo.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.ActionType;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reads all columns of the events of a time range through a forward-only cursor for exports. The rows
+ * are handed to the caller as they are, so an export writes the columns straight from the result set.
+ */
+@Repository
+@RequiredArgsConstructor
+public class EventExportReader {
+
+    /**
+     * Names of the selected columns in select order, as exported
+     */
+    public static final List<String> FIELDS = List.of("id", "userId", "action", "songId", "timestamp", "source",
+            "processedAt", "category", "count", "deviceType", "osVersion", "appVersion", "ipAddress", "location");
+
+    /**
+     * Positions of the columns that are not strings
+     */
+    public static final int ID = 1;
+    public static final int TIMESTAMP = 5;
+    public static final int PROCESSED_AT = 7;
+    public static final int COUNT = 9;
+
+    private static final String EVENTS = "SELECT id, user_id, action, song_id, timestamp, source, processed_at, "
+            + "category, count, device_type, os_version, app_version, ip_address, location FROM events "
+            + "WHERE timestamp >= ? AND timestamp < ?";
+    private static final String ORDER = " ORDER BY timestamp, id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EventPipelineProperties properties;
+
+    /**
+     * Stream the events of a time range in timestamp order
+     *
+     * @param from the earliest timestamp, inclusive
+     * @param to the latest timestamp, exclusive
+     * @param action the action, null for all actions
+     * @param category the category, null for all categories
+     * @param handler receives the result set positioned on every row
+     */
+    public void stream(Instant from, Instant to, ActionType action, String category, RowCallbackHandler handler) {
+        String sql = EVENTS + (action != null ? " AND action = ?" : "") + (category != null ? " AND category = ?" : "")
+                + ORDER;
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(properties.getQuery().getStreamFetchSize());
+            int index = 1;
+            ps.setObject(index++, from.atOffset(ZoneOffset.UTC));
+            ps.setObject(index++, to.atOffset(ZoneOffset.UTC));
+            if (action != null) {
+                ps.setString(index++, action.name());
+            }
+            if (category != null) {
+                ps.setString(index, category);
+            }
+            return ps;
+        }, handler);
+    }
+}
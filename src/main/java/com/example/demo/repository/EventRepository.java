@@ -1,10 +1,15 @@
 package com.example.demo.repository;
 
+import java.time.Instant;
 import java.util.List;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.example.demo.dto.EventRecordDTO;
 import com.example.demo.entity.EventEntity;
 import com.example.demo.model.ActionType;
 
@@ -20,4 +25,58 @@ public interface EventRepository extends JpaRepository<EventEntity, Long> {
     List<EventEntity> findByCategoryAndAction(String category, ActionType action);
     
     List<EventEntity> findByUserIdAndAction(String userId, ActionType action);
-} 
\ No newline at end of file
+
+    /**
+     * Events of a user before a position, newest first. Seeks idx_events_user_id instead of skipping rows.
+     *
+     * @param userId the user
+     * @param timestamp the timestamp of the position
+     * @param id the id of the position, events with the same timestamp and a smaller id come after it
+     * @param limit the number of events
+     * @return the events
+     */
+    @Query("""
+            select new com.example.demo.dto.EventRecordDTO(e.id, e.userId, e.action, e.songId, e.timestamp, e.source)
+            from EventEntity e
+            where e.userId = :userId
+              and (e.timestamp < :timestamp or (e.timestamp = :timestamp and e.id < :id))
+            order by e.timestamp desc, e.id desc""")
+    List<EventRecordDTO> findUserEventsBefore(@Param("userId") String userId, @Param("timestamp") Instant timestamp,
+            @Param("id") long id, Limit limit);
+
+    /**
+     * Events of an action from a time on and before a position, newest first. Seeks idx_events_action_timestamp.
+     *
+     * @param action the action
+     * @param from the earliest timestamp, inclusive
+     * @param timestamp the timestamp of the position
+     * @param id the id of the position, events with the same timestamp and a smaller id come after it
+     * @param limit the number of events
+     * @return the events
+     */
+    @Query("""
+            select new com.example.demo.dto.EventRecordDTO(e.id, e.userId, e.action, e.songId, e.timestamp, e.source)
+            from EventEntity e
+            where e.action = :action
+              and e.timestamp >= :from
+              and (e.timestamp < :timestamp or (e.timestamp = :timestamp and e.id < :id))
+            order by e.timestamp desc, e.id desc""")
+    List<EventRecordDTO> findActionEventsBefore(@Param("action") ActionType action, @Param("from") Instant from,
+            @Param("timestamp") Instant timestamp, @Param("id") long id, Limit limit);
+
+    /**
+     * Latest events of a user and action, newest first. Seeks idx_events_user_id, the action is included there.
+     *
+     * @param userId the user
+     * @param action the action
+     * @param limit the number of events
+     * @return the events
+     */
+    @Query("""
+            select new com.example.demo.dto.EventRecordDTO(e.id, e.userId, e.action, e.songId, e.timestamp, e.source)
+            from EventEntity e
+            where e.userId = :userId and e.action = :action
+            order by e.timestamp desc, e.id desc""")
+    List<EventRecordDTO> findRecentUserActionEvents(@Param("userId") String userId, @Param("action") ActionType action,
+            Limit limit);
+}
@@ -0,0 +1,179 @@
+package com.example.demo.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.dto.RollupSeriesDTO;
+import com.example.demo.rollup.RollupDimension;
+import com.example.demo.rollup.RollupGranularity;
+import com.example.demo.rollup.RollupKey;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reads and writes the rollup tables with plain JDBC. Counts are added with multi-row MERGE statements,
+ * sent as a single JDBC batch within one transaction, the same way {@link EventBatchWriter} inserts events.
+ */
+@Repository
+@RequiredArgsConstructor
+public class RollupRepository {
+
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?)";
+    private static final int COLUMNS = 5;
+
+    /**
+     * Rows per statement, SQL Server accepts at most 2100 parameters per statement
+     */
+    static final int ROWS_PER_STATEMENT = 400;
+
+    /**
+     * Buckets are counted from a fixed origin, DATEDIFF in minutes stays within an INT for thousands of years
+     */
+    private static final String ORIGIN = "CAST('2000-01-01T00:00:00+00:00' AS DATETIMEOFFSET)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Add counts to the rows of a rollup table, creating missing rows
+     *
+     * @param granularity the table
+     * @param rows the counts to add by row
+     */
+    public void merge(RollupGranularity granularity, Map<RollupKey, Long> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<RollupKey, Long>> entries = new ArrayList<>(rows.entrySet());
+        int fullStatements = entries.size() / ROWS_PER_STATEMENT;
+        int remainder = entries.size() % ROWS_PER_STATEMENT;
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (fullStatements > 0) {
+                jdbcTemplate.batchUpdate(mergeSql(granularity, ROWS_PER_STATEMENT), new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        bindRows(ps, entries, i * ROWS_PER_STATEMENT, ROWS_PER_STATEMENT);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return fullStatements;
+                    }
+                });
+            }
+            if (remainder > 0) {
+                jdbcTemplate.update(mergeSql(granularity, remainder),
+                        ps -> bindRows(ps, entries, fullStatements * ROWS_PER_STATEMENT, remainder));
+            }
+        });
+    }
+
+    /**
+     * Rebuild the rows of a dimension within a range from the events table, replacing their counts
+     *
+     * @param granularity the table
+     * @param dimension the dimension
+     * @param from the start of the range, aligned to the granularity
+     * @param to the end of the range, exclusive and aligned to the granularity
+     */
+    public void rebuild(RollupGranularity granularity, RollupDimension dimension, Instant from, Instant to) {
+        String bucket = "DATEADD(" + granularity.getDatePart() + ", DATEDIFF(" + granularity.getDatePart() + ", "
+                + ORIGIN + ", timestamp), " + ORIGIN + ")";
+        String sql = "MERGE " + granularity.getTable() + " WITH (HOLDLOCK) AS t "
+                + "USING (SELECT " + bucket + " AS bucket_start, ? AS dimension, " + dimension.getColumn()
+                + " AS dimension_key, action, COUNT_BIG(*) AS event_count FROM events "
+                + "WHERE timestamp >= ? AND timestamp < ? AND " + dimension.getColumn() + " IS NOT NULL "
+                + "GROUP BY " + bucket + ", " + dimension.getColumn() + ", action) AS s "
+                + "ON t.dimension = s.dimension AND t.dimension_key = s.dimension_key "
+                + "AND t.bucket_start = s.bucket_start AND t.action = s.action "
+                + "WHEN MATCHED THEN UPDATE SET event_count = s.event_count "
+                + "WHEN NOT MATCHED BY TARGET THEN INSERT (bucket_start, dimension, dimension_key, action, event_count) "
+                + "VALUES (s.bucket_start, s.dimension, s.dimension_key, s.action, s.event_count) "
+                + "WHEN NOT MATCHED BY SOURCE AND t.dimension = ? AND t.bucket_start >= ? AND t.bucket_start < ? "
+                + "THEN DELETE;";
+        jdbcTemplate.update(sql, ps -> {
+            ps.setString(1, dimension.name());
+            ps.setObject(2, utc(from));
+            ps.setObject(3, utc(to));
+            ps.setString(4, dimension.name());
+            ps.setObject(5, utc(from));
+            ps.setObject(6, utc(to));
+        });
+    }
+
+    /**
+     * @param granularity the table
+     * @param dimension the dimension
+     * @param key the dimension key, null for all keys
+     * @param from the earliest bucket, inclusive
+     * @param to the latest bucket, exclusive
+     * @return the rows in order of bucket, key and action
+     */
+    public List<RollupSeriesDTO.Point> findSeries(RollupGranularity granularity, RollupDimension dimension, String key,
+            Instant from, Instant to) {
+        String sql = "SELECT bucket_start, dimension_key, action, event_count FROM " + granularity.getTable()
+                + " WHERE dimension = ?" + (key != null ? " AND dimension_key = ?" : "")
+                + " AND bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start, dimension_key, action";
+        return jdbcTemplate.query(sql, ps -> {
+            int index = 0;
+            ps.setString(++index, dimension.name());
+            if (key != null) {
+                ps.setString(++index, key);
+            }
+            ps.setObject(++index, utc(from));
+            ps.setObject(++index, utc(to));
+        }, (rs, rowNum) -> new RollupSeriesDTO.Point(
+                rs.getObject("bucket_start", OffsetDateTime.class).toInstant(),
+                rs.getString("dimension_key"),
+                rs.getString("action"),
+                rs.getLong("event_count")));
+    }
+
+    private static String mergeSql(RollupGranularity granularity, int rows) {
+        StringBuilder sql = new StringBuilder(256 + rows * (ROW_PLACEHOLDERS.length() + 2));
+        sql.append("MERGE ").append(granularity.getTable()).append(" WITH (HOLDLOCK) AS t USING (VALUES ");
+        for (int row = 0; row < rows; row++) {
+            if (row > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW_PLACEHOLDERS);
+        }
+        sql.append(") AS s (bucket_start, dimension, dimension_key, action, event_count) ")
+                .append("ON t.dimension = s.dimension AND t.dimension_key = s.dimension_key ")
+                .append("AND t.bucket_start = s.bucket_start AND t.action = s.action ")
+                .append("WHEN MATCHED THEN UPDATE SET event_count = t.event_count + s.event_count ")
+                .append("WHEN NOT MATCHED THEN INSERT (bucket_start, dimension, dimension_key, action, event_count) ")
+                .append("VALUES (s.bucket_start, s.dimension, s.dimension_key, s.action, s.event_count);");
+        return sql.toString();
+    }
+
+    private static void bindRows(PreparedStatement ps, List<Map.Entry<RollupKey, Long>> rows, int from, int count)
+            throws SQLException {
+        for (int row = 0; row < count; row++) {
+            Map.Entry<RollupKey, Long> entry = rows.get(from + row);
+            RollupKey key = entry.getKey();
+            int index = row * COLUMNS;
+            ps.setObject(++index, utc(Instant.ofEpochMilli(key.getBucketStart())));
+            ps.setString(++index, key.getDimension().name());
+            ps.setString(++index, key.getKey());
+            ps.setString(++index, key.getAction());
+            ps.setLong(++index, entry.getValue());
+        }
+    }
+
+    private static OffsetDateTime utc(Instant instant) {
+        return OffsetDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+}
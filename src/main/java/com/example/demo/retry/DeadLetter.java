@@ -0,0 +1,21 @@
+package com.example.demo.retry;
+
+import java.time.Instant;
+
+import org.springframework.messaging.Message;
+
+import lombok.Value;
+
+/**
+ * A delivery to a downstream channel that failed on every attempt
+ */
+@Value
+public class DeadLetter {
+    long id;
+    String channel;
+    int attempts;
+    String error;
+    Instant firstFailedAt;
+    Instant deadAt;
+    Message<?> message;
+}
@@ -0,0 +1,215 @@
+package com.example.demo.retry;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the messages arriving on the dead-letter channel for inspection and replay, oldest first.
+ * <p>
+ * Dead letters are held in memory and bounded, beyond the capacity the oldest are dropped and counted.
+ * They do not survive a restart; an event of the storage channel taken through the write-ahead log is
+ * redelivered from there instead.
+ */
+@Slf4j
+@Component
+public class DeadLetterStore implements MeterBinder {
+
+    /**
+     * Headers the dead-letter channel expects on its messages
+     */
+    public static final String CHANNEL_HEADER = "deadLetterChannel";
+    public static final String ATTEMPTS_HEADER = "deadLetterAttempts";
+    public static final String ERROR_HEADER = "deadLetterError";
+    public static final String FIRST_FAILED_AT_HEADER = "deadLetterFirstFailedAt";
+
+    private final int capacity;
+    private final Clock clock;
+    private final ConcurrentSkipListMap<Long, DeadLetter> letters = new ConcurrentSkipListMap<>();
+    private final Map<String, AtomicInteger> countByChannel = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger count = new AtomicInteger();
+    private final LongAdder evicted = new LongAdder();
+
+    @Autowired
+    public DeadLetterStore(EventPipelineProperties properties) {
+        this(properties.getRetry().getDeadLetterCapacity(), Clock.systemUTC());
+    }
+
+    DeadLetterStore(int capacity, Clock clock) {
+        this.capacity = Math.max(1, capacity);
+        this.clock = clock;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.deadletter.size", this, DeadLetterStore::getCount)
+                .description("Dead letters kept for inspection and replay")
+                .register(registry);
+        Gauge.builder("events.deadletter.oldest", this, DeadLetterStore::getOldestAgeSeconds)
+                .description("Age of the oldest dead letter")
+                .baseUnit("seconds")
+                .register(registry);
+        FunctionCounter.builder("events.deadletter.evicted", this, DeadLetterStore::getEvictedCount)
+                .description("Dead letters dropped because the store was full")
+                .register(registry);
+    }
+
+    /**
+     * Keep a message of the dead-letter channel
+     *
+     * @param message the message, with the dead-letter headers
+     * @return the dead letter
+     */
+    public DeadLetter add(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        Instant now = clock.instant();
+        Long firstFailedAt = headers.get(FIRST_FAILED_AT_HEADER, Long.class);
+        Integer attempts = headers.get(ATTEMPTS_HEADER, Integer.class);
+        DeadLetter letter = new DeadLetter(sequence.incrementAndGet(),
+                String.valueOf(headers.get(CHANNEL_HEADER)),
+                attempts != null ? attempts : 0,
+                headers.get(ERROR_HEADER, String.class),
+                firstFailedAt != null ? Instant.ofEpochMilli(firstFailedAt) : now,
+                now,
+                message);
+        letters.put(letter.getId(), letter);
+        counter(letter.getChannel()).incrementAndGet();
+        if (count.incrementAndGet() > capacity) {
+            Map.Entry<Long, DeadLetter> oldest = letters.pollFirstEntry();
+            if (oldest != null) {
+                removed(oldest.getValue());
+                evicted.increment();
+            }
+        }
+        log.warn("Dead letter {} for channel {} after {} attempts: {}", letter.getId(), letter.getChannel(),
+                letter.getAttempts(), letter.getError());
+        return letter;
+    }
+
+    /**
+     * @param channel the channel, null for all channels
+     * @param after the id the page starts after, 0 for the first page
+     * @param limit the maximum number of dead letters
+     * @return the dead letters, oldest first
+     */
+    public List<DeadLetter> list(String channel, long after, int limit) {
+        List<DeadLetter> page = new ArrayList<>(Math.min(limit, 1024));
+        for (DeadLetter letter : letters.tailMap(after, false).values()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            if (channel == null || channel.equals(letter.getChannel())) {
+                page.add(letter);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * @return the dead letter, null if there is none with the id
+     */
+    public DeadLetter get(long id) {
+        return letters.get(id);
+    }
+
+    /**
+     * Remove dead letters, oldest first, to replay them
+     *
+     * @param channel the channel, null for all channels
+     * @param limit the maximum number of dead letters
+     * @return the removed dead letters
+     */
+    public List<DeadLetter> take(String channel, int limit) {
+        List<DeadLetter> taken = new ArrayList<>(Math.min(limit, 1024));
+        for (Iterator<DeadLetter> iterator = letters.values().iterator(); iterator.hasNext() && taken.size() < limit; ) {
+            DeadLetter letter = iterator.next();
+            if ((channel == null || channel.equals(letter.getChannel())) && letters.remove(letter.getId(), letter)) {
+                removed(letter);
+                taken.add(letter);
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Remove a dead letter
+     *
+     * @return the removed dead letter, null if there is none with the id
+     */
+    public DeadLetter take(long id) {
+        DeadLetter letter = letters.remove(id);
+        if (letter != null) {
+            removed(letter);
+        }
+        return letter;
+    }
+
+    /**
+     * Drop the dead letters of a channel
+     *
+     * @param channel the channel, null for all channels
+     * @return the number of dropped dead letters
+     */
+    public int delete(String channel) {
+        return take(channel, Integer.MAX_VALUE).size();
+    }
+
+    public int getCount() {
+        return count.get();
+    }
+
+    public int getCount(String channel) {
+        AtomicInteger counter = countByChannel.get(channel);
+        return counter != null ? counter.get() : 0;
+    }
+
+    /**
+     * @return the dead letters dropped because the store was full
+     */
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    /**
+     * @return the age of the oldest dead letter in seconds, 0 without dead letters
+     */
+    public double getOldestAgeSeconds() {
+        Map.Entry<Long, DeadLetter> oldest = letters.firstEntry();
+        if (oldest == null) {
+            return 0;
+        }
+        return Math.max(0, clock.millis() - oldest.getValue().getDeadAt().toEpochMilli()) / 1000.0;
+    }
+
+    private AtomicInteger counter(String channel) {
+        return countByChannel.computeIfAbsent(channel, key -> new AtomicInteger());
+    }
+
+    private void removed(DeadLetter letter) {
+        count.decrementAndGet();
+        counter(letter.getChannel()).decrementAndGet();
+    }
+}
@@ -0,0 +1,553 @@
+package com.example.demo.retry;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.metrics.PipelineMetrics;
+import com.example.demo.pipeline.BoundedExecutor;
+import com.example.demo.pipeline.LaneExecutor;
+import com.example.demo.repository.DatabaseConcurrencyLimiter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Retries failed deliveries to the downstream channels with exponential backoff and jitter, and sends the
+ * deliveries that failed on every attempt to the dead-letter channel.
+ * <p>
+ * A delivery failing with an exception is parked on a {@link HashedTimingWheel}, so scheduling and firing
+ * a retry costs O(1) however many are pending. A due retry is handed to a small pool of virtual threads
+ * that runs the delivery again; when the pool is busy the retry waits for the next tick. Rejections, a full
+ * queue, the storage guard turning the event away or a busy database, are backpressure rather than
+ * failures: they still propagate to the sender, which answers 503 or redelivers from the write-ahead log.
+ * A channel whose handler no sender waits for, such as storage behind a queue, parks them like failures.
+ * A {@link com.example.demo.pipeline.DownstreamRejectedException} is no rejection, the delivery is deferred.
+ * <p>
+ * With ingestion lanes a retry runs on the lane of its message instead, and later messages of the same key
+ * for the channel are held back until the retry succeeded or became a dead letter, so each downstream
+ * service still sees the messages of a user in order.
+ * <p>
+ * Pending retries are held in memory. On shutdown the ones that did not fire become dead letters, and so
+ * does a delivery failing once the scheduler stopped.
+ */
+@Slf4j
+@Component
+public class DeliveryRetryScheduler implements SmartLifecycle, MeterBinder {
+
+    /**
+     * The downstream channels whose deliveries are retried
+     */
+    public static final List<String> CHANNELS = List.of("analytics", "aiEngine", "social", "storage", "sessions",
+            "aiSessions", "socialBatches");
+
+    /**
+     * Header carrying the attempt of a message delivered by a retry, absent on the first delivery
+     */
+    public static final String ATTEMPT_HEADER = "retryAttempt";
+
+    /**
+     * Stop after the downstream executors were drained, their failures are parked until then
+     */
+    private static final int PHASE = BoundedExecutor.DOWNSTREAM_PHASE - 1024;
+
+    private final EventPipelineProperties.Retry settings;
+    private final PipelineMetrics pipelineMetrics;
+    private final LongSupplier nanoClock;
+    private final HashedTimingWheel wheel;
+    private final BoundedExecutor executor;
+    private final Map<String, Consumer<Message<?>>> deliveries = new ConcurrentHashMap<>();
+    private final Map<String, ChannelStats> stats = new ConcurrentHashMap<>();
+    private final Map<String, Map<Object, Deque<Message<?>>>> held = new ConcurrentHashMap<>();
+    private final Set<String> retriedBackpressure = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile MessageChannel deadLetterChannel;
+    private volatile LaneExecutor lanes;
+    private volatile Function<Message<?>, Object> partitionKey;
+    private volatile boolean running;
+
+    @Autowired
+    public DeliveryRetryScheduler(EventPipelineProperties properties, PipelineMetrics pipelineMetrics) {
+        this(properties.getRetry(), properties.getIngestion().getDrainTimeout(), pipelineMetrics, System::nanoTime);
+    }
+
+    DeliveryRetryScheduler(EventPipelineProperties.Retry settings, Duration drainTimeout,
+            PipelineMetrics pipelineMetrics, LongSupplier nanoClock) {
+        this.settings = settings;
+        this.pipelineMetrics = pipelineMetrics;
+        this.nanoClock = nanoClock;
+        this.wheel = new HashedTimingWheel("retry-wheel", settings.getTick(), settings.getWheelSize(), nanoClock);
+        this.executor = new BoundedExecutor("retry", settings.getConcurrency(), settings.getQueueCapacity(),
+                drainTimeout, Thread.ofVirtual().name("retry-", 0).factory(), PHASE);
+        for (String channel : CHANNELS) {
+            stats.put(channel, new ChannelStats());
+        }
+    }
+
+    /**
+     * Make the handler of a downstream channel retry its failed deliveries
+     *
+     * @param channel the name of the channel
+     * @param delivery the delivery of a message to the downstream service
+     * @return the handler of the channel
+     */
+    public MessageHandler retrying(String channel, Consumer<Message<?>> delivery) {
+        register(channel, delivery);
+        return message -> deliver(channel, message);
+    }
+
+    /**
+     * Make the handler of a downstream channel retry its failed deliveries, optionally treating
+     * backpressure as a failure too
+     *
+     * @param channel the name of the channel
+     * @param delivery the delivery of a message to the downstream service
+     * @param retryBackpressure park a delivery rejected as backpressure as well, for a handler that no
+     *        sender waits for to answer the rejection
+     * @return the handler of the channel
+     */
+    public MessageHandler retrying(String channel, Consumer<Message<?>> delivery, boolean retryBackpressure) {
+        if (retryBackpressure) {
+            retriedBackpressure.add(channel);
+        }
+        return retrying(channel, delivery);
+    }
+
+    /**
+     * Register the delivery of a channel without a handler, whose failed messages are handed over with
+     * {@link #defer}
+     *
+     * @param channel the name of the channel
+     * @param delivery the delivery of a message to the downstream service
+     */
+    public void register(String channel, Consumer<Message<?>> delivery) {
+        deliveries.put(channel, delivery);
+        stats.computeIfAbsent(channel, name -> new ChannelStats());
+    }
+
+    /**
+     * Park a message whose first delivery failed outside the scheduler, such as a batch of a background
+     * dispatcher, for its next attempt
+     *
+     * @param channel the name of a registered channel
+     * @param message the message
+     * @param failure the failure of the first delivery
+     * @throws RuntimeException the failure, if retries are disabled
+     */
+    public void defer(String channel, Message<?> message, RuntimeException failure) {
+        delivery(channel);
+        if (!settings.isEnabled()) {
+            throw failure;
+        }
+        failed(new Retry(channel, message, System.currentTimeMillis(), null), failure);
+    }
+
+    /**
+     * @param message a message handed to a delivery
+     * @return true if it is delivered by a retry, after a failed attempt
+     */
+    public static boolean isRetry(Message<?> message) {
+        return message.getHeaders().containsKey(ATTEMPT_HEADER);
+    }
+
+    /**
+     * @param deadLetterChannel the channel receiving the deliveries whose retries are exhausted
+     */
+    public void setDeadLetterChannel(MessageChannel deadLetterChannel) {
+        this.deadLetterChannel = deadLetterChannel;
+    }
+
+    /**
+     * Run retries on the lanes their messages are handled on, keeping the messages of a key in order
+     *
+     * @param lanes the lanes the downstream handlers run on
+     * @param partitionKey extracts the key of a message, the same key as the lanes are assigned by
+     */
+    public void setLanes(LaneExecutor lanes, Function<Message<?>, Object> partitionKey) {
+        this.lanes = lanes;
+        this.partitionKey = partitionKey;
+    }
+
+    /**
+     * Deliver a message, parking it for a retry if the delivery fails. With lanes, a message whose key
+     * waits for a retry on the channel is held back behind it.
+     *
+     * @param channel the name of the channel
+     * @param message the message
+     * @throws RuntimeException if retries are disabled, or the delivery was rejected as backpressure and
+     *         the channel does not retry backpressure
+     */
+    public void deliver(String channel, Message<?> message) {
+        Object key = orderKey(message);
+        if (key != null) {
+            Deque<Message<?>> waiting = held(channel).get(key);
+            if (waiting != null) {
+                hold(channel, waiting, message);
+                return;
+            }
+        }
+        try {
+            delivery(channel).accept(message);
+        } catch (RuntimeException e) {
+            if (!settings.isEnabled() || isBackpressure(e) && !retriedBackpressure.contains(channel)) {
+                throw e;
+            }
+            Retry retry = new Retry(channel, message, System.currentTimeMillis(), key);
+            if (key != null) {
+                held(channel).put(key, new ArrayDeque<>());
+            }
+            if (!failed(retry, e)) {
+                release(retry);
+            }
+        }
+    }
+
+    /**
+     * Deliver dead letters again, each starting over with the full number of attempts
+     *
+     * @param letters the dead letters, removed from the store
+     * @return the number of dead letters scheduled for delivery, 0 once the scheduler stopped and they went
+     *         back to the dead-letter channel
+     */
+    public int replay(List<DeadLetter> letters) {
+        if (!running) {
+            for (DeadLetter letter : letters) {
+                Retry retry = new Retry(letter.getChannel(), letter.getMessage(),
+                        letter.getFirstFailedAt().toEpochMilli(), null);
+                retry.attempt = letter.getAttempts();
+                // put back as they were, not exhausted once more
+                sendDeadLetter(retry, letter.getError());
+            }
+            return 0;
+        }
+        for (DeadLetter letter : letters) {
+            // a replayed dead letter does not hold back newer messages, they went through long ago
+            Retry retry = new Retry(letter.getChannel(), letter.getMessage(), System.currentTimeMillis(), null);
+            retry.attempt = 0;
+            park(retry, 0);
+        }
+        return letters.size();
+    }
+
+    /**
+     * @return the retries waiting for their backoff or a worker
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public int getPendingCount(String channel) {
+        return stats(channel).pending.get();
+    }
+
+    public long getRetriedCount(String channel) {
+        return stats(channel).retried.sum();
+    }
+
+    public long getRecoveredCount(String channel) {
+        return stats(channel).recovered.sum();
+    }
+
+    public long getExhaustedCount(String channel) {
+        return stats(channel).exhausted.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        executor.bindTo(registry);
+        for (String channel : CHANNELS) {
+            Gauge.builder("events.retry.pending", this, s -> s.getPendingCount(channel))
+                    .description("Failed deliveries waiting for their next attempt")
+                    .tag("channel", channel)
+                    .register(registry);
+            FunctionCounter.builder("events.retry.retried", this, s -> s.getRetriedCount(channel))
+                    .description("Delivery attempts made after a failure")
+                    .tag("channel", channel)
+                    .register(registry);
+            FunctionCounter.builder("events.retry.recovered", this, s -> s.getRecoveredCount(channel))
+                    .description("Failed deliveries that succeeded on a retry")
+                    .tag("channel", channel)
+                    .register(registry);
+            FunctionCounter.builder("events.retry.exhausted", this, s -> s.getExhaustedCount(channel))
+                    .description("Failed deliveries sent to the dead-letter channel")
+                    .tag("channel", channel)
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        wheel.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        List<HashedTimingWheel.Timeout> unfired = new ArrayList<>(wheel.stop());
+        // retries already running may fail once more, they become dead letters right away
+        executor.stop();
+        unfired.addAll(wheel.stop());
+        if (!unfired.isEmpty()) {
+            log.warn("{} retries pending on shutdown, they become dead letters", unfired.size());
+        }
+        for (HashedTimingWheel.Timeout timeout : unfired) {
+            Retry retry = (Retry) timeout;
+            unpark(retry.channel);
+            deadLetter(retry, retry.error != null ? retry.error : "Pending on shutdown");
+        }
+        held.forEach((channel, keys) -> keys.values().forEach(waiting -> {
+            for (Message<?> message = waiting.poll(); message != null; message = waiting.poll()) {
+                unpark(channel);
+                deadLetter(new Retry(channel, message, System.currentTimeMillis(), null),
+                        "Held behind a pending retry on shutdown");
+            }
+        }));
+        held.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    /**
+     * Run a due retry, on a worker of the executor
+     */
+    void attempt(Retry retry) {
+        unpark(retry.channel);
+        ChannelStats channelStats = stats(retry.channel);
+        channelStats.retried.increment();
+        pipelineMetrics.recordRetryAge(retry.channel,
+                TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - retry.firstFailedAt));
+        try {
+            delivery(retry.channel).accept(MessageBuilder.fromMessage(retry.message)
+                    .setHeader(ATTEMPT_HEADER, retry.attempt)
+                    .build());
+            channelStats.recovered.increment();
+        } catch (RuntimeException e) {
+            if (failed(retry, e)) {
+                return;
+            }
+        }
+        release(retry);
+    }
+
+    /**
+     * Park a failed delivery for its next attempt, or send it to the dead-letter channel
+     *
+     * @return true if parked, false if it became a dead letter
+     */
+    private boolean failed(Retry retry, RuntimeException e) {
+        retry.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        if (!running) {
+            // the wheel is stopped, a parked retry would never fire
+            deadLetter(retry, "Failed on shutdown, last error " + retry.error);
+            return false;
+        }
+        EventPipelineProperties.RetryBackoff backoff = backoff(retry.channel);
+        if (retry.attempt >= backoff.getMaxAttempts()) {
+            deadLetter(retry, retry.error);
+            return false;
+        }
+        if (pending.get() >= settings.getMaxPending()) {
+            deadLetter(retry, "Too many pending retries, last error " + retry.error);
+            return false;
+        }
+        log.debug("Delivery to {} failed on attempt {}, retrying", retry.channel, retry.attempt, e);
+        park(retry, delayNanos(backoff, retry.attempt));
+        return true;
+    }
+
+    /**
+     * Deliver the messages held back behind a retry that is done, in order. Runs on the lane of the key,
+     * so no other message of the key is delivered meanwhile. A failing one becomes the next retry and
+     * keeps holding back the rest.
+     */
+    private void release(Retry retry) {
+        if (retry.key == null) {
+            return;
+        }
+        Map<Object, Deque<Message<?>>> keys = held(retry.channel);
+        Deque<Message<?>> waiting = keys.get(retry.key);
+        if (waiting == null) {
+            return;
+        }
+        for (Message<?> message = waiting.poll(); message != null; message = waiting.poll()) {
+            unpark(retry.channel);
+            try {
+                delivery(retry.channel).accept(message);
+            } catch (RuntimeException e) {
+                // backpressure has no sender to go back to here, it is retried like a failure
+                if (failed(new Retry(retry.channel, message, System.currentTimeMillis(), retry.key), e)) {
+                    return;
+                }
+            }
+        }
+        keys.remove(retry.key);
+    }
+
+    private void hold(String channel, Deque<Message<?>> waiting, Message<?> message) {
+        if (pending.get() >= settings.getMaxPending()) {
+            deadLetter(new Retry(channel, message, System.currentTimeMillis(), null),
+                    "Too many pending retries, held back behind a retry of the same key");
+            return;
+        }
+        pending.incrementAndGet();
+        stats(channel).pending.incrementAndGet();
+        waiting.addLast(message);
+    }
+
+    private void park(Retry retry, long delayNanos) {
+        pending.incrementAndGet();
+        stats(retry.channel).pending.incrementAndGet();
+        wheel.schedule(retry, delayNanos);
+    }
+
+    private void unpark(String channel) {
+        pending.decrementAndGet();
+        stats(channel).pending.decrementAndGet();
+    }
+
+    private void deadLetter(Retry retry, String error) {
+        stats(retry.channel).exhausted.increment();
+        sendDeadLetter(retry, error);
+    }
+
+    private void sendDeadLetter(Retry retry, String error) {
+        MessageChannel channel = deadLetterChannel;
+        if (channel == null) {
+            log.error("Delivery to {} failed on attempt {}, no dead-letter channel: {}", retry.channel,
+                    retry.attempt, error);
+            return;
+        }
+        channel.send(MessageBuilder.fromMessage(retry.message)
+                .setHeader(DeadLetterStore.CHANNEL_HEADER, retry.channel)
+                .setHeader(DeadLetterStore.ATTEMPTS_HEADER, retry.attempt)
+                .setHeader(DeadLetterStore.ERROR_HEADER, error)
+                .setHeader(DeadLetterStore.FIRST_FAILED_AT_HEADER, retry.firstFailedAt)
+                .build());
+    }
+
+    /**
+     * The delay after the given attempt: the initial backoff grown by the multiplier for every further
+     * attempt, capped, then moved up or down by a random share of up to the jitter
+     */
+    static long delayNanos(EventPipelineProperties.RetryBackoff backoff, int attempt) {
+        double delay = backoff.getInitialBackoff().toNanos() * Math.pow(backoff.getMultiplier(), attempt - 1);
+        delay = Math.min(delay, backoff.getMaxBackoff().toNanos());
+        double jitter = backoff.getJitter() * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return (long) Math.max(0, delay * (1 + jitter));
+    }
+
+    private static boolean isBackpressure(Throwable throwable) {
+        return BoundedExecutor.isRejection(throwable) || DatabaseConcurrencyLimiter.isBusy(throwable);
+    }
+
+    private Consumer<Message<?>> delivery(String channel) {
+        Consumer<Message<?>> delivery = deliveries.get(channel);
+        if (delivery == null) {
+            throw new IllegalArgumentException("No delivery registered for channel " + channel);
+        }
+        return delivery;
+    }
+
+    private EventPipelineProperties.RetryBackoff backoff(String channel) {
+        return settings.getChannels().getOrDefault(channel, settings.getDefaults());
+    }
+
+    private Object orderKey(Message<?> message) {
+        Function<Message<?>, Object> key = partitionKey;
+        return key != null ? key.apply(message) : null;
+    }
+
+    private Map<Object, Deque<Message<?>>> held(String channel) {
+        return held.computeIfAbsent(channel, name -> new ConcurrentHashMap<>());
+    }
+
+    private ChannelStats stats(String channel) {
+        return stats.computeIfAbsent(channel, name -> new ChannelStats());
+    }
+
+    /**
+     * A failed delivery waiting for its next attempt, its own node in the timing wheel
+     */
+    final class Retry extends HashedTimingWheel.Timeout {
+        private final String channel;
+        private final Message<?> message;
+        private final long firstFailedAt;
+        /**
+         * The key whose later messages wait for this retry, null if none do
+         */
+        private final Object key;
+        private int attempt = 1;
+        private String error;
+
+        private Retry(String channel, Message<?> message, long firstFailedAt, Object key) {
+            this.channel = channel;
+            this.message = message;
+            this.firstFailedAt = firstFailedAt;
+            this.key = key;
+        }
+
+        @Override
+        protected void expire() {
+            Runnable task = () -> {
+                attempt++;
+                attempt(this);
+            };
+            try {
+                Object laneKey = orderKey(message);
+                if (laneKey != null) {
+                    lanes.execute(laneKey, task);
+                } else {
+                    executor.execute(task);
+                }
+            } catch (RejectedExecutionException e) {
+                // the workers are busy, the retry waits for them without using up an attempt
+                wheel.schedule(this, 0);
+            }
+        }
+    }
+
+    /**
+     * Retry counters of one channel
+     */
+    private static final class ChannelStats {
+        private final AtomicInteger pending = new AtomicInteger();
+        private final LongAdder retried = new LongAdder();
+        private final LongAdder recovered = new LongAdder();
+        private final LongAdder exhausted = new LongAdder();
+    }
+}
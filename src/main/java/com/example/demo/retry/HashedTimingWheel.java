@@ -0,0 +1,206 @@
+package com.example.demo.retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hashed timing wheel, a timer for very many timeouts of coarse precision.
+ * <p>
+ * The wheel is a ring of buckets, one per tick. A timeout goes into the bucket of its deadline modulo the
+ * ring, counting the full turns it has to wait, so scheduling it and firing it cost O(1) however many are
+ * pending. A single worker advances the wheel every tick and fires the due timeouts of the current bucket.
+ * Timeouts are handed to the worker through a lock-free queue and linked into the buckets by the worker
+ * alone, so the buckets need no locking. A timeout fires up to one tick late, never early.
+ * <p>
+ * The timeouts themselves are the list nodes of the buckets, pending timeouts cost one object each.
+ */
+@Slf4j
+public class HashedTimingWheel {
+
+    /**
+     * Timeouts taken from the queue per tick, a burst of scheduling is spread over several ticks
+     */
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final String name;
+    private final long tickNanos;
+    private final Timeout[] heads;
+    private final int mask;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private long tick;
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * @param name the name of the worker thread
+     * @param tick the duration of a tick, the precision of the timeouts
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     * @param nanoClock the source of {@link System#nanoTime} compatible timestamps
+     */
+    public HashedTimingWheel(String name, Duration tick, int wheelSize, LongSupplier nanoClock) {
+        this.name = name;
+        this.tickNanos = Math.max(1, tick.toNanos());
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.heads = new Timeout[size];
+        this.mask = size - 1;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Schedule a timeout, from any thread
+     *
+     * @param timeout the timeout, not scheduled yet
+     * @param delayNanos the time until it fires
+     */
+    public void schedule(Timeout timeout, long delayNanos) {
+        timeout.deadline = nanoClock.getAsLong() - startNanos + Math.max(0, delayNanos);
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+    }
+
+    /**
+     * @return the timeouts scheduled and not fired yet
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public void start() {
+        running = true;
+        worker = Thread.ofPlatform().name(name).daemon(true).start(this::run);
+    }
+
+    /**
+     * Stop the worker
+     *
+     * @return the timeouts that did not fire
+     */
+    public List<Timeout> stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+        List<Timeout> unfired = new ArrayList<>();
+        for (int i = 0; i < heads.length; i++) {
+            for (Timeout timeout = heads[i]; timeout != null; timeout = timeout.next) {
+                unfired.add(timeout);
+            }
+            heads[i] = null;
+        }
+        for (Timeout timeout; (timeout = scheduled.poll()) != null; ) {
+            unfired.add(timeout);
+        }
+        pending.addAndGet(-unfired.size());
+        return unfired;
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleepNanos = deadline - nanoClock.getAsLong();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    // stopped, the unfired timeouts are handed back
+                    return;
+                }
+                continue;
+            }
+            try {
+                advance();
+            } catch (RuntimeException e) {
+                log.error("Timing wheel '{}' failed to fire timeouts", name, e);
+            }
+        }
+    }
+
+    /**
+     * Take the scheduled timeouts into their buckets and fire the due ones of the current tick. Called by the
+     * worker only, tests call it directly on a wheel that was not started.
+     */
+    void advance() {
+        transfer();
+        int index = (int) (tick & mask);
+        Timeout timeout = heads[index];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds <= 0) {
+                unlink(index, timeout);
+                pending.decrementAndGet();
+                try {
+                    timeout.expire();
+                } catch (RuntimeException e) {
+                    log.error("Timeout of timing wheel '{}' failed", name, e);
+                }
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+        tick++;
+    }
+
+    private void transfer() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = scheduled.poll();
+            if (timeout == null) {
+                return;
+            }
+            long due = timeout.deadline / tickNanos;
+            timeout.rounds = (due - tick) / heads.length;
+            // an overdue timeout fires with the current tick
+            int index = (int) (Math.max(due, tick) & mask);
+            timeout.prev = null;
+            timeout.next = heads[index];
+            if (heads[index] != null) {
+                heads[index].prev = timeout;
+            }
+            heads[index] = timeout;
+        }
+    }
+
+    private void unlink(int index, Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            heads[index] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.next = null;
+        timeout.prev = null;
+    }
+
+    /**
+     * Something to run once its delay is over, on the worker of the wheel, so it should only hand work over
+     */
+    public abstract static class Timeout {
+        private long deadline;
+        private long rounds;
+        private Timeout next;
+        private Timeout prev;
+
+        protected abstract void expire();
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.demo.rollup;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.entity.EventEntity;
+import com.example.demo.repository.RollupRepository;
+
+import jakarta.annotation.PreDestroy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Maintains the minute, hour and day rollup tables from the stored events.
+ * <p>
+ * Events are counted in memory at the finest grain, per minute, song, action and category, so an event
+ * costs a single map update. The partial counts are split into partitions by thread, each with its own
+ * lock. A flush swaps the partitions out, expands the counts into the rows of every granularity and
+ * dimension and adds them to the tables with batched upserts. Rows that could not be written are kept for
+ * the next flush as long as they stay below the pending limit. Events arriving while a partition is full are
+ * dropped and counted, the backfill can rebuild the affected buckets from the events table.
+ */
+@Slf4j
+@Component
+public class RollupAccumulator implements MeterBinder {
+
+    private static final RollupGranularity[] GRANULARITIES = RollupGranularity.values();
+
+    private final EventPipelineProperties.Rollups settings;
+    private final BiConsumer<RollupGranularity, Map<RollupKey, Long>> writer;
+    private final Partition[] partitions;
+    private final int partitionMask;
+    private final int maxKeysPerPartition;
+    private final Map<RollupGranularity, Map<RollupKey, Long>> unwritten = new EnumMap<>(RollupGranularity.class);
+    private final AtomicInteger pendingKeys = new AtomicInteger();
+    private final LongAdder writtenRows = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder lostRows = new LongAdder();
+
+    @Autowired
+    public RollupAccumulator(EventPipelineProperties properties, RollupRepository rollupRepository) {
+        this(properties.getRollups(), rollupRepository::merge);
+    }
+
+    RollupAccumulator(EventPipelineProperties.Rollups settings, BiConsumer<RollupGranularity, Map<RollupKey, Long>> writer) {
+        this.settings = settings;
+        this.writer = writer;
+        int partitionCount = Integer.highestOneBit(Math.max(1, settings.getPartitions()));
+        this.partitionMask = partitionCount - 1;
+        this.maxKeysPerPartition = Math.max(1, settings.getMaxPendingKeys() / partitionCount);
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.rollups.pending", this, RollupAccumulator::getPendingKeyCount)
+                .description("Minute, song, action and category counts waiting for the next flush")
+                .register(registry);
+        FunctionCounter.builder("events.rollups.written", this, RollupAccumulator::getWrittenRowCount)
+                .description("Rollup rows upserted")
+                .register(registry);
+        FunctionCounter.builder("events.rollups.flush.failures", this,
+                RollupAccumulator::getFailedFlushCount)
+                .description("Failed rollup upserts")
+                .register(registry);
+        FunctionCounter.builder("events.rollups.dropped", this, RollupAccumulator::getDroppedEventCount)
+                .description("Events not counted because the collected counts were full")
+                .register(registry);
+        FunctionCounter.builder("events.rollups.lost", this, RollupAccumulator::getLostRowCount)
+                .description("Rollup rows given up after a failed upsert")
+                .register(registry);
+    }
+
+    /**
+     * Count a stored event
+     *
+     * @param event the event as written to the events table
+     */
+    public void record(EventEntity event) {
+        if (!settings.isEnabled() || event.getTimestamp() == null || event.getAction() == null) {
+            return;
+        }
+        Count key = new Count(RollupGranularity.MINUTE.truncate(event.getTimestamp().toEpochMilli()),
+                event.getSongId(), event.getAction().name(), event.getCategory());
+        // partials of a thread stay in its partition, the flush merges them anyway
+        Partition partition = partitions[(int) Thread.currentThread().threadId() & partitionMask];
+        synchronized (partition) {
+            Count count = partition.counts.get(key);
+            if (count == null) {
+                if (partition.counts.size() >= maxKeysPerPartition) {
+                    droppedEvents.increment();
+                    return;
+                }
+                count = key;
+                partition.counts.put(key, count);
+                pendingKeys.incrementAndGet();
+            }
+            count.events++;
+        }
+    }
+
+    /**
+     * Add the counts collected since the last flush to the rollup tables
+     */
+    @Scheduled(fixedDelayString = "${events.rollups.flush-interval:10s}")
+    public synchronized void flush() {
+        Map<RollupGranularity, Map<RollupKey, Long>> rows = new EnumMap<>(RollupGranularity.class);
+        for (RollupGranularity granularity : GRANULARITIES) {
+            Map<RollupKey, Long> retry = unwritten.remove(granularity);
+            rows.put(granularity, retry != null ? retry : new HashMap<>());
+        }
+        for (Partition partition : partitions) {
+            Map<Count, Count> counts;
+            synchronized (partition) {
+                counts = partition.counts;
+                partition.counts = new HashMap<>();
+            }
+            pendingKeys.addAndGet(-counts.size());
+            for (Count count : counts.values()) {
+                expand(count, rows);
+            }
+        }
+        for (Map.Entry<RollupGranularity, Map<RollupKey, Long>> entry : rows.entrySet()) {
+            write(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Write what is still collected on shutdown, the database is still available then
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        if (settings.isEnabled()) {
+            flush();
+        }
+    }
+
+    public int getPendingKeyCount() {
+        return pendingKeys.get();
+    }
+
+    public long getWrittenRowCount() {
+        return writtenRows.sum();
+    }
+
+    public long getFailedFlushCount() {
+        return failedFlushes.sum();
+    }
+
+    public long getDroppedEventCount() {
+        return droppedEvents.sum();
+    }
+
+    public long getLostRowCount() {
+        return lostRows.sum();
+    }
+
+    private void expand(Count count, Map<RollupGranularity, Map<RollupKey, Long>> rows) {
+        for (RollupGranularity granularity : GRANULARITIES) {
+            Map<RollupKey, Long> target = rows.get(granularity);
+            long bucketStart = granularity.truncate(count.minuteStart);
+            if (count.songId != null) {
+                target.merge(new RollupKey(RollupDimension.SONG, count.songId, bucketStart, count.action),
+                        count.events, Long::sum);
+            }
+            target.merge(new RollupKey(RollupDimension.ACTION, count.action, bucketStart, count.action),
+                    count.events, Long::sum);
+            if (count.category != null) {
+                target.merge(new RollupKey(RollupDimension.CATEGORY, count.category, bucketStart, count.action),
+                        count.events, Long::sum);
+            }
+        }
+    }
+
+    private void write(RollupGranularity granularity, Map<RollupKey, Long> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            writer.accept(granularity, rows);
+            writtenRows.add(rows.size());
+        } catch (RuntimeException e) {
+            failedFlushes.increment();
+            if (rows.size() <= settings.getMaxPendingKeys()) {
+                log.warn("Failed to write {} {} rollups, retrying with the next flush", rows.size(), granularity, e);
+                unwritten.put(granularity, rows);
+            } else {
+                log.error("Failed to write {} {} rollups, dropping them", rows.size(), granularity, e);
+                lostRows.add(rows.size());
+            }
+        }
+    }
+
+    /**
+     * Partial counts of the threads mapped to it
+     */
+    private static final class Partition {
+        private Map<Count, Count> counts = new HashMap<>();
+    }
+
+    /**
+     * Events of a minute, song, action and category, the key is its own value holder
+     */
+    private static final class Count {
+        private final long minuteStart;
+        private final String songId;
+        private final String action;
+        private final String category;
+        private final int hash;
+        private long events;
+
+        private Count(long minuteStart, String songId, String action, String category) {
+            this.minuteStart = minuteStart;
+            this.songId = songId;
+            this.action = action;
+            this.category = category;
+            this.hash = Objects.hash(minuteStart, songId, action, category);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Count count && minuteStart == count.minuteStart
+                    && Objects.equals(songId, count.songId) && action.equals(count.action)
+                    && Objects.equals(category, count.category);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.demo.rollup;
+
+/**
+ * What the events of a rollup row are counted by, every row is further split by action
+ */
+public enum RollupDimension {
+    SONG("song_id"),
+    ACTION("action"),
+    CATEGORY("category");
+
+    private final String column;
+
+    RollupDimension(String column) {
+        this.column = column;
+    }
+
+    /**
+     * @return the column of the events table holding the key
+     */
+    public String getColumn() {
+        return column;
+    }
+}
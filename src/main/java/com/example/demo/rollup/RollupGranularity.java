@@ -0,0 +1,49 @@
+package com.example.demo.rollup;
+
+/**
+ * Bucket sizes of the rollup tables, buckets are aligned to UTC
+ */
+public enum RollupGranularity {
+    MINUTE("event_rollups_minute", "minute", 60_000L),
+    HOUR("event_rollups_hour", "hour", 3_600_000L),
+    DAY("event_rollups_day", "day", 86_400_000L);
+
+    private final String table;
+    private final String datePart;
+    private final long millis;
+
+    RollupGranularity(String table, String datePart, long millis) {
+        this.table = table;
+        this.datePart = datePart;
+        this.millis = millis;
+    }
+
+    /**
+     * @return the table holding the rollups
+     */
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return the T-SQL date part of the bucket size
+     */
+    public String getDatePart() {
+        return datePart;
+    }
+
+    /**
+     * @return the bucket size in milliseconds
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * @param epochMillis a point in time
+     * @return the start of the bucket containing it
+     */
+    public long truncate(long epochMillis) {
+        return Math.floorDiv(epochMillis, millis) * millis;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.demo.rollup;
+
+import lombok.Value;
+
+/**
+ * Row of a rollup table: the events of an action and dimension key within a bucket
+ */
+@Value
+public class RollupKey {
+    RollupDimension dimension;
+    String key;
+    long bucketStart;
+    String action;
+}
@@ -1,6 +1,7 @@
 package com.example.demo.service;
 
 import com.example.demo.model.Event;
+import com.example.demo.model.ListeningSession;
 
 /**
  * AI engine service interface, for processing event for AI analysis
@@ -11,4 +12,10 @@ public interface AiEngineService {
      * @param event the event to process
      */
     void processEvent(Event event);
+
+    /**
+     * Process a completed listening session for AI analysis
+     * @param session the session to process
+     */
+    void processSession(ListeningSession session);
 } 
\ No newline at end of file
@@ -1,5 +1,10 @@
 package com.example.demo.service;
 
+import java.time.Duration;
+
+import com.example.demo.analytics.WindowType;
+import com.example.demo.dto.TrendingSongsDTO;
+import com.example.demo.dto.WindowCountsDTO;
 import com.example.demo.model.Event;
 
 /**
@@ -11,4 +16,38 @@ public interface AnalyticsService {
      * @param event the event to process
      */
     void processEvent(Event event);
-} 
\ No newline at end of file
+
+    /**
+     * Count events per action within a window of event time
+     * @param window the window length
+     * @param type sliding or tumbling window
+     * @return the counts per action
+     */
+    WindowCountsDTO getActionCounts(Duration window, WindowType type);
+
+    /**
+     * Count events per source within a window of event time
+     * @param window the window length
+     * @param type sliding or tumbling window
+     * @return the counts per source
+     */
+    WindowCountsDTO getSourceCounts(Duration window, WindowType type);
+
+    /**
+     * Estimate the events of a song per action within a window of event time
+     * @param songId the song
+     * @param window the window length
+     * @param type sliding or tumbling window
+     * @return the estimated counts per action, never less than the true counts
+     */
+    WindowCountsDTO getSongCounts(String songId, Duration window, WindowType type);
+
+    /**
+     * Find the most played songs within a window of event time
+     * @param window the window length
+     * @param type sliding or tumbling window
+     * @param limit the number of songs
+     * @return the songs, most played first
+     */
+    TrendingSongsDTO getTrendingSongs(Duration window, WindowType type, int limit);
+}
@@ -0,0 +1,165 @@
+package com.example.demo.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.codec.RawEventDecoder;
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.BatchResultDTO;
+import com.example.demo.dto.RawEventDTO;
+import com.example.demo.pipeline.BoundedExecutor;
+import com.example.demo.pipeline.EventValidator;
+import com.example.demo.repository.DatabaseConcurrencyLimiter;
+import com.example.demo.wal.EventWriteAheadLog;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bulk ingestion of events, reads a JSON array or an NDJSON stream item by item
+ * and pushes every event through the integration flow. With the write-ahead log the whole batch shares
+ * one sync at its end instead of one per event.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EventBatchService {
+
+    private final MessageChannel eventInputChannel;
+    private final RawEventDecoder rawEventDecoder;
+    private final EventPipelineProperties properties;
+    private final EventWriteAheadLog eventWriteAheadLog;
+
+    /**
+     * Ingest all events of the body without materializing it
+     *
+     * @param body a JSON array of events, or newline delimited JSON events
+     * @param userAgent the User-Agent of the request, given to every event
+     * @param clientIp the client address of the request, given to every event
+     * @return per-item summary of the batch
+     * @throws IOException if the body cannot be read
+     */
+    public BatchResultDTO ingest(InputStream body, String userAgent, String clientIp) throws IOException {
+        int maxItems = properties.getBatch().getMaxItems();
+        int received = 0;
+        int accepted = 0;
+        int rejected = 0;
+        boolean truncated = false;
+        List<BatchResultDTO.ItemError> errors = new ArrayList<>();
+
+        // a root-level array is unwrapped by the iterator, otherwise root-level values are read in sequence
+        try (RawEventDecoder.Items items = rawEventDecoder.readValues(body)) {
+            while (true) {
+                try {
+                    if (!items.hasNextValue()) {
+                        break;
+                    }
+                } catch (IOException e) {
+                    // the stream itself is broken, nothing after this point can be trusted
+                    rejected++;
+                    report(errors, received++, "Malformed body: " + e.getMessage());
+                    truncated = true;
+                    break;
+                }
+
+                if (received == maxItems) {
+                    truncated = true;
+                    break;
+                }
+                int index = received++;
+
+                RawEventDTO rawEvent;
+                try {
+                    rawEvent = items.nextValue();
+                } catch (JsonParseException e) {
+                    rejected++;
+                    report(errors, index, "Malformed body: " + e.getOriginalMessage());
+                    truncated = true;
+                    break;
+                } catch (JsonMappingException e) {
+                    // the decoder is already past the broken item
+                    rejected++;
+                    report(errors, index, "Unreadable event: " + e.getOriginalMessage());
+                    continue;
+                }
+
+                if (rawEvent != null) {
+                    rawEvent.setUserAgent(userAgent);
+                    rawEvent.setClientIp(clientIp);
+                }
+                String reason = send(rawEvent);
+                if (reason == null) {
+                    accepted++;
+                } else {
+                    rejected++;
+                    report(errors, index, reason);
+                }
+            }
+        }
+
+        if (properties.getWal().isEnabled()) {
+            // the accepted events are only acknowledged once they are on disk
+            eventWriteAheadLog.sync();
+        }
+        if (truncated) {
+            log.warn("Batch ingestion stopped after {} items", received);
+        }
+        return BatchResultDTO.builder()
+                .received(received)
+                .accepted(accepted)
+                .rejected(rejected)
+                .truncated(truncated)
+                .errors(errors)
+                .build();
+    }
+
+    /**
+     * Send one event to the integration flow
+     *
+     * @return the rejection reason, or null if the event was accepted
+     */
+    private String send(RawEventDTO rawEvent) {
+        if (rawEvent == null) {
+            return "Event must be a JSON object";
+        }
+        EventValidator.Violation violation = EventValidator.validate(
+                rawEvent.getUserId(), rawEvent.getActionType(), rawEvent.getSongId());
+        if (violation != null) {
+            return violation.getMessage();
+        }
+        try {
+            MessageBuilder<RawEventDTO> message = MessageBuilder.withPayload(rawEvent);
+            if (properties.getWal().isEnabled()) {
+                message.setHeader(EventWriteAheadLog.DEFER_SYNC_HEADER, true);
+            }
+            if (!eventInputChannel.send(message.build())) {
+                return "Failed to process event";
+            }
+        } catch (MessagingException e) {
+            if (BoundedExecutor.isRejection(e)) {
+                return "Event queue is full, retry later";
+            }
+            if (DatabaseConcurrencyLimiter.isBusy(e)) {
+                return "Database busy, retry later";
+            }
+            log.warn("Failed to process batch event for user {}", rawEvent.getUserId(), e);
+            return "Failed to process event";
+        }
+        return null;
+    }
+
+    private void report(List<BatchResultDTO.ItemError> errors, int index, String reason) {
+        if (errors.size() < properties.getBatch().getMaxReportedErrors()) {
+            errors.add(new BatchResultDTO.ItemError(index, reason));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.demo.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import lombok.Value;
+
+/**
+ * Position in a result ordered by timestamp and id, both descending. Clients get it as an opaque token
+ * and the next page continues strictly after it.
+ */
+@Value
+public class EventCursor {
+
+    /**
+     * Position before every stored event, DATETIMEOFFSET goes up to the year 9999
+     */
+    public static final EventCursor START = new EventCursor(Instant.parse("9999-12-31T23:59:59Z"), Long.MAX_VALUE);
+
+    Instant timestamp;
+    long id;
+
+    /**
+     * @return the token handed to clients
+     */
+    public String encode() {
+        String position = timestamp.getEpochSecond() + ":" + timestamp.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param token a token from {@link #encode()}, or null for the first page
+     * @return the cursor
+     * @throws IllegalArgumentException if the token is not a cursor
+     */
+    public static EventCursor decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return START;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII).split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            Instant timestamp = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            return new EventCursor(timestamp, Long.parseLong(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
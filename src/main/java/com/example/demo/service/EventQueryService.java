@@ -0,0 +1,73 @@
+package com.example.demo.service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.example.demo.dto.ArchivedEventDTO;
+import com.example.demo.dto.EventPageDTO;
+import com.example.demo.dto.EventRecordDTO;
+import com.example.demo.model.ActionType;
+
+/**
+ * Event query service interface, for reading stored events newest first
+ */
+public interface EventQueryService {
+    /**
+     * Read a page of the events of a user
+     * @param userId the user
+     * @param cursor the cursor of the previous page, null for the first page
+     * @param limit the page size, null for the default
+     * @return the page
+     * @throws IllegalArgumentException if the cursor or the page size is invalid
+     */
+    EventPageDTO getUserEvents(String userId, String cursor, Integer limit);
+
+    /**
+     * Read a page of the events of an action within a time range
+     * @param action the action
+     * @param from the earliest timestamp, inclusive
+     * @param to the latest timestamp, exclusive
+     * @param cursor the cursor of the previous page, null for the first page
+     * @param limit the page size, null for the default
+     * @return the page
+     * @throws IllegalArgumentException if the cursor, the range or the page size is invalid
+     */
+    EventPageDTO getActionEvents(ActionType action, Instant from, Instant to, String cursor, Integer limit);
+
+    /**
+     * Read the latest events of a user, from memory when they are cached
+     * @param userId the user
+     * @param action the action, null for all actions
+     * @param limit the number of events, null for the default
+     * @return the events, newest first, without their ids
+     * @throws IllegalArgumentException if the number of events is invalid
+     */
+    List<EventRecordDTO> getRecentEvents(String userId, ActionType action, Integer limit);
+
+    /**
+     * Stream all events of a user
+     * @param userId the user
+     * @param consumer receives every event
+     */
+    void streamUserEvents(String userId, Consumer<EventRecordDTO> consumer);
+
+    /**
+     * Stream all events of an action within a time range
+     * @param action the action
+     * @param from the earliest timestamp, inclusive
+     * @param to the latest timestamp, exclusive
+     * @param consumer receives every event
+     * @throws IllegalArgumentException if the range is invalid
+     */
+    void streamActionEvents(ActionType action, Instant from, Instant to, Consumer<EventRecordDTO> consumer);
+
+    /**
+     * Stream the archived events within a time range
+     * @param from the earliest timestamp, inclusive
+     * @param to the latest timestamp, exclusive
+     * @param consumer receives every event, in timestamp order within each archive segment
+     * @throws IllegalArgumentException if the range is invalid
+     */
+    void streamArchivedEvents(Instant from, Instant to, Consumer<ArchivedEventDTO> consumer);
+}
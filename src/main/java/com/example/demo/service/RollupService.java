@@ -0,0 +1,41 @@
+package com.example.demo.service;
+
+import java.time.Instant;
+
+import com.example.demo.dto.RollupBackfillStatusDTO;
+import com.example.demo.dto.RollupSeriesDTO;
+import com.example.demo.rollup.RollupDimension;
+import com.example.demo.rollup.RollupGranularity;
+
+/**
+ * Rollup service interface, for reading and rebuilding the pre-aggregated event counts
+ */
+public interface RollupService {
+    /**
+     * Read the counts of a dimension per bucket and action
+     * @param granularity the bucket size
+     * @param dimension the dimension
+     * @param key the dimension key, null for all keys
+     * @param from the earliest time, rounded down to a bucket
+     * @param to the latest time, exclusive and rounded up to a bucket
+     * @return the counts
+     * @throws IllegalArgumentException if the range is invalid or too long, or a song is not given
+     */
+    RollupSeriesDTO getSeries(RollupGranularity granularity, RollupDimension dimension, String key,
+            Instant from, Instant to);
+
+    /**
+     * Start rebuilding the rollups of a range of days from the events table in the background
+     * @param from the earliest time, rounded down to a day
+     * @param to the latest time, exclusive and rounded up to a day
+     * @return the status of the started backfill
+     * @throws IllegalArgumentException if the range is invalid
+     * @throws IllegalStateException if a backfill is already running
+     */
+    RollupBackfillStatusDTO startBackfill(Instant from, Instant to);
+
+    /**
+     * @return the status of the latest backfill
+     */
+    RollupBackfillStatusDTO getBackfillStatus();
+}
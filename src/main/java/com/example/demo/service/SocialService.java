@@ -1,5 +1,7 @@
 package com.example.demo.service;
 
+import java.util.List;
+
 import com.example.demo.model.Event;
 
 /**
@@ -11,4 +13,14 @@ public interface SocialService {
      * @param event the event to share
      */
     void shareEvent(Event event);
+
+    /**
+     * Share several events to social media, implementations with a bulk API should override this
+     * @param events the events to share
+     */
+    default void shareEvents(List<Event> events) {
+        for (Event event : events) {
+            shareEvent(event);
+        }
+    }
 } 
\ No newline at end of file
@@ -11,4 +11,14 @@ public interface StorageService {
      * @param event the event to store
      */
     void storeEvent(Event event);
+
+    /**
+     * Store event to persistent storage and report when it is safe
+     * @param event the event to store
+     * @param onDurable run once the event is stored durably, not run if storing failed
+     */
+    default void storeEvent(Event event, Runnable onDurable) {
+        storeEvent(event);
+        onDurable.run();
+    }
 } 
\ No newline at end of file
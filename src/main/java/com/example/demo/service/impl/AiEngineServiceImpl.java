@@ -3,6 +3,7 @@ package com.example.demo.service.impl;
 import org.springframework.stereotype.Service;
 
 import com.example.demo.model.Event;
+import com.example.demo.model.ListeningSession;
 import com.example.demo.service.AiEngineService;
 
 import lombok.RequiredArgsConstructor;
@@ -19,9 +20,16 @@ public class AiEngineServiceImpl implements AiEngineService {
     @Override
     public void processEvent(Event event) {
         // Actual implementation will send event to AI engine
-        log.info("Processing AI engine event: {}", event);
+        log.debug("Processing AI engine event: {}", event);
         // In actual implementation, the event will be sent to AI engine for processing
-        log.info("AI engine analyzing event: {}, user action: {}, timestamp: {}", 
+        log.debug("AI engine analyzing event: {}, user action: {}, timestamp: {}", 
                 event.getUserId(), event.getAction(), event.getTimestamp());
     }
-} 
\ No newline at end of file
+
+    @Override
+    public void processSession(ListeningSession session) {
+        // In actual implementation, the session will be sent to the recommender as one training sequence
+        log.debug("AI engine analyzing session of user: {}, plays: {}, skip ratio: {}, listened: {}",
+                session.getUserId(), session.getPlays(), session.getSkipRatio(), session.getListenDuration());
+    }
+}
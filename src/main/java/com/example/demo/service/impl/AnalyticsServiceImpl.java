@@ -1,7 +1,13 @@
 package com.example.demo.service.impl;
 
+import java.time.Duration;
+
 import org.springframework.stereotype.Service;
 
+import com.example.demo.analytics.StreamingAggregator;
+import com.example.demo.analytics.WindowType;
+import com.example.demo.dto.TrendingSongsDTO;
+import com.example.demo.dto.WindowCountsDTO;
 import com.example.demo.model.Event;
 import com.example.demo.service.AnalyticsService;
 
@@ -9,19 +15,39 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Analytics service implementation class
+ * Analytics service implementation class, aggregates events in memory as they stream through
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class AnalyticsServiceImpl implements AnalyticsService {
+
+    private final StreamingAggregator streamingAggregator;
     
     @Override
     public void processEvent(Event event) {
-        // Actual implementation will send event to analytics system
-        log.info("Processing analytics event: {}", event);
-        // In actual implementation, the event will be sent to analytics system, such as Google Analytics or custom analytics system
-        log.info("Analytics event type: {}, user ID: {}, song ID: {}", 
+        log.debug("Analytics event type: {}, user ID: {}, song ID: {}", 
                 event.getAction(), event.getUserId(), event.getSongId());
+        streamingAggregator.record(event);
+    }
+
+    @Override
+    public WindowCountsDTO getActionCounts(Duration window, WindowType type) {
+        return streamingAggregator.getActionCounts(window, type);
+    }
+
+    @Override
+    public WindowCountsDTO getSourceCounts(Duration window, WindowType type) {
+        return streamingAggregator.getSourceCounts(window, type);
+    }
+
+    @Override
+    public WindowCountsDTO getSongCounts(String songId, Duration window, WindowType type) {
+        return streamingAggregator.getSongCounts(songId, window, type);
+    }
+
+    @Override
+    public TrendingSongsDTO getTrendingSongs(Duration window, WindowType type, int limit) {
+        return streamingAggregator.getTrendingSongs(window, type, limit);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,56 @@
+package com.example.demo.service.impl;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.Event;
+import com.example.demo.repository.DatabaseConcurrencyLimiter;
+import com.example.demo.service.StorageService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Storage service of the {@code loadtest} profile, counts events instead of writing them, so a load test
+ * measures the pipeline rather than the database. With {@code events.storage.discard-latency} set, every event
+ * holds a database permit that long in place of its insert, so the serving modes can be compared in front of
+ * a pool of the configured size without a database of that speed.
+ */
+@Slf4j
+@Service
+@Primary
+@Profile("loadtest")
+@RequiredArgsConstructor
+public class DiscardingStorageService implements StorageService {
+
+    private final EventPipelineProperties properties;
+    private final DatabaseConcurrencyLimiter databaseConcurrencyLimiter;
+    private final LongAdder discarded = new LongAdder();
+
+    @Override
+    public void storeEvent(Event event) {
+        Duration latency = properties.getStorage().getDiscardLatency();
+        if (latency.isPositive()) {
+            databaseConcurrencyLimiter.run(() -> pause(latency));
+        }
+        discarded.increment();
+        log.debug("Discarding event of user {}", event.getUserId());
+    }
+
+    public long getDiscardedCount() {
+        return discarded.sum();
+    }
+
+    private static void pause(Duration latency) {
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.demo.service.impl;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.archive.EventArchive;
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.ArchivedEventDTO;
+import com.example.demo.dto.EventPageDTO;
+import com.example.demo.dto.EventRecordDTO;
+import com.example.demo.model.ActionType;
+import com.example.demo.pipeline.RecentActivityCache;
+import com.example.demo.repository.DatabaseConcurrencyLimiter;
+import com.example.demo.repository.EventRepository;
+import com.example.demo.service.EventCursor;
+import com.example.demo.service.EventQueryService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Event query service implementation class. Pages seek past the last event of the previous page on
+ * (timestamp, id) instead of skipping rows, so every page costs the same however deep it is.
+ */
+@Service
+@RequiredArgsConstructor
+public class EventQueryServiceImpl implements EventQueryService {
+
+    private final EventRepository eventRepository;
+    private final RecentActivityCache recentActivityCache;
+    private final EventArchive eventArchive;
+    private final DatabaseConcurrencyLimiter databaseConcurrencyLimiter;
+    private final EventPipelineProperties properties;
+
+    @Override
+    public EventPageDTO getUserEvents(String userId, String cursor, Integer limit) {
+        EventCursor position = EventCursor.decode(cursor);
+        int size = pageSize(limit);
+        // one extra event tells whether there is a next page
+        return page(databaseConcurrencyLimiter.call(() -> eventRepository.findUserEventsBefore(userId,
+                position.getTimestamp(), position.getId(), Limit.of(size + 1))), size);
+    }
+
+    @Override
+    public EventPageDTO getActionEvents(ActionType action, Instant from, Instant to, String cursor, Integer limit) {
+        checkRange(from, to);
+        EventCursor position = EventCursor.decode(cursor);
+        int size = pageSize(limit);
+        // the cursor only moves back in time, the end of the range is where the first page starts
+        EventCursor start = position.getTimestamp().isBefore(to) ? position : new EventCursor(to, Long.MIN_VALUE);
+        return page(databaseConcurrencyLimiter.call(() -> eventRepository.findActionEventsBefore(action, from,
+                start.getTimestamp(), start.getId(), Limit.of(size + 1))), size);
+    }
+
+    @Override
+    public List<EventRecordDTO> getRecentEvents(String userId, ActionType action, Integer limit) {
+        int size = limit != null ? limit : properties.getRecent().getEventsPerUser();
+        if (size < 1 || size > properties.getQuery().getMaxPageSize()) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + properties.getQuery().getMaxPageSize());
+        }
+        return recentActivityCache.getRecentEvents(userId, action, size);
+    }
+
+    @Override
+    public void streamUserEvents(String userId, Consumer<EventRecordDTO> consumer) {
+        stream(EventCursor.START, (position, limit) -> eventRepository.findUserEventsBefore(userId,
+                position.getTimestamp(), position.getId(), limit), consumer);
+    }
+
+    @Override
+    public void streamActionEvents(ActionType action, Instant from, Instant to, Consumer<EventRecordDTO> consumer) {
+        checkRange(from, to);
+        stream(new EventCursor(to, Long.MIN_VALUE), (position, limit) -> eventRepository.findActionEventsBefore(
+                action, from, position.getTimestamp(), position.getId(), limit), consumer);
+    }
+
+    /**
+     * Read pages of the stream page size one after another, each under its own database permit. A page is
+     * handed to the consumer after its permit is released, so a slow client holds neither a permit nor a
+     * connection while its response is written.
+     */
+    private void stream(EventCursor start, BiFunction<EventCursor, Limit, List<EventRecordDTO>> query,
+            Consumer<EventRecordDTO> consumer) {
+        int size = properties.getQuery().getStreamFetchSize();
+        EventCursor position = start;
+        while (true) {
+            EventCursor from = position;
+            List<EventRecordDTO> events = databaseConcurrencyLimiter.call(() -> query.apply(from, Limit.of(size)));
+            events.forEach(consumer);
+            if (events.size() < size) {
+                return;
+            }
+            EventRecordDTO last = events.get(size - 1);
+            position = new EventCursor(last.getTimestamp(), last.getId());
+        }
+    }
+
+    @Override
+    public void streamArchivedEvents(Instant from, Instant to, Consumer<ArchivedEventDTO> consumer) {
+        checkRange(from, to);
+        eventArchive.scan(from, to, consumer);
+    }
+
+    private int pageSize(Integer limit) {
+        EventPipelineProperties.Query settings = properties.getQuery();
+        if (limit == null) {
+            return settings.getDefaultPageSize();
+        }
+        if (limit < 1 || limit > settings.getMaxPageSize()) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + settings.getMaxPageSize());
+        }
+        return limit;
+    }
+
+    private static void checkRange(Instant from, Instant to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("From must be before to");
+        }
+    }
+
+    private static EventPageDTO page(List<EventRecordDTO> events, int size) {
+        if (events.size() <= size) {
+            return EventPageDTO.builder().events(events).build();
+        }
+        List<EventRecordDTO> page = events.subList(0, size);
+        EventRecordDTO last = page.get(size - 1);
+        return EventPageDTO.builder()
+                .events(List.copyOf(page))
+                .nextCursor(new EventCursor(last.getTimestamp(), last.getId()).encode())
+                .build();
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.demo.service.impl;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.RollupBackfillStatusDTO;
+import com.example.demo.dto.RollupSeriesDTO;
+import com.example.demo.repository.RollupRepository;
+import com.example.demo.rollup.RollupAccumulator;
+import com.example.demo.rollup.RollupDimension;
+import com.example.demo.rollup.RollupGranularity;
+import com.example.demo.service.RollupService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rollup service implementation class. The backfill splits its range into days and rebuilds them in
+ * parallel, every day replaces the rows of all granularities and dimensions it contains, so a failed or
+ * repeated backfill can simply be run again. Only days that are over are rebuilt, after the counts still
+ * in memory were flushed, so no count is added on top of a rebuilt row.
+ */
+@Slf4j
+@Service
+public class RollupServiceImpl implements RollupService {
+
+    private static final long DAY_MILLIS = RollupGranularity.DAY.getMillis();
+
+    private final RollupRepository rollupRepository;
+    private final RollupAccumulator rollupAccumulator;
+    private final EventPipelineProperties properties;
+    private final Clock clock;
+
+    private Backfill backfill;
+
+    @Autowired
+    public RollupServiceImpl(RollupRepository rollupRepository, RollupAccumulator rollupAccumulator,
+            EventPipelineProperties properties) {
+        this(rollupRepository, rollupAccumulator, properties, Clock.systemUTC());
+    }
+
+    RollupServiceImpl(RollupRepository rollupRepository, RollupAccumulator rollupAccumulator,
+            EventPipelineProperties properties, Clock clock) {
+        this.rollupRepository = rollupRepository;
+        this.rollupAccumulator = rollupAccumulator;
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    @Override
+    public RollupSeriesDTO getSeries(RollupGranularity granularity, RollupDimension dimension, String key,
+            Instant from, Instant to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("From must be before to");
+        }
+        if (dimension == RollupDimension.SONG && key == null) {
+            throw new IllegalArgumentException("A song must be given");
+        }
+        Instant start = Instant.ofEpochMilli(granularity.truncate(from.toEpochMilli()));
+        Instant end = Instant.ofEpochMilli(granularity.truncate(to.toEpochMilli() + granularity.getMillis() - 1));
+        long buckets = (end.toEpochMilli() - start.toEpochMilli()) / granularity.getMillis();
+        int maxBuckets = properties.getRollups().getMaxBuckets();
+        if (buckets > maxBuckets) {
+            throw new IllegalArgumentException("Range spans " + buckets + " buckets, at most " + maxBuckets
+                    + " are allowed, use a coarser granularity");
+        }
+        return RollupSeriesDTO.builder()
+                .granularity(granularity)
+                .dimension(dimension)
+                .key(key)
+                .from(start)
+                .to(end)
+                .points(rollupRepository.findSeries(granularity, dimension, key, start, end))
+                .build();
+    }
+
+    @Override
+    public synchronized RollupBackfillStatusDTO startBackfill(Instant from, Instant to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("From must be before to");
+        }
+        if (backfill != null && backfill.finishedAt == null) {
+            throw new IllegalStateException("A backfill is already running");
+        }
+        long start = RollupGranularity.DAY.truncate(from.toEpochMilli());
+        long end = RollupGranularity.DAY.truncate(to.toEpochMilli() + DAY_MILLIS - 1);
+        long today = RollupGranularity.DAY.truncate(clock.millis());
+        if (end > today) {
+            // events of the current day are still counted in memory and flushed on top of the rebuilt rows
+            throw new IllegalArgumentException("Only days that are over can be backfilled, the range must end by "
+                    + Instant.ofEpochMilli(today));
+        }
+        Backfill started = new Backfill(Instant.ofEpochMilli(start), Instant.ofEpochMilli(end),
+                (int) ((end - start) / DAY_MILLIS));
+        backfill = started;
+        Thread.ofPlatform().name("rollup-backfill").daemon(true).start(() -> run(started));
+        return started.status();
+    }
+
+    @Override
+    public synchronized RollupBackfillStatusDTO getBackfillStatus() {
+        if (backfill == null) {
+            return RollupBackfillStatusDTO.builder().state("IDLE").build();
+        }
+        return backfill.status();
+    }
+
+    private void run(Backfill job) {
+        int parallelism = Math.max(1, properties.getRollups().getBackfillParallelism());
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism,
+                Thread.ofPlatform().name("rollup-backfill-", 0).daemon(true).factory());
+        try {
+            // late events of the backfilled days still in memory are written first, then replaced
+            rollupAccumulator.flush();
+            List<Future<?>> chunks = new ArrayList<>(job.chunks);
+            for (long day = job.from.toEpochMilli(); day < job.to.toEpochMilli(); day += DAY_MILLIS) {
+                Instant chunkFrom = Instant.ofEpochMilli(day);
+                Instant chunkTo = Instant.ofEpochMilli(day + DAY_MILLIS);
+                chunks.add(pool.submit(() -> rebuild(job, chunkFrom, chunkTo)));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (Exception e) {
+            log.error("Rollup backfill from {} to {} was interrupted", job.from, job.to, e);
+            job.failedChunks.incrementAndGet();
+        } finally {
+            pool.shutdownNow();
+            synchronized (this) {
+                job.finishedAt = Instant.now();
+            }
+            log.info("Rollup backfill from {} to {} finished, {} of {} days rebuilt", job.from, job.to,
+                    job.completedChunks.get(), job.chunks);
+        }
+    }
+
+    private void rebuild(Backfill job, Instant from, Instant to) {
+        try {
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                for (RollupDimension dimension : RollupDimension.values()) {
+                    rollupRepository.rebuild(granularity, dimension, from, to);
+                }
+            }
+            job.completedChunks.incrementAndGet();
+        } catch (RuntimeException e) {
+            log.error("Failed to rebuild the rollups from {} to {}", from, to, e);
+            job.failedChunks.incrementAndGet();
+        }
+    }
+
+    /**
+     * State of a backfill, the counters are updated by the chunk workers
+     */
+    private static final class Backfill {
+        private final Instant from;
+        private final Instant to;
+        private final int chunks;
+        private final Instant startedAt = Instant.now();
+        private final AtomicInteger completedChunks = new AtomicInteger();
+        private final AtomicInteger failedChunks = new AtomicInteger();
+        private Instant finishedAt;
+
+        private Backfill(Instant from, Instant to, int chunks) {
+            this.from = from;
+            this.to = to;
+            this.chunks = chunks;
+        }
+
+        private RollupBackfillStatusDTO status() {
+            String state = finishedAt == null ? "RUNNING" : failedChunks.get() > 0 ? "FAILED" : "COMPLETED";
+            return RollupBackfillStatusDTO.builder()
+                    .state(state)
+                    .from(from)
+                    .to(to)
+                    .chunks(chunks)
+                    .completedChunks(completedChunks.get())
+                    .failedChunks(failedChunks.get())
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.example.demo.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+import com.example.demo.pipeline.BoundedExecutor;
+import com.example.demo.pipeline.DownstreamGuard;
+import com.example.demo.pipeline.DownstreamGuards;
+import com.example.demo.pipeline.DownstreamRejectedException;
+import com.example.demo.retry.DeliveryRetryScheduler;
+import com.example.demo.service.SocialService;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Coalescing, rate limited dispatch in front of the social service.
+ * <p>
+ * Actions of a user on a song are collected for a window starting with the first one. Within the window
+ * only the last LIKE or DISLIKE survives, so flip-flops collapse to the final reaction, and repeated
+ * SHAREs collapse to one. When the window is over a single dispatcher thread takes the surviving posts,
+ * checks them against a token bucket of their user and a global one, and hands them to the social service
+ * in batches. Posts over the user limit are dropped, posts over the global limit wait for the next tick.
+ * While the circuit breaker of the social service is open nothing is taken, the posts wait for it to close.
+ * A batch turned away or failing is handed to the {@link DeliveryRetryScheduler} on the socialBatches
+ * channel, and becomes a dead letter when its attempts are used up.
+ * <p>
+ * Memory is bounded by the number of collected user and song pairs. The user buckets are only touched by
+ * the dispatcher, so they need no locking, and a bucket that refilled completely is removed as it is the
+ * same as a new one.
+ */
+@Slf4j
+@Component
+public class SocialDispatchCoalescer implements SmartLifecycle, MeterBinder {
+
+    /**
+     * The retry channel of the batches of the dispatcher
+     */
+    public static final String RETRY_CHANNEL = "socialBatches";
+
+    /**
+     * Stop after the downstream executors, so every event they handed over is dispatched, and before the
+     * retry scheduler, so a batch failing on shutdown is still parked
+     */
+    private static final int PHASE = BoundedExecutor.DOWNSTREAM_PHASE - 512;
+    private static final long BUCKET_SWEEP_MILLIS = 10_000;
+
+    private final SocialService socialService;
+    private final DownstreamGuard guard;
+    private final DeliveryRetryScheduler deliveryRetryScheduler;
+    private final EventPipelineProperties.Social settings;
+    private final LongSupplier clock;
+    private final Map<Key, Pending> pendingByKey = new ConcurrentHashMap<>();
+    private final Queue<Pending> dueOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Map<String, TokenBucket> userBuckets = new HashMap<>();
+    private final TokenBucket globalBucket;
+    private final LongAdder coalescedEvents = new LongAdder();
+    private final LongAdder overflowEvents = new LongAdder();
+    private final LongAdder rateLimitedEvents = new LongAdder();
+    private final LongAdder dispatchedEvents = new LongAdder();
+
+    private volatile boolean running;
+    private Thread dispatcher;
+    private long lastBucketSweep;
+
+    @Autowired
+    public SocialDispatchCoalescer(SocialService socialService, DownstreamGuards downstreamGuards,
+            DeliveryRetryScheduler deliveryRetryScheduler, EventPipelineProperties properties) {
+        this(socialService, downstreamGuards.get(DownstreamGuards.SOCIAL), deliveryRetryScheduler,
+                properties.getSocial(), System::currentTimeMillis);
+    }
+
+    SocialDispatchCoalescer(SocialService socialService, DownstreamGuard guard,
+            DeliveryRetryScheduler deliveryRetryScheduler, EventPipelineProperties.Social settings, LongSupplier clock) {
+        this.socialService = socialService;
+        this.guard = guard;
+        this.deliveryRetryScheduler = deliveryRetryScheduler;
+        this.settings = settings;
+        this.clock = clock;
+        this.globalBucket = new TokenBucket(settings.getGlobalBurst(), clock.getAsLong());
+        deliveryRetryScheduler.register(RETRY_CHANNEL, message -> {
+            @SuppressWarnings("unchecked")
+            List<Event> events = (List<Event>) message.getPayload();
+            share(events);
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.social.pending", this, SocialDispatchCoalescer::getPendingCount)
+                .description("User and song pairs waiting for their coalescing window to end")
+                .register(registry);
+        FunctionCounter.builder("events.social.coalesced", this,
+                SocialDispatchCoalescer::getCoalescedCount)
+                .description("Social actions replaced by a later action on the same song")
+                .register(registry);
+        FunctionCounter.builder("events.social.dispatched", this,
+                SocialDispatchCoalescer::getDispatchedCount)
+                .description("Posts handed to the social service after coalescing")
+                .register(registry);
+        FunctionCounter.builder("events.social.dropped", this,
+                SocialDispatchCoalescer::getRateLimitedCount)
+                .description("Social actions dropped before dispatch")
+                .tag("reason", "RATE_LIMITED")
+                .register(registry);
+        FunctionCounter.builder("events.social.dropped", this,
+                SocialDispatchCoalescer::getOverflowCount)
+                .description("Social actions dropped before dispatch")
+                .tag("reason", "OVERFLOW")
+                .register(registry);
+    }
+
+    /**
+     * Hand over an event for social sharing, right away when coalescing is disabled
+     *
+     * @param event the LIKE, DISLIKE or SHARE event
+     * @throws DownstreamRejectedException if coalescing is disabled and the guard turned the event away,
+     *         retried by the social flow like a failure
+     */
+    public void submit(Event event) {
+        if (!settings.isCoalescing()) {
+            guard.runOrThrow(() -> socialService.shareEvent(event));
+            return;
+        }
+        Key key = new Key(event.getUserId(), event.getSongId());
+        while (true) {
+            Pending pending = pendingByKey.get(key);
+            if (pending == null) {
+                if (pendingCount.get() >= settings.getMaxPending()) {
+                    overflowEvents.increment();
+                    return;
+                }
+                Pending fresh = new Pending(key, clock.getAsLong() + settings.getWindow().toMillis());
+                pending = pendingByKey.putIfAbsent(key, fresh);
+                if (pending == null) {
+                    pending = fresh;
+                    pendingCount.incrementAndGet();
+                    // the window is the same for every pair, so insertion order is due order
+                    dueOrder.add(fresh);
+                }
+            }
+            if (pending.merge(event, coalescedEvents)) {
+                return;
+            }
+            // the dispatcher took the pair in the meantime, start a new window
+        }
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedEvents.sum();
+    }
+
+    public long getOverflowCount() {
+        return overflowEvents.sum();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimitedEvents.sum();
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedEvents.sum();
+    }
+
+    @Override
+    public void start() {
+        if (!settings.isCoalescing()) {
+            return;
+        }
+        running = true;
+        dispatcher = Thread.ofPlatform().name("social-dispatch").start(this::runDispatcher);
+    }
+
+    @Override
+    public void stop() {
+        if (dispatcher == null) {
+            return;
+        }
+        running = false;
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dispatcher = null;
+        // post whatever is still collected, the limits no longer matter
+        List<Event> rest = new ArrayList<>();
+        for (Pending pending; (pending = dueOrder.poll()) != null; ) {
+            take(pending, rest);
+        }
+        dispatch(rest);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void runDispatcher() {
+        long tickMillis = Math.max(1, settings.getTick().toMillis());
+        while (running) {
+            try {
+                dispatchDue();
+            } catch (RuntimeException e) {
+                log.error("Social dispatch failed", e);
+            }
+            try {
+                Thread.sleep(tickMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * Dispatch the posts whose window is over, as far as the global limit allows
+     */
+    void dispatchDue() {
+        // while the breaker of the social service is open the posts stay collected, the oldest are due first
+        if (!guard.isAvailable()) {
+            return;
+        }
+        long now = clock.getAsLong();
+        globalBucket.refill(settings.getGlobalRate(), settings.getGlobalBurst(), now);
+        List<Event> batch = new ArrayList<>(settings.getBatchSize());
+        List<Event> taken = new ArrayList<>(2);
+        for (Pending pending; (pending = dueOrder.peek()) != null && pending.dueAt <= now; ) {
+            // a pair holds up to two posts, the second may take the global bucket into a debt of one token
+            if (globalBucket.tokens < 1) {
+                break;
+            }
+            dueOrder.poll();
+            take(pending, taken);
+            TokenBucket userBucket = userBuckets.computeIfAbsent(pending.key.userId,
+                    userId -> new TokenBucket(settings.getUserBurst(), now));
+            userBucket.refill(settings.getUserRate(), settings.getUserBurst(), now);
+            for (Event event : taken) {
+                if (userBucket.tryTake()) {
+                    globalBucket.tokens--;
+                    batch.add(event);
+                } else {
+                    rateLimitedEvents.increment();
+                }
+            }
+            taken.clear();
+            if (batch.size() >= settings.getBatchSize()) {
+                dispatch(batch);
+                batch.clear();
+            }
+        }
+        dispatch(batch);
+        if (now - lastBucketSweep >= BUCKET_SWEEP_MILLIS) {
+            sweepUserBuckets(now);
+            lastBucketSweep = now;
+        }
+    }
+
+    private void take(Pending pending, List<Event> events) {
+        pendingByKey.remove(pending.key, pending);
+        pendingCount.decrementAndGet();
+        pending.close(events);
+    }
+
+    private void dispatch(List<Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<Event> batch = List.copyOf(events);
+        try {
+            share(batch);
+        } catch (RuntimeException e) {
+            try {
+                deliveryRetryScheduler.defer(RETRY_CHANNEL, MessageBuilder.withPayload(batch).build(), e);
+            } catch (RuntimeException notDeferred) {
+                log.error("Failed to share {} events", batch.size(), notDeferred);
+            }
+        }
+    }
+
+    /**
+     * @throws DownstreamRejectedException if the guard turned the batch away
+     */
+    private void share(List<Event> batch) {
+        guard.runOrThrow(() -> socialService.shareEvents(batch));
+        dispatchedEvents.add(batch.size());
+    }
+
+    private void sweepUserBuckets(long now) {
+        for (Iterator<TokenBucket> iterator = userBuckets.values().iterator(); iterator.hasNext(); ) {
+            TokenBucket bucket = iterator.next();
+            bucket.refill(settings.getUserRate(), settings.getUserBurst(), now);
+            if (bucket.tokens >= settings.getUserBurst()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * User and song an action applies to
+     */
+    private static final class Key {
+        private final String userId;
+        private final String songId;
+        private final int hash;
+
+        private Key(String userId, String songId) {
+            this.userId = userId;
+            this.songId = songId;
+            this.hash = 31 * Objects.hashCode(userId) + Objects.hashCode(songId);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && Objects.equals(userId, key.userId) && Objects.equals(songId, key.songId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Surviving actions of a user on a song within the current window
+     */
+    private static final class Pending {
+        private final Key key;
+        private final long dueAt;
+        private Event reaction;
+        private Event share;
+        private boolean closed;
+
+        private Pending(Key key, long dueAt) {
+            this.key = key;
+            this.dueAt = dueAt;
+        }
+
+        /**
+         * @return false if the window was already closed by the dispatcher
+         */
+        private synchronized boolean merge(Event event, LongAdder coalesced) {
+            if (closed) {
+                return false;
+            }
+            if (event.getAction() == ActionType.SHARE) {
+                if (share != null) {
+                    coalesced.increment();
+                }
+                share = event;
+            } else {
+                // LIKE and DISLIKE replace each other, the last reaction wins
+                if (reaction != null) {
+                    coalesced.increment();
+                }
+                reaction = event;
+            }
+            return true;
+        }
+
+        private synchronized void close(List<Event> events) {
+            closed = true;
+            if (reaction != null) {
+                events.add(reaction);
+            }
+            if (share != null) {
+                events.add(share);
+            }
+        }
+    }
+
+    /**
+     * Token bucket refilled lazily from the elapsed time
+     */
+    private static final class TokenBucket {
+        private double tokens;
+        private long refilledAt;
+
+        private TokenBucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        private void refill(double ratePerSecond, int burst, long now) {
+            if (now > refilledAt) {
+                tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerSecond / 1000.0);
+                refilledAt = now;
+            }
+        }
+
+        private boolean tryTake() {
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -19,9 +19,9 @@ public class SocialServiceImpl implements SocialService {
     @Override
     public void shareEvent(Event event) {
         // Actual implementation will share event to social media
-        log.info("Sharing event to social media: {}", event);
+        log.debug("Sharing event to social media: {}", event);
         // In actual implementation, the event will be shared to social media platforms, such as Facebook, Twitter, etc.
-        log.info("Social sharing event: user: {}, action: {}, song: {}", 
+        log.debug("Social sharing event: user: {}, action: {}, song: {}", 
                 event.getUserId(), event.getAction(), event.getSongId());
     }
 } 
\ No newline at end of file
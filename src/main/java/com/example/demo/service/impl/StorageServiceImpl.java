@@ -2,9 +2,13 @@ package com.example.demo.service.impl;
 
 import org.springframework.stereotype.Service;
 
+import com.example.demo.config.EventPipelineProperties;
 import com.example.demo.entity.EventEntity;
 import com.example.demo.model.Event;
+import com.example.demo.pipeline.RecentActivityCache;
+import com.example.demo.repository.DatabaseConcurrencyLimiter;
 import com.example.demo.repository.EventRepository;
+import com.example.demo.rollup.RollupAccumulator;
 import com.example.demo.service.StorageService;
 
 import lombok.RequiredArgsConstructor;
@@ -19,14 +23,50 @@ import lombok.extern.slf4j.Slf4j;
 public class StorageServiceImpl implements StorageService {
 
     private final EventRepository eventRepository;
+    private final WriteBehindEventWriter writeBehindEventWriter;
+    private final RollupAccumulator rollupAccumulator;
+    private final RecentActivityCache recentActivityCache;
+    private final EventPipelineProperties properties;
+    private final DatabaseConcurrencyLimiter databaseConcurrencyLimiter;
     
     @Override
     public void storeEvent(Event event) {
+        storeEvent(event, null);
+    }
+
+    @Override
+    public void storeEvent(Event event, Runnable onDurable) {
         // Actual implementation will save event to storage system
-        log.info("Saving event to storage system: {}", event);
+        log.debug("Saving event to storage system: {}", event);
         
-        // Save event to database
-        EventEntity eventEntity = EventEntity.builder()
+        EventEntity eventEntity = toEntity(event);
+
+        if (properties.getStorage().getWriteBehind().isEnabled()) {
+            // Buffered, inserted with the next batch
+            writeBehindEventWriter.write(eventEntity, onDurable);
+            rollupAccumulator.record(eventEntity);
+            recentActivityCache.record(event, null);
+            return;
+        }
+
+        // Save event to database, waiting for a connection here rather than in the pool
+        databaseConcurrencyLimiter.run(() -> eventRepository.save(eventEntity));
+        if (onDurable != null) {
+            onDurable.run();
+        }
+        rollupAccumulator.record(eventEntity);
+        recentActivityCache.record(event, eventEntity.getId());
+        log.debug("Event saved to database, ID: {}", eventEntity.getId());
+    }
+
+    /**
+     * Map an event to its database row
+     *
+     * @param event the event
+     * @return a new, unsaved entity
+     */
+    public static EventEntity toEntity(Event event) {
+        return EventEntity.builder()
                 .userId(event.getUserId())
                 .action(event.getAction())
                 .songId(event.getSongId())
@@ -35,9 +75,11 @@ public class StorageServiceImpl implements StorageService {
                 .processedAt(event.getProcessedAt())
                 .category(event.getAction() != null ? event.getAction().name() : "UNKNOWN")
                 .count(1)
+                .deviceType(event.getDeviceType())
+                .osVersion(event.getOsVersion())
+                .appVersion(event.getAppVersion())
+                .ipAddress(event.getIpAddress())
+                .location(event.getLocation())
                 .build();
-        
-        eventRepository.save(eventEntity);
-        log.info("Event saved to database, ID: {}", eventEntity.getId());
     }
-} 
\ No newline at end of file
+}
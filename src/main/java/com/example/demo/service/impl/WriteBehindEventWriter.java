@@ -0,0 +1,420 @@
+package com.example.demo.service.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.entity.EventEntity;
+import com.example.demo.repository.EventBatchWriter;
+import com.example.demo.util.DurableFiles;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Write-behind buffer of the storage service. Events are collected in a bounded queue and inserted
+ * by a single flusher thread once a batch is full or the oldest event waited for the maximum delay.
+ * A batch that still fails after the configured retries is spilled to a local NDJSON file and
+ * inserted again later, so a database outage does not lose events. A callback passed with an event
+ * runs once its batch is inserted or spilled and forced to disk, that is once the event is safe. A spill
+ * file is inserted at most once, even when a crash cuts its replay short.
+ */
+@Slf4j
+@Component
+public class WriteBehindEventWriter implements SmartLifecycle, MeterBinder {
+
+    /**
+     * Stop after the integration endpoints, so every event they handed over is flushed
+     */
+    private static final int PHASE = -1024;
+    private static final String SPILL_PREFIX = "spill-";
+    private static final String SPILL_SUFFIX = ".ndjson";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final EventBatchWriter eventBatchWriter;
+    private final ObjectMapper objectMapper;
+    private final EventPipelineProperties.WriteBehind settings;
+    private final BlockingQueue<Buffered> buffer;
+    private final AtomicLong spillSequence = new AtomicLong();
+    /**
+     * Keeps the names of spill files unique across restarts, replays are recorded by name
+     */
+    private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+    private final LongAdder flushedEvents = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder spilledEvents = new LongAdder();
+
+    private volatile boolean running;
+    private volatile long spillUntil;
+    private Thread flusher;
+    private long lastSpillReplay;
+
+    public WriteBehindEventWriter(EventBatchWriter eventBatchWriter, ObjectMapper objectMapper,
+            EventPipelineProperties properties) {
+        this.eventBatchWriter = eventBatchWriter;
+        this.objectMapper = objectMapper;
+        this.settings = properties.getStorage().getWriteBehind();
+        this.buffer = new ArrayBlockingQueue<>(settings.getBufferCapacity());
+        this.spillUntil = System.nanoTime();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.queue.depth", this, WriteBehindEventWriter::getBufferedCount)
+                .description("Events waiting in the queue")
+                .tag("queue", "writeBehind")
+                .register(registry);
+        Gauge.builder("events.queue.capacity", this, WriteBehindEventWriter::getBufferCapacity)
+                .description("Capacity of the queue")
+                .tag("queue", "writeBehind")
+                .register(registry);
+        FunctionCounter.builder("events.storage.flushed", this, WriteBehindEventWriter::getFlushedCount)
+                .description("Events inserted by the write-behind flusher")
+                .register(registry);
+        FunctionCounter.builder("events.storage.flush.failures", this,
+                WriteBehindEventWriter::getFailedFlushCount)
+                .description("Failed batch insert attempts")
+                .register(registry);
+        FunctionCounter.builder("events.storage.spilled", this, WriteBehindEventWriter::getSpilledCount)
+                .description("Events spilled to disk after a batch could not be inserted")
+                .register(registry);
+    }
+
+    /**
+     * Buffer an event for the next batch. While the buffer is full the caller blocks until the flusher
+     * made room, which slows producers down to the speed of the database instead of growing the heap.
+     *
+     * @param event the event to insert
+     */
+    public void write(EventEntity event) {
+        write(event, null);
+    }
+
+    /**
+     * Buffer an event for the next batch, see {@link #write(EventEntity)}
+     *
+     * @param event the event to insert
+     * @param onDurable run once the event is inserted or spilled, may be null
+     */
+    public void write(EventEntity event, Runnable onDurable) {
+        Buffered buffered = new Buffered(event, onDurable);
+        if (running) {
+            try {
+                buffer.put(buffered);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush(List.of(buffered));
+    }
+
+    public int getBufferedCount() {
+        return buffer.size();
+    }
+
+    public int getBufferCapacity() {
+        return settings.getBufferCapacity();
+    }
+
+    public long getFlushedCount() {
+        return flushedEvents.sum();
+    }
+
+    public long getFailedFlushCount() {
+        return failedFlushes.sum();
+    }
+
+    public long getSpilledCount() {
+        return spilledEvents.sum();
+    }
+
+    @Override
+    public void start() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        running = true;
+        flusher = Thread.ofPlatform().name("event-write-behind").start(this::runFlusher);
+    }
+
+    @Override
+    public void stop() {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // anything buffered after the flusher exited
+        List<Buffered> rest = new ArrayList<>();
+        buffer.drainTo(rest);
+        flushInBatches(rest);
+        flusher = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void runFlusher() {
+        replaySpills();
+        List<Buffered> batch = new ArrayList<>(settings.getBatchSize());
+        while (running) {
+            collect(batch);
+            flushInBatches(batch);
+            batch.clear();
+            if (System.nanoTime() - lastSpillReplay > settings.getSpillReplayInterval().toNanos()) {
+                replaySpills();
+            }
+        }
+        buffer.drainTo(batch);
+        flushInBatches(batch);
+    }
+
+    /**
+     * Wait for the first event, then collect until the batch is full or the maximum delay expired.
+     * Waits are short so the flusher notices a shutdown without being interrupted.
+     */
+    private void collect(List<Buffered> batch) {
+        int batchSize = settings.getBatchSize();
+        try {
+            Buffered first = buffer.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return;
+            }
+            batch.add(first);
+            long deadline = System.nanoTime() + settings.getMaxDelay().toNanos();
+            while (batch.size() < batchSize) {
+                if (buffer.drainTo(batch, batchSize - batch.size()) > 0) {
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                Buffered next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+                batch.add(next);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private void flushInBatches(List<Buffered> events) {
+        int batchSize = settings.getBatchSize();
+        for (int from = 0; from < events.size(); from += batchSize) {
+            flush(events.subList(from, Math.min(events.size(), from + batchSize)));
+        }
+    }
+
+    /**
+     * Insert a batch, retrying with exponential backoff, and spill it to disk if all attempts fail.
+     * After a spill further batches go straight to disk until spill files could be replayed again,
+     * so an unavailable database does not stall the flusher in retries for every batch.
+     */
+    private void flush(List<Buffered> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (System.nanoTime() - spillUntil < 0) {
+            spill(batch);
+            return;
+        }
+        List<EventEntity> events = new ArrayList<>(batch.size());
+        for (Buffered buffered : batch) {
+            events.add(buffered.event);
+        }
+        Duration backoff = settings.getRetryBackoff();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                eventBatchWriter.insert(events);
+                flushedEvents.add(batch.size());
+                notifyDurable(batch);
+                return;
+            } catch (RuntimeException e) {
+                failedFlushes.increment();
+                if (attempt >= settings.getMaxRetries() || !sleep(backoff)) {
+                    log.error("Failed to insert batch of {} events after {} attempts, spilling to disk",
+                            batch.size(), attempt + 1, e);
+                    spillUntil = System.nanoTime() + settings.getSpillReplayInterval().toNanos();
+                    spill(batch);
+                    return;
+                }
+                log.warn("Failed to insert batch of {} events, retrying in {}", batch.size(), backoff, e);
+                backoff = backoff.multipliedBy(2);
+            }
+        }
+    }
+
+    /**
+     * Write a batch to a new spill file. The file is written under a temporary name, forced to disk and
+     * renamed, and the directory is forced, before the events count as safe: the write-ahead log may
+     * drop them once the callbacks ran.
+     */
+    private void spill(List<Buffered> batch) {
+        Path directory = Path.of(settings.getSpillDirectory());
+        String name = SPILL_PREFIX + System.currentTimeMillis() + "-" + spillSequence.incrementAndGet() + "-"
+                + instanceId + SPILL_SUFFIX;
+        Path file = directory.resolve(name);
+        Path temporary = directory.resolve(name + TEMPORARY_SUFFIX);
+        try {
+            Files.createDirectories(directory);
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                for (Buffered buffered : batch) {
+                    writer.write(objectMapper.writeValueAsString(buffered.event));
+                    writer.newLine();
+                }
+            }
+            DurableFiles.force(temporary);
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+            DurableFiles.forceDirectory(directory);
+            spilledEvents.add(batch.size());
+            log.warn("Spilled {} events to {}", batch.size(), file);
+            notifyDurable(batch);
+        } catch (IOException e) {
+            // nothing left to fall back to, make the loss visible
+            log.error("Failed to spill {} events to {}, events lost", batch.size(), file, e);
+            deleteQuietly(temporary);
+        }
+    }
+
+    /**
+     * Insert the events of spill files left by earlier failures, a file is deleted once it is inserted.
+     * A file is inserted together with a record of its name, so a file whose deletion was cut short by a
+     * crash is only deleted on the next replay and not inserted a second time.
+     */
+    void replaySpills() {
+        lastSpillReplay = System.nanoTime();
+        Path directory = Path.of(settings.getSpillDirectory());
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(file -> file.getFileName().toString().startsWith(SPILL_PREFIX)).sorted().toList();
+        } catch (IOException e) {
+            log.warn("Failed to list spill directory {}", directory, e);
+            return;
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(TEMPORARY_SUFFIX)) {
+                // a spill cut short by a crash, its events were never reported safe and are still logged
+                deleteQuietly(file);
+                continue;
+            }
+            if (!name.endsWith(SPILL_SUFFIX)) {
+                continue;
+            }
+            try {
+                List<EventEntity> events = new ArrayList<>();
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.isBlank()) {
+                            events.add(objectMapper.readValue(line, EventEntity.class));
+                        }
+                    }
+                }
+                boolean inserted = eventBatchWriter.insertSpill(name, events);
+                Files.delete(file);
+                DurableFiles.forceDirectory(directory);
+                eventBatchWriter.forgetSpill(name);
+                spillUntil = System.nanoTime();
+                if (inserted) {
+                    flushedEvents.add(events.size());
+                    log.info("Replayed {} spilled events from {}", events.size(), file);
+                } else {
+                    log.info("Spill file {} was inserted before, deleted without inserting it again", file);
+                }
+            } catch (IOException | RuntimeException e) {
+                // the database is probably still unavailable, try again on the next interval
+                log.warn("Failed to replay spill file {}", file, e);
+                return;
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete {}", file, e);
+        }
+    }
+
+    private static void notifyDurable(List<Buffered> batch) {
+        for (Buffered buffered : batch) {
+            if (buffered.onDurable != null) {
+                try {
+                    buffered.onDurable.run();
+                } catch (RuntimeException e) {
+                    log.warn("Durability callback failed", e);
+                }
+            }
+        }
+    }
+
+    private static boolean sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * An event waiting for its batch, with the callback to run once it is safe
+     */
+    private static final class Buffered {
+        private final EventEntity event;
+        private final Runnable onDurable;
+
+        private Buffered(EventEntity event, Runnable onDurable) {
+            this.event = event;
+            this.onDurable = onDurable;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.demo.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Forces files and directory entries to disk. Writing a file and renaming it into place is only durable
+ * once the file contents and the directory holding its name are both synced, otherwise a crash can leave
+ * the name pointing at an empty or partial file, or no name at all.
+ */
+public final class DurableFiles {
+
+    private static final boolean DIRECTORY_SYNC = !System.getProperty("os.name", "").startsWith("Windows");
+
+    private DurableFiles() {
+    }
+
+    /**
+     * Force the contents and metadata of a file to disk
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be opened or forced
+     */
+    public static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Force the entries of a directory to disk, after a file in it was created, renamed or deleted.
+     * Windows cannot open a directory as a file and persists the entries with the file itself.
+     *
+     * @param directory the directory
+     * @throws IOException if the directory cannot be opened or forced
+     */
+    public static void forceDirectory(Path directory) throws IOException {
+        if (!DIRECTORY_SYNC) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,755 @@
+package com.example.demo.wal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.RawEventDTO;
+import com.example.demo.pipeline.BoundedExecutor;
+import com.example.demo.util.DurableFiles;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local write-ahead log of the accepted events, so an event is safe before the database has it.
+ * <p>
+ * Every event is appended to the current memory-mapped segment and acknowledged once a sync thread
+ * forced it to disk. Appends arriving while a sync runs are forced together by the next one, so many
+ * requests share a single fsync. After the append the event is handed to the pipeline with its sequence
+ * in the {@link #SEQUENCE_HEADER} header, and stays pending until the storage flow confirms it is stored,
+ * or the pipeline decides not to store it.
+ * <p>
+ * The oldest pending sequence is written to a checkpoint file periodically, and segments holding only
+ * older records are deleted. On restart the records from the checkpoint on are replayed into the
+ * pipeline. Events not confirmed within the redelivery timeout are handed over again until they are
+ * stored: to the storage flow alone when the pipeline took them before, so the other services do not get
+ * them again, and to the whole pipeline when its queue was full. Events are never given up; while the
+ * segments fill the configured disk space, new events are rejected instead. An event the storage flow
+ * took, into the write-behind buffer or a retry, is not redelivered, and a copy reaching the storage flow
+ * after it is dropped there, see {@link #storing(long)}.
+ */
+@Slf4j
+@Component
+public class EventWriteAheadLog implements SmartLifecycle, MeterBinder {
+
+    /**
+     * Header with the sequence of an event in the log
+     */
+    public static final String SEQUENCE_HEADER = "walSequence";
+
+    /**
+     * Header marking an event handed over again after a restart or a timeout
+     */
+    public static final String REPLAY_HEADER = "walReplay";
+
+    /**
+     * Header of events whose sender waits for the sync itself, see {@link #sync()}
+     */
+    public static final String DEFER_SYNC_HEADER = "walDeferSync";
+
+    /**
+     * Start before and stop after every pipeline stage, confirmations arrive until the storage is stopped
+     */
+    private static final int PHASE = -2048;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final long REPLAY_BACKOFF_MILLIS = 50;
+
+    private final EventPipelineProperties.Wal settings;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition appended = syncLock.newCondition();
+    private final Condition synced = syncLock.newCondition();
+    private final Deque<WalSegment> segments = new ArrayDeque<>();
+    private final ConcurrentSkipListMap<Long, Pending> pending = new ConcurrentSkipListMap<>();
+    private final LongAdder appendedEvents = new LongAdder();
+    private final LongAdder confirmedEvents = new LongAdder();
+    private final LongAdder replayedEvents = new LongAdder();
+    private final LongAdder abandonedEvents = new LongAdder();
+    private final LongAdder rejectedEvents = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+
+    private MessageChannel replayChannel;
+    private MessageChannel redeliveryChannel;
+    private WalSegment active;
+    private long nextSequence;
+    private volatile long appendedSequence;
+    private volatile long syncedSequence;
+    private volatile long replayCursor = Long.MAX_VALUE;
+    private long replayEnd;
+    private volatile boolean running;
+    private volatile IOException syncFailure;
+    private Thread syncer;
+
+    public EventWriteAheadLog(EventPipelineProperties properties, ObjectMapper objectMapper) {
+        this.settings = properties.getWal();
+        this.objectMapper = objectMapper;
+        this.directory = Path.of(settings.getDirectory());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("events.wal.pending", this, EventWriteAheadLog::getPendingCount)
+                .description("Logged events not yet confirmed as stored")
+                .register(registry);
+        Gauge.builder("events.wal.segments", this, EventWriteAheadLog::getSegmentCount)
+                .description("Segment files of the write-ahead log")
+                .register(registry);
+        FunctionCounter.builder("events.wal.appended", this, EventWriteAheadLog::getAppendedCount)
+                .description("Events appended to the write-ahead log")
+                .register(registry);
+        FunctionCounter.builder("events.wal.confirmed", this, EventWriteAheadLog::getConfirmedCount)
+                .description("Logged events confirmed as stored or dropped by the pipeline")
+                .register(registry);
+        FunctionCounter.builder("events.wal.replayed", this, EventWriteAheadLog::getReplayedCount)
+                .description("Logged events handed to the pipeline again after a restart or a timeout")
+                .register(registry);
+        FunctionCounter.builder("events.wal.abandoned", this, EventWriteAheadLog::getAbandonedCount)
+                .description("Unreadable logged events skipped")
+                .register(registry);
+        FunctionCounter.builder("events.wal.rejected", this, EventWriteAheadLog::getRejectedCount)
+                .description("Events rejected because the write-ahead log filled its disk space")
+                .register(registry);
+        FunctionCounter.builder("events.wal.syncs", this, EventWriteAheadLog::getSyncCount)
+                .description("Forces of the write-ahead log to disk, each covering all events appended before")
+                .register(registry);
+    }
+
+    /**
+     * @param replayChannel the channel of the whole pipeline, logged and replayed events are sent to
+     */
+    public void setReplayChannel(MessageChannel replayChannel) {
+        this.replayChannel = replayChannel;
+    }
+
+    /**
+     * @param redeliveryChannel the channel overdue events the pipeline took before are sent to, it only
+     *        stores them
+     */
+    public void setRedeliveryChannel(MessageChannel redeliveryChannel) {
+        this.redeliveryChannel = redeliveryChannel;
+    }
+
+    /**
+     * Append an accepted event and hand it to the pipeline. Returns once the event is on disk, unless the
+     * message asks to defer the sync. A pipeline that cannot take the event right now gets it again later.
+     *
+     * @param message the raw event
+     * @throws UncheckedIOException if the event could not be written
+     */
+    public void write(Message<?> message) {
+        RawEventDTO event = (RawEventDTO) message.getPayload();
+        long sequence = append(event);
+        if (!Boolean.TRUE.equals(message.getHeaders().get(DEFER_SYNC_HEADER))) {
+            awaitSync(sequence);
+        }
+        handOver(sequence, MessageBuilder.fromMessage(message).setHeader(SEQUENCE_HEADER, sequence).build());
+    }
+
+    /**
+     * Wait until every event appended so far is on disk
+     *
+     * @throws UncheckedIOException if the events could not be forced to disk
+     */
+    public void sync() {
+        awaitSync(appendedSequence);
+    }
+
+    /**
+     * Mark an event as stored, or as not to be stored, so its record can be truncated
+     *
+     * @param message a message carrying the {@link #SEQUENCE_HEADER}, others are ignored
+     */
+    public void confirm(Message<?> message) {
+        Object sequence = message.getHeaders().get(SEQUENCE_HEADER);
+        if (sequence instanceof Long value) {
+            confirm(value);
+        }
+    }
+
+    /**
+     * @param sequence the sequence of the stored event
+     */
+    public void confirm(long sequence) {
+        if (pending.remove(sequence) != null) {
+            confirmedEvents.increment();
+        }
+    }
+
+    /**
+     * Mark an event as taken by the storage flow. It is not redelivered while the storage holds it, in the
+     * write-behind buffer, a retry or the dead letters, until it is confirmed or released.
+     *
+     * @param sequence the sequence of the event
+     * @return false if the storage took or stored the event before, the message is a redelivered copy
+     */
+    public boolean storing(long sequence) {
+        Pending record = pending.get(sequence);
+        return record != null && record.storing.compareAndSet(false, true);
+    }
+
+    /**
+     * Make an event the storage flow took, but failed to keep, due for redelivery again
+     *
+     * @param sequence the sequence of the event
+     */
+    public void release(long sequence) {
+        Pending record = pending.get(sequence);
+        if (record != null) {
+            record.storing.set(false);
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getAppendedCount() {
+        return appendedEvents.sum();
+    }
+
+    public long getConfirmedCount() {
+        return confirmedEvents.sum();
+    }
+
+    public long getReplayedCount() {
+        return replayedEvents.sum();
+    }
+
+    public long getAbandonedCount() {
+        return abandonedEvents.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedEvents.sum();
+    }
+
+    public long getSyncCount() {
+        return syncs.sum();
+    }
+
+    /**
+     * @return the number of segment files on disk
+     */
+    public int getSegmentCount() {
+        appendLock.lock();
+        try {
+            return segments.size();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the write-ahead log in " + directory, e);
+        }
+        running = true;
+        syncer = Thread.ofPlatform().name("wal-sync").start(this::runSyncer);
+    }
+
+    @Override
+    public void stop() {
+        if (syncer == null) {
+            return;
+        }
+        running = false;
+        syncLock.lock();
+        try {
+            appended.signalAll();
+        } finally {
+            syncLock.unlock();
+        }
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        syncer = null;
+        writeCheckpoint();
+        appendLock.lock();
+        try {
+            for (WalSegment segment : segments) {
+                segment.force();
+                segment.close();
+            }
+            segments.clear();
+            active = null;
+        } catch (IOException e) {
+            log.warn("Failed to close the write-ahead log", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    /**
+     * Hand the records left by the previous run to the pipeline, once it is running
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replay() {
+        if (!running || replayCursor == Long.MAX_VALUE) {
+            return;
+        }
+        Thread.ofPlatform().name("wal-replay").start(this::runReplay);
+    }
+
+    /**
+     * Redeliver overdue events, then persist the oldest pending sequence and delete segments before it
+     */
+    @Scheduled(fixedDelayString = "${events.wal.checkpoint-interval:5s}")
+    public void checkpoint() {
+        if (active == null) {
+            return;
+        }
+        // may wait for the pipeline, outside the monitor of the checkpoint
+        redeliverOverdue();
+        writeCheckpoint();
+    }
+
+    private synchronized void writeCheckpoint() {
+        if (active == null) {
+            return;
+        }
+        long lowWaterMark = lowWaterMark();
+        try {
+            Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+            Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+            Files.writeString(temporary, Long.toString(lowWaterMark), StandardCharsets.US_ASCII);
+            // the new checkpoint must be on disk before the segments it releases are deleted
+            DurableFiles.force(temporary);
+            Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            DurableFiles.forceDirectory(directory);
+        } catch (IOException e) {
+            log.warn("Failed to write the write-ahead log checkpoint", e);
+            return;
+        }
+        List<WalSegment> obsolete = new ArrayList<>();
+        appendLock.lock();
+        try {
+            while (segments.size() > 1 && segments.peekFirst().getLastSequence() < lowWaterMark) {
+                obsolete.add(segments.pollFirst());
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        for (WalSegment segment : obsolete) {
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                log.warn("Failed to delete write-ahead log segment {}", segment.getPath(), e);
+            }
+        }
+    }
+
+    private long append(RawEventDTO event) {
+        if (!running) {
+            throw new IllegalStateException("The write-ahead log is not running");
+        }
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(event);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long sequence;
+        appendLock.lock();
+        try {
+            sequence = nextSequence;
+            int offset = active.append(sequence, payload);
+            if (offset < 0) {
+                if (segments.size() >= maxSegments()) {
+                    rejectedEvents.increment();
+                    // pending events are kept until stored, so the log stops taking new ones instead
+                    throw new RejectedExecutionException("The write-ahead log is full, " + pending.size()
+                            + " events wait to be stored");
+                }
+                roll(sequence);
+                offset = active.append(sequence, payload);
+                if (offset < 0) {
+                    throw new IllegalArgumentException("Event of " + payload.length + " bytes exceeds the segment size");
+                }
+            }
+            nextSequence++;
+            pending.put(sequence, new Pending(active, offset));
+            appendedSequence = sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+        appendedEvents.increment();
+        syncLock.lock();
+        try {
+            appended.signal();
+        } finally {
+            syncLock.unlock();
+        }
+        return sequence;
+    }
+
+    /**
+     * Start a new segment, the current one is forced first so the sync thread only deals with one segment
+     */
+    private void roll(long firstSequence) throws IOException {
+        active.force();
+        active = createSegment(firstSequence);
+        segments.addLast(active);
+    }
+
+    /**
+     * Create a segment and sync the directory, so records forced into it cannot be lost with its name
+     */
+    private WalSegment createSegment(long firstSequence) throws IOException {
+        WalSegment segment = WalSegment.create(segmentPath(firstSequence), firstSequence, settings.getSegmentSize());
+        DurableFiles.forceDirectory(directory);
+        return segment;
+    }
+
+    private long maxSegments() {
+        return Math.max(2, settings.getMaxSize() / settings.getSegmentSize());
+    }
+
+    private void awaitSync(long sequence) {
+        long deadline = System.nanoTime() + settings.getSyncTimeout().toNanos();
+        syncLock.lock();
+        try {
+            while (syncedSequence < sequence) {
+                if (syncFailure != null) {
+                    throw new UncheckedIOException("Failed to sync the write-ahead log", syncFailure);
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new UncheckedIOException(new IOException("Timed out syncing the write-ahead log"));
+                }
+                synced.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while syncing the write-ahead log", e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void runSyncer() {
+        while (true) {
+            syncLock.lock();
+            try {
+                while (running && appendedSequence == syncedSequence) {
+                    appended.await(100, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                syncLock.unlock();
+            }
+            if (!running && appendedSequence == syncedSequence) {
+                return;
+            }
+            long upTo;
+            WalSegment segment;
+            appendLock.lock();
+            try {
+                upTo = appendedSequence;
+                segment = active;
+            } finally {
+                appendLock.unlock();
+            }
+            // appends continue while the segment is forced, they are picked up by the next round
+            try {
+                segment.force();
+                syncFailure = null;
+            } catch (UncheckedIOException e) {
+                syncFailure = e.getCause();
+                log.error("Failed to sync the write-ahead log", e);
+                continue;
+            }
+            syncs.increment();
+            syncLock.lock();
+            try {
+                syncedSequence = upTo;
+                synced.signalAll();
+            } finally {
+                syncLock.unlock();
+            }
+        }
+    }
+
+    private void handOver(long sequence, Message<?> message) {
+        try {
+            replayChannel.send(message);
+            accepted(sequence);
+        } catch (MessagingException e) {
+            if (!BoundedExecutor.isRejection(e)) {
+                throw e;
+            }
+            // the event is safe on disk, it is redelivered once overdue
+            log.debug("Pipeline busy, event {} is redelivered later", sequence);
+        }
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().toList();
+        }
+        long checkpoint = readCheckpoint();
+        long expected = -1;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long firstSequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length()));
+            if (expected >= 0 && firstSequence != expected) {
+                log.warn("Write-ahead log segment {} does not continue the previous one", file);
+            }
+            WalSegment segment = WalSegment.open(file, firstSequence);
+            segments.addLast(segment);
+            expected = segment.getLastSequence() + 1;
+        }
+        // appends always go to a fresh segment, an empty last one is replaced by it
+        while (!segments.isEmpty() && segments.peekLast().isEmpty()) {
+            segments.pollLast().delete();
+        }
+        long replayFrom = Long.MAX_VALUE;
+        for (WalSegment segment : segments) {
+            if (segment.getLastSequence() >= Math.max(checkpoint, segment.getFirstSequence())) {
+                replayFrom = Math.min(replayFrom, Math.max(checkpoint, segment.getFirstSequence()));
+            }
+        }
+        nextSequence = segments.isEmpty() ? Math.max(checkpoint, 1) : Math.max(checkpoint, expected);
+        appendedSequence = nextSequence - 1;
+        syncedSequence = nextSequence - 1;
+        replayCursor = replayFrom;
+        replayEnd = nextSequence;
+        // recovered segments stay read only
+        active = createSegment(nextSequence);
+        segments.addLast(active);
+        if (replayFrom != Long.MAX_VALUE) {
+            log.info("Write-ahead log holds events from sequence {} to {} to replay", replayFrom, nextSequence - 1);
+        }
+    }
+
+    /**
+     * @return the oldest sequence still pending in the previous run, 0 to replay every segment when the
+     *         checkpoint is missing or unreadable
+     */
+    private long readCheckpoint() throws IOException {
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(checkpointFile)) {
+            return 0;
+        }
+        String content = Files.readString(checkpointFile, StandardCharsets.US_ASCII).trim();
+        try {
+            return Long.parseLong(content);
+        } catch (NumberFormatException e) {
+            log.warn("Unreadable write-ahead log checkpoint '{}', replaying every segment", content);
+            return 0;
+        }
+    }
+
+    private void runReplay() {
+        List<WalSegment> recovered = new ArrayList<>();
+        appendLock.lock();
+        try {
+            for (WalSegment segment : segments) {
+                if (segment.getFirstSequence() < replayEnd) {
+                    recovered.add(segment);
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        long from = replayCursor;
+        for (WalSegment segment : recovered) {
+            for (int offset = 0; offset < segment.end(); offset = segment.next(offset)) {
+                long sequence = segment.sequenceAt(offset);
+                if (sequence < from) {
+                    continue;
+                }
+                Pending record = new Pending(segment, offset);
+                pending.put(sequence, record);
+                replayCursor = sequence + 1;
+                if (!redeliver(sequence, record, true)) {
+                    return;
+                }
+            }
+        }
+        replayCursor = Long.MAX_VALUE;
+        log.info("Write-ahead log replay finished, {} events replayed", replayedEvents.sum());
+    }
+
+    /**
+     * Hand an event over again, to the storage flow if the pipeline took it before, otherwise to the
+     * whole pipeline
+     *
+     * @param waitWhileBusy wait while the queue is full, otherwise give up right away
+     * @return false if the log stopped or the queue was full
+     */
+    private boolean redeliver(long sequence, Pending record, boolean waitWhileBusy) {
+        RawEventDTO event;
+        try {
+            event = objectMapper.readValue(record.segment.payloadAt(record.offset), RawEventDTO.class);
+        } catch (IOException e) {
+            log.error("Unreadable event {} in the write-ahead log, skipping it", sequence, e);
+            abandon(sequence);
+            return true;
+        }
+        Message<RawEventDTO> message = MessageBuilder.withPayload(event)
+                .setHeader(SEQUENCE_HEADER, sequence)
+                .setHeader(REPLAY_HEADER, true)
+                .build();
+        record.handedOverAt = System.nanoTime();
+        MessageChannel channel = record.accepted ? redeliveryChannel : replayChannel;
+        while (running) {
+            try {
+                channel.send(message);
+                record.accepted = true;
+                replayedEvents.increment();
+                return true;
+            } catch (MessagingException e) {
+                if (!BoundedExecutor.isRejection(e)) {
+                    log.error("Failed to replay event {}", sequence, e);
+                    return true;
+                }
+                if (!waitWhileBusy) {
+                    return false;
+                }
+                try {
+                    Thread.sleep(REPLAY_BACKOFF_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void redeliverOverdue() {
+        long overdueBefore = System.nanoTime() - settings.getRedeliverAfter().toNanos();
+        for (Map.Entry<Long, Pending> entry : pending.entrySet()) {
+            Pending record = entry.getValue();
+            // the storage holds it, another copy would be stored twice
+            if (record.storing.get() || record.handedOverAt - overdueBefore > 0) {
+                continue;
+            }
+            // kept until stored however often it takes, the disk space bounds the backlog
+            log.debug("Event {} of the write-ahead log not stored yet, redelivering it", entry.getKey());
+            if (!redeliver(entry.getKey(), record, false)) {
+                // the pipeline is busy, try the rest with the next checkpoint
+                return;
+            }
+        }
+    }
+
+    private void accepted(long sequence) {
+        Pending record = pending.get(sequence);
+        if (record != null) {
+            record.accepted = true;
+        }
+    }
+
+    private void abandon(long sequence) {
+        if (pending.remove(sequence) != null) {
+            abandonedEvents.increment();
+        }
+    }
+
+    private long lowWaterMark() {
+        long lowWaterMark = Math.min(replayCursor, nextSequenceSnapshot());
+        Map.Entry<Long, Pending> oldest = pending.firstEntry();
+        return oldest != null ? Math.min(lowWaterMark, oldest.getKey()) : lowWaterMark;
+    }
+
+    private long nextSequenceSnapshot() {
+        appendLock.lock();
+        try {
+            return nextSequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%020d", firstSequence) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Location of an event not yet confirmed, the payload is read from the mapped segment when needed
+     */
+    private static final class Pending {
+        private final WalSegment segment;
+        private final int offset;
+        private volatile long handedOverAt = System.nanoTime();
+        /**
+         * The pipeline took the event, a redelivery only has to store it
+         */
+        private volatile boolean accepted;
+        /**
+         * The storage flow took the event, it is not redelivered
+         */
+        private final AtomicBoolean storing = new AtomicBoolean();
+
+        private Pending(WalSegment segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+}
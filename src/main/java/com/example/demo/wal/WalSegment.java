@@ -0,0 +1,204 @@
+package com.example.demo.wal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * One file of the write-ahead log, mapped into memory as a whole.
+ * <p>
+ * Records are laid out back to back as {@code [int length][int crc][long sequence][payload]}, the CRC
+ * covers the sequence and the payload. The file is created at its full size, so its tail is zeros and a
+ * zero length marks the end. A record torn by a crash fails its CRC and ends the segment as well.
+ * Appends are serialized by the log, reads of written records may run concurrently.
+ */
+final class WalSegment {
+
+    static final int HEADER_BYTES = 16;
+
+    private final Path path;
+    private final long firstSequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private volatile int position;
+    private int forcedPosition;
+    private volatile long lastSequence;
+
+    private WalSegment(Path path, long firstSequence, FileChannel channel, MappedByteBuffer buffer) {
+        this.path = path;
+        this.firstSequence = firstSequence;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.lastSequence = firstSequence - 1;
+    }
+
+    /**
+     * Create a new, empty segment
+     *
+     * @param path the file, must not exist
+     * @param firstSequence the sequence of the first record
+     * @param size the size of the file
+     * @return the segment
+     * @throws IOException if the file cannot be created
+     */
+    static WalSegment create(Path path, long firstSequence, int size) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        return new WalSegment(path, firstSequence, channel, buffer);
+    }
+
+    /**
+     * Open an existing segment and find the end of its valid records
+     *
+     * @param path the file
+     * @param firstSequence the sequence of the first record
+     * @return the segment, appends continue after its last valid record
+     * @throws IOException if the file cannot be read
+     */
+    static WalSegment open(Path path, long firstSequence) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Files.size(path));
+        WalSegment segment = new WalSegment(path, firstSequence, channel, buffer);
+        segment.recover();
+        return segment;
+    }
+
+    /**
+     * Append a record, it is durable once {@link #force()} returned
+     *
+     * @param sequence the sequence of the record, one more than the last one
+     * @param payload the payload
+     * @return the offset of the record, -1 if it does not fit
+     */
+    int append(long sequence, byte[] payload) {
+        int end = position + HEADER_BYTES + payload.length;
+        // leave room for a zero length after the record so the end stays recognizable
+        if (end + 4 > buffer.capacity()) {
+            return -1;
+        }
+        int offset = position;
+        CRC32C crc = new CRC32C();
+        crc.update(longBytes(sequence));
+        crc.update(payload);
+        buffer.putLong(offset + 8, sequence);
+        buffer.put(offset + HEADER_BYTES, payload);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        // the length goes last, a reader never sees a length without its record
+        buffer.putInt(offset, payload.length);
+        position = end;
+        lastSequence = sequence;
+        return offset;
+    }
+
+    /**
+     * Write the appended records through to the disk, may run concurrently with an append
+     */
+    synchronized void force() {
+        int end = position;
+        if (end > forcedPosition) {
+            buffer.force(forcedPosition, end - forcedPosition);
+            forcedPosition = end;
+        }
+    }
+
+    /**
+     * @param offset the offset of a record
+     * @return the sequence of the record
+     */
+    long sequenceAt(int offset) {
+        return buffer.getLong(offset + 8);
+    }
+
+    /**
+     * @param offset the offset of a record
+     * @return the payload of the record
+     */
+    byte[] payloadAt(int offset) {
+        byte[] payload = new byte[buffer.getInt(offset)];
+        buffer.get(offset + HEADER_BYTES, payload);
+        return payload;
+    }
+
+    /**
+     * @param offset the offset of a record
+     * @return the offset of the next record, or the end of the segment
+     */
+    int next(int offset) {
+        return offset + HEADER_BYTES + buffer.getInt(offset);
+    }
+
+    /**
+     * @return the end of the written records
+     */
+    int end() {
+        return position;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    boolean isEmpty() {
+        return position == 0;
+    }
+
+    private void recover() {
+        int offset = 0;
+        long expected = firstSequence;
+        while (offset + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_BYTES + length > buffer.capacity()) {
+                break;
+            }
+            long sequence = buffer.getLong(offset + 8);
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_BYTES, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(longBytes(sequence));
+            crc.update(payload);
+            if (sequence != expected || (int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            lastSequence = sequence;
+            expected++;
+            offset += HEADER_BYTES + length;
+        }
+        // clear a torn record, so appends after it are not mistaken for its continuation
+        for (int i = offset; i < Math.min(buffer.capacity(), offset + HEADER_BYTES); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        position = offset;
+        forcedPosition = offset;
+    }
+
+    private static byte[] longBytes(long value) {
+        byte[] bytes = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,30 @@
+-- Extend the user and timestamp indexes so the keyset queries on (timestamp, id) seek and read only the index.
+-- The id is the clustered key and part of every index already, naming it fixes its place in the order.
+IF EXISTS (SELECT * FROM sys.indexes WHERE name = 'idx_events_user_id' AND object_id = OBJECT_ID('events'))
+BEGIN
+    CREATE INDEX idx_events_user_id ON events(user_id, timestamp, id)
+        INCLUDE (action, song_id, source) WITH (DROP_EXISTING = ON);
+END
+ELSE
+BEGIN
+    CREATE INDEX idx_events_user_id ON events(user_id, timestamp, id)
+        INCLUDE (action, song_id, source);
+END
+
+IF EXISTS (SELECT * FROM sys.indexes WHERE name = 'idx_events_timestamp' AND object_id = OBJECT_ID('events'))
+BEGIN
+    CREATE INDEX idx_events_timestamp ON events(timestamp, id)
+        INCLUDE (user_id, action, song_id, source) WITH (DROP_EXISTING = ON);
+END
+ELSE
+BEGIN
+    CREATE INDEX idx_events_timestamp ON events(timestamp, id)
+        INCLUDE (user_id, action, song_id, source);
+END
+
+-- Per action queries over a time range seek on the action first
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'idx_events_action_timestamp' AND object_id = OBJECT_ID('events'))
+BEGIN
+    CREATE INDEX idx_events_action_timestamp ON events(action, timestamp, id)
+        INCLUDE (user_id, song_id, source);
+END
@@ -0,0 +1,37 @@
+-- Pre-aggregated event counts per minute, hour and day, maintained by the pipeline.
+-- Every row counts the events of an action for a song, an action or a category within a bucket.
+IF OBJECT_ID('event_rollups_minute') IS NULL
+BEGIN
+    CREATE TABLE event_rollups_minute (
+        bucket_start DATETIMEOFFSET NOT NULL,
+        dimension NVARCHAR(20) NOT NULL,
+        dimension_key NVARCHAR(255) NOT NULL,
+        action NVARCHAR(50) NOT NULL,
+        event_count BIGINT NOT NULL,
+        CONSTRAINT pk_event_rollups_minute PRIMARY KEY (dimension, dimension_key, bucket_start, action)
+    );
+END
+
+IF OBJECT_ID('event_rollups_hour') IS NULL
+BEGIN
+    CREATE TABLE event_rollups_hour (
+        bucket_start DATETIMEOFFSET NOT NULL,
+        dimension NVARCHAR(20) NOT NULL,
+        dimension_key NVARCHAR(255) NOT NULL,
+        action NVARCHAR(50) NOT NULL,
+        event_count BIGINT NOT NULL,
+        CONSTRAINT pk_event_rollups_hour PRIMARY KEY (dimension, dimension_key, bucket_start, action)
+    );
+END
+
+IF OBJECT_ID('event_rollups_day') IS NULL
+BEGIN
+    CREATE TABLE event_rollups_day (
+        bucket_start DATETIMEOFFSET NOT NULL,
+        dimension NVARCHAR(20) NOT NULL,
+        dimension_key NVARCHAR(255) NOT NULL,
+        action NVARCHAR(50) NOT NULL,
+        event_count BIGINT NOT NULL,
+        CONSTRAINT pk_event_rollups_day PRIMARY KEY (dimension, dimension_key, bucket_start, action)
+    );
+END
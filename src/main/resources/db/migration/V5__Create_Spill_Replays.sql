@@ -0,0 +1,10 @@
+-- Spill files of the write-behind buffer whose events were inserted, written in the same transaction as the
+-- events. A file found here after a crash was inserted already and is deleted without inserting it again.
+IF OBJECT_ID('event_spill_replays') IS NULL
+BEGIN
+    CREATE TABLE event_spill_replays (
+        spill_file NVARCHAR(255) NOT NULL,
+        replayed_at DATETIMEOFFSET NOT NULL,
+        CONSTRAINT pk_event_spill_replays PRIMARY KEY (spill_file)
+    );
+END
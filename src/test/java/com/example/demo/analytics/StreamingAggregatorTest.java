@@ -0,0 +1,176 @@
+package com.example.demo.analytics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.TrendingSongsDTO;
+import com.example.demo.dto.WindowCountsDTO;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+
+class StreamingAggregatorTest {
+
+    private static final Instant START = Instant.parse("2025-03-29T10:00:00Z");
+
+    private final AtomicLong clock = new AtomicLong(START.toEpochMilli());
+    private StreamingAggregator aggregator;
+
+    @BeforeEach
+    public void setup() {
+        EventPipelineProperties.Analytics settings = new EventPipelineProperties.Analytics();
+        settings.setBucket(Duration.ofMinutes(1));
+        settings.setRetention(Duration.ofHours(1));
+        settings.setAllowedLateness(Duration.ofMinutes(2));
+        settings.setTopKCapacity(10);
+        aggregator = new StreamingAggregator(settings, clock::get);
+    }
+
+    @Test
+    public void testSlidingWindowCounts() {
+        record("song1", ActionType.PLAY, START);
+        record("song1", ActionType.SKIP, START.plusSeconds(30));
+        clock.set(START.plusSeconds(600).toEpochMilli());
+        record("song1", ActionType.PLAY, START.plusSeconds(600));
+
+        WindowCountsDTO lastFiveMinutes = aggregator.getActionCounts(Duration.ofMinutes(5), WindowType.SLIDING);
+        assertEquals(1, lastFiveMinutes.getCounts().get("PLAY"));
+        assertEquals(1, lastFiveMinutes.getTotal());
+
+        WindowCountsDTO lastHour = aggregator.getSongCounts("song1", Duration.ofHours(1), WindowType.SLIDING);
+        assertEquals(2, lastHour.getCounts().get("PLAY"));
+        assertEquals(1, lastHour.getCounts().get("SKIP"));
+        assertEquals(3, aggregator.getSourceCounts(Duration.ofHours(1), WindowType.SLIDING).getCounts().get("WEB"));
+    }
+
+    @Test
+    public void testTumblingWindowIsTheLastClosedOne() {
+        clock.set(START.plusSeconds(330).toEpochMilli());
+        record("song1", ActionType.PLAY, START.plusSeconds(290));
+        record("song1", ActionType.PLAY, START.plusSeconds(310));
+
+        // the window ending at 300 still takes late events until 420
+        WindowCountsDTO window = aggregator.getActionCounts(Duration.ofMinutes(5), WindowType.TUMBLING);
+        assertEquals(START.minusSeconds(300), window.getFrom());
+        assertEquals(START, window.getTo());
+        assertEquals(0, window.getTotal());
+
+        clock.set(START.plusSeconds(420).toEpochMilli());
+        window = aggregator.getActionCounts(Duration.ofMinutes(5), WindowType.TUMBLING);
+        assertEquals(START, window.getFrom());
+        assertEquals(START.plusSeconds(300), window.getTo());
+        assertEquals(1, window.getCounts().get("PLAY"));
+    }
+
+    @Test
+    public void testTumblingWindowKeepsItsCountsOnceClosed() {
+        clock.set(START.plusSeconds(420).toEpochMilli());
+        record("song1", ActionType.PLAY, START.plusSeconds(290));
+        WindowCountsDTO closed = aggregator.getActionCounts(Duration.ofMinutes(5), WindowType.TUMBLING);
+
+        // too late for the closed window, in time for the one in progress
+        record("song1", ActionType.PLAY, START.plusSeconds(500));
+        record("song1", ActionType.PLAY, START.plusSeconds(100));
+        assertEquals(closed, aggregator.getActionCounts(Duration.ofMinutes(5), WindowType.TUMBLING));
+        assertEquals(2, aggregator.getCountedCount());
+        assertEquals(1, aggregator.getLateCount());
+        assertEquals(0, aggregator.getFutureCount());
+    }
+
+    @Test
+    public void testTumblingWindowOfTheRetentionIsHeldUntilTheNextCloses() {
+        // an event every minute for two hours, the ring reuses its slots meanwhile
+        for (int minute = 0; minute <= 121; minute++) {
+            clock.set(START.plusSeconds(minute * 60L).toEpochMilli());
+            record("song1", ActionType.PLAY, START.plusSeconds(minute * 60L));
+        }
+
+        // the last moment before the hour from 11:00 closes
+        clock.set(START.plusSeconds(2 * 3600 + 120).toEpochMilli() - 1);
+        WindowCountsDTO hour = aggregator.getActionCounts(Duration.ofHours(1), WindowType.TUMBLING);
+        assertEquals(START, hour.getFrom());
+        assertEquals(60, hour.getCounts().get("PLAY"));
+    }
+
+    @Test
+    public void testLateAndFutureEventsAreDropped() {
+        clock.set(START.plusSeconds(600).toEpochMilli());
+        record("song1", ActionType.PLAY, START.plusSeconds(600));
+        record("song1", ActionType.PLAY, START.plusSeconds(500));
+        record("song1", ActionType.PLAY, START.plusSeconds(400));
+        record("song1", ActionType.PLAY, START.plusSeconds(1200));
+
+        assertEquals(2, aggregator.getCountedCount());
+        assertEquals(1, aggregator.getLateCount());
+        assertEquals(1, aggregator.getFutureCount());
+    }
+
+    @Test
+    public void testTrendingSongs() {
+        for (int i = 0; i < 500; i++) {
+            record("long-tail-" + i, ActionType.PLAY, START);
+        }
+        for (int i = 0; i < 50; i++) {
+            record("hit", ActionType.PLAY, START);
+            record("runner-up", ActionType.PLAY, START);
+        }
+        record("runner-up", ActionType.PLAY, START);
+        record("hit", ActionType.SKIP, START);
+
+        TrendingSongsDTO trending = aggregator.getTrendingSongs(Duration.ofMinutes(10), WindowType.SLIDING, 2);
+        List<TrendingSongsDTO.SongPlays> songs = trending.getSongs();
+        assertEquals(2, songs.size());
+        assertEquals("runner-up", songs.get(0).getSongId());
+        assertEquals("hit", songs.get(1).getSongId());
+        assertTrue(songs.get(1).getPlays() >= 50);
+    }
+
+    @Test
+    public void testTrendingSongsCountedByManyThreads() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 200; i++) {
+                    record("long-tail-" + thread + "-" + i, ActionType.PLAY, START);
+                    if (i % 4 == 0) {
+                        record("hit", ActionType.PLAY, START);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<TrendingSongsDTO.SongPlays> songs = aggregator
+                .getTrendingSongs(Duration.ofMinutes(10), WindowType.SLIDING, 1).getSongs();
+        assertEquals("hit", songs.get(0).getSongId());
+        assertTrue(songs.get(0).getPlays() >= 200);
+    }
+
+    @Test
+    public void testWindowBeyondRetentionIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> aggregator.getActionCounts(Duration.ofHours(2), WindowType.SLIDING));
+    }
+
+    private void record(String songId, ActionType action, Instant timestamp) {
+        aggregator.record(Event.builder()
+                .userId("user123")
+                .action(action)
+                .songId(songId)
+                .timestamp(timestamp)
+                .source("WEB")
+                .build());
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.demo.archive;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.demo.dto.ArchivedEventDTO;
+import com.example.demo.model.ActionType;
+
+class EventArchiveTest {
+
+    private static final Instant START = Instant.parse("2025-01-01T00:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testScanReturnsEventsOfRange() throws IOException {
+        EventArchive archive = new EventArchive(directory);
+        List<ArchivedEventDTO> first = events(1, 100, 0);
+        List<ArchivedEventDTO> second = events(101, 100, 100);
+        archive.append(first);
+        archive.append(second);
+        assertEquals(2, archive.getSegmentCount());
+        assertEquals(200, archive.getEventCount());
+        assertEquals(START, archive.getOldest());
+        assertEquals(START.plusSeconds(199 * 60).plusMillis(99), archive.getNewest());
+
+        List<ArchivedEventDTO> all = new ArrayList<>();
+        assertEquals(200, archive.scan(START, START.plusSeconds(200 * 60), all::add));
+        List<ArchivedEventDTO> expected = new ArrayList<>(first);
+        expected.addAll(second);
+        assertEquals(expected, all);
+
+        // the second segment only
+        List<ArchivedEventDTO> range = new ArrayList<>();
+        assertEquals(10, archive.scan(START.plusSeconds(150 * 60), START.plusSeconds(160 * 60), range::add));
+        assertEquals(expected.subList(150, 160), range);
+        assertEquals(3, archive.getScannedSegmentCount());
+
+        assertEquals(0, archive.scan(START.minusSeconds(60), START, range::add));
+        assertEquals(3, archive.getScannedSegmentCount());
+    }
+
+    @Test
+    public void testSegmentKeepsNullsAndSortsByTimestamp() throws IOException {
+        EventArchive archive = new EventArchive(directory);
+        List<ArchivedEventDTO> events = List.of(
+                ArchivedEventDTO.builder().id(7L).timestamp(START.plusNanos(300)).build(),
+                ArchivedEventDTO.builder().id(3L).userId("user1").action(ActionType.SHARE).songId("songé")
+                        .timestamp(START).source("web").build(),
+                ArchivedEventDTO.builder().id(-2L).userId("user1").timestamp(START.plusNanos(300)).build());
+        archive.append(events);
+
+        List<ArchivedEventDTO> scanned = new ArrayList<>();
+        archive.scan(START, START.plusSeconds(1), scanned::add);
+        assertEquals(List.of(events.get(1), events.get(2), events.get(0)), scanned);
+        assertNull(scanned.get(2).getUserId());
+        assertArrayEquals(new long[] { 3, -2, 7 }, archive.getLastSegmentIds());
+    }
+
+    @Test
+    public void testSegmentKeepsEveryColumn() throws IOException {
+        EventArchive archive = new EventArchive(directory);
+        ArchivedEventDTO event = ArchivedEventDTO.builder()
+                .id(42L)
+                .userId("user1")
+                .action(ActionType.LIKE)
+                .songId("song1")
+                .timestamp(START)
+                .source("web")
+                .processedAt(START.minusMillis(5))
+                .category("ENGAGEMENT")
+                .count(0)
+                .deviceType("TABLET")
+                .osVersion("iPadOS 17.4")
+                .appVersion("3.2.1")
+                .ipAddress("2001:db8::1")
+                .location("DE/Berlin")
+                .build();
+        archive.append(List.of(event));
+
+        List<ArchivedEventDTO> scanned = new ArrayList<>();
+        archive.scan(START, START.plusSeconds(1), scanned::add);
+        assertEquals(List.of(event), scanned);
+    }
+
+    @Test
+    public void testReopenRestoresIndex() throws IOException {
+        EventArchive archive = new EventArchive(directory);
+        archive.append(events(1, 10, 0));
+        archive.append(events(11, 10, 10));
+
+        // a segment missing from the index and an unfinished one
+        Files.delete(directory.resolve("index"));
+        Files.writeString(directory.resolve("events-000000000003.seg.tmp"), "partial");
+
+        EventArchive reopened = new EventArchive(directory);
+        assertEquals(2, reopened.getSegmentCount());
+        assertEquals(20, reopened.getEventCount());
+        assertTrue(Files.exists(directory.resolve("index")));
+        assertTrue(Files.notExists(directory.resolve("events-000000000003.seg.tmp")));
+
+        reopened.append(events(21, 5, 20));
+        assertEquals(3, new EventArchive(directory).getSegmentCount());
+        assertEquals(25, reopened.scan(START, START.plusSeconds(25 * 60), event -> { }));
+    }
+
+    private static List<ArchivedEventDTO> events(long firstId, int count, int firstMinute) {
+        ActionType[] actions = ActionType.values();
+        List<ArchivedEventDTO> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(ArchivedEventDTO.builder()
+                    .id(firstId + i)
+                    .userId("user" + (i % 7))
+                    .action(actions[i % actions.length])
+                    .songId("song" + (i % 13))
+                    .timestamp(START.plusSeconds((firstMinute + i) * 60L).plusMillis(i % 1000))
+                    .source(i % 2 == 0 ? "mobile" : null)
+                    .processedAt(START.plusSeconds((firstMinute + i) * 60L + 2).plusNanos(i * 100L))
+                    .category(i % 3 == 0 ? "ENGAGEMENT" : "PLAYBACK")
+                    .count(i % 4 == 0 ? -i : i)
+                    .deviceType(i % 2 == 0 ? "MOBILE" : "DESKTOP")
+                    .osVersion("Android " + (i % 5))
+                    .appVersion(i % 3 == 0 ? null : "3.2." + (i % 3))
+                    .ipAddress("81.2.69." + (i % 255))
+                    .location(i % 5 == 0 ? null : "GB/London")
+                    .build());
+        }
+        return events;
+    }
+}
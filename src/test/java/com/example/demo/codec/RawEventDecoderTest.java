@@ -0,0 +1,144 @@
+package com.example.demo.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.MockHttpInputMessage;
+
+import com.example.demo.dto.RawEventDTO;
+import com.example.demo.model.ActionType;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class RawEventDecoderTest {
+
+    // configured like the application mapper
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final RawEventDecoder decoder = new RawEventDecoder(objectMapper);
+
+    @Test
+    public void testMatchesJacksonBinding() throws IOException {
+        String[] bodies = {
+                "{\"userId\":\"user123\",\"action\":\"PLAY\",\"songId\":\"song456\",\"timestamp\":\"2025-03-29T10:23:45Z\"}",
+                "{\"userId\":\"u123\",\"action\":\"like\",\"songId\":\"s456\",\"timestamp\":null}",
+                "{\"action\":\"Logout\",\"extra\":{\"nested\":[1,2,{\"a\":null}]},\"userId\":\"u\"}",
+                "{\"action\":\"unknown\"}", "{\"action\":\"\"}", "{\"action\":null}", "{\"action\":7}",
+                "{\"userId\":12,\"action\":1.50,\"songId\":true}", "{\"userId\":null}", "{\"UserId\":\"x\"}",
+                "{\"actionType\":\"PLAY\"}", "{\"userId\":\"a\",\"userId\":\"b\"}", "{}", "{} trailing", "null",
+                "{\"timestamp\":\"2024-01-01T00:00:00.1Z\"}", "{\"timestamp\":\"2024-01-01T00:00:00.Z\"}",
+                "{\"timestamp\":\"2024-01-01T00:00:00.123456789Z\"}",
+                "{\"timestamp\":\"2024-02-29T23:59:59Z\"}", "{\"timestamp\":\"2100-02-28T12:00:00Z\"}",
+                "{\"timestamp\":\"0000-01-01T00:00:00Z\"}", "{\"timestamp\":\"1969-12-31T23:59:59.999Z\"}",
+                "{\"timestamp\":\"2024-01-01T01:00:00+01:00\"}", "{\"timestamp\":\"2024-01-01t00:00:00z\"}",
+                "{\"timestamp\":\"2024-01-01T23:59:60Z\"}", "{\"timestamp\":\"2024-01-01T24:00:00Z\"}",
+                "{\"timestamp\":\"+12024-01-01T00:00:00Z\"}",
+                "{\"timestamp\":\"\"}", "{\"timestamp\":\" \"}", "{\"timestamp\":\"1700000000\"}",
+                "{\"timestamp\":\"1.5\"}", "{\"timestamp\":1700000000}", "{\"timestamp\":-5}",
+                "{\"timestamp\":1.5}", "{\"timestamp\":1e3}",
+        };
+        for (String body : bodies) {
+            assertEquals(objectMapper.readValue(body, RawEventDTO.class), decoder.read(stream(body)), body);
+        }
+    }
+
+    @Test
+    public void testRejectsWhatJacksonRejects() throws IOException {
+        String[] bodies = {
+                "{\"userId\":{}}", "{\"userId\":[\"a\"]}", "{\"timestamp\":true}", "{\"timestamp\":[1]}",
+                "{\"timestamp\":\"2024-02-30T00:00:00Z\"}", "{\"timestamp\":\"2023-02-29T00:00:00Z\"}",
+                "{\"timestamp\":\"2024-01-01T00:00Z\"}", "{\"timestamp\":\"-5\"}",
+                "{\"timestamp\":1700000000123456789012}", "[]", "5", "\"\"",
+        };
+        for (String body : bodies) {
+            assertThrows(JsonMappingException.class, () -> objectMapper.readValue(body, RawEventDTO.class), body);
+            assertThrows(JsonMappingException.class, () -> decoder.read(stream(body)), body);
+        }
+    }
+
+    @Test
+    public void testIntegerTimestampsFollowMapperUnit() throws IOException {
+        ObjectMapper millis = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(DeserializationFeature.READ_DATE_TIMESTAMPS_AS_NANOSECONDS)
+                .build();
+        String body = "{\"timestamp\":1700000000123}";
+        RawEventDTO rawEvent = new RawEventDecoder(millis).read(stream(body));
+        assertEquals(Instant.ofEpochMilli(1700000000123L), rawEvent.getTimestamp());
+        assertEquals(millis.readValue(body, RawEventDTO.class), rawEvent);
+    }
+
+    @Test
+    public void testCanonicalActionIsShared() throws IOException {
+        assertSame(ActionType.SKIP.name(), decoder.read(stream("{\"action\":\"SKIP\"}")).getAction());
+        assertEquals(ActionType.SKIP, decoder.read(stream("{\"action\":\"sKiP\"}")).getActionType());
+        assertNull(ActionType.fromString("PLAYS"));
+        assertNull(ActionType.fromString(null));
+    }
+
+    @Test
+    public void testItemsRecoverAfterBadItem() throws IOException {
+        String array = "[{\"userId\":\"a\"}, 5, {\"userId\":{\"x\":[1]},\"songId\":\"s\"}, null, {\"userId\":\"b\"}] {\"userId\":\"c\"}";
+        assertEquals(List.of("a", "error", "error", "null", "b"), userIds(array));
+
+        String ndjson = "{\"userId\":\"a\"}\n[1,2]\n{\"userId\":\"b\",\"timestamp\":[{}]}\n{\"userId\":\"c\"}\n";
+        assertEquals(List.of("a", "error", "error", "c"), userIds(ndjson));
+    }
+
+    @Test
+    public void testEmptyBody() throws IOException {
+        assertNull(decoder.read(stream("")));
+        try (RawEventDecoder.Items items = decoder.readValues(stream(" "))) {
+            assertFalse(items.hasNextValue());
+        }
+    }
+
+    private List<String> userIds(String body) throws IOException {
+        List<String> userIds = new ArrayList<>();
+        try (RawEventDecoder.Items items = decoder.readValues(stream(body))) {
+            while (items.hasNextValue()) {
+                try {
+                    RawEventDTO rawEvent = items.nextValue();
+                    userIds.add(rawEvent == null ? "null" : rawEvent.getUserId());
+                } catch (JsonMappingException e) {
+                    userIds.add("error");
+                }
+            }
+        }
+        return userIds;
+    }
+
+    @Test
+    public void testConverterOnlyReadsEventBodies() throws IOException {
+        RawEventHttpMessageConverter converter = new RawEventHttpMessageConverter(decoder);
+        assertTrue(converter.canRead(RawEventDTO.class, MediaType.APPLICATION_JSON));
+        assertTrue(converter.canRead(RawEventDTO.class, MediaType.valueOf("application/vnd.events+json")));
+        assertTrue(converter.canRead(RawEventDTO.class, null));
+        assertFalse(converter.canRead(RawEventDTO.class, MediaType.TEXT_PLAIN));
+        assertFalse(converter.canRead(String.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canWrite(RawEventDTO.class, MediaType.APPLICATION_JSON));
+
+        MockHttpInputMessage input = new MockHttpInputMessage("{\"userId\":\"u1\",\"action\":\"play\"}"
+                .getBytes(StandardCharsets.UTF_8));
+        input.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        RawEventDTO rawEvent = converter.read(RawEventDTO.class, input);
+        assertEquals("u1", rawEvent.getUserId());
+        assertEquals(ActionType.PLAY, rawEvent.getActionType());
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.demo.config;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+class SettingsOverridesPostProcessorTest {
+
+    @Test
+    public void testChannelOverrideKeepsConfiguredDefaults() {
+        EventPipelineProperties properties = bind(Map.of(
+                "events.fanout.defaults.concurrency", "4",
+                "events.fanout.defaults.queue-capacity", "500",
+                "events.fanout.channels.storage.concurrency", "10",
+                "events.fanout.channels.aiEngine.queue-capacity", "50"));
+
+        Map<String, EventPipelineProperties.ChannelLimits> channels = properties.getFanout().getChannels();
+        assertEquals(10, channels.get("storage").getConcurrency());
+        assertEquals(500, channels.get("storage").getQueueCapacity());
+        assertEquals(4, channels.get("aiEngine").getConcurrency());
+        assertEquals(50, channels.get("aiEngine").getQueueCapacity());
+        assertFalse(channels.containsKey("analytics"));
+        assertEquals(4, properties.getFanout().getDefaults().getConcurrency());
+    }
+
+    @Test
+    public void testServiceOverrideKeepsConfiguredDefaults() {
+        EventPipelineProperties properties = bind(Map.of(
+                "events.downstream.defaults.max-limit", "50",
+                "events.downstream.defaults.open-duration", "30s",
+                "events.downstream.services.aiEngine.max-limit", "32"));
+
+        EventPipelineProperties.DownstreamLimits aiEngine = properties.getDownstream().getServices().get("aiEngine");
+        assertEquals(32, aiEngine.getMaxLimit());
+        assertEquals(Duration.ofSeconds(30), aiEngine.getOpenDuration());
+        assertEquals(50, properties.getDownstream().getDefaults().getMaxLimit());
+    }
+
+    @Test
+    public void testRetryChannelOverrideKeepsConfiguredDefaults() {
+        EventPipelineProperties properties = bind(Map.of(
+                "events.retry.defaults.max-attempts", "8",
+                "events.retry.defaults.initial-backoff", "250ms",
+                "events.retry.channels.analytics.max-attempts", "3"));
+
+        EventPipelineProperties.RetryBackoff analytics = properties.getRetry().getChannels().get("analytics");
+        assertEquals(3, analytics.getMaxAttempts());
+        assertEquals(Duration.ofMillis(250), analytics.getInitialBackoff());
+        assertEquals(8, properties.getRetry().getDefaults().getMaxAttempts());
+    }
+
+    private static EventPipelineProperties bind(Map<String, String> values) {
+        Binder binder = new Binder(new MapConfigurationPropertySource(values));
+        EventPipelineProperties properties = binder.bind("events", Bindable.ofInstance(new EventPipelineProperties()))
+                .get();
+        SettingsOverridesPostProcessor.merge(binder, properties);
+        return properties;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.demo.enrichment;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+
+class EventEnricherTest {
+
+    private static final String RANGES = """
+            # start,end,location
+            10.0.0.0,10.0.0.255,US/California/San Francisco
+            192.168.1.0, 192.168.1.127 ,DE/Berlin
+            200.0.0.0,255.255.255.255,BR/Sao Paulo
+            1.0.0.0,1.0.0.0,AU/Sydney
+            """;
+
+    private final UserAgentParser parser = new UserAgentParser("MusicApp");
+    private EventPipelineProperties.Enrichment settings;
+    private IpRangeTable ipRanges;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        settings = new EventPipelineProperties.Enrichment();
+        settings.setUserAgentCacheSize(4);
+        settings.setUserAgentCacheSegments(1);
+        ipRanges = IpRangeTable.read(new BufferedReader(new StringReader(RANGES)));
+    }
+
+    @Test
+    public void testParseUserAgents() {
+        assertEquals(new DeviceInfo(DeviceInfo.MOBILE, "iOS 17.4", "3.2.1"),
+                parser.parse("MusicApp/3.2.1 (iOS 17.4; iPhone15,2)"));
+        assertEquals(new DeviceInfo(DeviceInfo.MOBILE, "Android 14", "3.2.0"),
+                parser.parse("MusicApp/3.2.0 (Android 14; Pixel 8)"));
+        assertEquals(new DeviceInfo(DeviceInfo.TABLET, "iPadOS 17.4", "3.1.0"),
+                parser.parse("MusicApp/3.1.0 (iPadOS 17.4; iPad13,1)"));
+        assertEquals(new DeviceInfo(DeviceInfo.MOBILE, "iOS 17.4.1", null),
+                parser.parse("Mozilla/5.0 (iPhone; CPU iPhone OS 17_4_1 like Mac OS X) AppleWebKit/605.1.15 "
+                        + "(KHTML, like Gecko) Version/17.4 Mobile/15E148 Safari/604.1"));
+        assertEquals(new DeviceInfo(DeviceInfo.TABLET, "Android 13", null),
+                parser.parse("Mozilla/5.0 (Linux; Android 13; SM-X710) AppleWebKit/537.36 (KHTML, like Gecko) "
+                        + "Chrome/124.0.0.0 Safari/537.36"));
+        assertEquals(new DeviceInfo(DeviceInfo.DESKTOP, "Windows 10.0", null),
+                parser.parse("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) "
+                        + "Chrome/124.0.0.0 Safari/537.36"));
+        assertEquals(new DeviceInfo(DeviceInfo.DESKTOP, "macOS 10.15.7", null),
+                parser.parse("Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15"));
+        assertEquals(DeviceInfo.BOT,
+                parser.parse("Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)").getDeviceType());
+        assertEquals(new DeviceInfo(DeviceInfo.UNKNOWN, null, null), parser.parse("SomeClient"));
+        assertSame(DeviceInfo.NONE, parser.parse(null));
+    }
+
+    @Test
+    public void testLookupIpRanges() {
+        assertEquals(4, ipRanges.size());
+        assertEquals("US/California/San Francisco", ipRanges.lookup("10.0.0.0"));
+        assertEquals("US/California/San Francisco", ipRanges.lookup("10.0.0.255"));
+        assertNull(ipRanges.lookup("10.0.1.0"));
+        assertEquals("DE/Berlin", ipRanges.lookup("192.168.1.100"));
+        assertEquals("DE/Berlin", ipRanges.lookup("::ffff:192.168.1.1"));
+        assertNull(ipRanges.lookup("192.168.1.128"));
+        // addresses above 128.0.0.0 compare as unsigned
+        assertEquals("BR/Sao Paulo", ipRanges.lookup("255.255.255.255"));
+        assertEquals("AU/Sydney", ipRanges.lookup("1.0.0.0"));
+        assertNull(ipRanges.lookup("0.255.255.255"));
+        assertNull(ipRanges.lookup("2001:db8::1"));
+        assertNull(ipRanges.lookup("10.0.0.256"));
+        assertNull(ipRanges.lookup("10.0.0"));
+        assertNull(ipRanges.lookup(null));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> IpRangeTable.read(new BufferedReader(new StringReader("10.0.0.9,10.0.0.1,Nowhere"))));
+    }
+
+    @Test
+    public void testEnrichEvent() {
+        EventEnricher enricher = new EventEnricher(settings, ipRanges);
+        Event event = Event.builder()
+                .userId("user123")
+                .action(ActionType.PLAY)
+                .songId("song456")
+                .userAgent("MusicApp/3.2.1 (iOS 17.4; iPhone15,2)")
+                .ipAddress("192.168.1.7")
+                .build();
+        enricher.enrich(event);
+        assertEquals(DeviceInfo.MOBILE, event.getDeviceType());
+        assertEquals("iOS 17.4", event.getOsVersion());
+        assertEquals("3.2.1", event.getAppVersion());
+        assertEquals("DE/Berlin", event.getLocation());
+
+        settings.setEnabled(false);
+        Event disabled = Event.builder().userAgent("MusicApp/3.2.1 (iOS 17.4; iPhone15,2)").build();
+        enricher.enrich(disabled);
+        assertNull(disabled.getDeviceType());
+    }
+
+    @Test
+    public void testUserAgentCacheEvictsLeastRecentlyUsed() {
+        EventEnricher enricher = new EventEnricher(settings, IpRangeTable.EMPTY);
+        for (int i = 0; i < 4; i++) {
+            enricher.deviceInfo("MusicApp/1." + i);
+        }
+        // touch the first one, the second becomes the eldest
+        DeviceInfo first = enricher.deviceInfo("MusicApp/1.0");
+        enricher.deviceInfo("MusicApp/2.0");
+        assertEquals(4, enricher.getCachedUserAgentCount());
+        assertSame(first, enricher.deviceInfo("MusicApp/1.0"));
+        assertEquals(2.0 / 7, enricher.getCacheHitRate(), 1e-9);
+
+        // evicted, parsed again
+        enricher.deviceInfo("MusicApp/1.1");
+        assertEquals(2.0 / 8, enricher.getCacheHitRate(), 1e-9);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.demo.enrichment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class TrustedProxiesTest {
+
+    private final TrustedProxies proxies = TrustedProxies.parse("10.0.0.0/8, 192.168.1.7, 2001:db8::/32");
+
+    @Test
+    public void testMatchesAddressesAndNetworks() {
+        assertEquals(3, proxies.size());
+        assertTrue(proxies.contains("10.200.3.4"));
+        assertTrue(proxies.contains("192.168.1.7"));
+        assertTrue(proxies.contains("::ffff:10.0.0.1"));
+        assertTrue(proxies.contains("[2001:db8:1::5]"));
+        assertFalse(proxies.contains("11.0.0.1"));
+        assertFalse(proxies.contains("192.168.1.8"));
+        assertFalse(proxies.contains("2001:db9::1"));
+        assertFalse(proxies.contains("proxy.internal"));
+        assertFalse(proxies.contains(null));
+    }
+
+    @Test
+    public void testClientIsTheRightmostUntrustedHop() {
+        // the client made up the first entry, the proxies appended the rest
+        assertEquals("81.2.69.10", proxies.clientIp("10.0.0.2", "1.1.1.1, 81.2.69.10, 10.0.0.5"));
+        assertEquals("81.2.69.10", proxies.clientIp("10.0.0.2", "81.2.69.10"));
+        assertEquals("2001:db9::1", proxies.clientIp("10.0.0.2", "[2001:db9::1],,2001:db8::9"));
+        // only trusted hops, the farthest one is the client
+        assertEquals("10.0.0.7", proxies.clientIp("10.0.0.2", "10.0.0.7, 10.0.0.5"));
+        // nothing forwarded
+        assertEquals("10.0.0.2", proxies.clientIp("10.0.0.2", " "));
+    }
+
+    @Test
+    public void testUntrustedSenderKeepsItsAddress() {
+        assertEquals("81.2.69.10", proxies.clientIp("81.2.69.10", "1.1.1.1"));
+        assertEquals("81.2.69.10", TrustedProxies.NONE.clientIp("81.2.69.10", "1.1.1.1"));
+        assertEquals("81.2.69.10", TrustedProxies.parse("").clientIp("81.2.69.10", "1.1.1.1"));
+    }
+
+    @Test
+    public void testRejectsInvalidEntries() {
+        assertThrows(IllegalArgumentException.class, () -> TrustedProxies.parse("proxy.internal"));
+        assertThrows(IllegalArgumentException.class, () -> TrustedProxies.parse("10.0.0.0/33"));
+        assertThrows(IllegalArgumentException.class, () -> TrustedProxies.parse("10.0.0.0/x"));
+    }
+}
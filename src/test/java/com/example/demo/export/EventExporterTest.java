@@ -0,0 +1,177 @@
+package com.example.demo.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.ActionType;
+import com.example.demo.repository.DatabaseConcurrencyLimiter;
+import com.example.demo.repository.EventExportReader;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class EventExporterTest {
+
+    private static final Instant START = Instant.parse("2025-03-01T00:00:00Z");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final EventPipelineProperties properties = new EventPipelineProperties();
+    private final List<Object[]> rows = new ArrayList<>();
+    private final DatabaseConcurrencyLimiter limiter = new DatabaseConcurrencyLimiter(4, Duration.ofSeconds(10));
+    private final EventExporter exporter = new EventExporter(properties, new InMemoryReader(), limiter, objectMapper);
+
+    @Test
+    public void testExportNdjson() throws IOException {
+        addRow(1, "user1", "PLAY", START.plusSeconds(10));
+        addRow(2, null, "SKIP", START.plusSeconds(20));
+        addRow(3, "user3", "LIKE", START.plusSeconds(3600));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportSummary summary = exporter.export(ExportFormat.NDJSON, START, START.plusSeconds(3600), null, null, 1, out);
+        assertEquals(2, summary.getEvents());
+        assertEquals(out.size(), summary.getBytes());
+
+        String[] lines = gunzip(out.toByteArray()).split("\n");
+        assertEquals(2, lines.length);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals(1, first.get("id").asLong());
+        assertEquals("user1", first.get("userId").asText());
+        assertEquals("2025-03-01T00:00:10Z", first.get("timestamp").asText());
+        assertEquals(5, first.get("count").asInt());
+        assertTrue(objectMapper.readTree(lines[1]).get("userId").isNull());
+        assertEquals(EventExportReader.FIELDS.size(), first.size());
+    }
+
+    @Test
+    public void testParallelRangesConcatenateInOrder() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            addRow(i + 1, i == 7 ? "user \"7\", the one" : "user" + i, "PLAY", START.plusSeconds(i * 60L));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportSummary summary = exporter.export(ExportFormat.CSV, START, START.plusSeconds(100 * 60), null, null, 3, out);
+        assertEquals(100, summary.getEvents());
+        assertEquals(3, summary.getRanges());
+
+        String[] lines = gunzip(out.toByteArray()).split("\r\n");
+        assertEquals(101, lines.length);
+        assertEquals(String.join(",", EventExportReader.FIELDS), lines[0]);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(lines[i + 1].startsWith((i + 1) + ","), lines[i + 1]);
+        }
+        assertEquals("8,\"user \"\"7\"\", the one\",PLAY,song,2025-03-01T00:07:00Z,,2025-03-01T00:07:00Z,PLAY,5,,,,,",
+                lines[8]);
+    }
+
+    @Test
+    public void testRangesTakeDatabasePermits() throws IOException {
+        addRow(1, "user1", "PLAY", START.plusSeconds(10));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(ExportFormat.NDJSON, START, START.plusSeconds(3600), null, null, 3, out);
+        assertEquals(3, limiter.getAcquiredCount());
+        assertEquals(0, limiter.getActiveCount());
+    }
+
+    @Test
+    public void testSplitsWindowsTooLongForNanos() throws IOException {
+        addRow(1, "user1", "PLAY", START.plusSeconds(10));
+        addRow(2, "user2", "PLAY", START.plus(Duration.ofDays(400 * 365)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportSummary summary = exporter.export(ExportFormat.NDJSON, START, START.plus(Duration.ofDays(500 * 365)),
+                null, null, 4, out);
+        assertEquals(2, summary.getEvents());
+    }
+
+    @Test
+    public void testTurnsAwayExportsBeyondTheMaximum() {
+        assertEquals(2, properties.getExport().getMaxConcurrent());
+        exporter.reserve();
+        exporter.reserve();
+        assertEquals(2, exporter.getRunningCount());
+        assertThrows(RejectedExecutionException.class, exporter::reserve);
+        exporter.release();
+        exporter.reserve();
+        assertEquals(2, exporter.getRunningCount());
+    }
+
+    @Test
+    public void testRanges() {
+        assertEquals(1, exporter.ranges(START, START.plus(Duration.ofHours(7)), null));
+        assertEquals(2, exporter.ranges(START, START.plus(Duration.ofHours(12)), null));
+        assertEquals(4, exporter.ranges(START, START.plus(Duration.ofDays(7)), null));
+        assertEquals(3, exporter.ranges(START, START.plusSeconds(1), 3));
+        assertThrows(IllegalArgumentException.class, () -> exporter.ranges(START, START.plusSeconds(1), 5));
+        assertThrows(IllegalArgumentException.class, () -> exporter.ranges(START, START, null));
+    }
+
+    private void addRow(long id, String userId, String action, Instant timestamp) {
+        OffsetDateTime time = timestamp.atOffset(ZoneOffset.UTC);
+        rows.add(new Object[] { id, userId, action, "song", time, null, time, action, 5, null, null, null, null,
+                null });
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Serves the rows of the test through a mocked result set positioned on the current row
+     */
+    private class InMemoryReader extends EventExportReader {
+
+        InMemoryReader() {
+            super(null, properties);
+        }
+
+        @Override
+        public void stream(Instant from, Instant to, ActionType action, String category, RowCallbackHandler handler) {
+            Object[][] current = new Object[1][];
+            try {
+                ResultSet rs = resultSet(current);
+                for (Object[] row : rows) {
+                    Instant timestamp = ((OffsetDateTime) row[EventExportReader.TIMESTAMP - 1]).toInstant();
+                    if (!timestamp.isBefore(from) && timestamp.isBefore(to)) {
+                        current[0] = row;
+                        handler.processRow(rs);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private ResultSet resultSet(Object[][] current) throws SQLException {
+            ResultSet rs = Mockito.mock(ResultSet.class);
+            Mockito.when(rs.getLong(ArgumentMatchers.anyInt()))
+                    .thenAnswer(call -> current[0][call.<Integer>getArgument(0) - 1]);
+            Mockito.when(rs.getInt(ArgumentMatchers.anyInt()))
+                    .thenAnswer(call -> current[0][call.<Integer>getArgument(0) - 1]);
+            Mockito.when(rs.getString(ArgumentMatchers.anyInt()))
+                    .thenAnswer(call -> current[0][call.<Integer>getArgument(0) - 1]);
+            Mockito.when(rs.getObject(ArgumentMatchers.anyInt(), ArgumentMatchers.eq(OffsetDateTime.class)))
+                    .thenAnswer(call -> current[0][call.<Integer>getArgument(0) - 1]);
+            return rs;
+        }
+    }
+}
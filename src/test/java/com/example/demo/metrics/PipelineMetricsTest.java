@@ -0,0 +1,50 @@
+package com.example.demo.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.model.ActionType;
+import com.example.demo.pipeline.EventValidator;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PipelineMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PipelineMetrics metrics = new PipelineMetrics(registry);
+
+    @Test
+    public void testFilteredAndDuplicateEventsAreCountedByReason() {
+        metrics.recordFiltered(EventValidator.Violation.MISSING_USER_ID);
+        metrics.recordFiltered(EventValidator.Violation.MISSING_USER_ID);
+        metrics.recordDuplicate();
+
+        assertEquals(2, registry.get("events.filtered").tag("reason", "MISSING_USER_ID").counter().count());
+        assertEquals(0, registry.get("events.filtered").tag("reason", "UNKNOWN_ACTION").counter().count());
+        assertEquals(1, registry.get("events.filtered").tag("reason", "DUPLICATE").counter().count());
+    }
+
+    @Test
+    public void testRoutedEventsAreCountedPerActionAndChannel() {
+        metrics.recordRouted(ActionType.PLAY, "storage");
+        metrics.recordRouted(ActionType.PLAY, "storage");
+        metrics.recordRouted(ActionType.LIKE, "social");
+
+        assertEquals(2, registry.get("events.routed").tags("action", "PLAY", "channel", "storage").counter().count());
+        assertEquals(1, registry.get("events.routed").tags("action", "LIKE", "channel", "social").counter().count());
+    }
+
+    @Test
+    public void testStageTimerRecordsEachStage() {
+        metrics.recordStage(PipelineMetrics.STAGE_TRANSFORM, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.recordStage(PipelineMetrics.STAGE_TRANSFORM, System.nanoTime());
+
+        Timer timer = registry.get("events.stage.latency").tag("stage", PipelineMetrics.STAGE_TRANSFORM).timer();
+        assertEquals(2, timer.count());
+        assertTrue(timer.max(TimeUnit.MILLISECONDS) >= 5);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.demo.pipeline;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+
+class BotDetectorTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private EventPipelineProperties.BotDetection settings;
+    private BotDetector detector;
+
+    @BeforeEach
+    public void setup() {
+        settings = new EventPipelineProperties.BotDetection();
+        settings.setWindow(Duration.ofSeconds(10));
+        settings.setMaxEventsPerSecond(5);
+        settings.setMaxSkipRatio(0.9);
+        settings.setMinEventsForSkipRatio(20);
+        settings.setFlagDuration(Duration.ofMinutes(1));
+        settings.setIdleTimeout(Duration.ofMinutes(5));
+        detector = new BotDetector(settings, clock::get);
+    }
+
+    @Test
+    public void testNormalListenerIsNotFlagged() {
+        for (int i = 0; i < 100; i++) {
+            assertFalse(detector.recordAndCheck(event("user123", i % 3 == 0 ? ActionType.SKIP : ActionType.PLAY)));
+            clock.addAndGet(1_000);
+        }
+    }
+
+    @Test
+    public void testHighRateIsFlaggedUntilFlagExpires() {
+        boolean flagged = false;
+        for (int i = 0; i < 100 && !flagged; i++) {
+            flagged = detector.recordAndCheck(event("scraper", ActionType.PLAY));
+            clock.addAndGet(50);
+        }
+        assertTrue(flagged);
+        assertFalse(detector.recordAndCheck(event("user123", ActionType.PLAY)));
+
+        clock.addAndGet(Duration.ofSeconds(30).toMillis());
+        assertTrue(detector.recordAndCheck(event("scraper", ActionType.PLAY)));
+        clock.addAndGet(Duration.ofMinutes(2).toMillis());
+        assertFalse(detector.recordAndCheck(event("scraper", ActionType.PLAY)));
+    }
+
+    @Test
+    public void testSkipRatioIsFlagged() {
+        boolean flagged = false;
+        for (int i = 0; i < 30 && !flagged; i++) {
+            flagged = detector.recordAndCheck(event("skipper", ActionType.SKIP));
+            clock.addAndGet(300);
+        }
+        assertTrue(flagged);
+    }
+
+    @Test
+    public void testIdleUsersAreEvicted() {
+        detector.recordAndCheck(event("user123", ActionType.PLAY));
+        detector.recordAndCheck(event("user456", ActionType.PLAY));
+        clock.addAndGet(Duration.ofMinutes(4).toMillis());
+        detector.recordAndCheck(event("user456", ActionType.PLAY));
+        clock.addAndGet(Duration.ofMinutes(2).toMillis());
+
+        detector.evictIdleUsers();
+        assertEquals(1, detector.getTrackedUserCount());
+        assertEquals(1, detector.getEvictedUserCount());
+    }
+
+    @Test
+    public void testUsersBeyondLimitAreNotTracked() {
+        settings.setMaxTrackedUsers(2);
+        detector.recordAndCheck(event("user1", ActionType.PLAY));
+        detector.recordAndCheck(event("user2", ActionType.PLAY));
+        detector.recordAndCheck(event("user3", ActionType.PLAY));
+        assertEquals(2, detector.getTrackedUserCount());
+        assertEquals(1, detector.getUntrackedEventCount());
+    }
+
+    private static Event event(String userId, ActionType action) {
+        return Event.builder()
+                .userId(userId)
+                .action(action)
+                .songId("song456")
+                .timestamp(Instant.now())
+                .source("WEB")
+                .build();
+    }
+}
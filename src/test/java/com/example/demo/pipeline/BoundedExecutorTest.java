@@ -0,0 +1,91 @@
+package com.example.demo.pipeline;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.MessagingException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BoundedExecutorTest {
+
+    @Test
+    public void testFullQueueRejectsAndCounts() throws InterruptedException {
+        BoundedExecutor executor = new BoundedExecutor("test", 1, 2, Duration.ofSeconds(5),
+                Thread.ofPlatform().factory(), 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(() -> { });
+        executor.execute(() -> { });
+        assertEquals(2, executor.getQueueDepth());
+
+        RejectedExecutionException e = assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        assertTrue(e.getMessage().contains("'test'"));
+        assertEquals(1, executor.getRejectedCount());
+        release.countDown();
+        executor.stop();
+    }
+
+    @Test
+    public void testStopDrainsQueuedTasks() {
+        BoundedExecutor executor = new BoundedExecutor("test", 2, 100, Duration.ofSeconds(5),
+                Thread.ofVirtual().factory(), 0);
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 50; i++) {
+            executor.asExecutor().execute(() -> {
+                sleep(1);
+                done.incrementAndGet();
+            });
+        }
+        executor.stop();
+        assertEquals(50, done.get());
+        assertFalse(executor.isRunning());
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+    }
+
+    @Test
+    public void testLanesRegisterTheirQueueMeters() {
+        LaneExecutor lanes = new LaneExecutor("test", 2, 10, Duration.ofSeconds(5), 0);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        lanes.bindTo(registry);
+        assertEquals(10.0, registry.get("events.queue.capacity").tag("queue", "test-lane-1").gauge().value());
+        assertEquals(1.0, registry.get("events.lanes.skew").gauge().value());
+        lanes.stop();
+    }
+
+    @Test
+    public void testRejectionIsFoundInCauseChain() {
+        RejectedExecutionException rejection = new RejectedExecutionException("full");
+        assertTrue(BoundedExecutor.isRejection(new MessagingException("failed", rejection)));
+        assertFalse(BoundedExecutor.isRejection(new MessagingException("failed", new IllegalStateException())));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.demo.pipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.EventPipelineProperties;
+
+class DownstreamGuardTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+    private final EventPipelineProperties.DownstreamLimits settings = new EventPipelineProperties.DownstreamLimits();
+
+    @Test
+    public void testLimitGrowsWhenUsedAndShrinksWhenSlow() {
+        settings.setInitialLimit(10);
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(settings, clock::get);
+
+        // the whole limit in use at 1 ms per call
+        window(limit, 10, MILLIS, false);
+        assertEquals(13, limit.getLimit());
+        assertEquals(0.001, limit.getBaselineSeconds(), 1e-9);
+
+        // queueing at the service, five times the baseline
+        window(limit, 13, 5 * MILLIS, false);
+        assertEquals(11, limit.getLimit());
+
+        // a failed call shrinks the limit even at baseline latency
+        window(limit, 11, MILLIS, true);
+        assertEquals(9, limit.getLimit());
+
+        // too few calls to judge, the window goes on
+        window(limit, 9, MILLIS, false);
+        assertEquals(9, limit.getLimit());
+        for (int i = 0; i < 9; i++) {
+            assertTrue(limit.acquire(0));
+        }
+        assertFalse(limit.acquire(MILLIS));
+    }
+
+    @Test
+    public void testBreakerOpensOnFailuresAndClosesAfterProbes() {
+        CircuitBreaker breaker = new CircuitBreaker(settings, clock::get);
+        for (int i = 0; i < 19; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertFalse(breaker.isOpen());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(breaker.tryAcquire());
+        }
+        assertFalse(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getOpenedCount());
+
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onSuccess();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testBreakerCountsOutcomesOfConcurrentCalls() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(settings, clock::get);
+        runConcurrently(8, 10_000, breaker::onSuccess);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // the failures push the successes out of the window, the breaker opens once
+        runConcurrently(4, 50, breaker::onFailure);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getOpenedCount());
+    }
+
+    @Test
+    public void testGuardTurnsAwayCallsOverLimitAndWhileOpen() {
+        settings.setInitialLimit(1);
+        settings.setMaxLimit(1);
+        settings.setMinimumCalls(2);
+        settings.setSlidingWindowSize(2);
+        settings.setFailureRateThreshold(1.0);
+        DownstreamGuard guard = new DownstreamGuard("analytics", true, settings, clock::get);
+
+        boolean[] nested = new boolean[1];
+        assertTrue(guard.run(() -> nested[0] = guard.run(() -> { })));
+        assertFalse(nested[0]);
+        assertEquals(1, guard.getLimitedCount());
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class, () -> guard.run(() -> {
+                throw new IllegalStateException("down");
+            }));
+        }
+        assertFalse(guard.isAvailable());
+        assertFalse(guard.run(() -> { }));
+        assertEquals(1, guard.getBrokenCount());
+        assertThrows(DownstreamRejectedException.class, () -> guard.runOrThrow(() -> { }));
+        assertEquals(2, guard.getBrokenCount());
+
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertTrue(guard.isAvailable());
+        assertTrue(guard.run(() -> { }));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, guard.getBreakerState());
+    }
+
+    private static void runConcurrently(int threads, int calls, Runnable call) throws InterruptedException {
+        List<Thread> started = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            started.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < calls; i++) {
+                    call.run();
+                }
+            }));
+        }
+        for (Thread thread : started) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Run a window of calls that are all in flight at once, the last one ends after the window is over
+     */
+    private void window(AdaptiveConcurrencyLimit limit, int calls, long latencyNanos, boolean lastFails) {
+        for (int i = 0; i < calls; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+        for (int i = 0; i < calls - 1; i++) {
+            limit.release(latencyNanos, false);
+        }
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        limit.release(latencyNanos, lastFails);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.demo.pipeline;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+
+class DuplicateEventFilterTest {
+
+    private static final Instant TIMESTAMP = Instant.parse("2025-03-29T10:23:45Z");
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private DuplicateEventFilter filter;
+
+    @BeforeEach
+    public void setup() {
+        EventPipelineProperties.Dedup settings = new EventPipelineProperties.Dedup();
+        settings.setWindow(Duration.ofMinutes(4));
+        settings.setGenerations(4);
+        settings.setMaxKeys(1_000);
+        settings.setShards(4);
+        filter = new DuplicateEventFilter(settings, clock::get);
+    }
+
+    @Test
+    public void testRetryIsDuplicate() {
+        assertTrue(filter.isFirstOccurrence(event("user123", ActionType.PLAY, "song456", TIMESTAMP)));
+        assertFalse(filter.isFirstOccurrence(event("user123", ActionType.PLAY, "song456", TIMESTAMP)));
+        assertEquals(1, filter.getDuplicateCount());
+        assertEquals(0.5, filter.getHitRate());
+    }
+
+    @Test
+    public void testDifferentFieldsAreNotDuplicates() {
+        assertTrue(filter.isFirstOccurrence(event("user123", ActionType.PLAY, "song456", TIMESTAMP)));
+        assertTrue(filter.isFirstOccurrence(event("user124", ActionType.PLAY, "song456", TIMESTAMP)));
+        assertTrue(filter.isFirstOccurrence(event("user123", ActionType.SKIP, "song456", TIMESTAMP)));
+        assertTrue(filter.isFirstOccurrence(event("user123", ActionType.PLAY, "song457", TIMESTAMP)));
+        assertTrue(filter.isFirstOccurrence(event("user123", ActionType.PLAY, "song456", TIMESTAMP.plusMillis(1))));
+        assertTrue(filter.isFirstOccurrence(event("user123", ActionType.LOGIN, null, TIMESTAMP)));
+        assertEquals(0, filter.getDuplicateCount());
+        assertEquals(6, filter.getKeyCount());
+    }
+
+    @Test
+    public void testKeysExpireAfterWindow() {
+        Event event = event("user123", ActionType.PLAY, "song456", TIMESTAMP);
+        assertTrue(filter.isFirstOccurrence(event));
+
+        // still within the window
+        clock.addAndGet(Duration.ofMinutes(2).toMillis());
+        assertFalse(filter.isFirstOccurrence(event));
+
+        clock.addAndGet(Duration.ofMinutes(3).toMillis());
+        assertTrue(filter.isFirstOccurrence(event));
+    }
+
+    @Test
+    public void testFullTableLetsEventsThrough() {
+        long capacity = filter.getMemoryBytes() / Long.BYTES / 2;
+        for (int i = 0; i < capacity * 2; i++) {
+            assertTrue(filter.isFirstOccurrence(event("user" + i, ActionType.PLAY, "song456", TIMESTAMP)));
+        }
+        assertTrue(filter.getSaturatedCount() > 0);
+    }
+
+    private static Event event(String userId, ActionType action, String songId, Instant timestamp) {
+        return Event.builder()
+                .userId(userId)
+                .action(action)
+                .songId(songId)
+                .timestamp(timestamp)
+                .build();
+    }
+}
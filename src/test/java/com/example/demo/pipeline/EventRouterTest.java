@@ -0,0 +1,183 @@
+package com.example.demo.pipeline;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.metrics.PipelineMetrics;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EventRouterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<BoundedExecutor> executors = new ArrayList<>();
+
+    @AfterEach
+    public void teardown() {
+        executors.forEach(BoundedExecutor::stop);
+    }
+
+    @Test
+    public void testFullChannelDoesNotKeepEventFromOthers() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch stored = new CountDownLatch(3);
+        CountDownLatch analyzed = new CountDownLatch(1);
+        // a stuck analytics consumer with room for one queued event
+        ExecutorChannel analytics = fanoutChannel(1, 1);
+        analytics.subscribe(message -> {
+            analyzed.countDown();
+            await(release);
+        });
+        ExecutorChannel storage = fanoutChannel(2, 100);
+        storage.subscribe(message -> stored.countDown());
+        // the other services have no consumer at all, their sends fail
+        DirectChannel others = new DirectChannel();
+        EventRouter router = router(Map.of("analytics", analytics, "storage", storage, "aiEngine", others,
+                "social", others, "sessions", others), RoutingRule.defaults());
+        router.setBestEffortChannels(List.of(analytics, others));
+        DirectChannel input = new DirectChannel();
+        input.subscribe(router);
+
+        input.send(message("user1"));
+        assertTrue(analyzed.await(5, TimeUnit.SECONDS));
+        input.send(message("user1"));
+        input.send(message("user1"));
+
+        assertTrue(stored.await(5, TimeUnit.SECONDS));
+        assertEquals(1, executors.get(0).getRejectedCount());
+        assertEquals(3, registry.get("events.routed").tag("channel", "storage").counter().count());
+        release.countDown();
+    }
+
+    @Test
+    public void testFullStorageQueueFailsTheSender() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch storing = new CountDownLatch(1);
+        ExecutorChannel storage = fanoutChannel(1, 1);
+        storage.subscribe(message -> {
+            storing.countDown();
+            await(release);
+        });
+        DirectChannel analytics = new DirectChannel();
+        analytics.subscribe(message -> { });
+        EventRouter router = router(Map.of("analytics", analytics, "storage", storage, "aiEngine", analytics,
+                "social", analytics, "sessions", analytics), RoutingRule.defaults());
+        router.setBestEffortChannels(List.of(analytics));
+        DirectChannel input = new DirectChannel();
+        input.subscribe(router);
+
+        input.send(message("user1"));
+        assertTrue(storing.await(5, TimeUnit.SECONDS));
+        input.send(message("user1"));
+
+        MessagingException e = assertThrows(MessagingException.class, () -> input.send(message("user1")));
+        assertTrue(BoundedExecutor.isRejection(e));
+        release.countDown();
+    }
+
+    @Test
+    public void testFullStorageQueueGoesToSendFailureHandler() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch storing = new CountDownLatch(1);
+        ExecutorChannel storage = fanoutChannel(1, 1);
+        storage.subscribe(message -> {
+            storing.countDown();
+            await(release);
+        });
+        DirectChannel analytics = new DirectChannel();
+        analytics.subscribe(message -> { });
+        EventRouter router = router(Map.of("analytics", analytics, "storage", storage, "aiEngine", analytics,
+                "social", analytics, "sessions", analytics), RoutingRule.defaults());
+        router.setBestEffortChannels(List.of(analytics));
+        List<Message<?>> failed = new ArrayList<>();
+        router.setSendFailureHandler((channel, message, failure) -> {
+            assertEquals(storage, channel);
+            failed.add(message);
+        });
+        DirectChannel input = new DirectChannel();
+        input.subscribe(router);
+
+        input.send(message("user1"));
+        assertTrue(storing.await(5, TimeUnit.SECONDS));
+        input.send(message("user1"));
+        input.send(message("user2"));
+
+        assertEquals(1, failed.size());
+        assertEquals("user2", ((Event) failed.get(0).getPayload()).getUserId());
+        release.countDown();
+    }
+
+    @Test
+    public void testEventNotRoutedToStorageIsReported() {
+        List<Message<?>> notStored = new ArrayList<>();
+        DirectChannel storage = new DirectChannel();
+        storage.subscribe(message -> { });
+        DirectChannel analytics = new DirectChannel();
+        analytics.subscribe(message -> { });
+        // logins only go to analytics, everything else is stored
+        EventRouter router = router(Map.of("analytics", analytics, "storage", storage, "aiEngine", analytics,
+                "social", analytics, "sessions", analytics), List.of(
+                        RoutingRule.builder().actions(EnumSet.of(ActionType.LOGIN)).channels(List.of("analytics")).build(),
+                        RoutingRule.builder().channels(List.of("storage")).build()));
+        router.setNotStoredHandler(storage, notStored::add);
+        DirectChannel input = new DirectChannel();
+        input.subscribe(router);
+
+        Event login = Event.builder().userId("user1").action(ActionType.LOGIN).timestamp(Instant.now()).build();
+        input.send(MessageBuilder.withPayload(login).build());
+        input.send(message("user1"));
+
+        assertEquals(1, notStored.size());
+        assertEquals(login, notStored.get(0).getPayload());
+    }
+
+    private EventRouter router(Map<String, MessageChannel> channels, List<RoutingRule> rules) {
+        return new EventRouter(channels, rules, new BotDetector(new EventPipelineProperties()),
+                new PipelineMetrics(registry));
+    }
+
+    private ExecutorChannel fanoutChannel(int concurrency, int queueCapacity) {
+        BoundedExecutor executor = new BoundedExecutor("test" + executors.size(), concurrency, queueCapacity,
+                Duration.ofSeconds(5), Thread.ofVirtual().factory(), 0);
+        executors.add(executor);
+        return new ExecutorChannel(executor.asExecutor());
+    }
+
+    private static Message<Event> message(String userId) {
+        return MessageBuilder.withPayload(Event.builder()
+                .userId(userId)
+                .action(ActionType.PLAY)
+                .songId("song1")
+                .timestamp(Instant.now())
+                .build()).build();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.demo.pipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessagingException;
+
+class LaneExecutorTest {
+
+    private LaneExecutor lanes;
+
+    @AfterEach
+    public void teardown() {
+        lanes.stop();
+    }
+
+    @Test
+    public void testEventsOfAUserKeepTheirOrder() throws InterruptedException {
+        lanes = new LaneExecutor("test", 4, 10_000, Duration.ofSeconds(5), 0);
+        LaneChannel channel = new LaneChannel(lanes, message -> ((String) message.getPayload()).split(":")[0]);
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(8 * 500);
+        channel.subscribe(message -> {
+            String[] parts = ((String) message.getPayload()).split(":");
+            // a user is only ever handled by one lane thread, no lock needed for its list
+            received.computeIfAbsent(parts[0], user -> new ArrayList<>()).add(Integer.parseInt(parts[1]));
+            done.countDown();
+        });
+
+        // several senders interleave, each owns a disjoint set of users
+        List<Thread> senders = new ArrayList<>();
+        for (int sender = 0; sender < 4; sender++) {
+            int first = sender * 2;
+            senders.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 500; i++) {
+                    channel.send(MessageBuilder.withPayload("user" + first + ":" + i).build());
+                    channel.send(MessageBuilder.withPayload("user" + (first + 1) + ":" + i).build());
+                }
+            }));
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(8, received.size());
+        for (List<Integer> sequence : received.values()) {
+            for (int i = 0; i < sequence.size(); i++) {
+                assertEquals(i, sequence.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testFullLaneRejects() throws InterruptedException {
+        lanes = new LaneExecutor("test", 2, 1, Duration.ofSeconds(5), 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        lanes.execute("user1", () -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        lanes.execute("user1", () -> { });
+
+        assertThrows(RejectedExecutionException.class, () -> lanes.execute("user1", () -> { }));
+        assertEquals(1, lanes.getRejectedCount());
+
+        LaneChannel channel = new LaneChannel(lanes, message -> "user1");
+        channel.subscribe(message -> { });
+        MessageDeliveryException rejection = assertThrows(MessageDeliveryException.class,
+                () -> channel.send(MessageBuilder.withPayload("event").build()));
+        assertTrue(BoundedExecutor.isRejection(rejection));
+        release.countDown();
+    }
+
+    @Test
+    public void testHandlerFailuresReachTheErrorHandler() throws InterruptedException {
+        lanes = new LaneExecutor("test", 2, 10, Duration.ofSeconds(5), 0);
+        LaneChannel channel = new LaneChannel(lanes, message -> "user1");
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        channel.setErrorHandler(error -> {
+            errors.add(error);
+            done.countDown();
+        });
+        channel.subscribe(message -> {
+            if (message.getPayload().equals("bad")) {
+                throw new IllegalStateException("failed");
+            }
+            done.countDown();
+        });
+
+        channel.send(MessageBuilder.withPayload("bad").build());
+        channel.send(MessageBuilder.withPayload("good").build());
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, errors.size());
+        MessagingException error = assertInstanceOf(MessagingException.class, errors.get(0));
+        assertEquals("bad", error.getFailedMessage().getPayload());
+    }
+
+    @Test
+    public void testSkewOfOneHotKey() throws InterruptedException {
+        lanes = new LaneExecutor("test", 4, 1000, Duration.ofSeconds(5), 0);
+        assertEquals(1.0, lanes.getSkew());
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            lanes.execute("hot", done::countDown);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        lanes.stop();
+
+        // all work on one of four lanes
+        assertEquals(4.0, lanes.getSkew(), 0.001);
+        assertEquals(lanes.laneOf("hot"), lanes.laneOf("hot"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.demo.pipeline;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.metrics.PipelineMetrics;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+import com.example.demo.model.ListeningSession;
+import com.example.demo.retry.DeliveryRetryScheduler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ListeningSessionTrackerTest {
+
+    private static final Instant START = Instant.parse("2025-03-29T10:00:00Z");
+
+    private final AtomicLong clock = new AtomicLong(START.toEpochMilli());
+    private final List<ListeningSession> completed = new ArrayList<>();
+    private EventPipelineProperties.Sessions settings;
+    private ListeningSessionTracker tracker;
+
+    @BeforeEach
+    public void setup() {
+        settings = new EventPipelineProperties.Sessions();
+        settings.setInactivityGap(Duration.ofMinutes(30));
+        settings.setMaxTrackDuration(Duration.ofMinutes(10));
+        settings.setPartitions(4);
+        tracker = new ListeningSessionTracker(settings, completed::add, clock::get);
+    }
+
+    @Test
+    public void testSessionFeatures() {
+        record("user1", ActionType.PLAY, "song1", 0);
+        record("user1", ActionType.SKIP, "song1", 20);
+        record("user1", ActionType.PLAY, "song2", 25);
+        record("user1", ActionType.PAUSE, "song2", 205);
+        record("user1", ActionType.PLAY, "song1", 3600);
+
+        assertEquals(1, completed.size());
+        ListeningSession session = completed.get(0);
+        assertEquals(START, session.getStart());
+        assertEquals(START.plusSeconds(205), session.getEnd());
+        assertEquals(4, session.getEvents());
+        assertEquals(2, session.getPlays());
+        assertEquals(0.5, session.getSkipRatio());
+        assertEquals(List.of("song1", "song2"), session.getSongIds());
+        assertEquals(List.of(Duration.ofSeconds(20), Duration.ofSeconds(180)), session.getDwellTimes());
+        assertEquals(Duration.ofSeconds(200), session.getListenDuration());
+        assertEquals(1, tracker.getOpenSessionCount());
+    }
+
+    @Test
+    public void testReactionsDoNotEndTheDwell() {
+        record("user1", ActionType.PLAY, "song1", 0);
+        record("user1", ActionType.LIKE, "song1", 30);
+        record("user1", ActionType.SHARE, "song1", 60);
+        record("user1", ActionType.PLAY, "song2", 200);
+        record("user1", ActionType.DISLIKE, "song2", 250);
+        record("user1", ActionType.PLAY, "song3", 4000);
+
+        assertEquals(1, completed.size());
+        ListeningSession session = completed.get(0);
+        assertEquals(2, session.getPlays());
+        assertEquals(List.of(Duration.ofSeconds(200), Duration.ofSeconds(50)), session.getDwellTimes());
+        assertEquals(Duration.ofSeconds(250), session.getListenDuration());
+    }
+
+    @Test
+    public void testIdleSessionsAreCompleted() {
+        record("user1", ActionType.PLAY, "song1", 0);
+        clock.addAndGet(Duration.ofMinutes(20).toMillis());
+        record("user2", ActionType.PLAY, "song1", 1200);
+        clock.addAndGet(Duration.ofMinutes(15).toMillis());
+
+        tracker.completeIdleSessions();
+        assertEquals(1, completed.size());
+        assertEquals("user1", completed.get(0).getUserId());
+        assertEquals(1, tracker.getOpenSessionCount());
+    }
+
+    @Test
+    public void testLeastRecentlyActiveSessionIsEvicted() {
+        settings.setMaxSessions(4);
+        settings.setPartitions(1);
+        tracker = new ListeningSessionTracker(settings, completed::add, clock::get);
+        for (int i = 0; i < 5; i++) {
+            record("user" + i, ActionType.PLAY, "song1", i);
+        }
+
+        assertEquals(1, completed.size());
+        assertEquals("user0", completed.get(0).getUserId());
+        assertEquals(1, tracker.getEvictedSessionCount());
+        assertEquals(4, tracker.getOpenSessionCount());
+    }
+
+    @Test
+    public void testOpenSessionsAreCompletedBeforeTheRetrySchedulerStops() {
+        record("user1", ActionType.PLAY, "song1", 0);
+        record("user2", ActionType.PLAY, "song1", 10);
+        tracker.start();
+
+        tracker.stop();
+        assertEquals(2, completed.size());
+        assertEquals(0, tracker.getOpenSessionCount());
+        DeliveryRetryScheduler retryScheduler = new DeliveryRetryScheduler(new EventPipelineProperties(),
+                new PipelineMetrics(new SimpleMeterRegistry()));
+        // a higher phase stops first
+        assertTrue(tracker.getPhase() > retryScheduler.getPhase());
+        assertTrue(tracker.getPhase() < BoundedExecutor.DOWNSTREAM_PHASE);
+    }
+
+    private void record(String userId, ActionType action, String songId, long second) {
+        tracker.record(Event.builder()
+                .userId(userId)
+                .action(action)
+                .songId(songId)
+                .timestamp(START.plusSeconds(second))
+                .source("WEB")
+                .build());
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.demo.pipeline;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.EventRecordDTO;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+
+class RecentActivityCacheTest {
+
+    private static final Instant START = Instant.parse("2025-03-29T10:00:00Z");
+
+    private final List<EventRecordDTO> database = new ArrayList<>();
+    private EventPipelineProperties.Recent settings;
+    private int loads;
+    private RecentActivityCache cache;
+
+    @BeforeEach
+    public void setup() {
+        settings = new EventPipelineProperties.Recent();
+        settings.setEventsPerUser(4);
+        settings.setMaxUsers(2);
+        settings.setSegments(1);
+        cache = new RecentActivityCache(settings, (userId, action, limit) -> {
+            loads++;
+            return database.stream()
+                    .filter(event -> event.getUserId().equals(userId))
+                    .filter(event -> action == null || event.getAction() == action)
+                    .sorted(Comparator.comparing(EventRecordDTO::getTimestamp).reversed())
+                    .limit(limit)
+                    .toList();
+        });
+    }
+
+    @Test
+    public void testFirstReadMergesHistoryWithPipelineEvents() {
+        stored("user1", ActionType.PLAY, "song1", 0);
+        stored("user1", ActionType.PLAY, "song2", 10);
+        // already written when the cache sees it, must not show up twice
+        record(stored("user1", ActionType.SKIP, "song2", 20));
+
+        List<EventRecordDTO> events = cache.getRecentEvents("user1", null, 10);
+
+        assertEquals(List.of("SKIP", "PLAY", "PLAY"), events.stream().map(event -> event.getAction().name()).toList());
+        assertEquals("song1", events.get(2).getSongId());
+        assertEquals(1, loads);
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testLaterReadsAreServedFromMemory() {
+        cache.getRecentEvents("user1", null, 10);
+        record(stored("user1", ActionType.PLAY, "song1", 0));
+        record(stored("user1", ActionType.LIKE, "song1", 5));
+
+        List<EventRecordDTO> plays = cache.getRecentEvents("user1", ActionType.PLAY, 10);
+
+        assertEquals(1, plays.size());
+        assertEquals(START, plays.get(0).getTimestamp());
+        assertEquals(1, loads);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testWrappedRingFallsBackForOlderEventsOfAnAction() {
+        cache.getRecentEvents("user1", null, 10);
+        record(stored("user1", ActionType.PLAY, "song1", 0));
+        for (int i = 1; i <= 4; i++) {
+            record(stored("user1", ActionType.SKIP, "song1", i));
+        }
+
+        List<EventRecordDTO> plays = cache.getRecentEvents("user1", ActionType.PLAY, 1);
+
+        assertEquals(1, plays.size());
+        assertEquals(2, loads);
+        assertEquals(4, cache.getRecentEvents("user1", null, 4).size());
+        assertEquals(2, loads);
+    }
+
+    @Test
+    public void testEqualEventsAreKeptApart() {
+        stored("user1", ActionType.PLAY, "song1", 0);
+        record(stored("user1", ActionType.PLAY, "song1", 0));
+        record(stored("user1", ActionType.PLAY, "song1", 0));
+
+        List<EventRecordDTO> events = cache.getRecentEvents("user1", null, 10);
+
+        assertEquals(List.of(3L, 2L, 1L), events.stream().map(EventRecordDTO::getId).toList());
+    }
+
+    @Test
+    public void testBufferedEventsGetTheirIdsOnceInserted() {
+        cache.getRecentEvents("user1", null, 10);
+        EventRecordDTO buffered = EventRecordDTO.builder()
+                .userId("user1")
+                .action(ActionType.PLAY)
+                .songId("song1")
+                .timestamp(START)
+                .source("mobile")
+                .build();
+        record(buffered, null);
+
+        assertEquals(List.of(), cache.getRecentEvents("user1", null, 10));
+        assertEquals(3, loads);
+
+        // the write-behind writer inserted it
+        stored("user1", ActionType.PLAY, "song1", 0);
+        List<EventRecordDTO> events = cache.getRecentEvents("user1", null, 10);
+        assertEquals(1, events.size());
+        assertEquals(1L, events.get(0).getId());
+        assertEquals(4, loads);
+        cache.getRecentEvents("user1", null, 10);
+        assertEquals(4, loads);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedUserIsEvicted() {
+        record(stored("user1", ActionType.PLAY, "song1", 0));
+        record(stored("user2", ActionType.PLAY, "song1", 0));
+        cache.getRecentEvents("user1", null, 1);
+        record(stored("user3", ActionType.PLAY, "song1", 0));
+
+        assertEquals(2, cache.getUserCount());
+        assertEquals(1, cache.getEvictionCount());
+        cache.getRecentEvents("user1", null, 1);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    private EventRecordDTO stored(String userId, ActionType action, String songId, long offsetSeconds) {
+        EventRecordDTO event = EventRecordDTO.builder()
+                .id((long) database.size() + 1)
+                .userId(userId)
+                .action(action)
+                .songId(songId)
+                .timestamp(START.plusSeconds(offsetSeconds))
+                .source("mobile")
+                .build();
+        database.add(event);
+        return event;
+    }
+
+    private void record(EventRecordDTO stored) {
+        record(stored, stored.getId());
+    }
+
+    private void record(EventRecordDTO stored, Long id) {
+        cache.record(Event.builder()
+                .userId(stored.getUserId())
+                .action(stored.getAction())
+                .songId(stored.getSongId())
+                .timestamp(stored.getTimestamp())
+                .source(stored.getSource())
+                .build(), id);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demo.pipeline;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.messaging.MessageChannel;
+
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+
+class RoutingTableTest {
+
+    private final MessageChannel analytics = new DirectChannel();
+    private final MessageChannel aiEngine = new DirectChannel();
+    private final MessageChannel social = new DirectChannel();
+    private final MessageChannel storage = new DirectChannel();
+    private final MessageChannel sessions = new DirectChannel();
+    private final Map<String, MessageChannel> channels = Map.of(
+            "analytics", analytics, "aiEngine", aiEngine, "social", social, "storage", storage, "sessions", sessions);
+
+    @Test
+    public void testDefaultRulesMatchBuiltInRouting() {
+        RoutingTable table = RoutingTable.compile(RoutingRule.defaults(), channels);
+
+        assertEquals(List.of(analytics, aiEngine, sessions, storage), channels(table, "user123", ActionType.PLAY, false));
+        assertEquals(List.of(analytics, sessions, storage), channels(table, "user123", ActionType.SKIP, false));
+        assertEquals(List.of(analytics, aiEngine, social, sessions, storage),
+                channels(table, "user123", ActionType.SHARE, false));
+        assertEquals(List.of(analytics, storage), channels(table, "user123", ActionType.LOGOUT, false));
+        assertEquals(List.of(storage), channels(table, "bot_123", ActionType.PLAY, false));
+        assertEquals(List.of(storage), channels(table, "user123", ActionType.LIKE, true));
+    }
+
+    @Test
+    public void testRoutesAreSharedBetweenEvents() {
+        RoutingTable table = RoutingTable.compile(RoutingRule.defaults(), channels);
+
+        assertSame(table.route(event("user1", ActionType.PLAY), false).getChannels(),
+                table.route(event("user2", ActionType.PLAY), false).getChannels());
+    }
+
+    @Test
+    public void testRulesMatchInOrder() {
+        List<RoutingRule> rules = new ArrayList<>();
+        rules.add(RoutingRule.builder().source("IOS").actions(EnumSet.of(ActionType.PLAY))
+                .channels(List.of("analytics")).build());
+        rules.addAll(RoutingRule.defaults());
+        RoutingTable table = RoutingTable.compile(rules, channels);
+
+        Event event = event("user123", ActionType.PLAY);
+        event.setSource("IOS");
+        RoutingTable.Route route = table.route(event, false);
+        assertEquals(List.of(analytics), route.getChannels());
+        assertEquals("analytics", route.getChannelName(0));
+        assertEquals(List.of(analytics, aiEngine, sessions, storage), channels(table, "user123", ActionType.PLAY, false));
+    }
+
+    @Test
+    public void testInvalidRulesAreRejected() {
+        List<RoutingRule> unknownChannel = List.of(RoutingRule.builder().channels(List.of("email")).build());
+        assertThrows(IllegalArgumentException.class, () -> RoutingTable.compile(unknownChannel, channels));
+
+        List<RoutingRule> uncovered = List.of(RoutingRule.builder()
+                .actions(EnumSet.of(ActionType.PLAY)).channels(List.of("storage")).build());
+        assertThrows(IllegalArgumentException.class, () -> RoutingTable.compile(uncovered, channels));
+    }
+
+    private static List<MessageChannel> channels(RoutingTable table, String userId, ActionType action, boolean bot) {
+        return table.route(event(userId, action), bot).getChannels();
+    }
+
+    private static Event event(String userId, ActionType action) {
+        return Event.builder()
+                .userId(userId)
+                .action(action)
+                .songId("song456")
+                .timestamp(Instant.now())
+                .source("WEB")
+                .build();
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.demo.repository;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.messaging.MessageHandlingException;
+import org.springframework.messaging.support.GenericMessage;
+
+class DatabaseConcurrencyLimiterTest {
+
+    @Test
+    public void testBoundsConcurrentWork() throws InterruptedException {
+        DatabaseConcurrencyLimiter limiter = new DatabaseConcurrencyLimiter(4, Duration.ofSeconds(10));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 1000; i++) {
+                executor.execute(() -> limiter.run(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.yield();
+                    running.decrementAndGet();
+                }));
+            }
+        }
+        assertTrue(maxRunning.get() <= 4, "ran " + maxRunning.get() + " at once");
+        assertEquals(1000, limiter.getAcquiredCount());
+        assertEquals(0, limiter.getActiveCount());
+        assertEquals(0, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testRejectsAfterAcquireTimeout() throws InterruptedException {
+        DatabaseConcurrencyLimiter limiter = new DatabaseConcurrencyLimiter(1, Duration.ofMillis(50));
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = Thread.ofVirtual().start(() -> limiter.run(() -> {
+            holding.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        TransientDataAccessResourceException e = assertThrows(TransientDataAccessResourceException.class,
+                () -> limiter.call(() -> "never"));
+        assertEquals(1, limiter.getRejectedCount());
+        assertEquals(1, limiter.getActiveCount());
+        assertTrue(DatabaseConcurrencyLimiter.isBusy(
+                new MessageHandlingException(new GenericMessage<>("event"), e)));
+        assertFalse(DatabaseConcurrencyLimiter.isBusy(new IllegalStateException()));
+
+        release.countDown();
+        holder.join();
+        assertEquals("done", limiter.call(() -> "done"));
+    }
+
+    @Test
+    public void testLimitLeavesReservedConnectionsFree() {
+        assertEquals(17, DatabaseConcurrencyLimiter.limit(20, 3));
+        assertEquals(20, DatabaseConcurrencyLimiter.limit(20, 0));
+        // never below half the pool
+        assertEquals(5, DatabaseConcurrencyLimiter.limit(10, 8));
+        assertEquals(1, DatabaseConcurrencyLimiter.limit(1, 3));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.demo.repository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.example.demo.config.TestDatabaseConfig;
+import com.example.demo.dto.EventRecordDTO;
+import com.example.demo.entity.EventEntity;
+import com.example.demo.model.ActionType;
+import com.example.demo.service.EventCursor;
+
+/**
+ * The keyset queries against SQL Server, skipped without Docker
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Testcontainers(disabledWithoutDocker = true)
+class EventRepositoryTest extends TestDatabaseConfig {
+
+    private static final Instant START = Instant.parse("2025-03-01T00:00:00Z");
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    private final List<Long> ids = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        eventRepository.deleteAll();
+        save("user1", ActionType.PLAY, 10);
+        save("user1", ActionType.PLAY, 20);
+        save("user1", ActionType.SKIP, 20);
+        save("user1", ActionType.PLAY, 20);
+        save("user1", ActionType.PLAY, 30);
+        save("user2", ActionType.PLAY, 20);
+    }
+
+    @Test
+    public void testUserEventsAreNewestFirstWithTiesByIdDescending() {
+        List<EventRecordDTO> events = eventRepository.findUserEventsBefore("user1", EventCursor.START.getTimestamp(),
+                EventCursor.START.getId(), Limit.of(10));
+        assertEquals(List.of(ids.get(4), ids.get(3), ids.get(2), ids.get(1), ids.get(0)), ids(events));
+    }
+
+    @Test
+    public void testKeysetContinuesInsideATie() {
+        // after the second event of second 20 come the one with the smaller id, then older ones
+        List<EventRecordDTO> events = eventRepository.findUserEventsBefore("user1", START.plusSeconds(20),
+                ids.get(2), Limit.of(10));
+        assertEquals(List.of(ids.get(1), ids.get(0)), ids(events));
+    }
+
+    @Test
+    public void testPagesOfATieReturnEveryEventOnce() {
+        List<Long> walked = new ArrayList<>();
+        EventCursor position = EventCursor.START;
+        while (true) {
+            List<EventRecordDTO> page = eventRepository.findUserEventsBefore("user1", position.getTimestamp(),
+                    position.getId(), Limit.of(2));
+            walked.addAll(ids(page));
+            if (page.size() < 2) {
+                break;
+            }
+            EventRecordDTO last = page.get(1);
+            position = new EventCursor(last.getTimestamp(), last.getId());
+        }
+        assertEquals(List.of(ids.get(4), ids.get(3), ids.get(2), ids.get(1), ids.get(0)), walked);
+    }
+
+    @Test
+    public void testActionRangeIncludesFromAndExcludesTo() {
+        // the start position of a range, as the query service builds it, leaves out events at its end
+        List<EventRecordDTO> events = eventRepository.findActionEventsBefore(ActionType.PLAY, START.plusSeconds(10),
+                START.plusSeconds(20), Long.MIN_VALUE, Limit.of(10));
+        assertEquals(List.of(ids.get(0)), ids(events));
+
+        events = eventRepository.findActionEventsBefore(ActionType.PLAY, START.plusSeconds(20),
+                START.plusSeconds(30), Long.MIN_VALUE, Limit.of(10));
+        assertEquals(List.of(ids.get(5), ids.get(3), ids.get(1)), ids(events));
+    }
+
+    private void save(String userId, ActionType action, long second) {
+        EventEntity entity = eventRepository.save(EventEntity.builder()
+                .userId(userId)
+                .action(action)
+                .songId("song1")
+                .timestamp(START.plusSeconds(second))
+                .source("WEB")
+                .category(action.name())
+                .count(1)
+                .build());
+        ids.add(entity.getId());
+    }
+
+    private static List<Long> ids(List<EventRecordDTO> events) {
+        return events.stream().map(EventRecordDTO::getId).toList();
+    }
+}
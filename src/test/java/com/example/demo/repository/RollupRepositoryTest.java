@@ -0,0 +1,130 @@
+package com.example.demo.repository;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.example.demo.config.TestDatabaseConfig;
+import com.example.demo.dto.RollupSeriesDTO;
+import com.example.demo.entity.EventEntity;
+import com.example.demo.model.ActionType;
+import com.example.demo.rollup.RollupDimension;
+import com.example.demo.rollup.RollupGranularity;
+import com.example.demo.rollup.RollupKey;
+
+/**
+ * The rollup upserts and rebuilds against SQL Server, skipped without Docker
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(RollupRepository.class)
+@ActiveProfiles("test")
+@Testcontainers(disabledWithoutDocker = true)
+class RollupRepositoryTest extends TestDatabaseConfig {
+
+    private static final Instant DAY = Instant.parse("2025-03-29T00:00:00Z");
+    private static final Instant MINUTE = DAY.plusSeconds(10 * 3600);
+
+    @Autowired
+    private RollupRepository rollupRepository;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Test
+    public void testMergeAddsToExistingRows() {
+        rollupRepository.merge(RollupGranularity.MINUTE, Map.of(song("song1", MINUTE), 2L));
+        rollupRepository.merge(RollupGranularity.MINUTE, Map.of(song("song1", MINUTE), 3L,
+                song("song2", MINUTE), 1L));
+
+        assertEquals(5L, count(RollupGranularity.MINUTE, "song1", MINUTE));
+        assertEquals(1L, count(RollupGranularity.MINUTE, "song2", MINUTE));
+    }
+
+    @Test
+    public void testMergeAddsEveryRowOfBatchedStatements() {
+        // two full statements of the batch and a remainder
+        Map<RollupKey, Long> rows = new HashMap<>();
+        int songs = 2 * RollupRepository.ROWS_PER_STATEMENT + 7;
+        for (int i = 0; i < songs; i++) {
+            rows.put(song("song" + i, MINUTE), 1L);
+        }
+        rollupRepository.merge(RollupGranularity.MINUTE, rows);
+        rollupRepository.merge(RollupGranularity.MINUTE, rows);
+
+        List<RollupSeriesDTO.Point> points = rollupRepository.findSeries(RollupGranularity.MINUTE,
+                RollupDimension.SONG, null, MINUTE, MINUTE.plusSeconds(60));
+        assertEquals(songs, points.size());
+        points.forEach(point -> assertEquals(2L, point.getCount(), point.getKey()));
+    }
+
+    @Test
+    public void testRebuildReplacesFlushedCounts() {
+        for (int i = 0; i < 3; i++) {
+            store("song1", MINUTE.plusSeconds(i));
+        }
+        // the same events as flushed by the accumulator
+        rollupRepository.merge(RollupGranularity.MINUTE, Map.of(song("song1", MINUTE), 3L));
+        rollupRepository.merge(RollupGranularity.DAY, Map.of(song("song1", DAY), 3L));
+
+        for (int run = 0; run < 2; run++) {
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                rollupRepository.rebuild(granularity, RollupDimension.SONG, DAY, DAY.plusSeconds(86400));
+            }
+            assertEquals(3L, count(RollupGranularity.MINUTE, "song1", MINUTE));
+            assertEquals(3L, count(RollupGranularity.HOUR, "song1", MINUTE));
+            assertEquals(3L, count(RollupGranularity.DAY, "song1", DAY));
+        }
+    }
+
+    @Test
+    public void testRebuildRemovesStaleRowsOfItsRangeOnly() {
+        store("song1", MINUTE);
+        Instant nextDay = DAY.plusSeconds(86400);
+        rollupRepository.merge(RollupGranularity.DAY, Map.of(
+                song("song9", DAY), 4L,
+                song("song9", nextDay), 5L,
+                new RollupKey(RollupDimension.ACTION, "PLAY", DAY.toEpochMilli(), "PLAY"), 6L));
+
+        rollupRepository.rebuild(RollupGranularity.DAY, RollupDimension.SONG, DAY, nextDay);
+
+        assertEquals(1L, count(RollupGranularity.DAY, "song1", DAY));
+        assertEquals(0L, count(RollupGranularity.DAY, "song9", DAY));
+        assertEquals(5L, count(RollupGranularity.DAY, "song9", nextDay));
+        List<RollupSeriesDTO.Point> actions = rollupRepository.findSeries(RollupGranularity.DAY,
+                RollupDimension.ACTION, "PLAY", DAY, nextDay);
+        assertEquals(6L, actions.get(0).getCount());
+    }
+
+    private void store(String songId, Instant timestamp) {
+        eventRepository.saveAndFlush(EventEntity.builder()
+                .userId("user1")
+                .action(ActionType.PLAY)
+                .songId(songId)
+                .timestamp(timestamp)
+                .source("WEB")
+                .category(ActionType.PLAY.name())
+                .count(1)
+                .build());
+    }
+
+    private long count(RollupGranularity granularity, String songId, Instant bucketStart) {
+        List<RollupSeriesDTO.Point> points = rollupRepository.findSeries(granularity, RollupDimension.SONG, songId,
+                bucketStart, bucketStart.plusMillis(granularity.getMillis()));
+        return points.stream().mapToLong(RollupSeriesDTO.Point::getCount).sum();
+    }
+
+    private static RollupKey song(String songId, Instant bucketStart) {
+        return new RollupKey(RollupDimension.SONG, songId, bucketStart.toEpochMilli(), "PLAY");
+    }
+}
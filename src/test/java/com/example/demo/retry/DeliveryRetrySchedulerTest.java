@@ -0,0 +1,244 @@
+package com.example.demo.retry;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.support.MessageBuilder;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.metrics.PipelineMetrics;
+import com.example.demo.pipeline.DownstreamRejectedException;
+import com.example.demo.pipeline.LaneExecutor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DeliveryRetrySchedulerTest {
+
+    private final EventPipelineProperties.Retry settings = new EventPipelineProperties.Retry();
+    private final DeadLetterStore deadLetterStore = new DeadLetterStore(100, Clock.systemUTC());
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private final AtomicInteger delivered = new AtomicInteger();
+    private CountDownLatch done;
+    private DeliveryRetryScheduler scheduler;
+
+    @BeforeEach
+    public void setup() {
+        settings.setTick(Duration.ofMillis(5));
+        settings.getDefaults().setInitialBackoff(Duration.ofMillis(10));
+        settings.getDefaults().setMaxAttempts(3);
+        scheduler = new DeliveryRetryScheduler(settings, Duration.ofSeconds(5),
+                new PipelineMetrics(new SimpleMeterRegistry()), System::nanoTime);
+        DirectChannel deadLetterChannel = new DirectChannel();
+        deadLetterChannel.subscribe(message -> {
+            deadLetterStore.add(message);
+            done.countDown();
+        });
+        scheduler.setDeadLetterChannel(deadLetterChannel);
+        scheduler.retrying("analytics", message -> {
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new IllegalStateException("analytics down");
+            }
+            delivered.incrementAndGet();
+            done.countDown();
+        });
+        scheduler.start();
+    }
+
+    @AfterEach
+    public void teardown() {
+        scheduler.stop();
+    }
+
+    @Test
+    public void testFailedDeliveryIsRetriedUntilItSucceeds() throws InterruptedException {
+        failuresLeft.set(2);
+        done = new CountDownLatch(1);
+        scheduler.deliver("analytics", MessageBuilder.withPayload("event").build());
+        assertEquals(1, scheduler.getPendingCount("analytics"));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, delivered.get());
+        assertEquals(2, scheduler.getRetriedCount("analytics"));
+        assertEquals(1, awaitRecovered("analytics", 1));
+        assertEquals(0, scheduler.getPendingCount());
+        assertEquals(0, deadLetterStore.getCount());
+    }
+
+    @Test
+    public void testDeliveryTurnedAwayByTheGuardIsDeferred() throws InterruptedException {
+        AtomicInteger rejectionsLeft = new AtomicInteger(1);
+        scheduler.retrying("aiEngine", message -> {
+            if (rejectionsLeft.getAndDecrement() > 0) {
+                throw new DownstreamRejectedException("aiEngine");
+            }
+            delivered.incrementAndGet();
+            done.countDown();
+        });
+        done = new CountDownLatch(1);
+        scheduler.deliver("aiEngine", MessageBuilder.withPayload("event").build());
+        assertEquals(1, scheduler.getPendingCount("aiEngine"));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, delivered.get());
+        assertEquals(1, awaitRecovered("aiEngine", 1));
+    }
+
+    @Test
+    public void testDeferredMessageIsRetriedUntilNotTurnedAway() throws InterruptedException {
+        List<Object> attempts = new CopyOnWriteArrayList<>();
+        scheduler.register("socialBatches", message -> {
+            attempts.add(message.getHeaders().get(DeliveryRetryScheduler.ATTEMPT_HEADER));
+            if (attempts.size() < 2) {
+                throw new DownstreamRejectedException("social");
+            }
+            done.countDown();
+        });
+        done = new CountDownLatch(1);
+        scheduler.defer("socialBatches", MessageBuilder.withPayload("batch").build(),
+                new IllegalStateException("social down"));
+        assertEquals(1, scheduler.getPendingCount("socialBatches"));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(2, 3), attempts);
+        assertEquals(2, scheduler.getRetriedCount("socialBatches"));
+        assertEquals(1, awaitRecovered("socialBatches", 1));
+    }
+
+    @Test
+    public void testExhaustedDeliveryBecomesDeadLetterAndIsReplayed() throws InterruptedException {
+        failuresLeft.set(3);
+        done = new CountDownLatch(1);
+        scheduler.deliver("analytics", MessageBuilder.withPayload("event").build());
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, delivered.get());
+        assertEquals(1, scheduler.getExhaustedCount("analytics"));
+        List<DeadLetter> letters = deadLetterStore.list("analytics", 0, 10);
+        assertEquals(1, letters.size());
+        assertEquals(3, letters.get(0).getAttempts());
+        assertEquals("IllegalStateException: analytics down", letters.get(0).getError());
+        assertEquals("event", letters.get(0).getMessage().getPayload());
+
+        done = new CountDownLatch(1);
+        assertEquals(1, scheduler.replay(deadLetterStore.take("analytics", 10)));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, delivered.get());
+        assertEquals(0, deadLetterStore.getCount());
+    }
+
+    @Test
+    public void testFailureAfterStopBecomesDeadLetterRightAway() {
+        scheduler.stop();
+        failuresLeft.set(1);
+        done = new CountDownLatch(1);
+        scheduler.deliver("analytics", MessageBuilder.withPayload("event").build());
+
+        assertEquals(0, scheduler.getPendingCount());
+        assertEquals(1, scheduler.getExhaustedCount("analytics"));
+        List<DeadLetter> letters = deadLetterStore.list("analytics", 0, 10);
+        assertEquals(1, letters.size());
+        assertEquals("Failed on shutdown, last error IllegalStateException: analytics down",
+                letters.get(0).getError());
+
+        assertEquals(0, scheduler.replay(deadLetterStore.take("analytics", 10)));
+        assertEquals(1, deadLetterStore.getCount());
+        assertEquals(1, scheduler.getExhaustedCount("analytics"));
+        assertEquals(0, delivered.get());
+    }
+
+    @Test
+    public void testRetriesOnLanesKeepTheOrderOfAKey() throws InterruptedException {
+        LaneExecutor lanes = new LaneExecutor("test", 2, 100, Duration.ofSeconds(5), 0);
+        scheduler.setLanes(lanes, message -> "user1");
+        List<String> received = new CopyOnWriteArrayList<>();
+        AtomicInteger failFirst = new AtomicInteger(1);
+        done = new CountDownLatch(3);
+        scheduler.retrying("sessions", message -> {
+            if (message.getPayload().equals("first") && failFirst.getAndDecrement() > 0) {
+                throw new IllegalStateException("sessions down");
+            }
+            received.add((String) message.getPayload());
+            done.countDown();
+        });
+
+        for (String payload : List.of("first", "second", "third")) {
+            lanes.execute("user1", () -> scheduler.deliver("sessions", MessageBuilder.withPayload(payload).build()));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("first", "second", "third"), received);
+        assertEquals(1, awaitRecovered("sessions", 1));
+        assertEquals(0, scheduler.getPendingCount());
+        lanes.stop();
+    }
+
+    @Test
+    public void testBackpressureIsNotRetried() {
+        scheduler.retrying("storage", message -> {
+            throw new RejectedExecutionException("Queue of executor 'storage' is full");
+        });
+        assertThrows(RejectedExecutionException.class,
+                () -> scheduler.deliver("storage", MessageBuilder.withPayload("event").build()));
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testBackpressureIsRetriedWithoutAWaitingSender() throws InterruptedException {
+        AtomicInteger rejectionsLeft = new AtomicInteger(1);
+        scheduler.retrying("storage", message -> {
+            if (rejectionsLeft.getAndDecrement() > 0) {
+                throw new RejectedExecutionException("Storage is saturated or failing, event not stored");
+            }
+            delivered.incrementAndGet();
+            done.countDown();
+        }, true);
+        done = new CountDownLatch(1);
+        scheduler.deliver("storage", MessageBuilder.withPayload("event").build());
+        assertEquals(1, scheduler.getPendingCount("storage"));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, delivered.get());
+        assertEquals(1, awaitRecovered("storage", 1));
+    }
+
+    @Test
+    public void testBackoffGrowsUpToTheMaximumWithJitter() {
+        EventPipelineProperties.RetryBackoff backoff = new EventPipelineProperties.RetryBackoff();
+        backoff.setInitialBackoff(Duration.ofSeconds(1));
+        backoff.setMaxBackoff(Duration.ofSeconds(30));
+        backoff.setJitter(0.2);
+        long second = TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < 100; i++) {
+            long first = DeliveryRetryScheduler.delayNanos(backoff, 1);
+            long third = DeliveryRetryScheduler.delayNanos(backoff, 3);
+            long tenth = DeliveryRetryScheduler.delayNanos(backoff, 10);
+            assertTrue(first >= 0.8 * second && first <= 1.2 * second);
+            assertTrue(third >= 3.2 * second && third <= 4.8 * second);
+            assertTrue(tenth >= 24 * second && tenth <= 36 * second);
+        }
+    }
+
+    /**
+     * The handler counts down before the scheduler counts the recovery, wait for the count to catch up
+     */
+    private long awaitRecovered(String channel, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.getRecoveredCount(channel) < expected && System.nanoTime() - deadline < 0) {
+            Thread.sleep(1);
+        }
+        return scheduler.getRecoveredCount(channel);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.demo.retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class HashedTimingWheelTest {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final AtomicLong clock = new AtomicLong(5_000_000_000L);
+    private final List<String> fired = new ArrayList<>();
+
+    @Test
+    public void testTimeoutsFireInTheirTickAcrossRounds() {
+        HashedTimingWheel wheel = new HashedTimingWheel("test", Duration.ofNanos(TICK), 8, clock::get);
+        wheel.schedule(timeout("now"), 0);
+        wheel.schedule(timeout("third"), 3 * TICK + 1);
+        // more than a turn of the wheel, shares the bucket of "third" but waits one round
+        wheel.schedule(timeout("eleventh"), 11 * TICK);
+        assertEquals(3, wheel.getPendingCount());
+
+        tick(wheel, 1);
+        assertEquals(List.of("now"), fired);
+        tick(wheel, 3);
+        assertEquals(List.of("now", "third"), fired);
+        tick(wheel, 7);
+        assertEquals(List.of("now", "third"), fired);
+        tick(wheel, 1);
+        assertEquals(List.of("now", "third", "eleventh"), fired);
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    public void testOverdueTimeoutFiresWithTheNextTick() {
+        HashedTimingWheel wheel = new HashedTimingWheel("test", Duration.ofNanos(TICK), 8, clock::get);
+        tick(wheel, 5);
+        // scheduled late, its deadline already passed when the worker picks it up
+        clock.addAndGet(-5 * TICK);
+        wheel.schedule(timeout("late"), TICK);
+        tick(wheel, 1);
+        assertEquals(List.of("late"), fired);
+    }
+
+    @Test
+    public void testStopHandsBackUnfiredTimeouts() {
+        HashedTimingWheel wheel = new HashedTimingWheel("test", Duration.ofNanos(TICK), 8, clock::get);
+        wheel.schedule(timeout("parked"), 20 * TICK);
+        tick(wheel, 1);
+        wheel.schedule(timeout("queued"), TICK);
+
+        List<HashedTimingWheel.Timeout> unfired = wheel.stop();
+        assertEquals(2, unfired.size());
+        assertTrue(fired.isEmpty());
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    private void tick(HashedTimingWheel wheel, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            wheel.advance();
+            clock.addAndGet(TICK);
+        }
+    }
+
+    private HashedTimingWheel.Timeout timeout(String name) {
+        return new HashedTimingWheel.Timeout() {
+            @Override
+            protected void expire() {
+                fired.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.demo.rollup;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.entity.EventEntity;
+import com.example.demo.model.ActionType;
+
+class RollupAccumulatorTest {
+
+    private static final Instant START = Instant.parse("2025-03-29T10:00:00Z");
+
+    private final Map<RollupGranularity, Map<RollupKey, Long>> tables = new EnumMap<>(RollupGranularity.class);
+    private EventPipelineProperties.Rollups settings;
+    private boolean failWrites;
+    private RollupAccumulator accumulator;
+
+    @BeforeEach
+    public void setup() {
+        settings = new EventPipelineProperties.Rollups();
+        settings.setPartitions(4);
+        accumulator = new RollupAccumulator(settings, (granularity, rows) -> {
+            if (failWrites) {
+                throw new IllegalStateException("database down");
+            }
+            rows.forEach((key, count) -> tables.computeIfAbsent(granularity, g -> new HashMap<>())
+                    .merge(key, count, Long::sum));
+        });
+    }
+
+    @Test
+    public void testCountsPerGranularityAndDimension() {
+        record("song1", ActionType.PLAY, 0);
+        record("song1", ActionType.PLAY, 30);
+        record("song1", ActionType.PLAY, 90);
+        record("song2", ActionType.PLAY, 3700);
+        record(null, ActionType.LOGIN, 10);
+        accumulator.flush();
+
+        long minute = START.toEpochMilli();
+        assertEquals(2L, count(RollupGranularity.MINUTE, RollupDimension.SONG, "song1", minute, "PLAY"));
+        assertEquals(1L, count(RollupGranularity.MINUTE, RollupDimension.SONG, "song1", minute + 60_000, "PLAY"));
+        assertEquals(3L, count(RollupGranularity.HOUR, RollupDimension.SONG, "song1", minute, "PLAY"));
+        assertEquals(3L, count(RollupGranularity.HOUR, RollupDimension.ACTION, "PLAY", minute, "PLAY"));
+        assertEquals(4L, count(RollupGranularity.DAY, RollupDimension.ACTION, "PLAY",
+                RollupGranularity.DAY.truncate(minute), "PLAY"));
+        assertEquals(1L, count(RollupGranularity.DAY, RollupDimension.CATEGORY, "LOGIN",
+                RollupGranularity.DAY.truncate(minute), "LOGIN"));
+        assertEquals(0, accumulator.getPendingKeyCount());
+    }
+
+    @Test
+    public void testFlushAddsToEarlierFlushes() {
+        record("song1", ActionType.LIKE, 0);
+        accumulator.flush();
+        record("song1", ActionType.LIKE, 10);
+        accumulator.flush();
+
+        assertEquals(2L, count(RollupGranularity.MINUTE, RollupDimension.SONG, "song1", START.toEpochMilli(), "LIKE"));
+    }
+
+    @Test
+    public void testFailedWriteIsRetried() {
+        failWrites = true;
+        record("song1", ActionType.SKIP, 0);
+        accumulator.flush();
+        assertTrue(tables.isEmpty());
+        assertEquals(3, accumulator.getFailedFlushCount());
+
+        failWrites = false;
+        record("song1", ActionType.SKIP, 5);
+        accumulator.flush();
+
+        assertEquals(2L, count(RollupGranularity.DAY, RollupDimension.SONG, "song1",
+                RollupGranularity.DAY.truncate(START.toEpochMilli()), "SKIP"));
+    }
+
+    @Test
+    public void testFullPartitionsDropEvents() {
+        settings.setPartitions(1);
+        settings.setMaxPendingKeys(2);
+        accumulator = new RollupAccumulator(settings, (granularity, rows) -> { });
+
+        record("song1", ActionType.PLAY, 0);
+        record("song2", ActionType.PLAY, 0);
+        record("song1", ActionType.PLAY, 1);
+        record("song3", ActionType.PLAY, 0);
+
+        assertEquals(2, accumulator.getPendingKeyCount());
+        assertEquals(1, accumulator.getDroppedEventCount());
+    }
+
+    private void record(String songId, ActionType action, long offsetSeconds) {
+        accumulator.record(EventEntity.builder()
+                .userId("user1")
+                .songId(songId)
+                .action(action)
+                .category(action.name())
+                .timestamp(START.plusSeconds(offsetSeconds))
+                .build());
+    }
+
+    private Long count(RollupGranularity granularity, RollupDimension dimension, String key, long bucketStart,
+            String action) {
+        return tables.getOrDefault(granularity, Map.of()).get(new RollupKey(dimension, key, bucketStart, action));
+    }
+}
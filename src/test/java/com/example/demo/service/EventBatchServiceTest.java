@@ -0,0 +1,94 @@
+package com.example.demo.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.messaging.MessagingException;
+
+import com.example.demo.codec.RawEventDecoder;
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.BatchResultDTO;
+import com.example.demo.dto.RawEventDTO;
+import com.example.demo.wal.EventWriteAheadLog;
+
+class EventBatchServiceTest {
+
+    private static final String PLAY = "{\"userId\":\"user%d\",\"action\":\"PLAY\",\"songId\":\"song1\"}";
+
+    private final EventPipelineProperties properties = new EventPipelineProperties();
+    private final DirectChannel eventInputChannel = new DirectChannel();
+    private final List<RawEventDTO> sent = new ArrayList<>();
+    private final EventBatchService service = new EventBatchService(eventInputChannel,
+            new RawEventDecoder(Jackson2ObjectMapperBuilder.json().build()), properties,
+            Mockito.mock(EventWriteAheadLog.class));
+
+    @Test
+    public void testNdjsonReportsRejectedItemsAndGoesOn() throws IOException {
+        eventInputChannel.subscribe(message -> sent.add((RawEventDTO) message.getPayload()));
+        String body = String.format(PLAY, 0) + "\n"
+                + "{\"action\":\"PLAY\",\"songId\":\"song1\"}\n"
+                + "{\"userId\":{}}\n"
+                + String.format(PLAY, 3) + "\n";
+
+        BatchResultDTO result = ingest(body);
+
+        assertEquals(4, result.getReceived());
+        assertEquals(2, result.getAccepted());
+        assertEquals(2, result.getRejected());
+        assertFalse(result.isTruncated());
+        assertEquals(List.of(1, 2), result.getErrors().stream().map(BatchResultDTO.ItemError::getIndex).toList());
+        assertEquals("userId is required", result.getErrors().get(0).getReason());
+        assertEquals(List.of("user0", "user3"), sent.stream().map(RawEventDTO::getUserId).toList());
+        assertEquals("agent", sent.get(0).getUserAgent());
+        assertEquals("10.0.0.1", sent.get(0).getClientIp());
+    }
+
+    @Test
+    public void testArrayIsTruncatedAtItemLimit() throws IOException {
+        eventInputChannel.subscribe(message -> sent.add((RawEventDTO) message.getPayload()));
+        properties.getBatch().setMaxItems(2);
+        BatchResultDTO result = ingest("[" + String.format(PLAY, 0) + "," + String.format(PLAY, 1) + ","
+                + String.format(PLAY, 2) + "]");
+
+        assertEquals(2, result.getReceived());
+        assertEquals(2, result.getAccepted());
+        assertTrue(result.isTruncated());
+    }
+
+    @Test
+    public void testMalformedBodyStopsBatch() throws IOException {
+        eventInputChannel.subscribe(message -> sent.add((RawEventDTO) message.getPayload()));
+        BatchResultDTO result = ingest(String.format(PLAY, 0) + "\n{\"userId\": nope}\n" + String.format(PLAY, 2));
+
+        assertEquals(1, result.getAccepted());
+        assertEquals(1, result.getRejected());
+        assertTrue(result.isTruncated());
+        assertTrue(result.getErrors().get(0).getReason().startsWith("Malformed body"));
+    }
+
+    @Test
+    public void testFullQueueIsReportedPerItem() throws IOException {
+        eventInputChannel.subscribe(message -> {
+            throw new MessagingException(message, new RejectedExecutionException("Queue of executor 'ingestion' is full"));
+        });
+        BatchResultDTO result = ingest(String.format(PLAY, 0));
+
+        assertEquals(0, result.getAccepted());
+        assertEquals("Event queue is full, retry later", result.getErrors().get(0).getReason());
+    }
+
+    private BatchResultDTO ingest(String body) throws IOException {
+        return service.ingest(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), "agent", "10.0.0.1");
+    }
+}
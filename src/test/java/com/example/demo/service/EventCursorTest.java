@@ -0,0 +1,32 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+class EventCursorTest {
+
+    @Test
+    void roundTripsPosition() {
+        EventCursor cursor = new EventCursor(Instant.parse("2024-05-01T12:30:15.123456789Z"), 42);
+
+        assertEquals(cursor, EventCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void missingTokenStartsBeforeEveryEvent() {
+        assertSame(EventCursor.START, EventCursor.decode(null));
+        assertSame(EventCursor.START, EventCursor.decode(""));
+    }
+
+    @Test
+    void rejectsInvalidTokens() {
+        assertThrows(IllegalArgumentException.class, () -> EventCursor.decode("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> EventCursor.decode("MTox"));
+        assertThrows(IllegalArgumentException.class, () -> EventCursor.decode("YTpiOmM"));
+    }
+}
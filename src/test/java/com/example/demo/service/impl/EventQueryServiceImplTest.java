@@ -0,0 +1,175 @@
+package com.example.demo.service.impl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Limit;
+
+import com.example.demo.archive.EventArchive;
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.EventPageDTO;
+import com.example.demo.dto.EventRecordDTO;
+import com.example.demo.model.ActionType;
+import com.example.demo.pipeline.RecentActivityCache;
+import com.example.demo.repository.DatabaseConcurrencyLimiter;
+import com.example.demo.repository.EventRepository;
+
+class EventQueryServiceImplTest {
+
+    private static final Instant START = Instant.parse("2025-03-01T00:00:00Z");
+
+    private final EventPipelineProperties properties = new EventPipelineProperties();
+    private final EventRepository eventRepository = Mockito.mock(EventRepository.class);
+    private final List<EventRecordDTO> events = new ArrayList<>();
+    private final AtomicInteger queries = new AtomicInteger();
+    private EventQueryServiceImpl service;
+
+    @BeforeEach
+    public void setup() {
+        // the keyset predicate of the repository queries, applied to the events in memory
+        Mockito.when(eventRepository.findUserEventsBefore(ArgumentMatchers.anyString(), ArgumentMatchers.any(),
+                ArgumentMatchers.anyLong(), ArgumentMatchers.any())).thenAnswer(invocation -> before(
+                        event -> event.getUserId().equals(invocation.getArgument(0)),
+                        invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(3)));
+        Mockito.when(eventRepository.findActionEventsBefore(ArgumentMatchers.any(), ArgumentMatchers.any(),
+                ArgumentMatchers.any(), ArgumentMatchers.anyLong(), ArgumentMatchers.any())).thenAnswer(invocation -> {
+                    Instant from = invocation.getArgument(1);
+                    return before(event -> event.getAction() == invocation.getArgument(0)
+                            && !event.getTimestamp().isBefore(from),
+                            invocation.getArgument(2), invocation.getArgument(3), invocation.getArgument(4));
+                });
+        service = new EventQueryServiceImpl(eventRepository, Mockito.mock(RecentActivityCache.class),
+                Mockito.mock(EventArchive.class), new DatabaseConcurrencyLimiter(4, Duration.ofSeconds(10)),
+                properties);
+    }
+
+    @Test
+    public void testPagesWalkTiesOnEqualTimestampsOnce() {
+        add(1, "user1", ActionType.PLAY, 10);
+        add(2, "user1", ActionType.PLAY, 20);
+        add(3, "user1", ActionType.SKIP, 20);
+        add(4, "user1", ActionType.LIKE, 20);
+        add(5, "user1", ActionType.PLAY, 30);
+        add(6, "user2", ActionType.PLAY, 20);
+
+        EventPageDTO first = service.getUserEvents("user1", null, 2);
+        assertEquals(List.of(5L, 4L), ids(first));
+        assertNotNull(first.getNextCursor());
+        // the page ended inside the events of second 20, the next one continues with the smaller ids
+        EventPageDTO second = service.getUserEvents("user1", first.getNextCursor(), 2);
+        assertEquals(List.of(3L, 2L), ids(second));
+        EventPageDTO last = service.getUserEvents("user1", second.getNextCursor(), 2);
+        assertEquals(List.of(1L), ids(last));
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    public void testFullLastPageHasNoNextCursor() {
+        add(1, "user1", ActionType.PLAY, 10);
+        add(2, "user1", ActionType.PLAY, 20);
+
+        EventPageDTO page = service.getUserEvents("user1", null, 2);
+        assertEquals(List.of(2L, 1L), ids(page));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void testActionRangeExcludesItsEnd() {
+        add(1, "user1", ActionType.PLAY, 9);
+        add(2, "user1", ActionType.PLAY, 10);
+        add(3, "user2", ActionType.PLAY, 15);
+        add(4, "user1", ActionType.PLAY, 20);
+        add(5, "user3", ActionType.PLAY, 20);
+        add(6, "user1", ActionType.SKIP, 15);
+
+        EventPageDTO page = service.getActionEvents(ActionType.PLAY, START.plusSeconds(10), START.plusSeconds(20),
+                null, 10);
+        assertEquals(List.of(3L, 2L), ids(page));
+        Mockito.verify(eventRepository).findActionEventsBefore(ActionType.PLAY, START.plusSeconds(10),
+                START.plusSeconds(20), Long.MIN_VALUE, Limit.of(11));
+    }
+
+    @Test
+    public void testActionCursorPastTheRangeStartsAtItsEnd() {
+        add(1, "user1", ActionType.PLAY, 15);
+        add(2, "user1", ActionType.PLAY, 25);
+
+        // a cursor of a wider range does not reach beyond the end of this one
+        String cursor = service.getUserEvents("user1", null, 1).getNextCursor();
+        EventPageDTO page = service.getActionEvents(ActionType.PLAY, START, START.plusSeconds(20), cursor, 10);
+        assertEquals(List.of(1L), ids(page));
+        assertThrows(IllegalArgumentException.class, () -> service.getActionEvents(ActionType.PLAY,
+                START.plusSeconds(20), START.plusSeconds(20), null, 10));
+    }
+
+    @Test
+    public void testStreamEndsWithAShortPage() {
+        properties.getQuery().setStreamFetchSize(2);
+        for (int i = 1; i <= 5; i++) {
+            add(i, "user1", ActionType.PLAY, i == 3 ? 4 : i);
+        }
+        List<Long> streamed = new ArrayList<>();
+
+        // the first page ends between the two events of second 4
+        service.streamUserEvents("user1", event -> streamed.add(event.getId()));
+        assertEquals(List.of(5L, 4L, 3L, 2L, 1L), streamed);
+        assertEquals(3, queries.get());
+    }
+
+    @Test
+    public void testStreamEndsWithAnEmptyPage() {
+        properties.getQuery().setStreamFetchSize(2);
+        for (int i = 1; i <= 4; i++) {
+            add(i, "user1", ActionType.PLAY, i);
+        }
+        add(5, "user1", ActionType.PLAY, 60);
+        List<Long> streamed = new ArrayList<>();
+
+        service.streamActionEvents(ActionType.PLAY, START, START.plusSeconds(60), event -> streamed.add(event.getId()));
+        assertEquals(List.of(4L, 3L, 2L, 1L), streamed);
+        // two full pages, then one that comes back empty
+        assertEquals(3, queries.get());
+    }
+
+    @Test
+    public void testStreamOfNoEventsQueriesOnce() {
+        List<Long> streamed = new ArrayList<>();
+
+        service.streamUserEvents("user1", event -> streamed.add(event.getId()));
+        assertEquals(List.of(), streamed);
+        assertEquals(1, queries.get());
+    }
+
+    private List<EventRecordDTO> before(Predicate<EventRecordDTO> filter, Instant timestamp, long id, Limit limit) {
+        queries.incrementAndGet();
+        return events.stream()
+                .filter(filter)
+                .filter(event -> event.getTimestamp().isBefore(timestamp)
+                        || event.getTimestamp().equals(timestamp) && event.getId() < id)
+                .sorted(Comparator.comparing(EventRecordDTO::getTimestamp).thenComparing(EventRecordDTO::getId)
+                        .reversed())
+                .limit(limit.max())
+                .toList();
+    }
+
+    private void add(long id, String userId, ActionType action, long second) {
+        events.add(new EventRecordDTO(id, userId, action, "song1", START.plusSeconds(second), "WEB"));
+    }
+
+    private static List<Long> ids(EventPageDTO page) {
+        return page.getEvents().stream().map(EventRecordDTO::getId).toList();
+    }
+}
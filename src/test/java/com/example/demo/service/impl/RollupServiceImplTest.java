@@ -0,0 +1,118 @@
+package com.example.demo.service.impl;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.RollupBackfillStatusDTO;
+import com.example.demo.repository.RollupRepository;
+import com.example.demo.rollup.RollupAccumulator;
+import com.example.demo.rollup.RollupDimension;
+import com.example.demo.rollup.RollupGranularity;
+
+class RollupServiceImplTest {
+
+    private static final Instant NOW = Instant.parse("2025-03-29T10:00:00Z");
+    private static final Instant TODAY = Instant.parse("2025-03-29T00:00:00Z");
+
+    private final EventPipelineProperties properties = new EventPipelineProperties();
+    private final RollupRepository rollupRepository = Mockito.mock(RollupRepository.class);
+    private final RollupAccumulator rollupAccumulator = Mockito.mock(RollupAccumulator.class);
+    private final List<String> rebuilt = Collections.synchronizedList(new ArrayList<>());
+    private RollupServiceImpl service;
+
+    @BeforeEach
+    public void setup() {
+        properties.getRollups().setBackfillParallelism(2);
+        Mockito.doAnswer(invocation -> rebuilt.add(invocation.getArgument(0) + " " + invocation.getArgument(1) + " "
+                + invocation.getArgument(2) + " " + invocation.getArgument(3)))
+                .when(rollupRepository).rebuild(ArgumentMatchers.any(), ArgumentMatchers.any(),
+                        ArgumentMatchers.any(), ArgumentMatchers.any());
+        service = new RollupServiceImpl(rollupRepository, rollupAccumulator, properties,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void testEveryDayIsRebuiltOnceForEveryTable() throws InterruptedException {
+        // a range inside the days is widened to whole days
+        RollupBackfillStatusDTO started = service.startBackfill(TODAY.minusSeconds(3 * 86400 - 3600),
+                TODAY.minusSeconds(86400 + 60));
+        assertEquals(2, started.getChunks());
+        assertEquals("COMPLETED", awaitFinished().getState());
+
+        List<String> expected = new ArrayList<>();
+        for (Instant day = TODAY.minusSeconds(3 * 86400); day.isBefore(TODAY.minusSeconds(86400));
+                day = day.plusSeconds(86400)) {
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                for (RollupDimension dimension : RollupDimension.values()) {
+                    expected.add(granularity + " " + dimension + " " + day + " " + day.plusSeconds(86400));
+                }
+            }
+        }
+        List<String> sorted = new ArrayList<>(rebuilt);
+        Collections.sort(sorted);
+        Collections.sort(expected);
+        // no bucket is rebuilt twice, days neither overlap nor repeat
+        assertEquals(expected, sorted);
+    }
+
+    @Test
+    public void testRepeatedBackfillReplacesTheSameDays() throws InterruptedException {
+        service.startBackfill(TODAY.minusSeconds(86400), TODAY);
+        awaitFinished();
+        List<String> first = new ArrayList<>(rebuilt);
+        rebuilt.clear();
+
+        service.startBackfill(TODAY.minusSeconds(86400), TODAY);
+        awaitFinished();
+        Collections.sort(first);
+        List<String> second = new ArrayList<>(rebuilt);
+        Collections.sort(second);
+        assertEquals(first, second);
+        Mockito.verify(rollupRepository, Mockito.never()).merge(ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    public void testCountsInMemoryAreFlushedBeforeTheRebuild() throws InterruptedException {
+        service.startBackfill(TODAY.minusSeconds(86400), TODAY);
+        awaitFinished();
+
+        InOrder order = Mockito.inOrder(rollupAccumulator, rollupRepository);
+        order.verify(rollupAccumulator).flush();
+        order.verify(rollupRepository, Mockito.atLeastOnce()).rebuild(ArgumentMatchers.any(),
+                ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    public void testCurrentDayIsNotBackfilled() {
+        assertThrows(IllegalArgumentException.class,
+                () -> service.startBackfill(TODAY.minusSeconds(86400), TODAY.plusSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> service.startBackfill(TODAY, NOW));
+        assertEquals("IDLE", service.getBackfillStatus().getState());
+        assertTrue(rebuilt.isEmpty());
+    }
+
+    private RollupBackfillStatusDTO awaitFinished() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        RollupBackfillStatusDTO status = service.getBackfillStatus();
+        while (status.getFinishedAt() == null && System.nanoTime() - deadline < 0) {
+            Thread.sleep(5);
+            status = service.getBackfillStatus();
+        }
+        return status;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.demo.service.impl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.model.ActionType;
+import com.example.demo.model.Event;
+import com.example.demo.metrics.PipelineMetrics;
+import com.example.demo.pipeline.DownstreamGuard;
+import com.example.demo.pipeline.DownstreamRejectedException;
+import com.example.demo.retry.DeliveryRetryScheduler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SocialDispatchCoalescerTest {
+
+    private static final DownstreamGuard UNGUARDED = new DownstreamGuard("social", false,
+            new EventPipelineProperties.DownstreamLimits(), System::nanoTime);
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final List<Event> shared = new ArrayList<>();
+    // a deferred batch stays parked for the default backoff, longer than a test runs
+    private final DeliveryRetryScheduler retryScheduler = new DeliveryRetryScheduler(new EventPipelineProperties(),
+            new PipelineMetrics(new SimpleMeterRegistry()));
+    private EventPipelineProperties.Social settings;
+    private SocialDispatchCoalescer coalescer;
+
+    @BeforeEach
+    public void setup() {
+        settings = new EventPipelineProperties.Social();
+        settings.setCoalescing(true);
+        settings.setWindow(Duration.ofSeconds(5));
+        settings.setUserRate(1.0);
+        settings.setUserBurst(3);
+        coalescer = new SocialDispatchCoalescer(shared::add, UNGUARDED, retryScheduler, settings, clock::get);
+        retryScheduler.start();
+    }
+
+    @AfterEach
+    public void teardown() {
+        retryScheduler.stop();
+    }
+
+    @Test
+    public void testFlipFlopsCollapseToFinalReaction() {
+        submit("user1", "song1", ActionType.LIKE);
+        submit("user1", "song1", ActionType.DISLIKE);
+        submit("user1", "song1", ActionType.LIKE);
+        submit("user1", "song1", ActionType.SHARE);
+        submit("user1", "song1", ActionType.SHARE);
+
+        coalescer.dispatchDue();
+        assertTrue(shared.isEmpty());
+
+        clock.addAndGet(5_000);
+        coalescer.dispatchDue();
+        assertEquals(List.of(ActionType.LIKE, ActionType.SHARE), shared.stream().map(Event::getAction).toList());
+        assertEquals(3, coalescer.getCoalescedCount());
+        assertEquals(0, coalescer.getPendingCount());
+    }
+
+    @Test
+    public void testUserLimitDropsExcessPosts() {
+        for (int i = 0; i < 5; i++) {
+            submit("user1", "song" + i, ActionType.LIKE);
+        }
+        submit("user2", "song1", ActionType.LIKE);
+
+        clock.addAndGet(5_000);
+        coalescer.dispatchDue();
+        assertEquals(4, shared.size());
+        assertEquals(2, coalescer.getRateLimitedCount());
+    }
+
+    @Test
+    public void testGlobalLimitDefersPosts() {
+        settings.setGlobalBurst(1);
+        settings.setGlobalRate(1.0);
+        coalescer = new SocialDispatchCoalescer(shared::add, UNGUARDED, retryScheduler, settings, clock::get);
+        submit("user1", "song1", ActionType.LIKE);
+        submit("user2", "song1", ActionType.LIKE);
+
+        clock.addAndGet(5_000);
+        coalescer.dispatchDue();
+        assertEquals(1, shared.size());
+        clock.addAndGet(1_000);
+        coalescer.dispatchDue();
+        assertEquals(2, shared.size());
+        assertEquals(0, coalescer.getRateLimitedCount());
+    }
+
+    @Test
+    public void testFailedBatchIsDeferredToTheRetryScheduler() {
+        coalescer = new SocialDispatchCoalescer(event -> {
+            throw new IllegalStateException("social down");
+        }, UNGUARDED, retryScheduler, settings, clock::get);
+        submit("user1", "song1", ActionType.LIKE);
+        submit("user2", "song1", ActionType.SHARE);
+
+        clock.addAndGet(5_000);
+        coalescer.dispatchDue();
+        assertEquals(0, coalescer.getDispatchedCount());
+        assertEquals(1, retryScheduler.getPendingCount(SocialDispatchCoalescer.RETRY_CHANNEL));
+    }
+
+    @Test
+    public void testEventTurnedAwayWithoutCoalescingIsThrown() {
+        EventPipelineProperties.DownstreamLimits limits = new EventPipelineProperties.DownstreamLimits();
+        limits.setInitialLimit(1);
+        limits.setMaxLimit(1);
+        DownstreamGuard guard = new DownstreamGuard("social", true, limits, System::nanoTime);
+        settings.setCoalescing(false);
+        coalescer = new SocialDispatchCoalescer(event -> submit("user1", "song2", ActionType.LIKE), guard,
+                retryScheduler, settings, clock::get);
+
+        // the nested submit finds the only permit taken
+        assertThrows(DownstreamRejectedException.class, () -> submit("user1", "song1", ActionType.LIKE));
+    }
+
+    private void submit(String userId, String songId, ActionType action) {
+        coalescer.submit(Event.builder()
+                .userId(userId)
+                .action(action)
+                .songId(songId)
+                .timestamp(Instant.now())
+                .source("WEB")
+                .build());
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.demo.service.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.entity.EventEntity;
+import com.example.demo.model.ActionType;
+import com.example.demo.repository.EventBatchWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class WriteBehindEventWriterTest {
+
+    @TempDir
+    Path directory;
+
+    private final EventBatchWriter eventBatchWriter = Mockito.mock(EventBatchWriter.class);
+    private final AtomicInteger durable = new AtomicInteger();
+    private WriteBehindEventWriter writer;
+
+    @BeforeEach
+    public void setup() {
+        EventPipelineProperties properties = new EventPipelineProperties();
+        EventPipelineProperties.WriteBehind settings = properties.getStorage().getWriteBehind();
+        settings.setMaxRetries(2);
+        settings.setRetryBackoff(Duration.ofMillis(1));
+        settings.setSpillDirectory(directory.toString());
+        // not started, every write is flushed on the calling thread
+        writer = new WriteBehindEventWriter(eventBatchWriter, new ObjectMapper().findAndRegisterModules(), properties);
+    }
+
+    @Test
+    public void testFailedBatchIsRetried() {
+        Mockito.doThrow(new IllegalStateException("deadlock victim"))
+                .doNothing()
+                .when(eventBatchWriter).insert(ArgumentMatchers.anyList());
+
+        writer.write(event("user1"), durable::incrementAndGet);
+
+        Mockito.verify(eventBatchWriter, Mockito.times(2)).insert(ArgumentMatchers.anyList());
+        assertEquals(1, writer.getFlushedCount());
+        assertEquals(1, writer.getFailedFlushCount());
+        assertEquals(0, writer.getSpilledCount());
+        assertEquals(1, durable.get());
+    }
+
+    @Test
+    public void testBatchIsSpilledAfterRetriesAndReplayed() throws IOException {
+        Mockito.doThrow(new IllegalStateException("database down"))
+                .when(eventBatchWriter).insert(ArgumentMatchers.anyList());
+
+        writer.write(event("user1"), durable::incrementAndGet);
+
+        assertEquals(3, writer.getFailedFlushCount());
+        assertEquals(1, writer.getSpilledCount());
+        // reported safe only once the spill file is on disk
+        assertEquals(1, durable.get());
+        List<Path> files = files();
+        assertEquals(1, files.size());
+        String name = files.get(0).getFileName().toString();
+        assertTrue(name.startsWith("spill-") && name.endsWith(".ndjson"), name);
+
+        Mockito.when(eventBatchWriter.insertSpill(ArgumentMatchers.eq(name), ArgumentMatchers.anyList()))
+                .thenReturn(true);
+        writer.replaySpills();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<EventEntity>> events = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(eventBatchWriter).insertSpill(ArgumentMatchers.eq(name), events.capture());
+        assertEquals(1, events.getValue().size());
+        assertEquals("user1", events.getValue().get(0).getUserId());
+        assertEquals(Instant.parse("2025-03-01T12:00:00Z"), events.getValue().get(0).getTimestamp());
+        Mockito.verify(eventBatchWriter).forgetSpill(name);
+        assertTrue(files().isEmpty());
+        assertEquals(1, writer.getFlushedCount());
+    }
+
+    @Test
+    public void testReplayOfInsertedSpillOnlyDeletesIt() throws IOException {
+        Path spill = directory.resolve("spill-1-1-abcdef12.ndjson");
+        Files.writeString(spill, "{\"userId\":\"user1\",\"action\":\"PLAY\"}\n");
+        // left by a crash in the middle of a spill
+        Files.writeString(directory.resolve("spill-2-1-abcdef12.ndjson.tmp"), "{\"userId\":");
+        Mockito.when(eventBatchWriter.insertSpill(ArgumentMatchers.anyString(), ArgumentMatchers.anyList()))
+                .thenReturn(false);
+
+        writer.replaySpills();
+
+        Mockito.verify(eventBatchWriter).insertSpill(ArgumentMatchers.eq("spill-1-1-abcdef12.ndjson"),
+                ArgumentMatchers.anyList());
+        Mockito.verify(eventBatchWriter).forgetSpill("spill-1-1-abcdef12.ndjson");
+        assertTrue(files().isEmpty());
+        assertEquals(0, writer.getFlushedCount());
+    }
+
+    @Test
+    public void testFailedReplayKeepsSpillFile() throws IOException {
+        Path spill = directory.resolve("spill-1-1-abcdef12.ndjson");
+        Files.writeString(spill, "{\"userId\":\"user1\",\"action\":\"PLAY\"}\n");
+        Mockito.when(eventBatchWriter.insertSpill(ArgumentMatchers.anyString(), ArgumentMatchers.anyList()))
+                .thenThrow(new IllegalStateException("database down"));
+
+        writer.replaySpills();
+
+        Mockito.verify(eventBatchWriter, Mockito.never()).forgetSpill(ArgumentMatchers.anyString());
+        assertEquals(List.of(spill), files());
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing.sorted().toList();
+        }
+    }
+
+    private static EventEntity event(String userId) {
+        return EventEntity.builder()
+                .userId(userId)
+                .action(ActionType.PLAY)
+                .songId("song1")
+                .timestamp(Instant.parse("2025-03-01T12:00:00Z"))
+                .category("PLAY")
+                .count(1)
+                .build();
+    }
+}
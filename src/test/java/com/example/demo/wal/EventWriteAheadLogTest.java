@@ -0,0 +1,225 @@
+package com.example.demo.wal;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+
+import com.example.demo.config.EventPipelineProperties;
+import com.example.demo.dto.RawEventDTO;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+class EventWriteAheadLogTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    @TempDir
+    Path directory;
+
+    private final List<Message<?>> handedOver = new CopyOnWriteArrayList<>();
+    private final List<Message<?>> redelivered = new CopyOnWriteArrayList<>();
+    private volatile boolean busy;
+    private EventPipelineProperties properties;
+    private EventWriteAheadLog wal;
+
+    @BeforeEach
+    public void setup() {
+        properties = new EventPipelineProperties();
+        properties.getWal().setEnabled(true);
+        properties.getWal().setDirectory(directory.toString());
+        properties.getWal().setSegmentSize(4096);
+        wal = start();
+    }
+
+    @AfterEach
+    public void teardown() {
+        wal.stop();
+    }
+
+    @Test
+    public void testEventsAreHandedOverWithTheirSequence() {
+        write("user1");
+        write("user2");
+
+        assertEquals(2, handedOver.size());
+        assertEquals(1L, handedOver.get(0).getHeaders().get(EventWriteAheadLog.SEQUENCE_HEADER));
+        assertEquals(2L, handedOver.get(1).getHeaders().get(EventWriteAheadLog.SEQUENCE_HEADER));
+        assertTrue(wal.getSyncCount() >= 1);
+        assertEquals(2, wal.getPendingCount());
+
+        wal.confirm(handedOver.get(0));
+        assertEquals(1, wal.getPendingCount());
+        assertEquals(1, wal.getConfirmedCount());
+    }
+
+    @Test
+    public void testUnconfirmedEventsAreReplayedAfterRestart() throws InterruptedException {
+        write("user1");
+        write("user2");
+        write("user3");
+        wal.confirm(1L);
+        wal.stop();
+        handedOver.clear();
+
+        wal = start();
+        wal.replay();
+        awaitHandedOver(2);
+
+        assertEquals(2L, handedOver.get(0).getHeaders().get(EventWriteAheadLog.SEQUENCE_HEADER));
+        assertEquals("user2", ((RawEventDTO) handedOver.get(0).getPayload()).getUserId());
+        assertEquals(3L, handedOver.get(1).getHeaders().get(EventWriteAheadLog.SEQUENCE_HEADER));
+        assertEquals(Boolean.TRUE, handedOver.get(1).getHeaders().get(EventWriteAheadLog.REPLAY_HEADER));
+
+        // sequences continue after the recovered records
+        handedOver.clear();
+        write("user4");
+        assertEquals(4L, handedOver.get(0).getHeaders().get(EventWriteAheadLog.SEQUENCE_HEADER));
+    }
+
+    @Test
+    public void testConfirmedSegmentsAreDeleted() {
+        for (int i = 0; i < 100; i++) {
+            write("user" + i);
+        }
+        int segments = wal.getSegmentCount();
+        assertTrue(segments > 1);
+
+        for (Message<?> message : handedOver) {
+            wal.confirm(message);
+        }
+        wal.checkpoint();
+
+        assertEquals(1, wal.getSegmentCount());
+        assertEquals(0, wal.getPendingCount());
+    }
+
+    @Test
+    public void testOverdueEventsAreRedeliveredToStorageUntilStored() {
+        properties.getWal().setRedeliverAfter(Duration.ZERO);
+        write("user1");
+
+        for (int i = 0; i < 5; i++) {
+            wal.checkpoint();
+        }
+        assertEquals(1, handedOver.size());
+        assertEquals(5, redelivered.size());
+        assertEquals(Boolean.TRUE, redelivered.get(0).getHeaders().get(EventWriteAheadLog.REPLAY_HEADER));
+        assertEquals(1, wal.getPendingCount());
+        assertEquals(0, wal.getAbandonedCount());
+
+        wal.confirm(redelivered.get(4));
+        assertEquals(0, wal.getPendingCount());
+    }
+
+    @Test
+    public void testEventsTheStorageHoldsAreNotRedelivered() {
+        properties.getWal().setRedeliverAfter(Duration.ZERO);
+        write("user1");
+        write("user2");
+
+        assertTrue(wal.storing(1L));
+        assertFalse(wal.storing(1L));
+        wal.checkpoint();
+        assertEquals(1, redelivered.size());
+        assertEquals(2L, redelivered.get(0).getHeaders().get(EventWriteAheadLog.SEQUENCE_HEADER));
+
+        wal.release(1L);
+        wal.checkpoint();
+        assertEquals(3, redelivered.size());
+
+        wal.confirm(1L);
+        assertFalse(wal.storing(1L));
+    }
+
+    @Test
+    public void testEventsTurnedAwayByThePipelineAreRedeliveredToIt() {
+        properties.getWal().setRedeliverAfter(Duration.ZERO);
+        busy = true;
+        write("user1");
+        busy = false;
+
+        wal.checkpoint();
+        assertEquals(1, handedOver.size());
+        assertEquals(0, redelivered.size());
+        wal.checkpoint();
+        assertEquals(1, redelivered.size());
+    }
+
+    @Test
+    public void testFullLogRejectsNewEvents() {
+        properties.getWal().setMaxSize(2 * 4096);
+        assertThrows(RejectedExecutionException.class, () -> {
+            for (int i = 0; i < 1000; i++) {
+                write("user" + i);
+            }
+        });
+        assertEquals(2, wal.getSegmentCount());
+        assertEquals(1, wal.getRejectedCount());
+
+        for (Message<?> message : handedOver) {
+            wal.confirm(message);
+        }
+        wal.checkpoint();
+        write("user1");
+    }
+
+    @Test
+    public void testUnreadableCheckpointReplaysEverySegment() throws Exception {
+        write("user1");
+        write("user2");
+        wal.confirm(1L);
+        wal.stop();
+        Files.writeString(directory.resolve("checkpoint"), "");
+        handedOver.clear();
+
+        wal = start();
+        wal.replay();
+        awaitHandedOver(2);
+        assertEquals(1L, handedOver.get(0).getHeaders().get(EventWriteAheadLog.SEQUENCE_HEADER));
+    }
+
+    private EventWriteAheadLog start() {
+        EventWriteAheadLog log = new EventWriteAheadLog(properties, OBJECT_MAPPER);
+        log.setReplayChannel((message, timeout) -> {
+            if (busy) {
+                throw new MessageDeliveryException(message, "busy", new RejectedExecutionException("full"));
+            }
+            return handedOver.add(message);
+        });
+        log.setRedeliveryChannel((message, timeout) -> redelivered.add(message));
+        log.start();
+        return log;
+    }
+
+    private void write(String userId) {
+        RawEventDTO event = RawEventDTO.builder().userId(userId).action("PLAY").songId("song1").build();
+        wal.write(MessageBuilder.withPayload(event).build());
+    }
+
+    private void awaitHandedOver(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (handedOver.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, handedOver.size());
+    }
+}